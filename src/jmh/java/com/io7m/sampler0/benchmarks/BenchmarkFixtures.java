@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.benchmarks;
+
+import com.io7m.jattribute.core.AttributeReadableType;
+import com.io7m.jattribute.core.AttributeType;
+import com.io7m.jattribute.core.Attributes;
+import com.io7m.jsamplebuffer.api.SampleBufferRateConverterType;
+import com.io7m.sampler0.AudioContextType;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Shared fixtures for benchmarks.
+ */
+
+final class BenchmarkFixtures
+{
+  static final int SAMPLE_RATE = 48000;
+
+  private BenchmarkFixtures()
+  {
+
+  }
+
+  /**
+   * Write a 16-bit mono WAVE file of noise at {@link #SAMPLE_RATE}.
+   *
+   * @param file   The output file
+   * @param frames The number of frames
+   * @param seed   The noise seed
+   *
+   * @return The file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static Path writeWave(
+    final Path file,
+    final int frames,
+    final int seed)
+    throws IOException
+  {
+    final var format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+    final var bytes = new byte[frames * 2];
+    var x = seed;
+    for (int index = 0; index < frames; ++index) {
+      x = x * 1103515245 + 12345;
+      final var value = (short) (x >> 18);
+      bytes[index * 2] = (byte) (value & 0xff);
+      bytes[index * 2 + 1] = (byte) ((value >> 8) & 0xff);
+    }
+
+    try (var stream = new AudioInputStream(
+      new ByteArrayInputStream(bytes), format, frames)) {
+      AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file.toFile());
+    }
+    return file;
+  }
+
+  static AudioContextType context(
+    final int bufferSize)
+  {
+    return new Context(bufferSize);
+  }
+
+  private static final class Context implements AudioContextType
+  {
+    private final AttributeType<Integer> sampleRate;
+    private final AttributeType<Integer> bufferSize;
+
+    Context(
+      final int inBufferSize)
+    {
+      final var attributes = Attributes.create(e -> { });
+      this.sampleRate = attributes.create(Integer.valueOf(SAMPLE_RATE));
+      this.bufferSize = attributes.create(Integer.valueOf(inBufferSize));
+    }
+
+    @Override
+    public SampleBufferRateConverterType sampleRateConverter()
+    {
+      return (factory, buffer, rate) -> {
+        throw new UnsupportedOperationException();
+      };
+    }
+
+    @Override
+    public <T> CompletableFuture<T> executeIO(
+      final IOOperationType<T> operation)
+    {
+      final var future = new CompletableFuture<T>();
+      final var thread = new Thread(() -> {
+        try {
+          future.complete(operation.execute());
+        } catch (final Exception e) {
+          future.completeExceptionally(e);
+        }
+      });
+      thread.setDaemon(true);
+      thread.start();
+      return future;
+    }
+
+    @Override
+    public AttributeReadableType<Integer> sampleRate()
+    {
+      return this.sampleRate;
+    }
+
+    @Override
+    public AttributeReadableType<Integer> bufferSize()
+    {
+      return this.bufferSize;
+    }
+  }
+}
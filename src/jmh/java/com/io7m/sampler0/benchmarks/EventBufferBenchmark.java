@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.benchmarks;
+
+import com.io7m.sampler0.EventBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of adding a period's events to an {@link EventBuffer} and
+ * taking them out again, for sparse and dense event loads. The shuffled
+ * case delivers events out of time order, exercising the insertion path.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventBufferBenchmark
+{
+  private static final int PERIOD = 256;
+
+  @Param({"1", "16", "256"})
+  public int eventsPerPeriod;
+
+  @Param({"false", "true"})
+  public boolean shuffled;
+
+  private EventBuffer buffer;
+  private int[] times;
+
+  @Setup
+  public void setup()
+  {
+    this.buffer = new EventBuffer();
+    this.times = new int[this.eventsPerPeriod];
+    for (int index = 0; index < this.eventsPerPeriod; ++index) {
+      this.times[index] = (index * PERIOD) / this.eventsPerPeriod;
+    }
+    if (this.shuffled) {
+      for (int index = this.times.length - 1; index > 0; index -= 2) {
+        final var swap = this.times[index];
+        this.times[index] = this.times[index - 1];
+        this.times[index - 1] = swap;
+      }
+    }
+  }
+
+  @Benchmark
+  public int addTake()
+  {
+    final var events = this.buffer;
+    for (int index = 0; index < this.times.length; ++index) {
+      events.eventAdd(
+        this.times[index],
+        EventBuffer.KIND_NOTE_ON,
+        index & 127,
+        1.0
+      );
+    }
+
+    var sum = 0;
+    for (int time = 0; time < PERIOD; ++time) {
+      while (events.eventsPending(time)) {
+        sum += events.eventNote();
+        events.eventNext();
+      }
+    }
+    events.eventsFinish(PERIOD);
+    return sum;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.benchmarks;
+
+import com.io7m.sampler0.PitchBend;
+import com.io7m.sampler0.TuningTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of converting a pitch bend to a playback rate.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PitchBendBenchmark
+{
+  private double bend = 0.25;
+
+  private double bendNext()
+  {
+    final var value = this.bend;
+    this.bend = value > 0.99 ? -0.99 : value + 0.0001;
+    return value;
+  }
+
+  @Benchmark
+  public double pitchBendToRate()
+  {
+    return PitchBend.pitchBendToRate(this.bendNext(), 24);
+  }
+
+  @Benchmark
+  public double pitchBendToRateFast()
+  {
+    return PitchBend.pitchBendToRateFast(this.bendNext(), 24);
+  }
+
+  @Benchmark
+  public double ratioOfSemitones()
+  {
+    return TuningTable.ratioOfSemitones(this.bendNext() * 24.0);
+  }
+}
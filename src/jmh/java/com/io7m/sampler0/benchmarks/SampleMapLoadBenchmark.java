@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.benchmarks;
+
+import com.io7m.jsamplebuffer.api.SampleBufferRateConverterType;
+import com.io7m.sampler0.SampleFormat;
+import com.io7m.sampler0.SampleMap;
+import com.io7m.sampler0.SampleMapDescription;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of loading a sample map from generated WAVE files, one second
+ * each, at the files' own sample rate.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SampleMapLoadBenchmark
+{
+  private static final SampleBufferRateConverterType NO_CONVERTER =
+    (factory, buffer, rate) -> {
+      throw new UnsupportedOperationException();
+    };
+
+  @Param({"8", "32"})
+  public int files;
+
+  @Param({"FLOAT32", "INT16"})
+  public SampleFormat format;
+
+  private Path directory;
+  private SampleMapDescription description;
+
+  @Setup
+  public void setup()
+    throws Exception
+  {
+    this.directory = Files.createTempDirectory("sampler0-jmh");
+
+    final var fileMap = new Int2ObjectRBTreeMap<Path>();
+    for (int index = 0; index < this.files; ++index) {
+      final var note = (index * 128) / this.files;
+      fileMap.put(note, BenchmarkFixtures.writeWave(
+        this.directory.resolve(note + ".wav"),
+        BenchmarkFixtures.SAMPLE_RATE,
+        note));
+    }
+    this.description = new SampleMapDescription(fileMap, this.format);
+  }
+
+  @TearDown
+  public void tearDown()
+    throws Exception
+  {
+    try (var stream = Files.list(this.directory)) {
+      for (final var file : stream.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(this.directory);
+  }
+
+  @Benchmark
+  public SampleMap load()
+    throws Exception
+  {
+    return this.description.load(NO_CONVERTER, BenchmarkFixtures.SAMPLE_RATE);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.benchmarks;
+
+import com.io7m.sampler0.EventType;
+import com.io7m.sampler0.SampleMapDescription;
+import com.io7m.sampler0.SamplerMono;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of one {@link SamplerMono#onProcess} call, with a note
+ * retriggered periodically.
+ */
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SamplerMonoBenchmark
+{
+  private static final int RETRIGGER_PERIODS = 512;
+
+  @Param({"64", "256", "1024"})
+  public int bufferSize;
+
+  private Path directory;
+  private SamplerMono sampler;
+  private FloatBuffer bufferL;
+  private FloatBuffer bufferR;
+  private int periods;
+
+  @Setup
+  public void setup()
+    throws Exception
+  {
+    this.directory = Files.createTempDirectory("sampler0-jmh");
+
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(127, BenchmarkFixtures.writeWave(
+      this.directory.resolve("sample.wav"),
+      BenchmarkFixtures.SAMPLE_RATE * 30,
+      1));
+
+    this.sampler = new SamplerMono(BenchmarkFixtures.context(this.bufferSize));
+    this.sampler.loadSamples(new SampleMapDescription(files)).get();
+
+    this.bufferL = FloatBuffer.allocate(this.bufferSize);
+    this.bufferR = FloatBuffer.allocate(this.bufferSize);
+    this.sampler.onEvent(new EventType.NoteOn(0, 100, 1.0f));
+  }
+
+  @TearDown
+  public void tearDown()
+    throws Exception
+  {
+    this.sampler.close();
+    try (var stream = Files.list(this.directory)) {
+      for (final var file : stream.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(this.directory);
+  }
+
+  @Benchmark
+  public FloatBuffer onProcess()
+  {
+    if (++this.periods == RETRIGGER_PERIODS) {
+      this.periods = 0;
+      this.sampler.onEvent(new EventType.NoteOn(0, 100, 1.0f));
+    }
+    this.sampler.onProcess(this.bufferL, this.bufferR, this.bufferSize);
+    return this.bufferL;
+  }
+}
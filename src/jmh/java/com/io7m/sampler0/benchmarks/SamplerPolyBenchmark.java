@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.benchmarks;
+
+import com.io7m.sampler0.EnvelopeADSRConfiguration;
+import com.io7m.sampler0.EventType;
+import com.io7m.sampler0.SampleInterpolation;
+import com.io7m.sampler0.SampleMapDescription;
+import com.io7m.sampler0.SamplerPoly;
+import com.io7m.sampler0.SamplerPolyConfiguration;
+import com.io7m.sampler0.SamplerVoiceStealing;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of one {@link SamplerPoly#onProcess} call with a fixed number of
+ * voices sounding. A single 30 second sample is mapped to note 127, so
+ * every voice plays it transposed down, through the interpolating mixer.
+ * Notes are retriggered periodically so that voices never run out.
+ */
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SamplerPolyBenchmark
+{
+  private static final int RETRIGGER_PERIODS = 512;
+
+  @Param({"1", "16", "64", "128"})
+  public int polyphony;
+
+  @Param({"64", "256", "1024"})
+  public int bufferSize;
+
+  @Param({"LINEAR", "CUBIC"})
+  public SampleInterpolation interpolation;
+
+  @Param({"1"})
+  public int renderThreads;
+
+  private Path directory;
+  private SamplerPoly sampler;
+  private FloatBuffer bufferL;
+  private FloatBuffer bufferR;
+  private int periods;
+
+  @Setup
+  public void setup()
+    throws Exception
+  {
+    this.directory = Files.createTempDirectory("sampler0-jmh");
+
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(127, BenchmarkFixtures.writeWave(
+      this.directory.resolve("sample.wav"),
+      BenchmarkFixtures.SAMPLE_RATE * 30,
+      1));
+
+    this.sampler =
+      new SamplerPoly(
+        BenchmarkFixtures.context(this.bufferSize),
+        new SamplerPolyConfiguration(
+          this.polyphony,
+          SamplerVoiceStealing.OLDEST,
+          this.interpolation,
+          this.renderThreads,
+          1,
+          EnvelopeADSRConfiguration.defaults(),
+          0,
+          Double.NEGATIVE_INFINITY
+        )
+      );
+    this.sampler.loadSamples(new SampleMapDescription(files)).get();
+
+    this.bufferL = FloatBuffer.allocate(this.bufferSize);
+    this.bufferR = FloatBuffer.allocate(this.bufferSize);
+    this.retrigger();
+  }
+
+  private void retrigger()
+  {
+    for (int voice = 0; voice < this.polyphony; ++voice) {
+      this.sampler.onEvent(
+        new EventType.NoteOn(voice % this.bufferSize, 127 - voice, 1.0f));
+    }
+  }
+
+  @TearDown
+  public void tearDown()
+    throws Exception
+  {
+    this.sampler.close();
+    try (var stream = Files.list(this.directory)) {
+      for (final var file : stream.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(this.directory);
+  }
+
+  @Benchmark
+  public FloatBuffer onProcess()
+  {
+    if (++this.periods == RETRIGGER_PERIODS) {
+      this.periods = 0;
+      this.retrigger();
+    }
+    this.sampler.onProcess(this.bufferL, this.bufferR, this.bufferSize);
+    return this.bufferL;
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.nio.FloatBuffer;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>An audio backend that needs no audio device. The backend processes a
+ * fixed number of periods on a simulated clock, delivering scripted MIDI
+ * messages at the period and offset given by their frame times, and
+ * records the time taken by each period against the period's deadline in
+ * its {@link #metrics()}.</p>
+ *
+ * <p>The simulated clock advances by exactly one period per call to the
+ * listener, so the events seen by the listener (and therefore its output)
+ * are the same on every run regardless of the pacing or of the speed of the
+ * machine. This makes the backend suitable for capacity tests on machines
+ * without a running audio server.</p>
+ */
+
+public final class AudioBackendHeadless implements AudioBackendType
+{
+  private final AudioBackendHeadlessConfiguration configuration;
+  private final SamplerMetrics metrics;
+  private final FloatBuffer bufferL;
+  private final FloatBuffer bufferR;
+  private final CompletableFuture<SamplerMetricsSnapshot> completion;
+  private volatile boolean closed;
+  private volatile long frameTime;
+  private Thread thread;
+
+  /**
+   * Create a headless backend.
+   *
+   * @param inConfiguration The configuration
+   */
+
+  public AudioBackendHeadless(
+    final AudioBackendHeadlessConfiguration inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.metrics =
+      new SamplerMetrics();
+    this.bufferL =
+      FloatBuffer.allocate(inConfiguration.bufferSize());
+    this.bufferR =
+      FloatBuffer.allocate(inConfiguration.bufferSize());
+    this.completion =
+      new CompletableFuture<>();
+  }
+
+  @Override
+  public int sampleRate()
+  {
+    return this.configuration.sampleRate();
+  }
+
+  @Override
+  public int bufferSize()
+  {
+    return this.configuration.bufferSize();
+  }
+
+  @Override
+  public SamplerMetrics metrics()
+  {
+    return this.metrics;
+  }
+
+  /**
+   * @return The absolute frame time at which the next period will start
+   */
+
+  public long frameTime()
+  {
+    return this.frameTime;
+  }
+
+  /**
+   * @return A future that completes with a snapshot of the metrics when the
+   * thread started by {@link #start(AudioBackendListenerType)} finishes
+   */
+
+  public CompletableFuture<SamplerMetricsSnapshot> completion()
+  {
+    return this.completion;
+  }
+
+  @Override
+  public void start(
+    final AudioBackendListenerType listener)
+  {
+    Objects.requireNonNull(listener, "listener");
+
+    if (this.thread != null) {
+      throw new IllegalStateException("Backend already started.");
+    }
+
+    this.thread = new Thread(() -> {
+      try {
+        this.completion.complete(this.run(listener));
+      } catch (final Throwable e) {
+        this.completion.completeExceptionally(e);
+      }
+    });
+    this.thread.setName("com.io7m.sampler0.headless");
+    this.thread.setDaemon(true);
+    this.thread.setPriority(Thread.MAX_PRIORITY);
+    this.thread.start();
+  }
+
+  /**
+   * Process all periods on the calling thread.
+   *
+   * @param listener The listener
+   *
+   * @return A snapshot of the metrics after the last period
+   */
+
+  public SamplerMetricsSnapshot run(
+    final AudioBackendListenerType listener)
+  {
+    Objects.requireNonNull(listener, "listener");
+
+    final var messages =
+      this.configuration.messages();
+    final var messageCount =
+      messages.size();
+    final var frames =
+      this.configuration.bufferSize();
+    final var sampleRate =
+      this.configuration.sampleRate();
+    final var periodNanos =
+      this.configuration.periodNanos();
+    final var paced =
+      this.configuration.pacing() == AudioBackendHeadlessPacing.REAL_TIME;
+
+    var messageIndex = 0;
+    var periodStartNanos = System.nanoTime();
+
+    for (long period = 0L; period < this.configuration.periods(); ++period) {
+      if (this.closed) {
+        break;
+      }
+
+      if (paced) {
+        final var now = System.nanoTime();
+        if (now < periodStartNanos) {
+          LockSupport.parkNanos(periodStartNanos - now);
+        } else if (now - periodStartNanos > periodNanos) {
+          this.metrics.xrunRecord();
+          periodStartNanos = now;
+        }
+      }
+
+      final var timeStart = System.nanoTime();
+      final var frameStart = period * frames;
+      final var frameEnd = frameStart + frames;
+
+      while (messageIndex < messageCount) {
+        final var message = messages.get(messageIndex);
+        if (message.frame() >= frameEnd) {
+          break;
+        }
+        listener.onMidi(MidiMessages.pack(
+          (int) (message.frame() - frameStart),
+          message.status(),
+          message.data1(),
+          message.data2()
+        ));
+        ++messageIndex;
+      }
+
+      listener.onProcess(this.bufferL, this.bufferR, frames);
+
+      this.metrics.cycleRecord(
+        System.nanoTime() - timeStart,
+        frames,
+        sampleRate
+      );
+      this.frameTime = frameEnd;
+      periodStartNanos += periodNanos;
+    }
+
+    return this.metrics.snapshot();
+  }
+
+  @Override
+  public void close()
+  {
+    this.closed = true;
+
+    final var running = this.thread;
+    if (running != null) {
+      try {
+        running.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
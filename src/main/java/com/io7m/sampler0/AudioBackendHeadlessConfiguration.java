@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The configuration of a headless backend.
+ *
+ * @param sampleRate The sample rate
+ * @param bufferSize The number of frames in each period
+ * @param periods    The number of periods to process
+ * @param pacing     The pacing
+ * @param messages   The scripted MIDI messages, sorted by frame
+ */
+
+public record AudioBackendHeadlessConfiguration(
+  int sampleRate,
+  int bufferSize,
+  long periods,
+  AudioBackendHeadlessPacing pacing,
+  List<AudioBackendHeadlessMessage> messages)
+{
+  public AudioBackendHeadlessConfiguration
+  {
+    if (sampleRate <= 0) {
+      throw new IllegalArgumentException("Sample rate must be positive.");
+    }
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer size must be positive.");
+    }
+    if (periods < 0L) {
+      throw new IllegalArgumentException("Periods must be non-negative.");
+    }
+    Objects.requireNonNull(pacing, "pacing");
+    messages = messages.stream()
+      .sorted(Comparator.comparingLong(AudioBackendHeadlessMessage::frame))
+      .toList();
+  }
+
+  /**
+   * @return The duration of a period in nanoseconds
+   */
+
+  public long periodNanos()
+  {
+    return (this.bufferSize * 1_000_000_000L) / this.sampleRate;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+/**
+ * A scripted MIDI message delivered by a headless backend.
+ *
+ * @param frame  The absolute frame time at which the message is delivered
+ * @param status The status byte
+ * @param data1  The first data byte
+ * @param data2  The second data byte
+ */
+
+public record AudioBackendHeadlessMessage(
+  long frame,
+  int status,
+  int data1,
+  int data2)
+{
+  public AudioBackendHeadlessMessage
+  {
+    if (frame < 0L) {
+      throw new IllegalArgumentException("Frame must be non-negative.");
+    }
+    if (status < 0x80 || status >= 0xf0) {
+      throw new IllegalArgumentException(
+        "Status 0x%x is not a channel message status.".formatted(
+          Integer.valueOf(status)));
+    }
+  }
+
+  /**
+   * @param frame    The frame
+   * @param channel  The channel
+   * @param note     The note
+   * @param velocity The velocity
+   *
+   * @return A note on message
+   */
+
+  public static AudioBackendHeadlessMessage noteOn(
+    final long frame,
+    final int channel,
+    final int note,
+    final int velocity)
+  {
+    return new AudioBackendHeadlessMessage(
+      frame, 0x90 | (channel & 0xf), note, velocity);
+  }
+
+  /**
+   * @param frame   The frame
+   * @param channel The channel
+   * @param note    The note
+   *
+   * @return A note off message
+   */
+
+  public static AudioBackendHeadlessMessage noteOff(
+    final long frame,
+    final int channel,
+    final int note)
+  {
+    return new AudioBackendHeadlessMessage(
+      frame, 0x80 | (channel & 0xf), note, 0);
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+/**
+ * The pacing of a headless backend.
+ */
+
+public enum AudioBackendHeadlessPacing
+{
+  /**
+   * Process each period as soon as the previous one has finished. Periods
+   * are still timed against the duration of a period, so deadline misses
+   * reflect processing cost alone. This is the fastest and most repeatable
+   * pacing, and is the one to use for capacity tests.
+   */
+
+  FREE_RUNNING,
+
+  /**
+   * Start each period at the time a real audio device would request it. A
+   * period that starts after its deadline has passed is counted as an
+   * xrun, and the clock is resynchronized.
+   */
+
+  REAL_TIME
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import org.jaudiolibs.jnajack.Jack;
+import org.jaudiolibs.jnajack.JackClient;
+import org.jaudiolibs.jnajack.JackException;
+import org.jaudiolibs.jnajack.JackMidi;
+import org.jaudiolibs.jnajack.JackPort;
+import org.jaudiolibs.jnajack.JackStatus;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+
+import static org.jaudiolibs.jnajack.JackOptions.JackNoStartServer;
+import static org.jaudiolibs.jnajack.JackPortFlags.JackPortIsInput;
+import static org.jaudiolibs.jnajack.JackPortFlags.JackPortIsOutput;
+import static org.jaudiolibs.jnajack.JackPortFlags.JackPortIsPhysical;
+import static org.jaudiolibs.jnajack.JackPortType.AUDIO;
+import static org.jaudiolibs.jnajack.JackPortType.MIDI;
+
+/**
+ * An audio backend that runs as a JACK client with two audio outputs and
+ * one MIDI input. The outputs are connected to the first physical inputs
+ * when the backend is started.
+ */
+
+public final class AudioBackendJack implements AudioBackendType
+{
+  private final Jack jack;
+  private final JackClient client;
+  private final JackPort outL;
+  private final JackPort outR;
+  private final JackPort inM;
+  private final SamplerMetrics metrics;
+  private final JackMidi.Event midiEvent;
+  private final byte[] midiScratch;
+  private volatile int sampleRate;
+  private volatile int bufferSize;
+
+  private AudioBackendJack(
+    final Jack inJack,
+    final JackClient inClient,
+    final JackPort inOutL,
+    final JackPort inOutR,
+    final JackPort inInM)
+    throws JackException
+  {
+    this.jack =
+      Objects.requireNonNull(inJack, "jack");
+    this.client =
+      Objects.requireNonNull(inClient, "client");
+    this.outL =
+      Objects.requireNonNull(inOutL, "outL");
+    this.outR =
+      Objects.requireNonNull(inOutR, "outR");
+    this.inM =
+      Objects.requireNonNull(inInM, "inM");
+    this.metrics =
+      new SamplerMetrics();
+    this.sampleRate =
+      inClient.getSampleRate();
+    this.bufferSize =
+      inClient.getBufferSize();
+
+    /*
+     * The MIDI event and the scratch buffer into which message bytes are
+     * read are allocated once, so that ingesting MIDI on the audio thread
+     * does not produce garbage. Messages larger than the scratch buffer can
+     * only be system exclusive messages, which are ignored.
+     */
+
+    this.midiEvent =
+      new JackMidi.Event();
+    this.midiScratch =
+      new byte[Math.max(3, JackMidi.maxEventSize(inInM))];
+  }
+
+  /**
+   * Open a JACK client. The JACK server must already be running.
+   *
+   * @param name The client name
+   *
+   * @return A backend
+   *
+   * @throws IOException On errors
+   */
+
+  public static AudioBackendJack open(
+    final String name)
+    throws IOException
+  {
+    Objects.requireNonNull(name, "name");
+
+    try {
+      final var jack =
+        Jack.getInstance();
+      final var status =
+        EnumSet.noneOf(JackStatus.class);
+      final var client =
+        jack.openClient(name, EnumSet.of(JackNoStartServer), status);
+
+      final var outL =
+        client.registerPort("outL", AUDIO, JackPortIsOutput);
+      final var outR =
+        client.registerPort("outR", AUDIO, JackPortIsOutput);
+      final var inM =
+        client.registerPort("inM", MIDI, JackPortIsInput);
+
+      return new AudioBackendJack(jack, client, outL, outR, inM);
+    } catch (final JackException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public int sampleRate()
+  {
+    return this.sampleRate;
+  }
+
+  @Override
+  public int bufferSize()
+  {
+    return this.bufferSize;
+  }
+
+  @Override
+  public SamplerMetrics metrics()
+  {
+    return this.metrics;
+  }
+
+  @Override
+  public void start(
+    final AudioBackendListenerType listener)
+    throws IOException
+  {
+    Objects.requireNonNull(listener, "listener");
+
+    try {
+      this.client.setBuffersizeCallback((c, size) -> {
+        this.bufferSize = size;
+        listener.onBufferSizeChanged(size);
+      });
+      this.client.setSampleRateCallback((c, rate) -> {
+        this.sampleRate = rate;
+        listener.onSampleRateChanged(rate);
+      });
+      this.client.setXrunCallback(c -> this.metrics.xrunRecord());
+      this.client.setProcessCallback((c, nframes) -> {
+        return this.process(listener, nframes);
+      });
+
+      this.client.activate();
+      this.autoconnect();
+    } catch (final JackException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private boolean process(
+    final AudioBackendListenerType listener,
+    final int frames)
+  {
+    final var timeStart = System.nanoTime();
+
+    try {
+      final var eventCount =
+        JackMidi.getEventCount(this.inM);
+
+      for (int index = 0; index < eventCount; ++index) {
+        JackMidi.eventGet(this.midiEvent, this.inM, index);
+        final var size = this.midiEvent.size();
+        if (size > this.midiScratch.length) {
+          continue;
+        }
+        this.midiEvent.read(this.midiScratch);
+        final var message =
+          MidiMessages.decode(this.midiScratch, size, this.midiEvent.time());
+        if (message != MidiMessages.NONE) {
+          listener.onMidi(message);
+        }
+      }
+    } catch (final JackException e) {
+      throw new RuntimeException(e);
+    }
+
+    listener.onProcess(
+      this.outL.getFloatBuffer(),
+      this.outR.getFloatBuffer(),
+      frames
+    );
+
+    this.metrics.cycleRecord(
+      System.nanoTime() - timeStart,
+      frames,
+      this.sampleRate
+    );
+    return true;
+  }
+
+  private void autoconnect()
+    throws JackException
+  {
+    final var outputs =
+      List.of(this.outL, this.outR);
+    final var physical =
+      this.jack.getPorts(
+        this.client,
+        null,
+        AUDIO,
+        EnumSet.of(JackPortIsInput, JackPortIsPhysical)
+      );
+
+    final var count = Math.min(outputs.size(), physical.length);
+    for (int index = 0; index < count; index++) {
+      this.jack.connect(
+        this.client,
+        outputs.get(index).getName(),
+        physical[index]
+      );
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    this.client.close();
+  }
+}
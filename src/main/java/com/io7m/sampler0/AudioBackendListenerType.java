@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.nio.FloatBuffer;
+
+/**
+ * <p>The receiver of the callbacks of an {@link AudioBackendType}.</p>
+ *
+ * <p>For each period, the backend calls {@link #onMidi(long)} once for each
+ * MIDI message received during the period, in time order, and then calls
+ * {@link #onProcess(FloatBuffer, FloatBuffer, int)} exactly once. Both
+ * methods are called on the audio thread and must not block or
+ * allocate.</p>
+ */
+
+public interface AudioBackendListenerType
+{
+  /**
+   * A MIDI message was received during the current period.
+   *
+   * @param message The packed message (see {@link MidiMessages})
+   */
+
+  void onMidi(
+    long message);
+
+  /**
+   * Produce the output for the current period.
+   *
+   * @param bufferL The left output buffer
+   * @param bufferR The right output buffer
+   * @param frames  The number of frames in the period
+   */
+
+  void onProcess(
+    FloatBuffer bufferL,
+    FloatBuffer bufferR,
+    int frames);
+
+  /**
+   * The buffer size changed. This may be called on any thread.
+   *
+   * @param bufferSize The new buffer size
+   */
+
+  default void onBufferSizeChanged(
+    final int bufferSize)
+  {
+
+  }
+
+  /**
+   * The sample rate changed. This may be called on any thread.
+   *
+   * @param sampleRate The new sample rate
+   */
+
+  default void onSampleRateChanged(
+    final int sampleRate)
+  {
+
+  }
+}
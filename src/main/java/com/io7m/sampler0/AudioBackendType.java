@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.io.IOException;
+
+/**
+ * <p>An audio backend: something that repeatedly asks an
+ * {@link AudioBackendListenerType} to process a period of audio, and
+ * delivers MIDI input to it.</p>
+ *
+ * <p>Each backend records the time taken to process each period, deadline
+ * misses, and xruns into its {@link #metrics()}. The listener may record
+ * further values (such as voice counts) into the same metrics from the
+ * audio thread.</p>
+ */
+
+public interface AudioBackendType extends AutoCloseable
+{
+  /**
+   * @return The current sample rate
+   */
+
+  int sampleRate();
+
+  /**
+   * @return The current buffer size
+   */
+
+  int bufferSize();
+
+  /**
+   * @return The metrics recorded by the backend
+   */
+
+  SamplerMetrics metrics();
+
+  /**
+   * Start calling the listener. This method returns once the backend is
+   * running; the listener is called on a thread owned by the backend.
+   *
+   * @param listener The listener
+   *
+   * @throws IOException On errors
+   */
+
+  void start(
+    AudioBackendListenerType listener)
+    throws IOException;
+
+  /**
+   * Stop calling the listener and release the backend's resources.
+   *
+   * @throws IOException On errors
+   */
+
+  @Override
+  void close()
+    throws IOException;
+}
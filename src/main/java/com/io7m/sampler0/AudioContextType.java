@@ -20,12 +20,23 @@ package com.io7m.sampler0;
 import com.io7m.jattribute.core.AttributeReadableType;
 import com.io7m.jsamplebuffer.api.SampleBufferRateConverterType;
 
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface AudioContextType
 {
   SampleBufferRateConverterType sampleRateConverter();
 
+  /**
+   * @return The cache of rate-converted sample data, if any
+   */
+
+  default Optional<SampleResampleCache> resampleCache()
+  {
+    return Optional.empty();
+  }
+
   interface IOOperationType<T>
   {
     T execute()
@@ -34,6 +45,25 @@ public interface AudioContextType
 
   <T> CompletableFuture<T> executeIO(IOOperationType<T> operation);
 
+  /**
+   * @return The executor on which sample files are decoded and converted
+   * during loading
+   */
+
+  default Executor loadExecutor()
+  {
+    return Runnable::run;
+  }
+
+  /**
+   * @return The maximum number of sample files decoded and converted at once
+   */
+
+  default int loadParallelism()
+  {
+    return 1;
+  }
+
   AttributeReadableType<Integer> sampleRate();
 
   AttributeReadableType<Integer> bufferSize();
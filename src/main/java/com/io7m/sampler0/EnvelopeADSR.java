@@ -0,0 +1,273 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Objects;
+
+/**
+ * <p>The state of an ADSR amplitude envelope for one voice.</p>
+ *
+ * <p>The envelope is not evaluated per frame. Instead, the voice asks for
+ * the number of frames left in the current stage with
+ * {@link #stageRemaining()}, renders a run of frames no longer than that,
+ * and calls {@link #advance(int)} once for the run. The envelope returns a
+ * per-frame increment, and the mixer applies the gain
+ * {@code level + i * increment} to frame {@code i} of the run. The attack
+ * and the steal fade are exactly linear; exponential stages (decay and
+ * release) are linear within a run, and exact at the end of each run.</p>
+ */
+
+public final class EnvelopeADSR
+{
+  private enum Stage
+  {
+    ATTACK,
+    DECAY,
+    SUSTAIN,
+    RELEASE,
+    STEAL,
+    DONE
+  }
+
+  private final EnvelopeADSRParameters parameters;
+  private Stage stage;
+  private int remaining;
+  private double level;
+  private double stealStep;
+
+  /**
+   * Create an envelope. The envelope is initially finished.
+   *
+   * @param inParameters The parameters
+   */
+
+  public EnvelopeADSR(
+    final EnvelopeADSRParameters inParameters)
+  {
+    this.parameters =
+      Objects.requireNonNull(inParameters, "parameters");
+    this.stage = Stage.DONE;
+  }
+
+  /**
+   * Start the envelope from silence.
+   */
+
+  public void trigger()
+  {
+    this.level = 0.0;
+    this.stageAttack();
+  }
+
+  /**
+   * Start the release stage from the current level. This does nothing if
+   * the envelope is already releasing, being stolen, or finished.
+   */
+
+  public void release()
+  {
+    switch (this.stage) {
+      case ATTACK, DECAY, SUSTAIN -> this.stageRelease();
+      case RELEASE, STEAL, DONE -> {
+
+      }
+    }
+  }
+
+  /**
+   * Fade out linearly over {@link EnvelopeADSRParameters#STEAL_SECONDS},
+   * from the current level.
+   */
+
+  public void steal()
+  {
+    if (this.stage == Stage.DONE) {
+      return;
+    }
+
+    final var frames = this.parameters.stealFrames();
+    if (frames == 0 || this.level <= EnvelopeADSRParameters.SILENCE) {
+      this.stageDone();
+      return;
+    }
+    this.stage = Stage.STEAL;
+    this.remaining = frames;
+    this.stealStep = -this.level / frames;
+  }
+
+  /**
+   * @return {@code true} if the envelope has been released or stolen
+   */
+
+  public boolean isReleased()
+  {
+    return this.stage == Stage.RELEASE
+           || this.stage == Stage.STEAL
+           || this.stage == Stage.DONE;
+  }
+
+  /**
+   * @return {@code true} if the envelope has finished, and the voice is
+   * silent
+   */
+
+  public boolean isDone()
+  {
+    return this.stage == Stage.DONE;
+  }
+
+  /**
+   * @return The current level
+   */
+
+  public float level()
+  {
+    return (float) this.level;
+  }
+
+  /**
+   * @return The number of frames until the current stage ends
+   */
+
+  public int stageRemaining()
+  {
+    return switch (this.stage) {
+      case SUSTAIN -> Integer.MAX_VALUE;
+      case DONE -> 0;
+      default -> this.remaining;
+    };
+  }
+
+  /**
+   * Advance the envelope by a run of frames.
+   *
+   * @param frames The number of frames, at most {@link #stageRemaining()}
+   *
+   * @return The amount by which the gain changes with each frame of the run
+   */
+
+  public float advance(
+    final int frames)
+  {
+    if (frames <= 0) {
+      return 0.0f;
+    }
+
+    final var start = this.level;
+    switch (this.stage) {
+      case ATTACK -> {
+        this.level = start + (frames / (double) this.parameters.attackFrames());
+        this.remaining -= frames;
+        if (this.remaining <= 0) {
+          this.level = 1.0;
+          this.stageDecay();
+        }
+      }
+      case DECAY -> {
+        final var sustain = this.parameters.sustain();
+        this.level = sustain
+          + (start - sustain) * Math.exp(this.parameters.decayLog() * frames);
+        this.remaining -= frames;
+        if (this.remaining <= 0) {
+          this.level = sustain;
+          this.stageSustain();
+        }
+      }
+      case SUSTAIN, DONE -> {
+        return 0.0f;
+      }
+      case RELEASE -> {
+        this.level = start * Math.exp(this.parameters.releaseLog() * frames);
+        this.remaining -= frames;
+        if (this.remaining <= 0) {
+          this.stageDone();
+        }
+      }
+      case STEAL -> {
+        this.level = start + (this.stealStep * frames);
+        this.remaining -= frames;
+        if (this.remaining <= 0) {
+          this.stageDone();
+        }
+      }
+    }
+    return (float) ((this.level - start) / frames);
+  }
+
+  private void stageAttack()
+  {
+    final var frames = this.parameters.attackFrames();
+    if (frames == 0) {
+      this.level = 1.0;
+      this.stageDecay();
+      return;
+    }
+    this.stage = Stage.ATTACK;
+    this.remaining = frames;
+  }
+
+  private void stageDecay()
+  {
+    final var frames = this.parameters.decayFrames();
+    if (frames == 0) {
+      this.level = this.parameters.sustain();
+      this.stageSustain();
+      return;
+    }
+    this.stage = Stage.DECAY;
+    this.remaining = frames;
+  }
+
+  private void stageSustain()
+  {
+    if (this.level <= EnvelopeADSRParameters.SILENCE) {
+      this.stageDone();
+      return;
+    }
+    this.stage = Stage.SUSTAIN;
+    this.remaining = 0;
+  }
+
+  private void stageRelease()
+  {
+    final var log = this.parameters.releaseLog();
+    if (log == Double.NEGATIVE_INFINITY
+        || this.level <= EnvelopeADSRParameters.SILENCE) {
+      this.stageDone();
+      return;
+    }
+
+    /*
+     * The number of frames until the level falls below the silence
+     * threshold, starting from the current level.
+     */
+
+    final var frames =
+      Math.ceil(Math.log(EnvelopeADSRParameters.SILENCE / this.level) / log);
+
+    this.stage = Stage.RELEASE;
+    this.remaining = (int) Math.max(1.0, Math.min(Integer.MAX_VALUE / 2, frames));
+  }
+
+  private void stageDone()
+  {
+    this.stage = Stage.DONE;
+    this.remaining = 0;
+    this.level = 0.0;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+/**
+ * The configuration of an ADSR amplitude envelope.
+ *
+ * @param attackSeconds  The time taken to rise linearly from silence to full
+ *                       level
+ * @param decaySeconds   The time taken to fall exponentially from full level
+ *                       to the sustain level
+ * @param sustainLevel   The level, in the range {@code [0, 1]}, held until
+ *                       the note is released
+ * @param releaseSeconds The time taken to fall exponentially from full level
+ *                       to {@link EnvelopeADSRParameters#SILENCE}, after
+ *                       which the voice is reclaimed; releases that start
+ *                       from a lower level take proportionally less time
+ *
+ * @see EnvelopeADSR
+ */
+
+public record EnvelopeADSRConfiguration(
+  double attackSeconds,
+  double decaySeconds,
+  double sustainLevel,
+  double releaseSeconds)
+{
+  public EnvelopeADSRConfiguration
+  {
+    if (!(attackSeconds >= 0.0)) {
+      throw new IllegalArgumentException("Attack must be non-negative.");
+    }
+    if (!(decaySeconds >= 0.0)) {
+      throw new IllegalArgumentException("Decay must be non-negative.");
+    }
+    if (!(sustainLevel >= 0.0 && sustainLevel <= 1.0)) {
+      throw new IllegalArgumentException("Sustain must be in [0, 1].");
+    }
+    if (!(releaseSeconds >= 0.0)) {
+      throw new IllegalArgumentException("Release must be non-negative.");
+    }
+  }
+
+  /**
+   * @return An envelope that starts and stops instantly
+   */
+
+  public static EnvelopeADSRConfiguration gate()
+  {
+    return new EnvelopeADSRConfiguration(0.0, 0.0, 1.0, 0.0);
+  }
+
+  /**
+   * @return An envelope with a short attack and release, long enough to
+   * avoid clicks
+   */
+
+  public static EnvelopeADSRConfiguration defaults()
+  {
+    return new EnvelopeADSRConfiguration(0.002, 0.0, 1.0, 0.25);
+  }
+}
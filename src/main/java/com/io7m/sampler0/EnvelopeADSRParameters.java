@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Objects;
+
+/**
+ * <p>The per-frame constants of an {@link EnvelopeADSRConfiguration} at a
+ * particular sample rate, shared by every voice in a pool.</p>
+ *
+ * <p>The parameters are updated in place when the sample rate changes, so
+ * that the audio thread never allocates. They must only be updated by the
+ * thread that renders the voices that use them.</p>
+ */
+
+public final class EnvelopeADSRParameters
+{
+  /**
+   * The level (-80dB) below which a releasing voice is considered silent.
+   */
+
+  public static final double SILENCE = 1.0e-4;
+
+  /**
+   * The time taken by a stolen voice to fade out.
+   */
+
+  public static final double STEAL_SECONDS = 0.005;
+
+  private EnvelopeADSRConfiguration configuration;
+  private int sampleRate;
+  private int attackFrames;
+  private int decayFrames;
+  private double decayLog;
+  private double sustain;
+  private double releaseLog;
+  private int stealFrames;
+
+  /**
+   * Create parameters.
+   *
+   * @param inConfiguration The envelope configuration
+   * @param inSampleRate    The sample rate
+   */
+
+  public EnvelopeADSRParameters(
+    final EnvelopeADSRConfiguration inConfiguration,
+    final int inSampleRate)
+  {
+    this.configure(inConfiguration, inSampleRate);
+  }
+
+  /**
+   * Recompute the parameters. This does nothing if neither the configuration
+   * nor the sample rate has changed.
+   *
+   * @param inConfiguration The envelope configuration
+   * @param inSampleRate    The sample rate
+   */
+
+  public void configure(
+    final EnvelopeADSRConfiguration inConfiguration,
+    final int inSampleRate)
+  {
+    Objects.requireNonNull(inConfiguration, "configuration");
+    if (inSampleRate <= 0) {
+      throw new IllegalArgumentException("Sample rate must be positive.");
+    }
+    if (inSampleRate == this.sampleRate
+        && inConfiguration.equals(this.configuration)) {
+      return;
+    }
+
+    this.configuration = inConfiguration;
+    this.sampleRate = inSampleRate;
+
+    /*
+     * Exponential stages are expressed as the logarithm of their per-frame
+     * coefficient, chosen so that a stage covering the full range reaches
+     * SILENCE (relative to its target) after its configured time.
+     */
+
+    final var silenceLog = Math.log(SILENCE);
+    this.attackFrames =
+      framesOf(inConfiguration.attackSeconds(), inSampleRate);
+    this.decayFrames =
+      framesOf(inConfiguration.decaySeconds(), inSampleRate);
+    this.decayLog =
+      this.decayFrames > 0 ? silenceLog / this.decayFrames : 0.0;
+    this.sustain =
+      inConfiguration.sustainLevel();
+
+    final var releaseFrames =
+      framesOf(inConfiguration.releaseSeconds(), inSampleRate);
+    this.releaseLog =
+      releaseFrames > 0 ? silenceLog / releaseFrames : Double.NEGATIVE_INFINITY;
+    this.stealFrames =
+      framesOf(STEAL_SECONDS, inSampleRate);
+  }
+
+  private static int framesOf(
+    final double seconds,
+    final int sampleRate)
+  {
+    return (int) Math.min(Integer.MAX_VALUE / 2, Math.round(seconds * sampleRate));
+  }
+
+  public EnvelopeADSRConfiguration configuration()
+  {
+    return this.configuration;
+  }
+
+  public int sampleRate()
+  {
+    return this.sampleRate;
+  }
+
+  int attackFrames()
+  {
+    return this.attackFrames;
+  }
+
+  int decayFrames()
+  {
+    return this.decayFrames;
+  }
+
+  double decayLog()
+  {
+    return this.decayLog;
+  }
+
+  double sustain()
+  {
+    return this.sustain;
+  }
+
+  double releaseLog()
+  {
+    return this.releaseLog;
+  }
+
+  int stealFrames()
+  {
+    return this.stealFrames;
+  }
+}
@@ -17,38 +17,302 @@
 
 package com.io7m.sampler0;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+/**
+ * A buffer of events for the current period, held in preallocated primitive
+ * arrays sorted by time offset. Events that arrive at the same time offset
+ * are kept in arrival order. Each event carries the MIDI channel on which
+ * it arrived; events added as {@link EventType} values are on channel 0.
+ * The buffer is drained with a cursor and performs no allocation after
+ * construction.
+ */
 
 public final class EventBuffer
 {
-  private final HashMap<Integer, LinkedList<EventType>> events;
+  public static final int KIND_NOTE_ON = 0;
+  public static final int KIND_NOTE_OFF = 1;
+  public static final int KIND_PITCH_BEND = 2;
+
+  private final int[] times;
+  private final int[] kinds;
+  private final int[] channels;
+  private final int[] notes;
+  private final double[] values;
+  private int count;
+  private int cursor;
+  private long eventsDropped;
 
   public EventBuffer()
   {
-    this.events = new HashMap<>(8192);
+    this(8192);
+  }
+
+  public EventBuffer(
+    final int capacity)
+  {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive.");
+    }
+
+    this.times = new int[capacity];
+    this.kinds = new int[capacity];
+    this.channels = new int[capacity];
+    this.notes = new int[capacity];
+    this.values = new double[capacity];
+    this.count = 0;
+    this.cursor = 0;
   }
 
   public void eventAdd(
     final EventType event)
   {
-    final var time = Integer.valueOf(event.timeOffsetInFrames());
-    var byArrival = this.events.get(time);
-    if (byArrival == null) {
-      byArrival = new LinkedList<>();
+    if (event instanceof EventType.NoteOn eventNoteOn) {
+      this.eventAdd(
+        eventNoteOn.timeOffsetInFrames(),
+        KIND_NOTE_ON,
+        eventNoteOn.note(),
+        eventNoteOn.velocity()
+      );
+      return;
+    }
+    if (event instanceof EventType.NoteOff eventNoteOff) {
+      this.eventAdd(
+        eventNoteOff.timeOffsetInFrames(),
+        KIND_NOTE_OFF,
+        eventNoteOff.note(),
+        0.0
+      );
+      return;
+    }
+    if (event instanceof EventType.PitchBend eventPitchBend) {
+      this.eventAdd(
+        eventPitchBend.timeOffsetInFrames(),
+        KIND_PITCH_BEND,
+        0,
+        eventPitchBend.value()
+      );
+    }
+  }
+
+  /**
+   * Add an event from a packed MIDI message (see {@link MidiMessages}). Note
+   * on messages with a velocity of zero are treated as note off messages.
+   * Channel messages that the sampler does not use are ignored. The channel
+   * of the message is recorded with the event.
+   *
+   * @param message The packed message
+   *
+   * @return {@code false} if the event was dropped
+   */
+
+  public boolean eventAddMidi(
+    final long message)
+  {
+    if (message == MidiMessages.NONE) {
+      return true;
+    }
+
+    final var time = MidiMessages.time(message);
+    final var channel = MidiMessages.channel(message);
+    final var data1 = MidiMessages.data1(message);
+    final var data2 = MidiMessages.data2(message);
+
+    return switch (MidiMessages.type(message)) {
+      case MidiMessages.STATUS_NOTE_ON -> {
+        if (data2 == 0) {
+          yield this.eventAdd(time, KIND_NOTE_OFF, channel, data1, 0.0);
+        }
+        yield this.eventAdd(
+          time,
+          KIND_NOTE_ON,
+          channel,
+          data1,
+          data2 / 127.0);
+      }
+      case MidiMessages.STATUS_NOTE_OFF -> {
+        yield this.eventAdd(time, KIND_NOTE_OFF, channel, data1, 0.0);
+      }
+      case MidiMessages.STATUS_PITCH_BEND -> {
+        yield this.eventAdd(
+          time,
+          KIND_PITCH_BEND,
+          channel,
+          0,
+          MidiMessages.pitchBend(data1, data2)
+        );
+      }
+      default -> true;
+    };
+  }
+
+  /**
+   * Add an event on channel 0.
+   *
+   * @param time  The time offset in frames
+   * @param kind  The event kind
+   * @param note  The note, if any
+   * @param value The velocity or pitch bend value, if any
+   *
+   * @return {@code false} if the event was dropped
+   *
+   * @see #eventAdd(int, int, int, int, double)
+   */
+
+  public boolean eventAdd(
+    final int time,
+    final int kind,
+    final int note,
+    final double value)
+  {
+    return this.eventAdd(time, kind, 0, note, value);
+  }
+
+  /**
+   * Add an event. Events almost always arrive in time order, so the insertion
+   * is usually a plain append. If the buffer is full, the event is dropped
+   * and counted. Note events for notes outside the range {@code [0, 127]}
+   * are ignored, as no sample map can hold them.
+   *
+   * @param time    The time offset in frames
+   * @param kind    The event kind
+   * @param channel The MIDI channel in the range {@code [0, 15]}
+   * @param note    The note, if any
+   * @param value   The velocity or pitch bend value, if any
+   *
+   * @return {@code false} if the event was dropped
+   */
+
+  public boolean eventAdd(
+    final int time,
+    final int kind,
+    final int channel,
+    final int note,
+    final double value)
+  {
+    if (kind != KIND_PITCH_BEND && (note & ~0x7f) != 0) {
+      return true;
+    }
+    if (this.count == this.times.length) {
+      ++this.eventsDropped;
+      return false;
+    }
+
+    final var timeClamped = Math.max(0, time);
+
+    var index = this.count;
+    while (index > this.cursor && this.times[index - 1] > timeClamped) {
+      --index;
+    }
+
+    final var moving = this.count - index;
+    if (moving > 0) {
+      System.arraycopy(this.times, index, this.times, index + 1, moving);
+      System.arraycopy(this.kinds, index, this.kinds, index + 1, moving);
+      System.arraycopy(
+        this.channels, index, this.channels, index + 1, moving);
+      System.arraycopy(this.notes, index, this.notes, index + 1, moving);
+      System.arraycopy(this.values, index, this.values, index + 1, moving);
+    }
+
+    this.times[index] = timeClamped;
+    this.kinds[index] = kind;
+    this.channels[index] = channel & 0xf;
+    this.notes[index] = note;
+    this.values[index] = value;
+    ++this.count;
+    return true;
+  }
+
+  /**
+   * @return The time of the next undelivered event, or
+   * {@link Integer#MAX_VALUE} if there are none
+   */
+
+  public int eventsNextTime()
+  {
+    if (this.cursor < this.count) {
+      return this.times[this.cursor];
     }
-    byArrival.add(event);
-    this.events.put(time, byArrival);
+    return Integer.MAX_VALUE;
   }
 
-  public List<EventType> eventsTake(
+  /**
+   * @param time The current time offset
+   *
+   * @return {@code true} if the event at the cursor is due at or before
+   * {@code time}
+   */
+
+  public boolean eventsPending(
     final int time)
   {
-    final var byArrival = this.events.remove(Integer.valueOf(time));
-    if (byArrival == null) {
-      return List.of();
+    return this.cursor < this.count && this.times[this.cursor] <= time;
+  }
+
+  public int eventKind()
+  {
+    return this.kinds[this.cursor];
+  }
+
+  public int eventChannel()
+  {
+    return this.channels[this.cursor];
+  }
+
+  public int eventNote()
+  {
+    return this.notes[this.cursor];
+  }
+
+  public double eventValue()
+  {
+    return this.values[this.cursor];
+  }
+
+  public void eventNext()
+  {
+    ++this.cursor;
+  }
+
+  /**
+   * Finish a period of {@code frames} frames. Delivered events are discarded,
+   * and any events scheduled at or after the end of the period are moved
+   * into the next period.
+   *
+   * @param frames The length of the period
+   */
+
+  public void eventsFinish(
+    final int frames)
+  {
+    var write = 0;
+    for (int read = this.cursor; read < this.count; ++read) {
+      final var time = this.times[read];
+      if (time < frames) {
+        continue;
+      }
+      this.times[write] = time - frames;
+      this.kinds[write] = this.kinds[read];
+      this.channels[write] = this.channels[read];
+      this.notes[write] = this.notes[read];
+      this.values[write] = this.values[read];
+      ++write;
     }
-    return byArrival;
+    this.count = write;
+    this.cursor = 0;
+  }
+
+  public int eventsQueued()
+  {
+    return this.count - this.cursor;
+  }
+
+  public boolean eventsFull()
+  {
+    return this.count == this.times.length;
+  }
+
+  public long eventsDropped()
+  {
+    return this.eventsDropped;
   }
 }
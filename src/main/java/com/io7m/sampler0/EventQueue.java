@@ -0,0 +1,252 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A bounded, multi-producer single-consumer ring buffer of events tagged
+ * with absolute frame times.</p>
+ *
+ * <p>Any number of threads may publish events. Publication never blocks and
+ * never allocates: a producer claims a slot with a compare-and-set on the
+ * tail, writes the event into primitive arrays, and then publishes the slot
+ * by advancing its sequence number. The single consumer (the audio thread)
+ * drains published slots into an {@link EventBuffer} without locking or
+ * allocating.</p>
+ *
+ * <p>Overflow policy: if the ring is full, the newly published event is
+ * rejected, {@link #offer(long, int, int, double)} returns {@code false}, and
+ * the event is counted in {@link #eventsDropped()}. Events that are already
+ * queued are never discarded. Events whose time falls before the period in
+ * which they are drained are delivered at the start of that period and
+ * counted in {@link #eventsLate()}.</p>
+ */
+
+public final class EventQueue
+{
+  private final int mask;
+  private final AtomicLongArray sequences;
+  private final long[] times;
+  private final int[] kinds;
+  private final int[] channels;
+  private final int[] notes;
+  private final double[] values;
+  private final AtomicLong tail;
+  private final AtomicLong dropped;
+  private long head;
+  private volatile long late;
+
+  public EventQueue(
+    final int capacity)
+  {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException(
+        "Capacity must be a positive power of two.");
+    }
+
+    this.mask = capacity - 1;
+    this.sequences = new AtomicLongArray(capacity);
+    for (int index = 0; index < capacity; ++index) {
+      this.sequences.set(index, index);
+    }
+
+    this.times = new long[capacity];
+    this.kinds = new int[capacity];
+    this.channels = new int[capacity];
+    this.notes = new int[capacity];
+    this.values = new double[capacity];
+    this.tail = new AtomicLong(0L);
+    this.dropped = new AtomicLong(0L);
+    this.head = 0L;
+    this.late = 0L;
+  }
+
+  public boolean offer(
+    final long time,
+    final EventType event)
+  {
+    if (event instanceof EventType.NoteOn eventNoteOn) {
+      return this.offer(
+        time,
+        EventBuffer.KIND_NOTE_ON,
+        eventNoteOn.note(),
+        eventNoteOn.velocity()
+      );
+    }
+    if (event instanceof EventType.NoteOff eventNoteOff) {
+      return this.offer(
+        time,
+        EventBuffer.KIND_NOTE_OFF,
+        eventNoteOff.note(),
+        0.0
+      );
+    }
+    if (event instanceof EventType.PitchBend eventPitchBend) {
+      return this.offer(
+        time,
+        EventBuffer.KIND_PITCH_BEND,
+        0,
+        eventPitchBend.value()
+      );
+    }
+    return false;
+  }
+
+  /**
+   * Publish an event on channel 0. This method may be called from any thread.
+   *
+   * @param time  The absolute frame time of the event
+   * @param kind  The event kind
+   * @param note  The note, if any
+   * @param value The velocity or pitch bend value, if any
+   *
+   * @return {@code false} if the queue was full and the event was dropped
+   */
+
+  public boolean offer(
+    final long time,
+    final int kind,
+    final int note,
+    final double value)
+  {
+    return this.offer(time, kind, 0, note, value);
+  }
+
+  /**
+   * Publish an event. This method may be called from any thread.
+   *
+   * @param time    The absolute frame time of the event
+   * @param kind    The event kind
+   * @param channel The MIDI channel in the range {@code [0, 15]}
+   * @param note    The note, if any
+   * @param value   The velocity or pitch bend value, if any
+   *
+   * @return {@code false} if the queue was full and the event was dropped
+   */
+
+  public boolean offer(
+    final long time,
+    final int kind,
+    final int channel,
+    final int note,
+    final double value)
+  {
+    var position = this.tail.get();
+    while (true) {
+      final var slot = (int) (position & this.mask);
+      final var difference = this.sequences.getAcquire(slot) - position;
+      if (difference == 0L) {
+        if (this.tail.compareAndSet(position, position + 1L)) {
+          this.times[slot] = time;
+          this.kinds[slot] = kind;
+          this.channels[slot] = channel;
+          this.notes[slot] = note;
+          this.values[slot] = value;
+          this.sequences.setRelease(slot, position + 1L);
+          return true;
+        }
+        position = this.tail.get();
+      } else if (difference < 0L) {
+        this.dropped.incrementAndGet();
+        return false;
+      } else {
+        position = this.tail.get();
+      }
+    }
+  }
+
+  /**
+   * Drain published events into the given buffer, converting absolute frame
+   * times into offsets from the start of the current period. Draining stops
+   * when the buffer is full; any remaining events stay queued until the next
+   * call. This method must only be called from the consumer thread.
+   *
+   * @param events      The output buffer
+   * @param periodStart The absolute frame time of the start of the period
+   *
+   * @return The number of events drained
+   */
+
+  public int drainInto(
+    final EventBuffer events,
+    final long periodStart)
+  {
+    var drained = 0;
+    while (!events.eventsFull()) {
+      final var position = this.head;
+      final var slot = (int) (position & this.mask);
+      if (this.sequences.getAcquire(slot) != position + 1L) {
+        return drained;
+      }
+
+      var offset = this.times[slot] - periodStart;
+      if (offset < 0L) {
+        this.late = this.late + 1L;
+        offset = 0L;
+      }
+
+      events.eventAdd(
+        (int) Math.min(offset, Integer.MAX_VALUE),
+        this.kinds[slot],
+        this.channels[slot],
+        this.notes[slot],
+        this.values[slot]
+      );
+
+      this.sequences.setRelease(slot, position + this.mask + 1L);
+      this.head = position + 1L;
+      ++drained;
+    }
+    return drained;
+  }
+
+  public int capacity()
+  {
+    return this.mask + 1;
+  }
+
+  /**
+   * @return The number of events that have been accepted by the queue
+   */
+
+  public long eventsPublished()
+  {
+    return this.tail.get();
+  }
+
+  /**
+   * @return The number of events rejected because the queue was full
+   */
+
+  public long eventsDropped()
+  {
+    return this.dropped.get();
+  }
+
+  /**
+   * @return The number of events that were drained after their frame time
+   * had already passed
+   */
+
+  public long eventsLate()
+  {
+    return this.late;
+  }
+}
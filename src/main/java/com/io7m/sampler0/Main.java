@@ -23,38 +23,42 @@ import com.io7m.jattribute.core.Attributes;
 import com.io7m.jsamplebuffer.api.SampleBufferRateConverterFactoryType;
 import com.io7m.jsamplebuffer.api.SampleBufferRateConverterType;
 import com.io7m.jsamplebuffer.xmedia.SXMSampleBufferRateConverters;
-import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
-import org.jaudiolibs.jnajack.Jack;
-import org.jaudiolibs.jnajack.JackClient;
-import org.jaudiolibs.jnajack.JackException;
-import org.jaudiolibs.jnajack.JackMidi;
-import org.jaudiolibs.jnajack.JackPort;
-import org.jaudiolibs.jnajack.JackStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.file.Path;
+import javax.management.JMException;
+import java.io.IOException;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.EnumSet;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
-import static org.jaudiolibs.jnajack.JackOptions.JackNoStartServer;
-import static org.jaudiolibs.jnajack.JackPortFlags.JackPortIsInput;
-import static org.jaudiolibs.jnajack.JackPortFlags.JackPortIsOutput;
-import static org.jaudiolibs.jnajack.JackPortFlags.JackPortIsPhysical;
-import static org.jaudiolibs.jnajack.JackPortType.AUDIO;
-import static org.jaudiolibs.jnajack.JackPortType.MIDI;
+/**
+ * <p>A JACK client that plays a multitimbral sampler.</p>
+ *
+ * <p>Usage: {@code channel=(library.s0lb | note:file[,note:file ...]) ...}.
+ * Each argument configures the part for one MIDI channel, and channels
+ * without a part stay silent.</p>
+ *
+ * @see SamplerPartConfiguration#parse(String)
+ */
 
 public final class Main
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(Main.class);
 
+  private static final String USAGE =
+    "usage: channel=(library.s0lb | note:file[,note:file ...]) ...";
+
   private Main()
   {
 
@@ -66,11 +70,17 @@ public final class Main
     private final AttributeType<Integer> bufferSize;
     private final ExecutorService ioExecutor;
     private final SampleBufferRateConverterType sampleRateConverter;
+    private final Optional<SampleResampleCache> resampleCache;
+    private final ExecutorService loadExecutor;
+    private final int loadParallelism;
 
     AudioContext(
       final Attributes inAttributes,
       final SampleBufferRateConverterFactoryType converters,
       final ExecutorService inIOExecutor,
+      final Optional<SampleResampleCache> inResampleCache,
+      final ExecutorService inLoadExecutor,
+      final int inLoadParallelism,
       final int inSampleRate,
       final int inBufferSize)
     {
@@ -82,6 +92,12 @@ public final class Main
         inAttributes.create(Integer.valueOf(inBufferSize));
       this.sampleRateConverter =
         converters.createConverter();
+      this.resampleCache =
+        inResampleCache;
+      this.loadExecutor =
+        inLoadExecutor;
+      this.loadParallelism =
+        inLoadParallelism;
     }
 
     @Override
@@ -90,6 +106,24 @@ public final class Main
       return this.sampleRateConverter;
     }
 
+    @Override
+    public Optional<SampleResampleCache> resampleCache()
+    {
+      return this.resampleCache;
+    }
+
+    @Override
+    public Executor loadExecutor()
+    {
+      return this.loadExecutor;
+    }
+
+    @Override
+    public int loadParallelism()
+    {
+      return this.loadParallelism;
+    }
+
     @Override
     public <T> CompletableFuture<T> executeIO(
       final IOOperationType<T> operation)
@@ -97,14 +131,21 @@ public final class Main
       final var future = new CompletableFuture<T>();
       this.ioExecutor.execute(() -> {
         final var timeThen = Instant.now();
+        T result = null;
         try {
-          future.complete(operation.execute());
+          result = operation.execute();
+          future.complete(result);
         } catch (final Throwable e) {
           LOG.error("error: ", e);
           future.completeExceptionally(e);
         } finally {
           final var timeNow = Instant.now();
-          LOG.debug("i/o operation took {}", Duration.between(timeThen, timeNow));
+          final var duration = Duration.between(timeThen, timeNow);
+          if (result != null) {
+            LOG.debug("i/o operation took {}: {}", duration, result);
+          } else {
+            LOG.debug("i/o operation took {}", duration);
+          }
         }
       });
       return future;
@@ -123,25 +164,98 @@ public final class Main
     }
   }
 
-  public static void main(
+  /**
+   * @return The factory for the multitimbral sampler that the JACK client
+   * creates
+   */
+
+  public static SamplersMulti samplers()
+  {
+    return new SamplersMulti();
+  }
+
+  /**
+   * Parse the parts given on the command line.
+   *
+   * @param args The arguments, each of which configures one part
+   *
+   * @return The parts
+   *
+   * @throws IllegalArgumentException If an argument cannot be parsed, or if a
+   *                                  channel is configured more than once
+   * @see SamplerPartConfiguration#parse(String)
+   */
+
+  public static List<SamplerPartConfiguration> parts(
     final String[] args)
-    throws JackException
+    throws IllegalArgumentException
   {
-    final var jack =
-      Jack.getInstance();
+    final var parts = new ArrayList<SamplerPartConfiguration>(args.length);
+    final var channels = new BitSet(SamplerMulti.PARTS);
+    for (final var argument : args) {
+      final var part = SamplerPartConfiguration.parse(argument);
+      if (channels.get(part.channel())) {
+        throw new IllegalArgumentException(
+          "Channel %d is configured more than once"
+            .formatted(Integer.valueOf(part.channel())));
+      }
+      channels.set(part.channel());
+      parts.add(part);
+    }
+    return List.copyOf(parts);
+  }
 
-    final var status =
-      EnumSet.noneOf(JackStatus.class);
+  /**
+   * Load the samples of each configured part. Channels without a part stay
+   * silent.
+   *
+   * @param sampler The sampler
+   * @param parts   The parts
+   *
+   * @return A future that completes when every part has loaded
+   */
+
+  public static CompletableFuture<Void> loadParts(
+    final SamplerMulti sampler,
+    final List<SamplerPartConfiguration> parts)
+  {
+    final var futures = new CompletableFuture<?>[parts.size()];
+    for (int index = 0; index < futures.length; ++index) {
+      futures[index] = parts.get(index).load(sampler);
+    }
+    return CompletableFuture.allOf(futures);
+  }
 
-    final var client =
-      jack.openClient("sampler0", EnumSet.of(JackNoStartServer), status);
+  /**
+   * Run the JACK client until the thread is interrupted.
+   *
+   * @param args The command-line arguments
+   *
+   * @return The exit code
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static int run(
+    final String[] args)
+    throws IOException
+  {
+    if (args.length < 1) {
+      System.err.println(USAGE);
+      return 1;
+    }
 
-    final var outL =
-      client.registerPort("outL", AUDIO, JackPortIsOutput);
-    final var outR =
-      client.registerPort("outR", AUDIO, JackPortIsOutput);
-    final var inM =
-      client.registerPort("inM", MIDI, JackPortIsInput);
+    final List<SamplerPartConfiguration> parts;
+    try {
+      parts = parts(args);
+    } catch (final IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      return 1;
+    }
+
+    final var backend =
+      AudioBackendJack.open("sampler0");
 
     final var executors =
       Executors.newFixedThreadPool(4, r -> {
@@ -152,125 +266,78 @@ public final class Main
         return thread;
       });
 
+    final var processors =
+      Runtime.getRuntime().availableProcessors();
+
     final var context =
       new AudioContext(
         Attributes.create(throwable -> LOG.error("error: ", throwable)),
         new SXMSampleBufferRateConverters(),
         executors,
-        client.getSampleRate(),
-        client.getBufferSize()
+        Optional.of(new SampleResampleCache(
+          Paths.get(System.getProperty("user.home"))
+            .resolve(".cache")
+            .resolve("sampler0")
+            .resolve("resample"),
+          1024L * 1024L * 1024L
+        )),
+        new ForkJoinPool(processors),
+        processors,
+        backend.sampleRate(),
+        backend.bufferSize()
       );
 
-    client.setBuffersizeCallback((c, buffersize) -> {
-      context.bufferSize.set(Integer.valueOf(buffersize));
-    });
-
-    client.setSampleRateCallback((c, sampleRate) -> {
-      context.sampleRate.set(Integer.valueOf(sampleRate));
-    });
+    if (SampleMixer.isVectorAvailable()) {
+      LOG.info("mixer: using the vector API");
+    } else {
+      LOG.info("mixer: vector API unavailable (run with --add-modules jdk.incubator.vector)");
+    }
 
-    final var samplers =
-      new SamplersPoly();
     final var sampler =
-      samplers.createSampler(context);
+      samplers().createSampler(context);
 
-    final var sampleDescriptions = new Int2ObjectRBTreeMap<Path>();
-    sampleDescriptions.put(60, Paths.get("60.wav"));
-    sampleDescriptions.put(61, Paths.get("61.wav"));
-    sampleDescriptions.put(62, Paths.get("62.wav"));
-    sampler.loadSamples(new SampleMapDescription(sampleDescriptions));
+    loadParts(sampler, parts);
 
-    client.setProcessCallback((c, nframes) -> {
-      try {
-        final var eventCount =
-          JackMidi.getEventCount(inM);
-        final var event =
-          new JackMidi.Event();
-
-        for (int index = 0; index < eventCount; ++index) {
-          JackMidi.eventGet(event, inM, index);
-          final var size = event.size();
-          final var data = new byte[size];
-          event.read(data);
-
-          final var parsedEvent = parseEvent(data, event.time());
-          if (parsedEvent == null) {
-            continue;
-          }
-          sampler.onEvent(parsedEvent);
-        }
-      } catch (final JackException e) {
-        throw new RuntimeException(e);
-      }
-
-      final var bufferL = outL.getFloatBuffer();
-      final var bufferR = outR.getFloatBuffer();
-      sampler.onProcess(bufferL, bufferR, nframes);
-      return true;
-    });
+    final var metricsPublisher =
+      new SamplerMetricsPublisher(backend.metrics(), Duration.ofSeconds(1L));
 
-    autoconnect(jack, client, List.of(outL, outR));
+    try {
+      metricsPublisher.register();
+    } catch (final JMException e) {
+      LOG.warn("could not register metrics: ", e);
+    }
 
-    client.activate();
+    backend.start(
+      new SamplerBackendListener(
+        sampler,
+        backend.metrics(),
+        rate -> context.sampleRate.set(Integer.valueOf(rate)),
+        size -> context.bufferSize.set(Integer.valueOf(size))
+      )
+    );
 
-    while (true) {
+    while (!Thread.currentThread().isInterrupted()) {
       try {
         Thread.sleep(1_000L);
       } catch (final InterruptedException e) {
         Thread.currentThread().interrupt();
       }
     }
+    return 0;
   }
 
-  private static EventType parseEvent(
-    final byte[] data,
-    final int time)
-  {
-    if (data.length > 0) {
-      final var status = (data[0] & 0b11110000) >>> 4;
-      final var channel = (data[0] & 0b00001111);
-
-      if (status == 9) {
-        final var note = (int) data[1] & 0xff;
-        final var velo = (int) data[2] & 0xff;
-        final var velF = (float) velo / 127.0f;
-        return new EventType.NoteOn(time, note, velF);
-      }
-
-      if (status == 8) {
-        final var note = (int) data[1] & 0xff;
-        return new EventType.NoteOff(time, note);
-      }
+  /**
+   * Command-line entry point.
+   *
+   * @param args The command-line arguments
+   *
+   * @throws IOException On I/O errors
+   */
 
-      if (status == 14) {
-        final var lsb = (int) data[1];
-        final var msb = (int) data[2];
-        final var val = (msb << 8) | lsb;
-        final var valD = ((double) val) / 32768.0;
-        final var valS = (valD * 2.0) - 1.0;
-        return new EventType.PitchBend(time, valS);
-      }
-    }
-    return null;
-  }
-
-  private static void autoconnect(
-    final Jack jack,
-    final JackClient client,
-    final List<JackPort> outputs)
-    throws JackException
+  public static void main(
+    final String[] args)
+    throws IOException
   {
-    final var physical =
-      jack.getPorts(
-        client,
-        null,
-        AUDIO,
-        EnumSet.of(JackPortIsInput, JackPortIsPhysical)
-      );
-
-    final var count = Math.min(outputs.size(), physical.length);
-    for (int index = 0; index < count; index++) {
-      jack.connect(client, outputs.get(index).getName(), physical[index]);
-    }
+    System.exit(run(args));
   }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+/**
+ * <p>Functions over MIDI channel messages packed into {@code long} values,
+ * so that the audio thread can decode incoming MIDI without allocating.</p>
+ *
+ * <p>A packed message holds the time offset in frames in the upper 32 bits,
+ * followed by the status byte, the first data byte, and the second data
+ * byte in the lowest 24 bits. Packed messages are never negative; decoding
+ * functions return {@link #NONE} for data that is not a channel message.</p>
+ */
+
+public final class MidiMessages
+{
+  /**
+   * The value returned for data that is not a channel message.
+   */
+
+  public static final long NONE = -1L;
+
+  public static final int STATUS_NOTE_OFF = 0x8;
+  public static final int STATUS_NOTE_ON = 0x9;
+  public static final int STATUS_POLY_PRESSURE = 0xa;
+  public static final int STATUS_CONTROL_CHANGE = 0xb;
+  public static final int STATUS_PROGRAM_CHANGE = 0xc;
+  public static final int STATUS_CHANNEL_PRESSURE = 0xd;
+  public static final int STATUS_PITCH_BEND = 0xe;
+
+  private MidiMessages()
+  {
+
+  }
+
+  /**
+   * Pack a message.
+   *
+   * @param time   The time offset in frames
+   * @param status The status byte
+   * @param data1  The first data byte
+   * @param data2  The second data byte
+   *
+   * @return A packed message
+   */
+
+  public static long pack(
+    final int time,
+    final int status,
+    final int data1,
+    final int data2)
+  {
+    return ((long) Math.max(0, time) << 32)
+           | ((long) (status & 0xff) << 16)
+           | ((long) (data1 & 0x7f) << 8)
+           | (long) (data2 & 0x7f);
+  }
+
+  /**
+   * Decode a raw MIDI message. Only channel messages are decoded; system
+   * messages, and data that does not begin with a status byte, are
+   * rejected.
+   *
+   * @param data The message bytes
+   * @param size The number of bytes in {@code data} that are valid
+   * @param time The time offset in frames
+   *
+   * @return A packed message, or {@link #NONE}
+   */
+
+  public static long decode(
+    final byte[] data,
+    final int size,
+    final int time)
+  {
+    if (size < 1) {
+      return NONE;
+    }
+
+    final var status = data[0] & 0xff;
+    if (status < 0x80 || status >= 0xf0) {
+      return NONE;
+    }
+
+    final var needed = dataBytes(status >>> 4);
+    if (size < 1 + needed) {
+      return NONE;
+    }
+
+    final var data1 = needed > 0 ? data[1] : 0;
+    final var data2 = needed > 1 ? data[2] : 0;
+    return pack(time, status, data1, data2);
+  }
+
+  private static int dataBytes(
+    final int type)
+  {
+    return switch (type) {
+      case STATUS_PROGRAM_CHANGE, STATUS_CHANNEL_PRESSURE -> 1;
+      default -> 2;
+    };
+  }
+
+  /**
+   * @param message A packed message
+   *
+   * @return The time offset in frames
+   */
+
+  public static int time(
+    final long message)
+  {
+    return (int) (message >>> 32);
+  }
+
+  /**
+   * @param message A packed message
+   *
+   * @return The message type (the upper four bits of the status byte), such
+   * as {@link #STATUS_NOTE_ON}
+   */
+
+  public static int type(
+    final long message)
+  {
+    return (int) (message >>> 20) & 0xf;
+  }
+
+  /**
+   * @param message A packed message
+   *
+   * @return The channel in the range {@code [0, 15]}
+   */
+
+  public static int channel(
+    final long message)
+  {
+    return (int) (message >>> 16) & 0xf;
+  }
+
+  /**
+   * @param message A packed message
+   *
+   * @return The first data byte
+   */
+
+  public static int data1(
+    final long message)
+  {
+    return (int) (message >>> 8) & 0x7f;
+  }
+
+  /**
+   * @param message A packed message
+   *
+   * @return The second data byte
+   */
+
+  public static int data2(
+    final long message)
+  {
+    return (int) message & 0x7f;
+  }
+
+  /**
+   * Convert the 14-bit value of a pitch bend message to a bend amount.
+   *
+   * @param lsb The first (least significant) data byte
+   * @param msb The second (most significant) data byte
+   *
+   * @return The bend in the range {@code [-1, 1)}, where the center value
+   * {@code 0x2000} is {@code 0}
+   */
+
+  public static double pitchBend(
+    final int lsb,
+    final int msb)
+  {
+    final var value = (((msb & 0x7f) << 7) | (lsb & 0x7f)) - 8192;
+    return value / 8192.0;
+  }
+}
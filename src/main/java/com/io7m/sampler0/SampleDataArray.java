@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Objects;
+
+/**
+ * Sample data held as planar arrays, one array per channel. Only the arrays
+ * of the data's format exist; the accessors of the other format reject
+ * calls.
+ *
+ * @see SampleDataType#ofFloat(double, float[], float[])
+ * @see SampleDataType#ofShort(double, short[], short[])
+ */
+
+public final class SampleDataArray implements SampleDataType
+{
+  private final SampleFormat format;
+  private final int channels;
+  private final int frames;
+  private final double sampleRate;
+  private final float[] floatL;
+  private final float[] floatR;
+  private final short[] shortL;
+  private final short[] shortR;
+  private final SamplePeaks peaks;
+
+  SampleDataArray(
+    final SampleFormat inFormat,
+    final double inSampleRate,
+    final float[] inFloatL,
+    final float[] inFloatR,
+    final short[] inShortL,
+    final short[] inShortR)
+  {
+    this.format = Objects.requireNonNull(inFormat, "format");
+    this.sampleRate = inSampleRate;
+    this.floatL = inFloatL;
+    this.floatR = inFloatR;
+    this.shortL = inShortL;
+    this.shortR = inShortR;
+
+    if (inFormat == SampleFormat.FLOAT32) {
+      this.channels = inFloatL == inFloatR ? 1 : 2;
+      this.frames = inFloatL.length;
+    } else {
+      this.channels = inShortL == inShortR ? 1 : 2;
+      this.frames = inShortL.length;
+    }
+    this.peaks = SamplePeaks.analyze(this);
+  }
+
+  @Override
+  public SampleFormat format()
+  {
+    return this.format;
+  }
+
+  @Override
+  public int channels()
+  {
+    return this.channels;
+  }
+
+  @Override
+  public int frames()
+  {
+    return this.frames;
+  }
+
+  @Override
+  public double sampleRate()
+  {
+    return this.sampleRate;
+  }
+
+  @Override
+  public SamplePeaks peaks()
+  {
+    return this.peaks;
+  }
+
+  /**
+   * @return The left channel of {@link SampleFormat#FLOAT32} data
+   *
+   * @throws UnsupportedOperationException If the data is in another format
+   */
+
+  public float[] floatLeft()
+  {
+    this.checkFormat(SampleFormat.FLOAT32);
+    return this.floatL;
+  }
+
+  /**
+   * @return The right channel of {@link SampleFormat#FLOAT32} data
+   *
+   * @throws UnsupportedOperationException If the data is in another format
+   */
+
+  public float[] floatRight()
+  {
+    this.checkFormat(SampleFormat.FLOAT32);
+    return this.floatR;
+  }
+
+  /**
+   * @return The left channel of {@link SampleFormat#INT16} data
+   *
+   * @throws UnsupportedOperationException If the data is in another format
+   */
+
+  public short[] shortLeft()
+  {
+    this.checkFormat(SampleFormat.INT16);
+    return this.shortL;
+  }
+
+  /**
+   * @return The right channel of {@link SampleFormat#INT16} data
+   *
+   * @throws UnsupportedOperationException If the data is in another format
+   */
+
+  public short[] shortRight()
+  {
+    this.checkFormat(SampleFormat.INT16);
+    return this.shortR;
+  }
+
+  private void checkFormat(
+    final SampleFormat required)
+  {
+    if (this.format != required) {
+      throw new UnsupportedOperationException(
+        "Sample data is %s, not %s".formatted(this.format, required));
+    }
+  }
+
+  @Override
+  public float sampleGet(
+    final int channel,
+    final int index)
+  {
+    return switch (this.format) {
+      case FLOAT32 -> channel == 0 ? this.floatL[index] : this.floatR[index];
+      case INT16 -> (channel == 0 ? this.shortL[index] : this.shortR[index])
+                    * SampleDataType.shortScale();
+    };
+  }
+}
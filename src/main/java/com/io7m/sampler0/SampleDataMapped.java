@@ -0,0 +1,173 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Objects;
+
+/**
+ * Sample data backed by buffers that (usually) view a memory-mapped file,
+ * one buffer per channel. Only the buffers of the data's format exist; the
+ * accessors of the other format reject calls.
+ *
+ * @see SampleLibraries
+ * @see SampleDataType#ofMappedFloat(double, FloatBuffer, FloatBuffer, SamplePeaks)
+ * @see SampleDataType#ofMappedShort(double, ShortBuffer, ShortBuffer, SamplePeaks)
+ */
+
+public final class SampleDataMapped implements SampleDataType
+{
+  private final SampleFormat format;
+  private final int channels;
+  private final int frames;
+  private final double sampleRate;
+  private final FloatBuffer floatL;
+  private final FloatBuffer floatR;
+  private final ShortBuffer shortL;
+  private final ShortBuffer shortR;
+  private final SamplePeaks peaks;
+
+  SampleDataMapped(
+    final SampleFormat inFormat,
+    final double inSampleRate,
+    final FloatBuffer inFloatL,
+    final FloatBuffer inFloatR,
+    final ShortBuffer inShortL,
+    final ShortBuffer inShortR,
+    final SamplePeaks inPeaks)
+  {
+    this.format = Objects.requireNonNull(inFormat, "format");
+    this.sampleRate = inSampleRate;
+    this.floatL = inFloatL;
+    this.floatR = inFloatR;
+    this.shortL = inShortL;
+    this.shortR = inShortR;
+
+    if (inFormat == SampleFormat.FLOAT32) {
+      this.channels = inFloatL == inFloatR ? 1 : 2;
+      this.frames = inFloatL.capacity();
+    } else {
+      this.channels = inShortL == inShortR ? 1 : 2;
+      this.frames = inShortL.capacity();
+    }
+    this.peaks = inPeaks != null ? inPeaks : SamplePeaks.analyze(this);
+  }
+
+  @Override
+  public SampleFormat format()
+  {
+    return this.format;
+  }
+
+  @Override
+  public int channels()
+  {
+    return this.channels;
+  }
+
+  @Override
+  public int frames()
+  {
+    return this.frames;
+  }
+
+  @Override
+  public double sampleRate()
+  {
+    return this.sampleRate;
+  }
+
+  @Override
+  public SamplePeaks peaks()
+  {
+    return this.peaks;
+  }
+
+  /**
+   * @return The left channel of {@link SampleFormat#FLOAT32} data
+   *
+   * @throws UnsupportedOperationException If the data is in another format
+   */
+
+  public FloatBuffer floatLeft()
+  {
+    this.checkFormat(SampleFormat.FLOAT32);
+    return this.floatL;
+  }
+
+  /**
+   * @return The right channel of {@link SampleFormat#FLOAT32} data
+   *
+   * @throws UnsupportedOperationException If the data is in another format
+   */
+
+  public FloatBuffer floatRight()
+  {
+    this.checkFormat(SampleFormat.FLOAT32);
+    return this.floatR;
+  }
+
+  /**
+   * @return The left channel of {@link SampleFormat#INT16} data
+   *
+   * @throws UnsupportedOperationException If the data is in another format
+   */
+
+  public ShortBuffer shortLeft()
+  {
+    this.checkFormat(SampleFormat.INT16);
+    return this.shortL;
+  }
+
+  /**
+   * @return The right channel of {@link SampleFormat#INT16} data
+   *
+   * @throws UnsupportedOperationException If the data is in another format
+   */
+
+  public ShortBuffer shortRight()
+  {
+    this.checkFormat(SampleFormat.INT16);
+    return this.shortR;
+  }
+
+  private void checkFormat(
+    final SampleFormat required)
+  {
+    if (this.format != required) {
+      throw new UnsupportedOperationException(
+        "Sample data is %s, not %s".formatted(this.format, required));
+    }
+  }
+
+  @Override
+  public float sampleGet(
+    final int channel,
+    final int index)
+  {
+    return switch (this.format) {
+      case FLOAT32 -> channel == 0
+        ? this.floatL.get(index)
+        : this.floatR.get(index);
+      case INT16 -> (channel == 0
+        ? this.shortL.get(index)
+        : this.shortR.get(index)) * SampleDataType.shortScale();
+    };
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Objects;
+
+/**
+ * Streamed sample data. Only the first few frames are held in memory, as
+ * {@link SampleFormat#FLOAT32} arrays; voices read the rest of the sample
+ * from a {@link SampleStreamSource} via a {@link SampleStream}. Frames past
+ * the preload cannot be read with {@link #sampleGet(int, int)}, and must be
+ * read from the {@link #source()}.
+ *
+ * @see SampleDataType#ofStreamed(double, float[], float[], SampleStreamSource,
+ * SamplePeaks)
+ */
+
+public final class SampleDataStreamed implements SampleDataType
+{
+  private final int channels;
+  private final double sampleRate;
+  private final float[] preloadL;
+  private final float[] preloadR;
+  private final SampleStreamSource source;
+  private final SamplePeaks peaks;
+
+  SampleDataStreamed(
+    final double inSampleRate,
+    final float[] inPreloadL,
+    final float[] inPreloadR,
+    final SampleStreamSource inSource,
+    final SamplePeaks inPeaks)
+  {
+    this.sampleRate = inSampleRate;
+    this.preloadL = Objects.requireNonNull(inPreloadL, "preloadL");
+    this.preloadR = Objects.requireNonNull(inPreloadR, "preloadR");
+    this.source = Objects.requireNonNull(inSource, "source");
+    this.peaks = Objects.requireNonNull(inPeaks, "peaks");
+    this.channels = inPreloadL == inPreloadR ? 1 : 2;
+  }
+
+  @Override
+  public SampleFormat format()
+  {
+    return SampleFormat.FLOAT32;
+  }
+
+  @Override
+  public int channels()
+  {
+    return this.channels;
+  }
+
+  @Override
+  public int frames()
+  {
+    return this.source.frames();
+  }
+
+  @Override
+  public double sampleRate()
+  {
+    return this.sampleRate;
+  }
+
+  @Override
+  public SamplePeaks peaks()
+  {
+    return this.peaks;
+  }
+
+  @Override
+  public int preloadFrames()
+  {
+    return this.preloadL.length;
+  }
+
+  /**
+   * @return The preloaded part of the left channel
+   */
+
+  public float[] preloadLeft()
+  {
+    return this.preloadL;
+  }
+
+  /**
+   * @return The preloaded part of the right channel
+   */
+
+  public float[] preloadRight()
+  {
+    return this.preloadR;
+  }
+
+  /**
+   * @return The source from which frames past the preload are streamed
+   */
+
+  public SampleStreamSource source()
+  {
+    return this.source;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws UnsupportedOperationException If {@code index} is past the
+   *                                       preload
+   */
+
+  @Override
+  public float sampleGet(
+    final int channel,
+    final int index)
+  {
+    if (index >= this.preloadL.length) {
+      throw new UnsupportedOperationException(
+        "Frame %d of streamed data is not preloaded (%d frames)".formatted(
+          Integer.valueOf(index),
+          Integer.valueOf(this.preloadL.length))
+      );
+    }
+    return channel == 0 ? this.preloadL[index] : this.preloadR[index];
+  }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import com.io7m.jsamplebuffer.api.SampleBufferType;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Objects;
+
+/**
+ * <p>Decoded sample data in a given {@link SampleFormat}. Sample data is
+ * one of:</p>
+ *
+ * <ul>
+ *   <li>{@link SampleDataArray}: planar arrays, one array per channel.</li>
+ *   <li>{@link SampleDataMapped}: buffers that view a memory-mapped file
+ *   (see {@link SampleLibraries}).</li>
+ *   <li>{@link SampleDataStreamed}: the first few frames held in arrays,
+ *   with the rest read from a {@link SampleStreamSource}.</li>
+ * </ul>
+ *
+ * <p>Voices read the channels directly by index. Mono data uses the same
+ * array or buffer for the left and right channels, so voices never need to
+ * branch on the channel count.</p>
+ *
+ * <p>All sample data carries a {@link SamplePeaks} table. Unless a table is
+ * supplied, it is computed when the data is created.</p>
+ */
+
+public sealed interface SampleDataType
+  permits SampleDataArray, SampleDataMapped, SampleDataStreamed
+{
+  /**
+   * Create 32-bit floating point sample data.
+   *
+   * @param sampleRate The sample rate
+   * @param left       The left channel
+   * @param right      The right channel (the same array as {@code left} for
+   *                   mono data)
+   *
+   * @return Sample data
+   */
+
+  static SampleDataArray ofFloat(
+    final double sampleRate,
+    final float[] left,
+    final float[] right)
+  {
+    checkLengths(left.length, right.length);
+    return new SampleDataArray(
+      SampleFormat.FLOAT32,
+      sampleRate,
+      left,
+      right,
+      null,
+      null
+    );
+  }
+
+  /**
+   * Create 16-bit integer sample data.
+   *
+   * @param sampleRate The sample rate
+   * @param left       The left channel
+   * @param right      The right channel (the same array as {@code left} for
+   *                   mono data)
+   *
+   * @return Sample data
+   */
+
+  static SampleDataArray ofShort(
+    final double sampleRate,
+    final short[] left,
+    final short[] right)
+  {
+    checkLengths(left.length, right.length);
+    return new SampleDataArray(
+      SampleFormat.INT16,
+      sampleRate,
+      null,
+      null,
+      left,
+      right
+    );
+  }
+
+  /**
+   * Create 32-bit floating point sample data backed by (usually
+   * memory-mapped) buffers.
+   *
+   * @param sampleRate The sample rate
+   * @param left       The left channel
+   * @param right      The right channel (the same buffer as {@code left} for
+   *                   mono data)
+   *
+   * @return Sample data
+   */
+
+  static SampleDataMapped ofMappedFloat(
+    final double sampleRate,
+    final FloatBuffer left,
+    final FloatBuffer right)
+  {
+    return ofMappedFloat(sampleRate, left, right, null);
+  }
+
+  /**
+   * Create 32-bit floating point sample data backed by (usually
+   * memory-mapped) buffers, with a peak table computed when the data was
+   * compiled.
+   *
+   * @param sampleRate The sample rate
+   * @param left       The left channel
+   * @param right      The right channel (the same buffer as {@code left} for
+   *                   mono data)
+   * @param peaks      The peak table, or {@code null} to analyze the data
+   *
+   * @return Sample data
+   */
+
+  static SampleDataMapped ofMappedFloat(
+    final double sampleRate,
+    final FloatBuffer left,
+    final FloatBuffer right,
+    final SamplePeaks peaks)
+  {
+    checkLengths(left.capacity(), right.capacity());
+    return checkPeaks(
+      new SampleDataMapped(
+        SampleFormat.FLOAT32,
+        sampleRate,
+        left,
+        right,
+        null,
+        null,
+        peaks
+      )
+    );
+  }
+
+  /**
+   * Create 16-bit integer sample data backed by (usually memory-mapped)
+   * buffers.
+   *
+   * @param sampleRate The sample rate
+   * @param left       The left channel
+   * @param right      The right channel (the same buffer as {@code left} for
+   *                   mono data)
+   *
+   * @return Sample data
+   */
+
+  static SampleDataMapped ofMappedShort(
+    final double sampleRate,
+    final ShortBuffer left,
+    final ShortBuffer right)
+  {
+    return ofMappedShort(sampleRate, left, right, null);
+  }
+
+  /**
+   * Create 16-bit integer sample data backed by (usually memory-mapped)
+   * buffers, with a peak table computed when the data was compiled.
+   *
+   * @param sampleRate The sample rate
+   * @param left       The left channel
+   * @param right      The right channel (the same buffer as {@code left} for
+   *                   mono data)
+   * @param peaks      The peak table, or {@code null} to analyze the data
+   *
+   * @return Sample data
+   */
+
+  static SampleDataMapped ofMappedShort(
+    final double sampleRate,
+    final ShortBuffer left,
+    final ShortBuffer right,
+    final SamplePeaks peaks)
+  {
+    checkLengths(left.capacity(), right.capacity());
+    return checkPeaks(
+      new SampleDataMapped(
+        SampleFormat.INT16,
+        sampleRate,
+        null,
+        null,
+        left,
+        right,
+        peaks
+      )
+    );
+  }
+
+  /**
+   * Create streamed sample data. Only the first {@code left.length} frames
+   * are held in memory; voices read the remainder of the sample from the
+   * given source via a {@link SampleStream}.
+   *
+   * @param sampleRate The sample rate
+   * @param left       The preloaded part of the left channel
+   * @param right      The preloaded part of the right channel (the same
+   *                   array as {@code left} for mono data)
+   * @param source     The stream source
+   *
+   * @return Sample data
+   *
+   * @see #ofStreamed(double, float[], float[], SampleStreamSource, SamplePeaks)
+   */
+
+  static SampleDataStreamed ofStreamed(
+    final double sampleRate,
+    final float[] left,
+    final float[] right,
+    final SampleStreamSource source)
+  {
+    return ofStreamed(
+      sampleRate,
+      left,
+      right,
+      source,
+      SamplePeaks.unknown(source.frames())
+    );
+  }
+
+  /**
+   * Create streamed sample data. Only the first {@code left.length} frames
+   * are held in memory; voices read the remainder of the sample from the
+   * given source via a {@link SampleStream}. Streamed data cannot be
+   * analyzed after it has been spooled, so the peak table of the full data
+   * must be supplied.
+   *
+   * @param sampleRate The sample rate
+   * @param left       The preloaded part of the left channel
+   * @param right      The preloaded part of the right channel (the same
+   *                   array as {@code left} for mono data)
+   * @param source     The stream source
+   * @param peaks      The peak table of the full data
+   *
+   * @return Sample data
+   */
+
+  static SampleDataStreamed ofStreamed(
+    final double sampleRate,
+    final float[] left,
+    final float[] right,
+    final SampleStreamSource source,
+    final SamplePeaks peaks)
+  {
+    Objects.requireNonNull(peaks, "peaks");
+    checkLengths(left.length, right.length);
+    Objects.requireNonNull(source, "source");
+    if (left.length > source.frames()) {
+      throw new IllegalArgumentException(
+        "Preloaded data cannot be longer than the sample.");
+    }
+    return checkPeaks(
+      new SampleDataStreamed(sampleRate, left, right, source, peaks)
+    );
+  }
+
+  /**
+   * Convert a sample buffer to planar data in the given format. Only the
+   * first two channels of the buffer are kept.
+   *
+   * @param buffer The sample buffer
+   * @param format The output format
+   *
+   * @return Sample data
+   */
+
+  static SampleDataArray ofBuffer(
+    final SampleBufferType buffer,
+    final SampleFormat format)
+  {
+    final var frameCount = buffer.frames();
+    if (frameCount > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+        "Sample buffer is too large (%d frames)".formatted(
+          Long.valueOf(frameCount))
+      );
+    }
+
+    final var count = (int) frameCount;
+    final var stereo = buffer.channels() >= 2;
+    final var frame = new double[Math.max(2, buffer.channels())];
+
+    return switch (format) {
+      case FLOAT32 -> {
+        final var left = new float[count];
+        final var right = stereo ? new float[count] : left;
+        for (int index = 0; index < count; ++index) {
+          buffer.frameGetExact(index, frame);
+          left[index] = (float) frame[0];
+          if (stereo) {
+            right[index] = (float) frame[1];
+          }
+        }
+        yield ofFloat(buffer.sampleRate(), left, right);
+      }
+      case INT16 -> {
+        final var left = new short[count];
+        final var right = stereo ? new short[count] : left;
+        for (int index = 0; index < count; ++index) {
+          buffer.frameGetExact(index, frame);
+          left[index] = toShort(frame[0]);
+          if (stereo) {
+            right[index] = toShort(frame[1]);
+          }
+        }
+        yield ofShort(buffer.sampleRate(), left, right);
+      }
+    };
+  }
+
+  /**
+   * @return The scale factor that converts {@link SampleFormat#INT16} values
+   * to the range {@code [-1, 1]}
+   */
+
+  static float shortScale()
+  {
+    return 1.0f / 32768.0f;
+  }
+
+  private static void checkLengths(
+    final int left,
+    final int right)
+  {
+    if (left != right) {
+      throw new IllegalArgumentException(
+        "Channel lengths must match (%d != %d)".formatted(
+          Integer.valueOf(left),
+          Integer.valueOf(right))
+      );
+    }
+    if (left == 0) {
+      throw new IllegalArgumentException("Sample data must not be empty.");
+    }
+  }
+
+  private static <T extends SampleDataType> T checkPeaks(
+    final T data)
+  {
+    final var peaks = data.peaks();
+    if (peaks.frames() != data.frames()) {
+      throw new IllegalArgumentException(
+        "Peak table length must match (%d != %d)".formatted(
+          Integer.valueOf(peaks.frames()),
+          Integer.valueOf(data.frames()))
+      );
+    }
+    return data;
+  }
+
+  private static short toShort(
+    final double x)
+  {
+    final var clamped = Math.max(-1.0, Math.min(1.0, x));
+    final var scaled = Math.round(clamped * 32768.0);
+    return (short) Math.max(-32768L, Math.min(32767L, scaled));
+  }
+
+  /**
+   * @return The format of the data
+   */
+
+  SampleFormat format();
+
+  /**
+   * @return The number of channels (1 or 2)
+   */
+
+  int channels();
+
+  /**
+   * @return The length of the data in frames
+   */
+
+  int frames();
+
+  /**
+   * @return The sample rate of the data
+   */
+
+  double sampleRate();
+
+  /**
+   * @return The peak table of the data
+   */
+
+  SamplePeaks peaks();
+
+  /**
+   * @return The number of frames held in memory for streamed data, or
+   * {@link #frames()} otherwise
+   */
+
+  default int preloadFrames()
+  {
+    return this.frames();
+  }
+
+  /**
+   * @return The size of the sample data in memory, in bytes
+   */
+
+  default long sizeBytes()
+  {
+    final long bytesPerSample = switch (this.format()) {
+      case FLOAT32 -> 4L;
+      case INT16 -> 2L;
+    };
+    return bytesPerSample * this.channels() * this.preloadFrames();
+  }
+
+  /**
+   * Read a single sample as a value in the range {@code [-1, 1]}. This is
+   * intended for load-time analysis; voices read the channels directly.
+   * Streamed data can only read its preloaded frames, and rejects any other
+   * index.
+   *
+   * @param channel The channel (0 or 1)
+   * @param index   The frame index
+   *
+   * @return The sample value
+   */
+
+  float sampleGet(
+    int channel,
+    int index);
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * The identity of a sample file at the time it was loaded. Two identities
+ * are equal only if the file has the same path, modification time, and
+ * size, which is taken to mean that the file is unchanged.
+ *
+ * @param file     The absolute, normalized path
+ * @param modified The modification time in milliseconds
+ * @param size     The size in octets
+ */
+
+public record SampleFileIdentity(
+  Path file,
+  long modified,
+  long size)
+{
+  public SampleFileIdentity
+  {
+    Objects.requireNonNull(file, "file");
+  }
+
+  /**
+   * Determine the current identity of a file.
+   *
+   * @param file The file
+   *
+   * @return The identity
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static SampleFileIdentity of(
+    final Path file)
+    throws IOException
+  {
+    final var absolute = file.toAbsolutePath().normalize();
+    return new SampleFileIdentity(
+      absolute,
+      Files.getLastModifiedTime(absolute).toMillis(),
+      Files.size(absolute)
+    );
+  }
+}
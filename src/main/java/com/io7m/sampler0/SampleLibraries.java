@@ -0,0 +1,686 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * <p>Functions to write and open compiled sample libraries.</p>
+ *
+ * <p>A compiled library holds already-decoded, already-rate-converted PCM
+ * data in little-endian planar form, along with the zone table of the
+ * {@link SampleMap} it was compiled from. Opening a library maps each
+ * channel of each sample directly into memory, so no decoding happens at
+ * load time and the page cache is shared between processes that open the
+ * same library.</p>
+ *
+ * <p>All integers are little-endian. The file consists of:</p>
+ *
+ * <ul>
+ *   <li>A 64 octet header: the magic number, the version, the
+ *   {@link SampleFormat} ordinal, the sample count, the description file
+ *   count, the description zone count, the offsets of the description,
+ *   sample table, and zone table, the zone group count, the zone entry
+ *   count, and the offset of the tuning.</li>
+ *   <li>The description: for each file, the note, the length of the UTF-8
+ *   path, and the path; then for each zone, the root note, the low and high
+ *   notes, the low and high velocities, the length of the UTF-8 path, and
+ *   the path.</li>
+ *   <li>The sample table: for each sample, the channel count, the frame
+ *   count, the offsets of the left and right channel data, the sample rate,
+ *   and the offset of the peak table.</li>
+ *   <li>The zone table (see {@link SampleZoneTable}): the 16-bit group index
+ *   for each of the 128 &times; 128 (note, velocity) keys; then for each
+ *   group, the first entry and the entry count; then for each entry, the
+ *   sample index and the playback rate.</li>
+ *   <li>The peak table of each sample (see {@link SamplePeaks}): a 32-bit
+ *   float for each block of {@link SamplePeaks#BLOCK_FRAMES} frames.</li>
+ *   <li>The tuning (see {@link TuningTable}): the frequency of each of the
+ *   128 notes as a 64-bit float, NaN for unmapped notes.</li>
+ *   <li>Channel data, with each channel aligned to 4096 octets.</li>
+ * </ul>
+ */
+
+public final class SampleLibraries
+{
+  /**
+   * The magic number that begins every compiled library ("S0LB").
+   */
+
+  public static final int MAGIC = 0x53304C42;
+
+  /**
+   * The current version of the format.
+   */
+
+  public static final int VERSION = 4;
+
+  private static final int HEADER_SIZE = 64;
+  private static final int SAMPLE_RECORD_SIZE = 40;
+  private static final int GROUP_RECORD_SIZE = 8;
+  private static final int ENTRY_RECORD_SIZE = 16;
+  private static final long ALIGNMENT = 4096L;
+
+  private SampleLibraries()
+  {
+
+  }
+
+  private static long align(
+    final long offset)
+  {
+    return (offset + (ALIGNMENT - 1L)) & ~(ALIGNMENT - 1L);
+  }
+
+  /**
+   * Compile a loaded sample map into a library file.
+   *
+   * @param map  The sample map
+   * @param file The output file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void write(
+    final SampleMap map,
+    final Path file)
+    throws IOException
+  {
+    if (map.isEmpty()) {
+      throw new IOException("Cannot compile an empty sample map.");
+    }
+
+    final var description = map.description();
+    final var format = description.format();
+
+    final var table = map.table();
+    final var samples = new ArrayList<SampleDataType>();
+    final var sampleIndices = new IdentityHashMap<SampleDataType, Integer>();
+    for (int index = 0; index < table.entries(); ++index) {
+      final var data = table.entry(index).sample();
+      if (!sampleIndices.containsKey(data)) {
+        sampleIndices.put(data, Integer.valueOf(samples.size()));
+        samples.add(data);
+      }
+    }
+
+    final var descriptionBuffer = encodeDescription(description);
+    final var descriptionOffset = (long) HEADER_SIZE;
+    final var sampleTableOffset =
+      descriptionOffset + descriptionBuffer.remaining();
+    final var tableOffset =
+      sampleTableOffset + ((long) SAMPLE_RECORD_SIZE * samples.size());
+    final var tableSize =
+      (2L * SampleZoneTable.KEYS)
+      + ((long) GROUP_RECORD_SIZE * table.groups())
+      + ((long) ENTRY_RECORD_SIZE * table.entries());
+
+    final var bytesPerSample = format == SampleFormat.FLOAT32 ? 4L : 2L;
+    final var offsetsL = new long[samples.size()];
+    final var offsetsR = new long[samples.size()];
+    final var offsetsPeaks = new long[samples.size()];
+
+    var peaksOffset = tableOffset + tableSize;
+    for (int index = 0; index < samples.size(); ++index) {
+      offsetsPeaks[index] = peaksOffset;
+      peaksOffset += 4L * samples.get(index).peaks().blocks();
+    }
+
+    final var tuningOffset = peaksOffset;
+    var dataOffset = align(tuningOffset + (8L * 128L));
+    for (int index = 0; index < samples.size(); ++index) {
+      final var data = samples.get(index);
+      final var planeSize = bytesPerSample * data.frames();
+      offsetsL[index] = dataOffset;
+      dataOffset = align(dataOffset + planeSize);
+      if (data.channels() == 2) {
+        offsetsR[index] = dataOffset;
+        dataOffset = align(dataOffset + planeSize);
+      } else {
+        offsetsR[index] = offsetsL[index];
+      }
+    }
+
+    try (var channel =
+           FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING)) {
+      final var header =
+        ByteBuffer.allocate(HEADER_SIZE)
+          .order(ByteOrder.LITTLE_ENDIAN);
+
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      header.putInt(format.ordinal());
+      header.putInt(samples.size());
+      header.putInt(description.filesByNote().size());
+      header.putInt(description.zones().size());
+      header.putLong(descriptionOffset);
+      header.putLong(sampleTableOffset);
+      header.putLong(tableOffset);
+      header.putInt(table.groups());
+      header.putInt(table.entries());
+      header.putLong(tuningOffset);
+      header.flip();
+      writeFully(channel, header, 0L);
+      writeFully(channel, descriptionBuffer, descriptionOffset);
+
+      final var sampleTable =
+        ByteBuffer.allocate(SAMPLE_RECORD_SIZE * samples.size())
+          .order(ByteOrder.LITTLE_ENDIAN);
+
+      for (int index = 0; index < samples.size(); ++index) {
+        final var data = samples.get(index);
+        sampleTable.putInt(data.channels());
+        sampleTable.putInt(data.frames());
+        sampleTable.putLong(offsetsL[index]);
+        sampleTable.putLong(offsetsR[index]);
+        sampleTable.putDouble(data.sampleRate());
+        sampleTable.putLong(offsetsPeaks[index]);
+      }
+      sampleTable.flip();
+      writeFully(channel, sampleTable, sampleTableOffset);
+
+      final var tableBuffer =
+        ByteBuffer.allocate(Math.toIntExact(tableSize))
+          .order(ByteOrder.LITTLE_ENDIAN);
+
+      for (int note = 0; note < 128; ++note) {
+        for (int velocity = 0; velocity < 128; ++velocity) {
+          tableBuffer.putShort((short) table.group(note, velocity));
+        }
+      }
+      for (int group = 0; group < table.groups(); ++group) {
+        tableBuffer.putInt(table.groupStart(group));
+        tableBuffer.putInt(table.groupCount(group));
+      }
+      for (int index = 0; index < table.entries(); ++index) {
+        final var entry = table.entry(index);
+        tableBuffer.putInt(sampleIndices.get(entry.sample()).intValue());
+        tableBuffer.putInt(0);
+        tableBuffer.putDouble(entry.playbackRate());
+      }
+      tableBuffer.flip();
+      writeFully(channel, tableBuffer, tableOffset);
+
+      for (int index = 0; index < samples.size(); ++index) {
+        final var peaks = samples.get(index).peaks();
+        final var peaksBuffer =
+          ByteBuffer.allocate(4 * peaks.blocks())
+            .order(ByteOrder.LITTLE_ENDIAN);
+        for (int block = 0; block < peaks.blocks(); ++block) {
+          peaksBuffer.putFloat(peaks.peak(block));
+        }
+        peaksBuffer.flip();
+        writeFully(channel, peaksBuffer, offsetsPeaks[index]);
+      }
+
+      final var tuningBuffer =
+        ByteBuffer.allocate(8 * 128)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      for (int note = 0; note < 128; ++note) {
+        tuningBuffer.putDouble(description.tuning().frequency(note));
+      }
+      tuningBuffer.flip();
+      writeFully(channel, tuningBuffer, tuningOffset);
+
+      final var planes = new PlaneWriter(channel, format);
+      for (int index = 0; index < samples.size(); ++index) {
+        planes.write(samples.get(index), offsetsL[index], offsetsR[index]);
+      }
+    }
+  }
+
+  private static ByteBuffer encodeDescription(
+    final SampleMapDescription description)
+  {
+    final var paths = new ArrayList<byte[]>();
+    var size = 0;
+    for (final var path : description.filesByNote().values()) {
+      final var bytes = path.toString().getBytes(StandardCharsets.UTF_8);
+      paths.add(bytes);
+      size += 8 + bytes.length;
+    }
+    for (final var zone : description.zones()) {
+      final var bytes =
+        zone.file().toString().getBytes(StandardCharsets.UTF_8);
+      paths.add(bytes);
+      size += 24 + bytes.length;
+    }
+
+    final var buffer =
+      ByteBuffer.allocate(size)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    var index = 0;
+    for (final var note : description.filesByNote().keySet()) {
+      final var bytes = paths.get(index);
+      buffer.putInt(note.intValue());
+      buffer.putInt(bytes.length);
+      buffer.put(bytes);
+      ++index;
+    }
+    for (final var zone : description.zones()) {
+      final var bytes = paths.get(index);
+      buffer.putInt(zone.rootNote());
+      buffer.putInt(zone.noteLow());
+      buffer.putInt(zone.noteHigh());
+      buffer.putInt(zone.velocityLow());
+      buffer.putInt(zone.velocityHigh());
+      buffer.putInt(bytes.length);
+      buffer.put(bytes);
+      ++index;
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static int writeFully(
+    final FileChannel channel,
+    final ByteBuffer buffer,
+    final long position)
+    throws IOException
+  {
+    final var size = buffer.remaining();
+    var written = 0;
+    while (buffer.hasRemaining()) {
+      written += channel.write(buffer, position + written);
+    }
+    return size;
+  }
+
+  /**
+   * Writes the channel data of samples in blocks. Streamed samples hold only
+   * their first frames in memory, so their blocks are read back from the
+   * spool file of their {@link SampleStreamSource}.
+   */
+
+  private static final class PlaneWriter
+  {
+    private static final int BLOCK_FRAMES = 16384;
+
+    private final FileChannel channel;
+    private final SampleFormat format;
+    private final ByteBuffer chunk;
+    private final ByteBuffer scratch;
+    private final float[] blockL;
+    private final float[] blockR;
+
+    PlaneWriter(
+      final FileChannel inChannel,
+      final SampleFormat inFormat)
+    {
+      this.channel = inChannel;
+      this.format = inFormat;
+      this.chunk =
+        ByteBuffer.allocateDirect(BLOCK_FRAMES * 4)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      this.scratch =
+        ByteBuffer.allocateDirect(BLOCK_FRAMES * 4)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      this.blockL = new float[BLOCK_FRAMES];
+      this.blockR = new float[BLOCK_FRAMES];
+    }
+
+    void write(
+      final SampleDataType data,
+      final long offsetL,
+      final long offsetR)
+      throws IOException
+    {
+      var positionL = offsetL;
+      var positionR = offsetR;
+      for (int frame = 0; frame < data.frames(); frame += BLOCK_FRAMES) {
+        final var count = Math.min(BLOCK_FRAMES, data.frames() - frame);
+        this.readBlock(data, frame, count);
+        positionL += this.writeBlock(this.blockL, count, positionL);
+        if (data.channels() == 2) {
+          positionR += this.writeBlock(this.blockR, count, positionR);
+        }
+      }
+    }
+
+    private void readBlock(
+      final SampleDataType data,
+      final int frame,
+      final int count)
+      throws IOException
+    {
+      /*
+       * The blocks are used as rings of BLOCK_FRAMES frames, and every block
+       * starts at a multiple of BLOCK_FRAMES, so reads fill them from 0.
+       */
+
+      if (data instanceof SampleDataStreamed streamed) {
+        streamed.source()
+          .read(frame, count, this.scratch, this.blockL, this.blockR);
+        return;
+      }
+
+      for (int index = 0; index < count; ++index) {
+        this.blockL[index] = data.sampleGet(0, frame + index);
+      }
+      if (data.channels() == 2) {
+        for (int index = 0; index < count; ++index) {
+          this.blockR[index] = data.sampleGet(1, frame + index);
+        }
+      }
+    }
+
+    private int writeBlock(
+      final float[] values,
+      final int count,
+      final long position)
+      throws IOException
+    {
+      this.chunk.clear();
+      switch (this.format) {
+        case FLOAT32 -> {
+          for (int index = 0; index < count; ++index) {
+            this.chunk.putFloat(values[index]);
+          }
+        }
+        case INT16 -> {
+          for (int index = 0; index < count; ++index) {
+            final var scaled = Math.round(values[index] * 32768.0);
+            this.chunk.putShort(
+              (short) Math.max(-32768L, Math.min(32767L, scaled)));
+          }
+        }
+      }
+      this.chunk.flip();
+      return writeFully(this.channel, this.chunk, position);
+    }
+  }
+
+  private static ByteBuffer readFully(
+    final FileChannel channel,
+    final long position,
+    final int size)
+    throws IOException
+  {
+    final var buffer =
+      ByteBuffer.allocate(size)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    while (buffer.hasRemaining()) {
+      final var read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new IOException("Unexpected end of file.");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Open a compiled library. The channel data is mapped into memory and
+   * played directly from the mapping. If the library was compiled at a
+   * sample rate other than {@code sampleRate}, the playback rates of the
+   * entries are scaled to compensate.
+   *
+   * @param file       The library file
+   * @param sampleRate The current sample rate
+   *
+   * @return A sample map
+   *
+   * @throws IOException On I/O errors, or if the file is not a valid library
+   */
+
+  public static SampleMap open(
+    final Path file,
+    final int sampleRate)
+    throws IOException
+  {
+    try (var channel = FileChannel.open(file, READ)) {
+      final var header = readFully(channel, 0L, HEADER_SIZE);
+      final var magic = header.getInt();
+      if (magic != MAGIC) {
+        throw new IOException(
+          "%s: Unrecognized magic number 0x%08x".formatted(
+            file, Integer.valueOf(magic)));
+      }
+      final var version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException(
+          "%s: Unsupported version %d".formatted(
+            file, Integer.valueOf(version)));
+      }
+
+      final var formats = SampleFormat.values();
+      final var formatIndex = header.getInt();
+      if (formatIndex < 0 || formatIndex >= formats.length) {
+        throw new IOException(
+          "%s: Unrecognized format %d".formatted(
+            file, Integer.valueOf(formatIndex)));
+      }
+
+      final var format = formats[formatIndex];
+      final var sampleCount = header.getInt();
+      final var descriptionCount = header.getInt();
+      final var zoneCount = header.getInt();
+      final var descriptionOffset = header.getLong();
+      final var sampleTableOffset = header.getLong();
+      final var tableOffset = header.getLong();
+      final var groupCount = header.getInt();
+      final var entryCount = header.getInt();
+      final var tuningOffset = header.getLong();
+
+      final var filesByNote = new Int2ObjectRBTreeMap<Path>();
+      final var descriptionBuffer =
+        readFully(
+          channel,
+          descriptionOffset,
+          Math.toIntExact(sampleTableOffset - descriptionOffset)
+        );
+
+      for (int index = 0; index < descriptionCount; ++index) {
+        final var note = descriptionBuffer.getInt();
+        final var bytes = new byte[descriptionBuffer.getInt()];
+        descriptionBuffer.get(bytes);
+        filesByNote.put(
+          note,
+          Paths.get(new String(bytes, StandardCharsets.UTF_8))
+        );
+      }
+
+      final var zones = new ArrayList<SampleZoneDescription>(zoneCount);
+      for (int index = 0; index < zoneCount; ++index) {
+        final var rootNote = descriptionBuffer.getInt();
+        final var noteLow = descriptionBuffer.getInt();
+        final var noteHigh = descriptionBuffer.getInt();
+        final var velocityLow = descriptionBuffer.getInt();
+        final var velocityHigh = descriptionBuffer.getInt();
+        final var bytes = new byte[descriptionBuffer.getInt()];
+        descriptionBuffer.get(bytes);
+        zones.add(new SampleZoneDescription(
+          Paths.get(new String(bytes, StandardCharsets.UTF_8)),
+          rootNote,
+          noteLow,
+          noteHigh,
+          velocityLow,
+          velocityHigh
+        ));
+      }
+
+      final var sampleTable =
+        readFully(channel, sampleTableOffset, SAMPLE_RECORD_SIZE * sampleCount);
+
+      final var samples = new SampleDataType[sampleCount];
+      for (int index = 0; index < sampleCount; ++index) {
+        final var channels = sampleTable.getInt();
+        final var frames = sampleTable.getInt();
+        final var offsetL = sampleTable.getLong();
+        final var offsetR = sampleTable.getLong();
+        final var rate = sampleTable.getDouble();
+        final var offsetPeaks = sampleTable.getLong();
+        final var peaks =
+          readPeaks(file, channel, frames, offsetPeaks);
+        samples[index] =
+          mapSample(
+            channel,
+            format,
+            channels,
+            frames,
+            offsetL,
+            offsetR,
+            rate,
+            peaks
+          );
+      }
+
+      final var tableBuffer =
+        readFully(
+          channel,
+          tableOffset,
+          Math.toIntExact(
+            (2L * SampleZoneTable.KEYS)
+            + ((long) GROUP_RECORD_SIZE * groupCount)
+            + ((long) ENTRY_RECORD_SIZE * entryCount))
+        );
+
+      final var keys = new short[SampleZoneTable.KEYS];
+      for (int index = 0; index < keys.length; ++index) {
+        keys[index] = tableBuffer.getShort();
+      }
+      final var groupStart = new int[groupCount];
+      final var groupEntries = new int[groupCount];
+      for (int group = 0; group < groupCount; ++group) {
+        groupStart[group] = tableBuffer.getInt();
+        groupEntries[group] = tableBuffer.getInt();
+      }
+
+      final var entries = new SampleMapEntry[entryCount];
+      for (int index = 0; index < entryCount; ++index) {
+        final var sampleIndex = tableBuffer.getInt();
+        tableBuffer.getInt();
+        final var playbackRate = tableBuffer.getDouble();
+        if (sampleIndex < 0 || sampleIndex >= sampleCount) {
+          throw new IOException(
+            "%s: Entry %d refers to nonexistent sample %d".formatted(
+              file, Integer.valueOf(index), Integer.valueOf(sampleIndex)));
+        }
+
+        final var data = samples[sampleIndex];
+        entries[index] =
+          new SampleMapEntry(
+            data,
+            playbackRate * (data.sampleRate() / sampleRate));
+      }
+
+      final var frequencies = new double[128];
+      readFully(channel, tuningOffset, 8 * 128)
+        .asDoubleBuffer()
+        .get(frequencies);
+
+      final SampleZoneTable table;
+      final TuningTable tuning;
+      try {
+        table = new SampleZoneTable(entries, groupStart, groupEntries, keys);
+        tuning = TuningTable.ofFrequencies(frequencies);
+      } catch (final IllegalArgumentException e) {
+        throw new IOException("%s: %s".formatted(file, e.getMessage()), e);
+      }
+
+      return new SampleMap(
+        table,
+        new SampleMapDescription(
+          filesByNote,
+          format,
+          Optional.empty(),
+          zones,
+          tuning),
+        sampleRate,
+        SampleMapLoadStatistics.empty(),
+        Map.of()
+      );
+    }
+  }
+
+  private static SamplePeaks readPeaks(
+    final Path file,
+    final FileChannel channel,
+    final int frames,
+    final long offset)
+    throws IOException
+  {
+    if (frames <= 0) {
+      throw new IOException(
+        "%s: Sample has an invalid frame count %d".formatted(
+          file, Integer.valueOf(frames)));
+    }
+
+    final var peaks = new float[SamplePeaks.blocksOf(frames)];
+    readFully(channel, offset, 4 * peaks.length)
+      .asFloatBuffer()
+      .get(peaks);
+    return SamplePeaks.ofPeaks(frames, peaks);
+  }
+
+  private static SampleDataType mapSample(
+    final FileChannel channel,
+    final SampleFormat format,
+    final int channels,
+    final int frames,
+    final long offsetL,
+    final long offsetR,
+    final double rate,
+    final SamplePeaks peaks)
+    throws IOException
+  {
+    final var bytesPerSample = format == SampleFormat.FLOAT32 ? 4L : 2L;
+    final var planeSize = bytesPerSample * frames;
+
+    final var planeL =
+      channel.map(FileChannel.MapMode.READ_ONLY, offsetL, planeSize)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    final var planeR =
+      channels == 2
+        ? channel.map(FileChannel.MapMode.READ_ONLY, offsetR, planeSize)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        : planeL;
+
+    return switch (format) {
+      case FLOAT32 -> {
+        final var left = planeL.asFloatBuffer();
+        final var right = planeR == planeL ? left : planeR.asFloatBuffer();
+        yield SampleDataType.ofMappedFloat(rate, left, right, peaks);
+      }
+      case INT16 -> {
+        final var left = planeL.asShortBuffer();
+        final var right = planeR == planeL ? left : planeR.asShortBuffer();
+        yield SampleDataType.ofMappedShort(rate, left, right, peaks);
+      }
+    };
+  }
+}
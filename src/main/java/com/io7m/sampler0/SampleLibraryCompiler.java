@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import com.io7m.jsamplebuffer.xmedia.SXMSampleBufferRateConverters;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * A command-line tool that decodes and rate-converts the files of a sample
+ * map description, and writes the result as a compiled library.
+ *
+ * <pre>
+ * SampleLibraryCompiler output.s0lb 48000 FLOAT32 60=60.wav 61=61.wav ...
+ * </pre>
+ */
+
+public final class SampleLibraryCompiler
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(SampleLibraryCompiler.class);
+
+  private static final String USAGE =
+    "usage: output sample-rate (FLOAT32 | INT16) note=file [note=file ...]";
+
+  private SampleLibraryCompiler()
+  {
+
+  }
+
+  /**
+   * Compile the library described on the command line.
+   *
+   * @param args The command-line arguments
+   *
+   * @return The exit code
+   *
+   * @throws Exception On errors loading samples or writing the library
+   */
+
+  public static int run(
+    final String[] args)
+    throws Exception
+  {
+    if (args.length < 4) {
+      System.err.println(USAGE);
+      return 1;
+    }
+
+    final var output =
+      Paths.get(args[0]);
+    final int sampleRate;
+    final SampleFormat format;
+    final Int2ObjectRBTreeMap<Path> filesByNote;
+    try {
+      sampleRate = Integer.parseInt(args[1]);
+      format = SampleFormat.valueOf(args[2].toUpperCase(Locale.ROOT));
+      filesByNote = filesByNote(args);
+    } catch (final IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      return 1;
+    }
+
+    final var timeThen = Instant.now();
+    final var map =
+      new SampleMapDescription(filesByNote, format)
+        .load(
+          new SXMSampleBufferRateConverters().createConverter(),
+          sampleRate
+        );
+
+    SampleLibraries.write(map, output);
+    LOG.info(
+      "compiled {} in {}",
+      output,
+      Duration.between(timeThen, Instant.now())
+    );
+    return 0;
+  }
+
+  private static Int2ObjectRBTreeMap<Path> filesByNote(
+    final String[] args)
+  {
+    final var filesByNote = new Int2ObjectRBTreeMap<Path>();
+    for (int index = 3; index < args.length; ++index) {
+      final var argument = args[index];
+      final var separator = argument.indexOf('=');
+      if (separator <= 0) {
+        throw new IllegalArgumentException(
+          "Expected note=file, received: %s".formatted(argument));
+      }
+      filesByNote.put(
+        Integer.parseInt(argument.substring(0, separator)),
+        Paths.get(argument.substring(separator + 1))
+      );
+    }
+    return filesByNote;
+  }
+
+  /**
+   * Command-line entry point.
+   *
+   * @param args The command-line arguments
+   *
+   * @throws Exception On errors loading samples or writing the library
+   */
+
+  public static void main(
+    final String[] args)
+    throws Exception
+  {
+    System.exit(run(args));
+  }
+}
@@ -16,56 +16,209 @@
 
 package com.io7m.sampler0;
 
-import com.io7m.jsamplebuffer.api.SampleBufferType;
-import com.io7m.jsamplebuffer.vanilla.SampleBufferDouble;
 import it.unimi.dsi.fastutil.ints.Int2ObjectSortedMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectSortedMaps;
 
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * <p>A loaded sample map.</p>
+ *
+ * <p>The map is compiled into a {@link SampleZoneTable}, so selecting the
+ * sample for a note is a few array loads. Each map carries its own
+ * round-robin positions; these are only advanced by
+ * {@link #sampleSelect(int, int)}, which must only be called from the audio
+ * thread.</p>
+ */
 
 public final class SampleMap
 {
-  private static final SampleBufferType EMPTY_SAMPLE =
-    SampleBufferDouble.createWithHeapBuffer(2, 1L, 44100.0);
+  private static final float[] EMPTY_CHANNEL =
+    new float[1];
+
+  private static final SampleDataType EMPTY_SAMPLE =
+    SampleDataType.ofFloat(44100.0, EMPTY_CHANNEL, EMPTY_CHANNEL);
 
   private static final SampleMapEntry EMPTY_ENTRY =
     new SampleMapEntry(EMPTY_SAMPLE, 1.0);
 
-  private final Int2ObjectSortedMap<SampleMapEntry> samples;
+  private final SampleZoneTable table;
+  private final int[] roundRobin;
   private final SampleMapDescription description;
+  private final SampleMapLoadStatistics loadStatistics;
+  private final Map<SampleFileIdentity, SampleDataType> filesLoaded;
+  private final int sampleRate;
 
   public SampleMap(
     final Int2ObjectSortedMap<SampleMapEntry> inSamples,
     final SampleMapDescription inDescription)
   {
-    this.samples =
-      Objects.requireNonNull(inSamples, "samples");
+    this(
+      tableOfNotes(inSamples),
+      inDescription,
+      0,
+      SampleMapLoadStatistics.empty(),
+      Map.of()
+    );
+  }
+
+  /**
+   * Create a sample map.
+   *
+   * @param inTable          The compiled zone table
+   * @param inDescription    The description from which the map was loaded
+   * @param inSampleRate     The output sample rate for which the map was
+   *                         prepared, or {@code 0} if unknown
+   * @param inLoadStatistics The statistics gathered during loading
+   * @param inFilesLoaded    The data loaded from each file, by the identity of
+   *                         the file at the time it was loaded
+   */
+
+  public SampleMap(
+    final SampleZoneTable inTable,
+    final SampleMapDescription inDescription,
+    final int inSampleRate,
+    final SampleMapLoadStatistics inLoadStatistics,
+    final Map<SampleFileIdentity, SampleDataType> inFilesLoaded)
+  {
+    this.table =
+      Objects.requireNonNull(inTable, "table");
     this.description =
       Objects.requireNonNull(inDescription, "description");
+    this.loadStatistics =
+      Objects.requireNonNull(inLoadStatistics, "loadStatistics");
+    this.filesLoaded =
+      Map.copyOf(inFilesLoaded);
+    this.sampleRate =
+      inSampleRate;
+    this.roundRobin =
+      new int[inTable.groups()];
+  }
 
-    if (!inSamples.isEmpty()) {
-      if (inSamples.size() != 128) {
+  private static SampleZoneTable tableOfNotes(
+    final Int2ObjectSortedMap<SampleMapEntry> samples)
+  {
+    if (!samples.isEmpty()) {
+      if (samples.size() != 128) {
         throw new IllegalArgumentException("Must map all 128 notes to samples.");
       }
     }
+    return SampleZoneTable.ofNotes(samples);
   }
 
   public static SampleMap empty()
   {
     return new SampleMap(
-      Int2ObjectSortedMaps.emptyMap(),
-      SampleMapDescription.empty()
+      SampleZoneTable.empty(),
+      SampleMapDescription.empty(),
+      0,
+      SampleMapLoadStatistics.empty(),
+      Map.of()
     );
   }
 
+  /**
+   * Convert a normalized velocity to a MIDI velocity.
+   *
+   * @param velocity The velocity in the range {@code [0, 1]}
+   *
+   * @return The velocity in the range {@code [0, 127]}
+   */
+
+  public static int velocityIndex(
+    final double velocity)
+  {
+    return Math.max(0, Math.min(127, (int) ((velocity * 127.0) + 0.5)));
+  }
+
+  /**
+   * Select the sample for a note, advancing the round-robin position of the
+   * selected group. This must only be called from the audio thread.
+   *
+   * @param note     The note
+   * @param velocity The MIDI velocity
+   *
+   * @return The selected entry
+   */
+
+  public SampleMapEntry sampleSelect(
+    final int note,
+    final int velocity)
+  {
+    final var group = this.table.group(note, velocity);
+    if (group < 0) {
+      return EMPTY_ENTRY;
+    }
+
+    final var count = this.table.groupCount(group);
+    final var slot = this.roundRobin[group];
+    this.roundRobin[group] = slot + 1 == count ? 0 : slot + 1;
+    return this.table.entry(this.table.groupStart(group) + slot);
+  }
+
+  /**
+   * @param note The note
+   *
+   * @return The first round-robin entry for the note at full velocity
+   */
+
   public SampleMapEntry sampleForNote(
     final int note)
   {
-    return this.samples.getOrDefault(note, EMPTY_ENTRY);
+    final var group = this.table.group(note, 127);
+    if (group < 0) {
+      return EMPTY_ENTRY;
+    }
+    return this.table.entry(this.table.groupStart(group));
+  }
+
+  public SampleZoneTable table()
+  {
+    return this.table;
+  }
+
+  public boolean isEmpty()
+  {
+    return this.table.entries() == 0;
   }
 
   public SampleMapDescription description()
   {
     return this.description;
   }
+
+  /**
+   * @return The output sample rate for which the map was prepared, or
+   * {@code 0} if unknown
+   */
+
+  public int sampleRate()
+  {
+    return this.sampleRate;
+  }
+
+  public SampleMapLoadStatistics loadStatistics()
+  {
+    return this.loadStatistics;
+  }
+
+  /**
+   * @param identity The identity of a file
+   *
+   * @return The data loaded from the file, if the map was loaded from the
+   * file when it had exactly this identity
+   */
+
+  public Optional<SampleDataType> fileLoaded(
+    final SampleFileIdentity identity)
+  {
+    return Optional.ofNullable(this.filesLoaded.get(identity));
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[SampleMap %s]".formatted(this.loadStatistics);
+  }
 }
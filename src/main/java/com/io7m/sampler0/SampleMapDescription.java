@@ -18,20 +18,97 @@ package com.io7m.sampler0;
 
 import com.io7m.jsamplebuffer.api.SampleBufferException;
 import com.io7m.jsamplebuffer.api.SampleBufferRateConverterType;
-import com.io7m.jsamplebuffer.api.SampleBufferType;
 import com.io7m.jsamplebuffer.vanilla.SampleBufferDouble;
 import com.io7m.jsamplebuffer.xmedia.SXMSampleBuffers;
-import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.Int2ObjectSortedMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectSortedMaps;
 
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * A description of a sample map.
+ *
+ * @param filesByNote The sample files by note
+ * @param format      The format in which sample data is held
+ * @param streaming   The streaming configuration, if samples should be
+ *                    streamed from disk rather than held in memory
+ * @param zones       Zones with explicit note and velocity ranges, in
+ *                    addition to the files in {@code filesByNote}; these
+ *                    take precedence over the files where they overlap
+ * @param tuning      The tuning from which the playback rates of zones are
+ *                    computed
+ *
+ * @see #zonesAll()
+ */
 
 public record SampleMapDescription(
-  Int2ObjectSortedMap<Path> filesByNote)
+  Int2ObjectSortedMap<Path> filesByNote,
+  SampleFormat format,
+  Optional<SampleStreamingConfiguration> streaming,
+  List<SampleZoneDescription> zones,
+  TuningTable tuning)
 {
+  public SampleMapDescription
+  {
+    Objects.requireNonNull(filesByNote, "filesByNote");
+    Objects.requireNonNull(format, "format");
+    Objects.requireNonNull(streaming, "streaming");
+    zones = List.copyOf(zones);
+    Objects.requireNonNull(tuning, "tuning");
+  }
+
+  public SampleMapDescription(
+    final Int2ObjectSortedMap<Path> inFilesByNote,
+    final SampleFormat inFormat,
+    final Optional<SampleStreamingConfiguration> inStreaming,
+    final List<SampleZoneDescription> inZones)
+  {
+    this(
+      inFilesByNote,
+      inFormat,
+      inStreaming,
+      inZones,
+      TuningTable.equalTemperament()
+    );
+  }
+
+  public SampleMapDescription(
+    final Int2ObjectSortedMap<Path> inFilesByNote,
+    final SampleFormat inFormat,
+    final Optional<SampleStreamingConfiguration> inStreaming)
+  {
+    this(inFilesByNote, inFormat, inStreaming, List.of());
+  }
+
+  public SampleMapDescription(
+    final Int2ObjectSortedMap<Path> inFilesByNote,
+    final SampleFormat inFormat)
+  {
+    this(inFilesByNote, inFormat, Optional.empty());
+  }
+
+  public SampleMapDescription(
+    final Int2ObjectSortedMap<Path> inFilesByNote)
+  {
+    this(inFilesByNote, SampleFormat.FLOAT32);
+  }
+
   public static SampleMapDescription empty()
   {
     return new SampleMapDescription(Int2ObjectSortedMaps.emptyMap());
@@ -42,78 +119,486 @@ public record SampleMapDescription(
     final int sampleRate)
     throws SampleBufferException
   {
-    try {
-      if (this.filesByNote.isEmpty()) {
-        return SampleMap.empty();
-      }
+    return this.load(converter, sampleRate, Optional.empty());
+  }
 
-      final var sampleBuffersByNote =
-        new Int2ObjectRBTreeMap<SampleBufferType>();
-
-      for (final var entry : this.filesByNote.int2ObjectEntrySet()) {
-        final var sampleBuffer =
-          SXMSampleBuffers.sampleBufferOfFile(
-            entry.getValue(),
-            SampleBufferDouble::createWithHeapBuffer
-          );
-
-        final SampleBufferType outputBuffer;
-        final var currentRate = (int) sampleBuffer.sampleRate();
-        if (currentRate != sampleRate) {
-          outputBuffer = converter.convert(
-            SampleBufferDouble::createWithHeapBuffer,
-            sampleBuffer,
-            sampleRate
-          );
-        } else {
-          outputBuffer = sampleBuffer;
-        }
+  /**
+   * Load the sample map on the calling thread, converting each file to the
+   * given sample rate. Converted data is taken from, and stored in, the
+   * given cache if one is provided.
+   *
+   * @param converter  The rate converter
+   * @param sampleRate The sample rate
+   * @param cache      The resample cache, if any
+   *
+   * @return The loaded map
+   *
+   * @throws SampleBufferException On errors
+   */
+
+  public SampleMap load(
+    final SampleBufferRateConverterType converter,
+    final int sampleRate,
+    final Optional<SampleResampleCache> cache)
+    throws SampleBufferException
+  {
+    return this.load(converter, sampleRate, cache, Runnable::run, 1);
+  }
+
+  /**
+   * Load the sample map, decoding and converting files in parallel on the
+   * given executor. At most {@code parallelism} files are in flight at any
+   * one time, which bounds the memory used by decoded but not yet converted
+   * buffers. Results are merged in note order regardless of completion
+   * order. If any files fail to load, a single exception is raised once all
+   * files have been attempted; it describes every failure and carries each
+   * as a suppressed exception. The converter must be safe for concurrent
+   * use if {@code parallelism} is greater than one.
+   *
+   * @param converter   The rate converter
+   * @param sampleRate  The sample rate
+   * @param cache       The resample cache, if any
+   * @param executor    The executor on which files are loaded
+   * @param parallelism The maximum number of files loaded at once
+   *
+   * @return The loaded map
+   *
+   * @throws SampleBufferException On errors
+   */
 
-        sampleBuffersByNote.put(entry.getIntKey(), outputBuffer);
+  public SampleMap load(
+    final SampleBufferRateConverterType converter,
+    final int sampleRate,
+    final Optional<SampleResampleCache> cache,
+    final Executor executor,
+    final int parallelism)
+    throws SampleBufferException
+  {
+    return this.loadIncremental(
+      SampleMap.empty(),
+      converter,
+      sampleRate,
+      cache,
+      executor,
+      parallelism
+    );
+  }
+
+  /**
+   * Load the sample map as {@link #load(SampleBufferRateConverterType, int,
+   * Optional, Executor, int)} does, but carry over the data for any file
+   * that the previous map loaded and that is unchanged since (by path,
+   * modification time, and size). Data is only carried over if the
+   * previous map used the same format, streaming configuration, and sample
+   * rate.
+   *
+   * @param previous    The previously loaded map
+   * @param converter   The rate converter
+   * @param sampleRate  The sample rate
+   * @param cache       The resample cache, if any
+   * @param executor    The executor on which files are loaded
+   * @param parallelism The maximum number of files loaded at once
+   *
+   * @return The loaded map
+   *
+   * @throws SampleBufferException On errors
+   */
+
+  public SampleMap loadIncremental(
+    final SampleMap previous,
+    final SampleBufferRateConverterType converter,
+    final int sampleRate,
+    final Optional<SampleResampleCache> cache,
+    final Executor executor,
+    final int parallelism)
+    throws SampleBufferException
+  {
+    return this.loadIncremental(
+      previous,
+      converter,
+      sampleRate,
+      cache,
+      executor,
+      parallelism,
+      note -> false
+    );
+  }
+
+  /**
+   * Load the sample map incrementally, starting with the files nearest to
+   * the given sounding notes. Files are started in order of their distance
+   * from the nearest sounding note, so that the samples that are most
+   * likely to be heard are ready first.
+   *
+   * @param previous    The previously loaded map
+   * @param converter   The rate converter
+   * @param sampleRate  The sample rate
+   * @param cache       The resample cache, if any
+   * @param executor    The executor on which files are loaded
+   * @param parallelism The maximum number of files loaded at once
+   * @param sounding    A predicate that is true for sounding notes
+   *
+   * @return The loaded map
+   *
+   * @throws SampleBufferException On errors
+   */
+
+  public SampleMap loadIncremental(
+    final SampleMap previous,
+    final SampleBufferRateConverterType converter,
+    final int sampleRate,
+    final Optional<SampleResampleCache> cache,
+    final Executor executor,
+    final int parallelism,
+    final IntPredicate sounding)
+    throws SampleBufferException
+  {
+    Objects.requireNonNull(previous, "previous");
+    Objects.requireNonNull(sounding, "sounding");
+    Objects.requireNonNull(converter, "converter");
+    Objects.requireNonNull(cache, "cache");
+    Objects.requireNonNull(executor, "executor");
+
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive.");
+    }
+
+    final var zoneDescriptions = this.zonesAll();
+    if (zoneDescriptions.isEmpty()) {
+      return SampleMap.empty();
+    }
+
+    /*
+     * Each distinct file is loaded once, however many zones use it. Files
+     * are identified by their position in declaration order; the root note
+     * of the first zone that uses a file is used to prioritize it.
+     */
+
+    final var fileIndices = new LinkedHashMap<Path, Integer>();
+    final var fileList = new ArrayList<Path>();
+    final var fileNotes = new IntArrayList();
+    for (final var zone : zoneDescriptions) {
+      if (!fileIndices.containsKey(zone.file())) {
+        fileIndices.put(zone.file(), Integer.valueOf(fileList.size()));
+        fileList.add(zone.file());
+        fileNotes.add(zone.rootNote());
       }
+    }
 
-      final var sampleEntriesByNote =
-        new Int2ObjectRBTreeMap<SampleMapEntry>();
+    final var notes = fileNotes.toIntArray();
+    final var count = notes.length;
+    final var results = new LoadedFile[count];
+    final var failures = new Exception[count];
+    final var permits = new Semaphore(parallelism);
+    final var finished = new CountDownLatch(count);
+    final var previousDescription = previous.description();
+    final var reusable =
+      previousDescription.format() == this.format
+      && previousDescription.streaming().equals(this.streaming);
 
-      for (final var entry : sampleBuffersByNote.int2ObjectEntrySet()) {
-        final var note = entry.getIntKey();
-        final var sample = entry.getValue();
+    final var order = loadOrder(notes, sounding);
 
-        sampleEntriesByNote.put(note, new SampleMapEntry(sample, 1.0));
+    try {
+      for (int index = 0; index < count; ++index) {
+        final var fileIndex = order[index];
+        final var file = fileList.get(fileIndex);
 
-        {
-          var rate = 1.0;
-          for (int noteBefore = note - 1; noteBefore >= 0; --noteBefore) {
-            final var previous = sampleBuffersByNote.get(noteBefore);
-            if (previous != null) {
-              break;
+        permits.acquire();
+        try {
+          executor.execute(() -> {
+            try {
+              results[fileIndex] = this.loadFile(
+                reusable ? previous : SampleMap.empty(),
+                file,
+                converter,
+                sampleRate,
+                cache
+              );
+            } catch (final Exception e) {
+              failures[fileIndex] = e;
+            } finally {
+              permits.release();
+              finished.countDown();
             }
-            rate = rate * Notes.ONE_SEMITONE_DOWN;
-            sampleEntriesByNote.put(noteBefore, new SampleMapEntry(sample, rate));
-          }
+          });
+        } catch (final RejectedExecutionException e) {
+          failures[fileIndex] = e;
+          permits.release();
+          finished.countDown();
         }
+      }
+      finished.await();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SampleBufferException(e);
+    }
 
-        {
-          var rate = 1.0;
-          for (int noteAfter = note + 1; noteAfter <= 127; ++noteAfter) {
-            final var next = sampleBuffersByNote.get(noteAfter);
-            if (next != null) {
-              break;
-            }
-            rate = rate * Notes.ONE_SEMITONE_UP;
-            sampleEntriesByNote.put(noteAfter, new SampleMapEntry(sample, rate));
-          }
+    checkFailures(fileList, notes, failures);
+
+    final var filesLoaded =
+      new HashMap<SampleFileIdentity, SampleDataType>(count);
+
+    var reused = 0;
+    var cacheHits = 0;
+    var cacheMisses = 0;
+    for (int index = 0; index < count; ++index) {
+      final var result = results[index];
+      filesLoaded.put(result.identity(), result.data());
+      reused += result.reused() ? 1 : 0;
+      cacheHits += result.cacheHit() ? 1 : 0;
+      cacheMisses += result.cacheMiss() ? 1 : 0;
+    }
+
+    final var zones = new ArrayList<SampleZone>(zoneDescriptions.size());
+    for (final var zone : zoneDescriptions) {
+      final var fileIndex = fileIndices.get(zone.file()).intValue();
+      zones.add(new SampleZone(
+        results[fileIndex].data(),
+        zone.rootNote(),
+        zone.noteLow(),
+        zone.noteHigh(),
+        zone.velocityLow(),
+        zone.velocityHigh(),
+        1.0
+      ));
+    }
+
+    return new SampleMap(
+      SampleZoneTable.ofZones(zones, this.tuning),
+      this,
+      sampleRate,
+      new SampleMapLoadStatistics(count, reused, cacheHits, cacheMisses),
+      filesLoaded
+    );
+  }
+
+  /**
+   * All of the zones in the description. The explicitly declared
+   * {@link #zones} come first, so that they win wherever they overlap the
+   * zones made from {@link #filesByNote} (see
+   * {@link SampleZoneTable#ofZones(List, TuningTable)}). Each file in
+   * {@link #filesByNote} then becomes a zone rooted at its note that covers
+   * every velocity, and every note from the note above the previous file's
+   * note up to its own note. The lowest file also covers every note below
+   * it, and the highest file every note above it. The file zones therefore
+   * only sound for the notes and velocities that no explicit zone covers.
+   *
+   * @return The zones
+   */
+
+  public List<SampleZoneDescription> zonesAll()
+  {
+    final var results =
+      new ArrayList<SampleZoneDescription>(
+        this.filesByNote.size() + this.zones.size());
+
+    results.addAll(this.zones);
+
+    final var notes = this.filesByNote.keySet().toIntArray();
+    for (int index = 0; index < notes.length; ++index) {
+      final var note = notes[index];
+      final var low = index == 0 ? 0 : notes[index - 1] + 1;
+      final var high = index == notes.length - 1 ? 127 : note;
+      results.add(new SampleZoneDescription(
+        this.filesByNote.get(note),
+        note,
+        low,
+        high,
+        0,
+        127
+      ));
+    }
+
+    return List.copyOf(results);
+  }
+
+  private static int[] loadOrder(
+    final int[] notes,
+    final IntPredicate sounding)
+  {
+    final var distances = new int[notes.length];
+    for (int index = 0; index < notes.length; ++index) {
+      var distance = Integer.MAX_VALUE;
+      for (int note = 0; note <= 127; ++note) {
+        if (sounding.test(note)) {
+          distance = Math.min(distance, Math.abs(note - notes[index]));
         }
       }
+      distances[index] = distance;
+    }
+
+    return IntStream.range(0, notes.length)
+      .boxed()
+      .sorted(Comparator.comparingInt((Integer index) -> distances[index])
+                .thenComparingInt(index -> notes[index]))
+      .mapToInt(Integer::intValue)
+      .toArray();
+  }
+
+  private static void checkFailures(
+    final List<Path> files,
+    final int[] notes,
+    final Exception[] failures)
+    throws SampleBufferException
+  {
+    final var message = new StringBuilder(128);
+    var failed = 0;
+    for (int index = 0; index < failures.length; ++index) {
+      final var failure = failures[index];
+      if (failure != null) {
+        ++failed;
+        message.append(System.lineSeparator());
+        message.append("  Note ");
+        message.append(notes[index]);
+        message.append(" (");
+        message.append(files.get(index));
+        message.append("): ");
+        message.append(failure.getMessage());
+      }
+    }
+
+    if (failed == 0) {
+      return;
+    }
+
+    final var exception = new SampleBufferException(
+      "Failed to load %d of %d sample files.%s".formatted(
+        Integer.valueOf(failed),
+        Integer.valueOf(failures.length),
+        message)
+    );
+    for (final var failure : failures) {
+      if (failure != null) {
+        exception.addSuppressed(failure);
+      }
+    }
+    throw exception;
+  }
+
+  private record LoadedFile(
+    SampleFileIdentity identity,
+    SampleDataType data,
+    boolean reused,
+    boolean cacheHit,
+    boolean cacheMiss)
+  {
+
+  }
+
+  private LoadedFile loadFile(
+    final SampleMap previous,
+    final Path file,
+    final SampleBufferRateConverterType converter,
+    final int sampleRate,
+    final Optional<SampleResampleCache> cache)
+    throws IOException, UnsupportedAudioFileException, SampleBufferException
+  {
+    /*
+     * Take the identity before reading the file, so that a file modified
+     * during the read is loaded again next time.
+     */
+
+    final var identity = SampleFileIdentity.of(file);
+    final var existing = previous.fileLoaded(identity);
+    if (existing.isPresent()) {
+      final var data = existing.get();
+      if ((int) data.sampleRate() == sampleRate) {
+        return new LoadedFile(identity, data, true, false, false);
+      }
+    }
 
-      return new SampleMap(
-        sampleEntriesByNote,
-        this
+    final String key;
+    if (cache.isPresent()) {
+      key = SampleResampleCache.key(
+        file,
+        sampleRate,
+        converter.getClass().getName(),
+        this.format
       );
-    } catch (final IOException
-                   | UnsupportedAudioFileException
-                   | SampleBufferException e) {
-      throw new SampleBufferException(e);
+      final var cached = cache.get().find(key);
+      if (cached.isPresent()) {
+        return new LoadedFile(
+          identity,
+          this.sampleDataOf(cached.get()),
+          false,
+          true,
+          false
+        );
+      }
+    } else {
+      key = null;
+    }
+
+    final var sampleBuffer =
+      SXMSampleBuffers.sampleBufferOfFile(
+        file,
+        SampleBufferDouble::createWithHeapBuffer
+      );
+
+    final var currentRate = (int) sampleBuffer.sampleRate();
+    if (currentRate == sampleRate) {
+      return new LoadedFile(
+        identity,
+        this.sampleDataOf(SampleDataType.ofBuffer(sampleBuffer, this.format)),
+        false,
+        false,
+        false
+      );
+    }
+
+    final var outputBuffer = converter.convert(
+      SampleBufferDouble::createWithHeapBuffer,
+      sampleBuffer,
+      sampleRate
+    );
+    final var data = SampleDataType.ofBuffer(outputBuffer, this.format);
+    if (key != null) {
+      cache.get().store(key, data);
+    }
+    return new LoadedFile(
+      identity,
+      this.sampleDataOf(data),
+      false,
+      false,
+      key != null
+    );
+  }
+
+  /**
+   * Prepare sample data for use. If streaming is enabled, the data is
+   * spooled to disk and only the first few frames are kept in memory; the
+   * full data is discarded once this method returns, but its peak table is
+   * kept.
+   */
+
+  private SampleDataType sampleDataOf(
+    final SampleDataType data)
+    throws IOException
+  {
+    if (this.streaming.isEmpty()) {
+      return data;
+    }
+
+    final var configuration = this.streaming.get();
+    final var source =
+      SampleStreamSource.spool(configuration, data, this.format);
+
+    final var preloadFrames =
+      Math.min(configuration.preloadFrames(), data.frames());
+    final var left = new float[preloadFrames];
+    final var right = data.channels() == 2 ? new float[preloadFrames] : left;
+    for (int index = 0; index < preloadFrames; ++index) {
+      left[index] = data.sampleGet(0, index);
+      if (right != left) {
+        right[index] = data.sampleGet(1, index);
+      }
     }
+    return SampleDataType.ofStreamed(
+      data.sampleRate(),
+      left,
+      right,
+      source,
+      data.peaks()
+    );
   }
 }
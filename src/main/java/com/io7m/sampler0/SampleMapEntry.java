@@ -16,10 +16,8 @@
 
 package com.io7m.sampler0;
 
-import com.io7m.jsamplebuffer.api.SampleBufferType;
-
 public record SampleMapEntry(
-  SampleBufferType sample,
+  SampleDataType sample,
   double playbackRate)
 {
 
@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+/**
+ * Statistics gathered while loading a sample map.
+ *
+ * @param files       The number of sample files in the map
+ * @param filesReused The number of files whose data was carried over,
+ *                    unchanged, from the previously loaded map
+ * @param cacheHits   The number of files whose converted data was found in
+ *                    the resample cache
+ * @param cacheMisses The number of files that had to be rate-converted
+ */
+
+public record SampleMapLoadStatistics(
+  int files,
+  int filesReused,
+  int cacheHits,
+  int cacheMisses)
+{
+  public static SampleMapLoadStatistics empty()
+  {
+    return new SampleMapLoadStatistics(0, 0, 0, 0);
+  }
+}
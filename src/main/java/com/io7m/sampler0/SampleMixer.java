@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+
+/**
+ * <p>A block mixer for sampler voices.</p>
+ *
+ * <p>A voice renders a run of frames by first computing the source position
+ * of every output frame, then copying the span of source frames that those
+ * positions touch into a float window (converting, and reading from mapped
+ * or streamed storage, as necessary), and finally passing the window and the
+ * positions to a kernel that interpolates, applies the voice's envelope
+ * gain, and accumulates into the mix buffers. The kernel uses the
+ * {@code jdk.incubator.vector} module when it is available to the JVM (with
+ * {@code --add-modules jdk.incubator.vector}), and a scalar loop
+ * otherwise.</p>
+ *
+ * <p>A mixer holds scratch space, and so must only be used by one thread at
+ * a time.</p>
+ */
+
+public final class SampleMixer
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(SampleMixer.class);
+
+  /**
+   * The maximum number of frames rendered by one call to the kernel.
+   */
+
+  static final int BLOCK_FRAMES = 256;
+
+  /**
+   * The size of the source window. At rates above
+   * {@code WINDOW_FRAMES / BLOCK_FRAMES}, blocks are shortened so that their
+   * source frames fit in the window.
+   */
+
+  static final int WINDOW_FRAMES = 4096;
+
+  private static final boolean VECTOR_AVAILABLE =
+    ModuleLayer.boot()
+      .findModule("jdk.incubator.vector")
+      .isPresent();
+
+  private final SampleInterpolation interpolation;
+  private final SampleMixerKernelType kernel;
+  private final float[] windowL;
+  private final float[] windowR;
+  private final int[] positions;
+  private final float[] fractions;
+
+  private SampleMixer(
+    final SampleInterpolation inInterpolation,
+    final SampleMixerKernelType inKernel)
+  {
+    this.interpolation =
+      Objects.requireNonNull(inInterpolation, "interpolation");
+    this.kernel =
+      Objects.requireNonNull(inKernel, "kernel");
+    this.windowL =
+      new float[WINDOW_FRAMES];
+    this.windowR =
+      new float[WINDOW_FRAMES];
+    this.positions =
+      new int[BLOCK_FRAMES];
+    this.fractions =
+      new float[BLOCK_FRAMES];
+  }
+
+  /**
+   * Create a mixer, using the Vector API if it is available.
+   *
+   * @param interpolation The interpolation
+   *
+   * @return A mixer
+   */
+
+  public static SampleMixer create(
+    final SampleInterpolation interpolation)
+  {
+    if (VECTOR_AVAILABLE) {
+      try {
+        return new SampleMixer(
+          interpolation,
+          new SampleMixerKernelVector(interpolation)
+        );
+      } catch (final LinkageError e) {
+        LOG.warn("vector mixer unavailable: ", e);
+      }
+    }
+    return createScalar(interpolation);
+  }
+
+  /**
+   * Create a mixer that does not use the Vector API.
+   *
+   * @param interpolation The interpolation
+   *
+   * @return A mixer
+   */
+
+  public static SampleMixer createScalar(
+    final SampleInterpolation interpolation)
+  {
+    return new SampleMixer(
+      interpolation,
+      new SampleMixerKernelScalar(interpolation)
+    );
+  }
+
+  /**
+   * @return {@code true} if mixers created with
+   * {@link #create(SampleInterpolation)} use the Vector API
+   */
+
+  public static boolean isVectorAvailable()
+  {
+    return VECTOR_AVAILABLE;
+  }
+
+  public SampleInterpolation interpolation()
+  {
+    return this.interpolation;
+  }
+
+  /**
+   * @return {@code true} if this mixer uses the Vector API
+   */
+
+  public boolean isVectorized()
+  {
+    return !(this.kernel instanceof SampleMixerKernelScalar);
+  }
+
+  float[] windowLeft()
+  {
+    return this.windowL;
+  }
+
+  float[] windowRight()
+  {
+    return this.windowR;
+  }
+
+  int[] positions()
+  {
+    return this.positions;
+  }
+
+  float[] fractions()
+  {
+    return this.fractions;
+  }
+
+  void mix(
+    final float[] mixL,
+    final float[] mixR,
+    final int offset,
+    final int count,
+    final float gain,
+    final float gainStep)
+  {
+    this.kernel.mix(
+      this.windowL,
+      this.windowR,
+      this.positions,
+      this.fractions,
+      mixL,
+      mixR,
+      offset,
+      count,
+      gain,
+      gainStep
+    );
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Objects;
+
+/**
+ * A plain scalar mixer kernel, used when the Vector API is not available.
+ */
+
+final class SampleMixerKernelScalar implements SampleMixerKernelType
+{
+  private final SampleInterpolation interpolation;
+
+  SampleMixerKernelScalar(
+    final SampleInterpolation inInterpolation)
+  {
+    this.interpolation =
+      Objects.requireNonNull(inInterpolation, "interpolation");
+  }
+
+  static float linear(
+    final float[] window,
+    final int position,
+    final float fraction)
+  {
+    final var x0 = window[position];
+    final var x1 = window[position + 1];
+    return x0 + ((x1 - x0) * fraction);
+  }
+
+  static float cubic(
+    final float[] window,
+    final int position,
+    final float fraction)
+  {
+    final var xm = window[position - 1];
+    final var x0 = window[position];
+    final var x1 = window[position + 1];
+    final var x2 = window[position + 2];
+    final var c1 = 0.5f * (x1 - xm);
+    final var c2 = xm - (2.5f * x0) + (2.0f * x1) - (0.5f * x2);
+    final var c3 = (0.5f * (x2 - xm)) + (1.5f * (x0 - x1));
+    return (((((c3 * fraction) + c2) * fraction) + c1) * fraction) + x0;
+  }
+
+  @Override
+  public void mix(
+    final float[] windowL,
+    final float[] windowR,
+    final int[] positions,
+    final float[] fractions,
+    final float[] mixL,
+    final float[] mixR,
+    final int offset,
+    final int count,
+    final float gain,
+    final float gainStep)
+  {
+    switch (this.interpolation) {
+      case LINEAR -> {
+        for (int index = 0; index < count; ++index) {
+          final var position = positions[index];
+          final var fraction = fractions[index];
+          final var g = gain + (index * gainStep);
+          mixL[offset + index] += linear(windowL, position, fraction) * g;
+          mixR[offset + index] += linear(windowR, position, fraction) * g;
+        }
+      }
+      case CUBIC -> {
+        for (int index = 0; index < count; ++index) {
+          final var position = positions[index];
+          final var fraction = fractions[index];
+          final var g = gain + (index * gainStep);
+          mixL[offset + index] += cubic(windowL, position, fraction) * g;
+          mixR[offset + index] += cubic(windowR, position, fraction) * g;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+/**
+ * The inner loop of a {@link SampleMixer}.
+ */
+
+interface SampleMixerKernelType
+{
+  /**
+   * Interpolate {@code count} frames from the given windows, scale them by
+   * a linear gain ramp, and add them to the mix buffers. Frame {@code i} is
+   * read at position {@code positions[i] + fractions[i]} in the windows, and
+   * every position is at least {@code 1} and at most
+   * {@code window length - 3}. Frame {@code i} is scaled by
+   * {@code gain + i * gainStep}.
+   *
+   * @param windowL   The left window
+   * @param windowR   The right window
+   * @param positions The integer part of each position
+   * @param fractions The fractional part of each position
+   * @param mixL      The left mix buffer
+   * @param mixR      The right mix buffer
+   * @param offset    The offset of the first frame in the mix buffers
+   * @param count     The number of frames
+   * @param gain      The gain of the first frame
+   * @param gainStep  The amount by which the gain changes with each frame
+   */
+
+  void mix(
+    float[] windowL,
+    float[] windowR,
+    int[] positions,
+    float[] fractions,
+    float[] mixL,
+    float[] mixR,
+    int offset,
+    int count,
+    float gain,
+    float gainStep);
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Objects;
+
+/**
+ * A mixer kernel that interpolates one lane per frame using the Vector API.
+ * The window frames around each position (the "taps") are first copied
+ * into contiguous scratch arrays with a scalar loop, and the interpolation
+ * and accumulation then run on whole vectors. Gathering through the
+ * position array with the Vector API directly is not intrinsified by JDK 17
+ * and allocates on every call. Frames that do not fill a whole vector are
+ * handled by the scalar kernel.
+ *
+ * <p>This class must only be loaded when the {@code jdk.incubator.vector}
+ * module is present; see {@link SampleMixer#create(SampleInterpolation)}.</p>
+ */
+
+final class SampleMixerKernelVector implements SampleMixerKernelType
+{
+  private static final VectorSpecies<Float> SPECIES =
+    FloatVector.SPECIES_PREFERRED;
+
+  private static final float[] RAMP =
+    ramp();
+
+  private final SampleInterpolation interpolation;
+  private final float[] tapM;
+  private final float[] tap0;
+  private final float[] tap1;
+  private final float[] tap2;
+
+  SampleMixerKernelVector(
+    final SampleInterpolation inInterpolation)
+  {
+    this.interpolation =
+      Objects.requireNonNull(inInterpolation, "interpolation");
+    this.tapM = new float[SampleMixer.BLOCK_FRAMES];
+    this.tap0 = new float[SampleMixer.BLOCK_FRAMES];
+    this.tap1 = new float[SampleMixer.BLOCK_FRAMES];
+    this.tap2 = new float[SampleMixer.BLOCK_FRAMES];
+  }
+
+  private static float[] ramp()
+  {
+    final var ramp = new float[SampleMixer.BLOCK_FRAMES];
+    for (int index = 0; index < ramp.length; ++index) {
+      ramp[index] = index;
+    }
+    return ramp;
+  }
+
+  @Override
+  public void mix(
+    final float[] windowL,
+    final float[] windowR,
+    final int[] positions,
+    final float[] fractions,
+    final float[] mixL,
+    final float[] mixR,
+    final int offset,
+    final int count,
+    final float gain,
+    final float gainStep)
+  {
+    switch (this.interpolation) {
+      case LINEAR -> {
+        this.linear(
+          windowL, positions, fractions, mixL, offset, count, gain, gainStep);
+        this.linear(
+          windowR, positions, fractions, mixR, offset, count, gain, gainStep);
+      }
+      case CUBIC -> {
+        this.cubic(
+          windowL, positions, fractions, mixL, offset, count, gain, gainStep);
+        this.cubic(
+          windowR, positions, fractions, mixR, offset, count, gain, gainStep);
+      }
+    }
+  }
+
+  private void linear(
+    final float[] window,
+    final int[] positions,
+    final float[] fractions,
+    final float[] mix,
+    final int offset,
+    final int count,
+    final float gain,
+    final float gainStep)
+  {
+    final var t0 = this.tap0;
+    final var t1 = this.tap1;
+    for (int index = 0; index < count; ++index) {
+      final var position = positions[index];
+      t0[index] = window[position];
+      t1[index] = window[position + 1];
+    }
+
+    final var upper = SPECIES.loopBound(count);
+    var index = 0;
+    for (; index < upper; index += SPECIES.length()) {
+      final var f = FloatVector.fromArray(SPECIES, fractions, index);
+      final var x0 = FloatVector.fromArray(SPECIES, t0, index);
+      final var x1 = FloatVector.fromArray(SPECIES, t1, index);
+      final var m = FloatVector.fromArray(SPECIES, mix, offset + index);
+      final var g = FloatVector.fromArray(SPECIES, RAMP, index)
+        .fma(gainStep, gain);
+      x1.sub(x0)
+        .fma(f, x0)
+        .fma(g, m)
+        .intoArray(mix, offset + index);
+    }
+    for (; index < count; ++index) {
+      mix[offset + index] +=
+        SampleMixerKernelScalar.linear(window, positions[index], fractions[index])
+        * (gain + (index * gainStep));
+    }
+  }
+
+  private void cubic(
+    final float[] window,
+    final int[] positions,
+    final float[] fractions,
+    final float[] mix,
+    final int offset,
+    final int count,
+    final float gain,
+    final float gainStep)
+  {
+    final var tm = this.tapM;
+    final var t0 = this.tap0;
+    final var t1 = this.tap1;
+    final var t2 = this.tap2;
+    for (int index = 0; index < count; ++index) {
+      final var position = positions[index];
+      tm[index] = window[position - 1];
+      t0[index] = window[position];
+      t1[index] = window[position + 1];
+      t2[index] = window[position + 2];
+    }
+
+    final var upper = SPECIES.loopBound(count);
+    var index = 0;
+    for (; index < upper; index += SPECIES.length()) {
+      final var f = FloatVector.fromArray(SPECIES, fractions, index);
+      final var xm = FloatVector.fromArray(SPECIES, tm, index);
+      final var x0 = FloatVector.fromArray(SPECIES, t0, index);
+      final var x1 = FloatVector.fromArray(SPECIES, t1, index);
+      final var x2 = FloatVector.fromArray(SPECIES, t2, index);
+      final var m = FloatVector.fromArray(SPECIES, mix, offset + index);
+      final var g = FloatVector.fromArray(SPECIES, RAMP, index)
+        .fma(gainStep, gain);
+
+      final var c1 =
+        x1.sub(xm).mul(0.5f);
+      final var c2 =
+        xm.sub(x0.mul(2.5f)).add(x1.mul(2.0f)).sub(x2.mul(0.5f));
+      final var c3 =
+        x2.sub(xm).mul(0.5f).add(x0.sub(x1).mul(1.5f));
+
+      c3.fma(f, c2)
+        .fma(f, c1)
+        .fma(f, x0)
+        .fma(g, m)
+        .intoArray(mix, offset + index);
+    }
+    for (; index < count; ++index) {
+      mix[offset + index] +=
+        SampleMixerKernelScalar.cubic(window, positions[index], fractions[index])
+        * (gain + (index * gainStep));
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <p>The peak table of a sample, computed when the sample is loaded.</p>
+ *
+ * <p>The table holds the peak absolute value, over both channels, of each
+ * block of {@link #BLOCK_FRAMES} frames. It also holds the peak of each
+ * block and every block after it, which never increases along the sample,
+ * so the point at which the rest of a sample falls below a given threshold
+ * can be found with a binary search when a voice starts. Voices use the
+ * table to stop at the end of the audible tail of a sample, and to skip
+ * mixing blocks that are below the threshold.</p>
+ */
+
+public final class SamplePeaks
+{
+  /**
+   * The number of frames in each block of the table.
+   */
+
+  public static final int BLOCK_FRAMES = 256;
+
+  private final int frames;
+  private final float[] peaks;
+  private final float[] tails;
+
+  private SamplePeaks(
+    final int inFrames,
+    final float[] inPeaks)
+  {
+    this.frames = inFrames;
+    this.peaks = inPeaks;
+    this.tails = new float[inPeaks.length];
+
+    var tail = 0.0f;
+    for (int block = inPeaks.length - 1; block >= 0; --block) {
+      tail = Math.max(tail, inPeaks[block]);
+      this.tails[block] = tail;
+    }
+  }
+
+  /**
+   * @param frames The number of frames
+   *
+   * @return The number of blocks in the table of a sample of the given length
+   */
+
+  public static int blocksOf(
+    final int frames)
+  {
+    return (frames + (BLOCK_FRAMES - 1)) / BLOCK_FRAMES;
+  }
+
+  /**
+   * Create a table from existing block peaks, such as those stored in a
+   * compiled library.
+   *
+   * @param frames The number of frames in the sample
+   * @param peaks  The peak of each block
+   *
+   * @return A peak table
+   */
+
+  public static SamplePeaks ofPeaks(
+    final int frames,
+    final float[] peaks)
+  {
+    Objects.requireNonNull(peaks, "peaks");
+    if (peaks.length != blocksOf(frames)) {
+      throw new IllegalArgumentException(
+        "Expected %d blocks for %d frames, but received %d".formatted(
+          Integer.valueOf(blocksOf(frames)),
+          Integer.valueOf(frames),
+          Integer.valueOf(peaks.length))
+      );
+    }
+    return new SamplePeaks(frames, peaks.clone());
+  }
+
+  /**
+   * Create a table for data whose peaks are not known. Every block is
+   * treated as audible.
+   *
+   * @param frames The number of frames in the sample
+   *
+   * @return A peak table
+   */
+
+  public static SamplePeaks unknown(
+    final int frames)
+  {
+    final var peaks = new float[blocksOf(frames)];
+    Arrays.fill(peaks, Float.POSITIVE_INFINITY);
+    return new SamplePeaks(frames, peaks);
+  }
+
+  /**
+   * Analyze sample data. Streamed data cannot be analyzed, because only the
+   * start of it is held in memory; it must be analyzed before it is
+   * spooled.
+   *
+   * @param data The sample data
+   *
+   * @return A peak table
+   */
+
+  public static SamplePeaks analyze(
+    final SampleDataType data)
+  {
+    if (data instanceof SampleDataStreamed) {
+      throw new IllegalArgumentException(
+        "Streamed sample data cannot be analyzed.");
+    }
+
+    final var frames = data.frames();
+    final var peaks = new float[blocksOf(frames)];
+    for (int block = 0; block < peaks.length; ++block) {
+      final var start = block * BLOCK_FRAMES;
+      final var end = Math.min(frames, start + BLOCK_FRAMES);
+      var peak = 0.0f;
+      for (int channel = 0; channel < data.channels(); ++channel) {
+        for (int index = start; index < end; ++index) {
+          peak = Math.max(peak, Math.abs(data.sampleGet(channel, index)));
+        }
+      }
+      peaks[block] = peak;
+    }
+    return new SamplePeaks(frames, peaks);
+  }
+
+  /**
+   * @param decibels A level in dBFS
+   *
+   * @return The level as a linear amplitude; {@code 0} for negative infinity
+   */
+
+  public static float amplitudeOf(
+    final double decibels)
+  {
+    return (float) Math.pow(10.0, decibels / 20.0);
+  }
+
+  /**
+   * @return The number of frames in the sample
+   */
+
+  public int frames()
+  {
+    return this.frames;
+  }
+
+  /**
+   * @return The number of blocks in the table
+   */
+
+  public int blocks()
+  {
+    return this.peaks.length;
+  }
+
+  /**
+   * @param block The block
+   *
+   * @return The peak absolute value of the block
+   */
+
+  public float peak(
+    final int block)
+  {
+    return this.peaks[block];
+  }
+
+  /**
+   * @param frameLow  The first frame (inclusive)
+   * @param frameHigh The last frame (exclusive)
+   *
+   * @return The peak absolute value of the blocks that contain the given
+   * frames; frames outside the sample are silent
+   */
+
+  public float peakOf(
+    final int frameLow,
+    final int frameHigh)
+  {
+    final var blockLow =
+      Math.max(0, frameLow) / BLOCK_FRAMES;
+    final var blockHigh =
+      Math.min(this.peaks.length, blocksOf(Math.min(frameHigh, this.frames)));
+
+    var peak = 0.0f;
+    for (int block = blockLow; block < blockHigh; ++block) {
+      peak = Math.max(peak, this.peaks[block]);
+    }
+    return peak;
+  }
+
+  /**
+   * Find the end of the audible part of the sample: the end of the last
+   * block whose peak is at least {@code threshold}. Every frame after this
+   * point is quieter than the threshold.
+   *
+   * @param threshold The threshold, as a linear amplitude
+   *
+   * @return The number of audible frames
+   */
+
+  public int audibleFrames(
+    final float threshold)
+  {
+    /*
+     * Find the first block at which the rest of the sample is below the
+     * threshold.
+     */
+
+    var low = 0;
+    var high = this.tails.length;
+    while (low < high) {
+      final var middle = (low + high) >>> 1;
+      if (this.tails[middle] < threshold) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return Math.min(this.frames, low * BLOCK_FRAMES);
+  }
+}
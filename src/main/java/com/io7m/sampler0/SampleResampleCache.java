@@ -0,0 +1,450 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * <p>An on-disk cache of rate-converted sample data.</p>
+ *
+ * <p>Entries are keyed by the absolute path, modification time, and size of
+ * the source file, the target sample rate, the identity of the rate
+ * converter, and the sample format. An entry therefore becomes unreachable
+ * as soon as its source file changes. Each entry is a single file holding a
+ * 32 octet little-endian header (magic number, version, format ordinal,
+ * channel count, frame count, padding, sample rate) followed by planar
+ * channel data.</p>
+ *
+ * <p>The total size of the cache is capped. The modification time of each
+ * entry is updated whenever the entry is used, and the least recently used
+ * entries are deleted when a new entry would exceed the cap.</p>
+ */
+
+public final class SampleResampleCache
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(SampleResampleCache.class);
+
+  private static final int MAGIC = 0x53305243;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 32;
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final String SUFFIX = ".s0rc";
+
+  private final Path directory;
+  private final long sizeLimit;
+
+  /**
+   * Create a cache.
+   *
+   * @param inDirectory The cache directory
+   * @param inSizeLimit The maximum total size of the cache in octets
+   */
+
+  public SampleResampleCache(
+    final Path inDirectory,
+    final long inSizeLimit)
+  {
+    this.directory =
+      Objects.requireNonNull(inDirectory, "directory");
+
+    if (inSizeLimit <= 0L) {
+      throw new IllegalArgumentException("Size limit must be positive.");
+    }
+
+    this.sizeLimit = inSizeLimit;
+  }
+
+  /**
+   * Determine the cache key for a source file.
+   *
+   * @param file      The source file
+   * @param rate      The target sample rate
+   * @param converter The identity of the rate converter
+   * @param format    The sample format
+   *
+   * @return The key
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static String key(
+    final Path file,
+    final int rate,
+    final String converter,
+    final SampleFormat format)
+    throws IOException
+  {
+    final var absolute = file.toAbsolutePath();
+    final var identity =
+      String.join(
+        "\n",
+        absolute.toString(),
+        Long.toString(Files.getLastModifiedTime(absolute).toMillis()),
+        Long.toString(Files.size(absolute)),
+        Integer.toString(rate),
+        converter,
+        format.name()
+      );
+
+    try {
+      final var digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of()
+        .formatHex(digest.digest(identity.getBytes(StandardCharsets.UTF_8)));
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Find converted data for the given key.
+   *
+   * @param key The key
+   *
+   * @return The data, if cached
+   */
+
+  public Optional<SampleDataArray> find(
+    final String key)
+  {
+    final var file = this.directory.resolve(key + SUFFIX);
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+
+    try {
+      final var data = read(file);
+      Files.setLastModifiedTime(
+        file,
+        FileTime.fromMillis(System.currentTimeMillis())
+      );
+      return Optional.of(data);
+    } catch (final IOException e) {
+      LOG.warn("unreadable cache entry {}: ", file, e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Store converted data under the given key, evicting the least recently
+   * used entries if necessary. Failures are logged and otherwise ignored;
+   * the cache is only ever an optimization.
+   *
+   * @param key  The key
+   * @param data The data
+   */
+
+  public void store(
+    final String key,
+    final SampleDataArray data)
+  {
+    final long size;
+    try {
+      size = entrySize(data.format(), data.channels(), data.frames());
+    } catch (final ArithmeticException e) {
+      LOG.warn("cache entry {} is too large to store", key);
+      return;
+    }
+    if (size > this.sizeLimit) {
+      return;
+    }
+
+    try {
+      Files.createDirectories(this.directory);
+      final var temporary =
+        Files.createTempFile(this.directory, key, ".tmp");
+      try {
+        write(temporary, data);
+        Files.move(
+          temporary,
+          this.directory.resolve(key + SUFFIX),
+          ATOMIC_MOVE,
+          REPLACE_EXISTING
+        );
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+      this.evict();
+    } catch (final IOException e) {
+      LOG.warn("could not store cache entry {}: ", key, e);
+    }
+  }
+
+  private synchronized void evict()
+    throws IOException
+  {
+    record Entry(Path file, long size, long time)
+    {
+
+    }
+
+    final var entries = new ArrayList<Entry>();
+    var total = 0L;
+    try (var stream = Files.list(this.directory)) {
+      for (final var file : (Iterable<Path>) stream::iterator) {
+        if (!file.getFileName().toString().endsWith(SUFFIX)) {
+          continue;
+        }
+        final var size = Files.size(file);
+        total += size;
+        entries.add(new Entry(
+          file,
+          size,
+          Files.getLastModifiedTime(file).toMillis()));
+      }
+    }
+
+    entries.sort(Comparator.comparingLong(Entry::time));
+    for (final var entry : entries) {
+      if (total <= this.sizeLimit) {
+        break;
+      }
+      Files.deleteIfExists(entry.file());
+      total -= entry.size();
+    }
+  }
+
+  /**
+   * @param format   The sample format
+   * @param channels The channel count
+   * @param frames   The frame count
+   *
+   * @return The size in octets of an entry holding the given data
+   *
+   * @throws ArithmeticException If the size does not fit in a {@code long}
+   */
+
+  private static long entrySize(
+    final SampleFormat format,
+    final int channels,
+    final int frames)
+  {
+    final var bytesPerSample = format == SampleFormat.FLOAT32 ? 4L : 2L;
+    return Math.addExact(
+      HEADER_SIZE,
+      Math.multiplyExact(
+        Math.multiplyExact(bytesPerSample, (long) channels),
+        (long) frames)
+    );
+  }
+
+  /*
+   * Channel data is copied through a small buffer rather than staged in
+   * memory as a whole, so writing or reading an entry never needs more heap
+   * than the arrays of the sample itself.
+   */
+
+  private static void write(
+    final Path file,
+    final SampleDataArray data)
+    throws IOException
+  {
+    final var frames = data.frames();
+    final var channels = data.channels();
+    final var format = data.format();
+
+    final var header =
+      ByteBuffer.allocate(HEADER_SIZE)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.putInt(format.ordinal());
+    header.putInt(channels);
+    header.putInt(frames);
+    header.putInt(0);
+    header.putDouble(data.sampleRate());
+    header.flip();
+
+    final var buffer =
+      ByteBuffer.allocate(CHUNK_SIZE)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    try (var channel = FileChannel.open(file, WRITE)) {
+      writeFully(channel, header);
+
+      for (int index = 0; index < channels; ++index) {
+        final var left = index == 0;
+        switch (format) {
+          case FLOAT32 -> {
+            final var samples = left ? data.floatLeft() : data.floatRight();
+            final var view = buffer.clear().asFloatBuffer();
+            for (int base = 0; base < frames; base += view.capacity()) {
+              final var count = Math.min(view.capacity(), frames - base);
+              view.clear();
+              view.put(samples, base, count);
+              buffer.clear().limit(count * 4);
+              writeFully(channel, buffer);
+            }
+          }
+          case INT16 -> {
+            final var samples = left ? data.shortLeft() : data.shortRight();
+            final var view = buffer.clear().asShortBuffer();
+            for (int base = 0; base < frames; base += view.capacity()) {
+              final var count = Math.min(view.capacity(), frames - base);
+              view.clear();
+              view.put(samples, base, count);
+              buffer.clear().limit(count * 2);
+              writeFully(channel, buffer);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static void writeFully(
+    final FileChannel channel,
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void readFully(
+    final FileChannel channel,
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new IOException("Unexpected end of cache entry.");
+      }
+    }
+    buffer.flip();
+  }
+
+  private static SampleDataArray read(
+    final Path file)
+    throws IOException
+  {
+    try (var channel = FileChannel.open(file, READ)) {
+      final var size = channel.size();
+      if (size < HEADER_SIZE) {
+        throw new IOException("Bad cache entry size.");
+      }
+
+      final var header =
+        ByteBuffer.allocate(HEADER_SIZE)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      readFully(channel, header);
+
+      if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+        throw new IOException("Bad cache entry header.");
+      }
+
+      final var formats = SampleFormat.values();
+      final var formatIndex = header.getInt();
+      if (formatIndex < 0 || formatIndex >= formats.length) {
+        throw new IOException("Bad cache entry format.");
+      }
+      final var format = formats[formatIndex];
+      final var channels = header.getInt();
+      final var frames = header.getInt();
+      header.getInt();
+      final var rate = header.getDouble();
+
+      if ((channels != 1 && channels != 2)
+          || frames <= 0
+          || entrySize(format, channels, frames) != size) {
+        throw new IOException("Bad cache entry layout.");
+      }
+
+      final var buffer =
+        ByteBuffer.allocate(CHUNK_SIZE)
+          .order(ByteOrder.LITTLE_ENDIAN);
+
+      return switch (format) {
+        case FLOAT32 -> {
+          final var left = readFloats(channel, buffer, frames);
+          var right = left;
+          if (channels == 2) {
+            right = readFloats(channel, buffer, frames);
+          }
+          yield SampleDataType.ofFloat(rate, left, right);
+        }
+        case INT16 -> {
+          final var left = readShorts(channel, buffer, frames);
+          var right = left;
+          if (channels == 2) {
+            right = readShorts(channel, buffer, frames);
+          }
+          yield SampleDataType.ofShort(rate, left, right);
+        }
+      };
+    }
+  }
+
+  private static float[] readFloats(
+    final FileChannel channel,
+    final ByteBuffer buffer,
+    final int frames)
+    throws IOException
+  {
+    final var samples = new float[frames];
+    final var step = buffer.capacity() / 4;
+    for (int base = 0; base < frames; base += step) {
+      final var count = Math.min(step, frames - base);
+      buffer.clear().limit(count * 4);
+      readFully(channel, buffer);
+      buffer.asFloatBuffer().get(samples, base, count);
+    }
+    return samples;
+  }
+
+  private static short[] readShorts(
+    final FileChannel channel,
+    final ByteBuffer buffer,
+    final int frames)
+    throws IOException
+  {
+    final var samples = new short[frames];
+    final var step = buffer.capacity() / 2;
+    for (int base = 0; base < frames; base += step) {
+      final var count = Math.min(step, frames - base);
+      buffer.clear().limit(count * 2);
+      readFully(channel, buffer);
+      buffer.asShortBuffer().get(samples, base, count);
+    }
+    return samples;
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A ring buffer through which a single voice reads a
+ * {@link SampleStreamSource}.</p>
+ *
+ * <p>The ring is a single-producer single-consumer buffer: the refill thread
+ * writes frames and publishes them by advancing {@code writePosition}, and
+ * the voice reads them and publishes its progress by advancing
+ * {@code readPosition}. Positions are absolute frame indices into the
+ * sample, so frame {@code f} lives at ring index {@code f & mask}. The refill
+ * thread never writes more than {@code bufferFrames - MARGIN} frames ahead of
+ * the voice.</p>
+ *
+ * <p>Ownership is handed over with {@code state}: the audio thread may only
+ * acquire a {@code FREE} stream, and only the refill thread moves a released
+ * stream back to {@code FREE}, so the refill thread can never be writing into
+ * a stream that a new voice has acquired.</p>
+ */
+
+public final class SampleStream
+{
+  static final int STATE_FREE = 0;
+  static final int STATE_ACTIVE = 1;
+  static final int STATE_RELEASING = 2;
+
+  private static final int MARGIN = 4;
+
+  private volatile int state;
+  private SampleStreamSource source;
+  private float[] ringL;
+  private float[] ringR;
+  private volatile long readPosition;
+  private volatile long writePosition;
+  private volatile long underruns;
+  private boolean primed;
+  private boolean failed;
+
+  SampleStream()
+  {
+    this.state = STATE_FREE;
+  }
+
+  int state()
+  {
+    return this.state;
+  }
+
+  void acquire(
+    final SampleStreamSource inSource,
+    final long startFrame)
+  {
+    this.source = inSource;
+    this.readPosition = startFrame;
+    this.writePosition = startFrame;
+    this.state = STATE_ACTIVE;
+  }
+
+  void release()
+  {
+    this.state = STATE_RELEASING;
+  }
+
+  void reclaim()
+  {
+    this.source = null;
+    this.primed = false;
+    this.failed = false;
+    this.state = STATE_FREE;
+  }
+
+  /**
+   * @return The position one past the last frame available to the voice
+   */
+
+  public long writePosition()
+  {
+    return this.writePosition;
+  }
+
+  /**
+   * @return The lowest frame that the voice may still read
+   */
+
+  public long readPosition()
+  {
+    return this.readPosition;
+  }
+
+  void readPositionSet(
+    final long position)
+  {
+    this.readPosition = position;
+  }
+
+  /**
+   * @return The left ring buffer; only valid after a non-initial
+   * {@link #writePosition()} has been observed
+   */
+
+  public float[] ringLeft()
+  {
+    return this.ringL;
+  }
+
+  /**
+   * @return The right ring buffer; only valid after a non-initial
+   * {@link #writePosition()} has been observed
+   */
+
+  public float[] ringRight()
+  {
+    return this.ringR;
+  }
+
+  void underrun()
+  {
+    this.underruns = this.underruns + 1L;
+  }
+
+  /**
+   * @return The number of render blocks in which the voice needed frames that
+   * had not yet been read from disk
+   */
+
+  public long underruns()
+  {
+    return this.underruns;
+  }
+
+  /**
+   * @return The number of frames buffered ahead of the voice
+   */
+
+  public long lead()
+  {
+    return this.writePosition - this.readPosition;
+  }
+
+  /**
+   * @return {@code true} if the stream has been refilled at least once since
+   * it was acquired, and has more to read
+   */
+
+  boolean isStreaming()
+  {
+    final var current = this.source;
+    return this.primed
+           && !this.failed
+           && current != null
+           && this.writePosition < current.frames();
+  }
+
+  void fail()
+  {
+    this.failed = true;
+  }
+
+  /**
+   * Read at most {@code chunkFrames} frames ahead of the voice. This must
+   * only be called from the refill thread.
+   *
+   * @param scratch     A scratch buffer
+   * @param chunkFrames The maximum number of frames to read
+   *
+   * @return {@code true} if any frames were read
+   *
+   * @throws IOException On I/O errors
+   */
+
+  boolean refill(
+    final ByteBuffer scratch,
+    final int chunkFrames)
+    throws IOException
+  {
+    if (this.failed) {
+      return false;
+    }
+
+    final var current = this.source;
+    final var size = current.bufferFrames();
+    if (this.ringL == null || this.ringL.length != size) {
+      this.ringL = new float[size];
+      this.ringR = new float[size];
+    }
+
+    final var write = this.writePosition;
+    final var limit =
+      Math.min((long) current.frames(), this.readPosition + size - MARGIN);
+    final var wanted =
+      Math.min(limit - write, chunkFrames);
+
+    if (wanted <= 0L) {
+      return false;
+    }
+
+    final var count = (int) wanted;
+    current.read(write, count, scratch, this.ringL, this.ringR);
+    this.writePosition = write + count;
+    this.primed = true;
+    return true;
+  }
+}
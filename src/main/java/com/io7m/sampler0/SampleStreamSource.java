@@ -0,0 +1,253 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Objects;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The on-disk part of a streamed sample: little-endian planar channel data
+ * in a spool file, read with positioned reads so that any number of streams
+ * may read from the same file concurrently.
+ */
+
+public final class SampleStreamSource
+{
+  private final FileChannel channel;
+  private final SampleFormat format;
+  private final int channels;
+  private final int frames;
+  private final long offsetL;
+  private final long offsetR;
+  private final int bufferFrames;
+
+  private SampleStreamSource(
+    final FileChannel inChannel,
+    final SampleFormat inFormat,
+    final int inChannels,
+    final int inFrames,
+    final long inOffsetL,
+    final long inOffsetR,
+    final int inBufferFrames)
+  {
+    this.channel = Objects.requireNonNull(inChannel, "channel");
+    this.format = Objects.requireNonNull(inFormat, "format");
+    this.channels = inChannels;
+    this.frames = inFrames;
+    this.offsetL = inOffsetL;
+    this.offsetR = inOffsetR;
+    this.bufferFrames = inBufferFrames;
+  }
+
+  /**
+   * Spool the given sample data to a new file in the configured spool
+   * directory. The file is deleted when it is no longer in use.
+   *
+   * @param configuration The streaming configuration
+   * @param data          The decoded sample data
+   * @param format        The format of the spooled data
+   *
+   * @return A stream source
+   *
+   * @throws IOException              On I/O errors
+   * @throws IllegalArgumentException If the data is already streamed
+   */
+
+  public static SampleStreamSource spool(
+    final SampleStreamingConfiguration configuration,
+    final SampleDataType data,
+    final SampleFormat format)
+    throws IOException
+  {
+    if (data instanceof SampleDataStreamed) {
+      throw new IllegalArgumentException(
+        "Streamed sample data cannot be spooled.");
+    }
+
+    final var directory = configuration.spoolDirectory();
+    Files.createDirectories(directory);
+
+    final var file =
+      Files.createTempFile(directory, "sampler0-", ".spool");
+    final var channel =
+      FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE);
+
+    final var bytesPerSample = bytesPerSample(format);
+    final var planeSize = bytesPerSample * data.frames();
+    final var chunk =
+      ByteBuffer.allocateDirect(65536)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    writePlane(channel, chunk, data, 0, format, 0L);
+    if (data.channels() == 2) {
+      writePlane(channel, chunk, data, 1, format, planeSize);
+    }
+
+    return new SampleStreamSource(
+      channel,
+      format,
+      data.channels(),
+      data.frames(),
+      0L,
+      data.channels() == 2 ? planeSize : 0L,
+      configuration.bufferFrames()
+    );
+  }
+
+  private static long bytesPerSample(
+    final SampleFormat format)
+  {
+    return switch (format) {
+      case FLOAT32 -> 4L;
+      case INT16 -> 2L;
+    };
+  }
+
+  private static void writePlane(
+    final FileChannel channel,
+    final ByteBuffer chunk,
+    final SampleDataType data,
+    final int channelIndex,
+    final SampleFormat format,
+    final long offset)
+    throws IOException
+  {
+    var position = offset;
+    chunk.clear();
+    for (int index = 0; index < data.frames(); ++index) {
+      final var value = data.sampleGet(channelIndex, index);
+      switch (format) {
+        case FLOAT32 -> chunk.putFloat(value);
+        case INT16 -> {
+          final var scaled = Math.round(value * 32768.0);
+          chunk.putShort((short) Math.max(-32768L, Math.min(32767L, scaled)));
+        }
+      }
+      if (chunk.remaining() < 4) {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+          position += channel.write(chunk, position);
+        }
+        chunk.clear();
+      }
+    }
+    chunk.flip();
+    while (chunk.hasRemaining()) {
+      position += channel.write(chunk, position);
+    }
+  }
+
+  public int channels()
+  {
+    return this.channels;
+  }
+
+  public int frames()
+  {
+    return this.frames;
+  }
+
+  /**
+   * @return The size in frames of the ring buffer used to stream this source
+   */
+
+  public int bufferFrames()
+  {
+    return this.bufferFrames;
+  }
+
+  /**
+   * Read {@code count} frames starting at {@code frame} into the given ring
+   * buffers, starting at ring index {@code frame & mask}.
+   *
+   * @param frame   The first frame
+   * @param count   The number of frames
+   * @param scratch A scratch buffer large enough for one channel of
+   *                {@code count} frames
+   * @param ringL   The left ring buffer
+   * @param ringR   The right ring buffer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void read(
+    final long frame,
+    final int count,
+    final ByteBuffer scratch,
+    final float[] ringL,
+    final float[] ringR)
+    throws IOException
+  {
+    this.readPlane(this.offsetL, frame, count, scratch, ringL);
+    if (this.channels == 2) {
+      this.readPlane(this.offsetR, frame, count, scratch, ringR);
+    } else {
+      final var mask = ringL.length - 1;
+      for (int index = 0; index < count; ++index) {
+        final var ringIndex = (int) ((frame + index) & mask);
+        ringR[ringIndex] = ringL[ringIndex];
+      }
+    }
+  }
+
+  private void readPlane(
+    final long planeOffset,
+    final long frame,
+    final int count,
+    final ByteBuffer scratch,
+    final float[] ring)
+    throws IOException
+  {
+    final var bytesPerSample = bytesPerSample(this.format);
+    final var start = planeOffset + (frame * bytesPerSample);
+
+    scratch.clear();
+    scratch.limit((int) (count * bytesPerSample));
+    while (scratch.hasRemaining()) {
+      final var read =
+        this.channel.read(scratch, start + scratch.position());
+      if (read < 0) {
+        throw new IOException("Unexpected end of spool file.");
+      }
+    }
+    scratch.flip();
+
+    final var mask = ring.length - 1;
+    switch (this.format) {
+      case FLOAT32 -> {
+        for (int index = 0; index < count; ++index) {
+          ring[(int) ((frame + index) & mask)] = scratch.getFloat();
+        }
+      }
+      case INT16 -> {
+        final var scale = SampleDataType.shortScale();
+        for (int index = 0; index < count; ++index) {
+          ring[(int) ((frame + index) & mask)] = scratch.getShort() * scale;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A fixed set of {@link SampleStream} instances and the refill loop that
+ * services them.</p>
+ *
+ * <p>The audio thread acquires and releases streams without locking or
+ * allocating. The refill loop runs as a single long-running operation on the
+ * audio context's I/O executor, reading ahead of every active stream with
+ * positioned reads, and parking briefly when there is nothing to do.</p>
+ */
+
+public final class SampleStreamer
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(SampleStreamer.class);
+
+  private static final int CHUNK_FRAMES = 4096;
+  private static final long IDLE_PARK_NANOS = 500_000L;
+
+  private final SampleStream[] streams;
+  private final AtomicBoolean started;
+  private volatile long streamsUnavailable;
+  private volatile long leadMinimum;
+  private volatile long errors;
+  private volatile long passesIdle;
+  private volatile boolean closed;
+
+  public SampleStreamer(
+    final int count)
+  {
+    if (count <= 0) {
+      throw new IllegalArgumentException("Stream count must be positive.");
+    }
+
+    this.streams = new SampleStream[count];
+    for (int index = 0; index < count; ++index) {
+      this.streams[index] = new SampleStream();
+    }
+    this.started = new AtomicBoolean(false);
+    this.leadMinimum = Long.MAX_VALUE;
+  }
+
+  /**
+   * Start the refill loop on the context's I/O executor, if it is not
+   * already running.
+   *
+   * @param context The audio context
+   */
+
+  public void start(
+    final AudioContextType context)
+  {
+    if (this.started.compareAndSet(false, true)) {
+      context.executeIO(() -> {
+        this.run();
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Acquire a stream for the given source. This must only be called from the
+   * audio thread.
+   *
+   * @param source     The source
+   * @param startFrame The first frame that will be read through the stream
+   *
+   * @return A stream, or {@code null} if none are free
+   */
+
+  public SampleStream acquire(
+    final SampleStreamSource source,
+    final long startFrame)
+  {
+    for (final var stream : this.streams) {
+      if (stream.state() == SampleStream.STATE_FREE) {
+        stream.acquire(source, startFrame);
+        return stream;
+      }
+    }
+    this.streamsUnavailable = this.streamsUnavailable + 1L;
+    return null;
+  }
+
+  /**
+   * Release a stream. The stream becomes available again once the refill
+   * loop has seen the release.
+   *
+   * @param stream The stream
+   */
+
+  public void release(
+    final SampleStream stream)
+  {
+    stream.release();
+  }
+
+  private void run()
+  {
+    final var scratch =
+      ByteBuffer.allocateDirect(CHUNK_FRAMES * 4)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    while (!this.closed) {
+      var worked = false;
+      var leadLowest = Long.MAX_VALUE;
+
+      for (final var stream : this.streams) {
+        switch (stream.state()) {
+          case SampleStream.STATE_RELEASING -> stream.reclaim();
+          case SampleStream.STATE_ACTIVE -> {
+            if (stream.isStreaming()) {
+              leadLowest = Math.min(leadLowest, stream.lead());
+            }
+            try {
+              worked |= stream.refill(scratch, CHUNK_FRAMES);
+            } catch (final IOException e) {
+              this.errors = this.errors + 1L;
+              LOG.error("stream refill: ", e);
+              stream.fail();
+            }
+          }
+          default -> {
+
+          }
+        }
+      }
+
+      if (leadLowest < this.leadMinimum) {
+        this.leadMinimum = leadLowest;
+      }
+      if (!worked) {
+        this.passesIdle = this.passesIdle + 1L;
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Stop the refill loop. Streams are not refilled after this method is
+   * called.
+   */
+
+  public void close()
+  {
+    this.closed = true;
+  }
+
+  /**
+   * @return The total number of underruns across all streams
+   */
+
+  public long underruns()
+  {
+    var total = 0L;
+    for (final var stream : this.streams) {
+      total += stream.underruns();
+    }
+    return total;
+  }
+
+  /**
+   * @return The smallest number of frames that any stream has been buffered
+   * ahead of its voice when the refill loop came back to it, or
+   * {@link Long#MAX_VALUE} if no stream has been active
+   */
+
+  public long prefetchLeadMinimum()
+  {
+    return this.leadMinimum;
+  }
+
+  /**
+   * @return The number of times a voice could not acquire a stream and so
+   * played only the preloaded part of its sample
+   */
+
+  public long streamsUnavailable()
+  {
+    return this.streamsUnavailable;
+  }
+
+  /**
+   * @return The number of failed reads
+   */
+
+  public long errors()
+  {
+    return this.errors;
+  }
+
+  /**
+   * @return The number of refill passes that found every active stream
+   * already full
+   */
+
+  public long passesIdle()
+  {
+    return this.passesIdle;
+  }
+
+  public int size()
+  {
+    return this.streams.length;
+  }
+}
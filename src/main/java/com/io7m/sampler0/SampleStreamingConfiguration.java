@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * The configuration for streaming samples from disk.
+ *
+ * @param preloadFrames  The number of frames at the start of each sample that
+ *                       are kept in memory
+ * @param bufferFrames   The size in frames of each voice's ring buffer; must
+ *                       be a power of two
+ * @param spoolDirectory The directory in which decoded sample data is
+ *                       spooled for streaming
+ */
+
+public record SampleStreamingConfiguration(
+  int preloadFrames,
+  int bufferFrames,
+  Path spoolDirectory)
+{
+  public SampleStreamingConfiguration
+  {
+    if (preloadFrames <= 0) {
+      throw new IllegalArgumentException("Preload frames must be positive.");
+    }
+    if (bufferFrames <= 0 || Integer.bitCount(bufferFrames) != 1) {
+      throw new IllegalArgumentException(
+        "Buffer frames must be a positive power of two.");
+    }
+    Objects.requireNonNull(spoolDirectory, "spoolDirectory");
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * <p>A writer of stereo RIFF WAVE files.</p>
+ *
+ * <p>{@link SampleFormat#FLOAT32} output is written as 32-bit IEEE float
+ * data, and {@link SampleFormat#INT16} output as 16-bit PCM with values
+ * clipped to {@code [-1, 1]}. Frames are written as they are received, and
+ * the chunk sizes in the header are filled in when the writer is
+ * closed.</p>
+ */
+
+public final class SampleWaveWriter implements AutoCloseable
+{
+  private static final int FORMAT_PCM = 1;
+  private static final int FORMAT_IEEE_FLOAT = 3;
+  private static final int CHANNELS = 2;
+
+  private final FileChannel channel;
+  private final SampleFormat format;
+  private final ByteBuffer buffer;
+  private final int headerSize;
+  private long frames;
+
+  /**
+   * Create a file and write a header.
+   *
+   * @param file       The output file
+   * @param format     The sample format
+   * @param sampleRate The sample rate
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public SampleWaveWriter(
+    final Path file,
+    final SampleFormat format,
+    final int sampleRate)
+    throws IOException
+  {
+    this.format =
+      Objects.requireNonNull(format, "format");
+    this.channel =
+      FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE);
+    this.buffer =
+      ByteBuffer.allocate(65536).order(ByteOrder.LITTLE_ENDIAN);
+
+    final var bytesPerSample =
+      format == SampleFormat.FLOAT32 ? 4 : 2;
+    final var header =
+      ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+
+    header.put(ascii("RIFF"));
+    header.putInt(0);
+    header.put(ascii("WAVE"));
+    header.put(ascii("fmt "));
+
+    switch (format) {
+      case FLOAT32 -> {
+        header.putInt(18);
+        header.putShort((short) FORMAT_IEEE_FLOAT);
+      }
+      case INT16 -> {
+        header.putInt(16);
+        header.putShort((short) FORMAT_PCM);
+      }
+    }
+
+    header.putShort((short) CHANNELS);
+    header.putInt(sampleRate);
+    header.putInt(sampleRate * CHANNELS * bytesPerSample);
+    header.putShort((short) (CHANNELS * bytesPerSample));
+    header.putShort((short) (bytesPerSample * 8));
+
+    if (format == SampleFormat.FLOAT32) {
+      header.putShort((short) 0);
+      header.put(ascii("fact"));
+      header.putInt(4);
+      header.putInt(0);
+    }
+
+    header.put(ascii("data"));
+    header.putInt(0);
+    header.flip();
+
+    this.headerSize = header.remaining();
+    this.channel.write(header);
+  }
+
+  private static byte[] ascii(
+    final String text)
+  {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Append frames.
+   *
+   * @param left   The left channel
+   * @param right  The right channel
+   * @param count  The number of frames
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void write(
+    final float[] left,
+    final float[] right,
+    final int count)
+    throws IOException
+  {
+    for (int index = 0; index < count; ++index) {
+      if (this.buffer.remaining() < 8) {
+        this.flush();
+      }
+
+      switch (this.format) {
+        case FLOAT32 -> {
+          this.buffer.putFloat(left[index]);
+          this.buffer.putFloat(right[index]);
+        }
+        case INT16 -> {
+          this.buffer.putShort(toShort(left[index]));
+          this.buffer.putShort(toShort(right[index]));
+        }
+      }
+    }
+    this.frames += count;
+  }
+
+  private static short toShort(
+    final float value)
+  {
+    final var clipped = Math.max(-1.0f, Math.min(1.0f, value));
+    return (short) Math.round(clipped * 32767.0f);
+  }
+
+  private void flush()
+    throws IOException
+  {
+    this.buffer.flip();
+    while (this.buffer.hasRemaining()) {
+      this.channel.write(this.buffer);
+    }
+    this.buffer.clear();
+  }
+
+  /**
+   * @return The number of frames written so far
+   */
+
+  public long frames()
+  {
+    return this.frames;
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    try {
+      this.flush();
+
+      final var bytesPerSample =
+        this.format == SampleFormat.FLOAT32 ? 4 : 2;
+      final var dataSize =
+        this.frames * CHANNELS * bytesPerSample;
+      if (this.headerSize + dataSize - 8 > 0xffff_ffffL) {
+        throw new IOException("Output exceeds the maximum WAVE file size.");
+      }
+
+      final var value =
+        ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+      value.putInt(0, (int) (this.headerSize + dataSize - 8));
+      this.channel.write(value, 4L);
+
+      if (this.format == SampleFormat.FLOAT32) {
+        value.clear();
+        value.putInt(0, (int) this.frames);
+        this.channel.write(value, 46L);
+      }
+
+      value.clear();
+      value.putInt(0, (int) dataSize);
+      this.channel.write(value, this.headerSize - 4L);
+    } finally {
+      this.channel.close();
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Objects;
+
+/**
+ * A loaded zone: sample data played over a range of notes and velocities.
+ *
+ * @param sample       The sample data
+ * @param rootNote     The note at which the sample plays at its original
+ *                     pitch
+ * @param noteLow      The lowest note (inclusive)
+ * @param noteHigh     The highest note (inclusive)
+ * @param velocityLow  The lowest MIDI velocity (inclusive)
+ * @param velocityHigh The highest MIDI velocity (inclusive)
+ * @param rateScale    A factor applied to the playback rate of every note
+ *
+ * @see SampleZoneDescription
+ */
+
+public record SampleZone(
+  SampleDataType sample,
+  int rootNote,
+  int noteLow,
+  int noteHigh,
+  int velocityLow,
+  int velocityHigh,
+  double rateScale)
+{
+  public SampleZone
+  {
+    Objects.requireNonNull(sample, "sample");
+  }
+
+  /**
+   * @param note The note
+   *
+   * @return The playback rate of the zone's sample at the given note, in
+   * twelve-tone equal temperament
+   */
+
+  public double playbackRateForNote(
+    final int note)
+  {
+    return this.playbackRateForNote(TuningTable.equalTemperament(), note);
+  }
+
+  /**
+   * @param tuning The tuning
+   * @param note   The note
+   *
+   * @return The playback rate of the zone's sample at the given note, or NaN
+   * if the tuning does not map the note or the zone's root note
+   */
+
+  public double playbackRateForNote(
+    final TuningTable tuning,
+    final int note)
+  {
+    return this.rateScale * tuning.ratio(this.rootNote, note);
+  }
+}
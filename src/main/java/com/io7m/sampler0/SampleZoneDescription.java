@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * <p>A zone in a sample map description: a sample file played over a range
+ * of notes and velocities.</p>
+ *
+ * <p>Zones that cover exactly the same note and velocity ranges form a
+ * round-robin group, and successive notes cycle through the group's files
+ * in the order in which the zones are declared.</p>
+ *
+ * @param file         The sample file
+ * @param rootNote     The note at which the sample plays at its original
+ *                     pitch
+ * @param noteLow      The lowest note (inclusive)
+ * @param noteHigh     The highest note (inclusive)
+ * @param velocityLow  The lowest MIDI velocity (inclusive)
+ * @param velocityHigh The highest MIDI velocity (inclusive)
+ */
+
+public record SampleZoneDescription(
+  Path file,
+  int rootNote,
+  int noteLow,
+  int noteHigh,
+  int velocityLow,
+  int velocityHigh)
+{
+  public SampleZoneDescription
+  {
+    Objects.requireNonNull(file, "file");
+    checkRange("Root note", rootNote, rootNote);
+    checkRange("Note", noteLow, noteHigh);
+    checkRange("Velocity", velocityLow, velocityHigh);
+  }
+
+  private static void checkRange(
+    final String name,
+    final int low,
+    final int high)
+  {
+    if (low < 0 || high > 127 || low > high) {
+      throw new IllegalArgumentException(
+        "%s range [%d, %d] must be within [0, 127]".formatted(
+          name,
+          Integer.valueOf(low),
+          Integer.valueOf(high))
+      );
+    }
+  }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectSortedMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>A sample map compiled into flat arrays.</p>
+ *
+ * <p>Each (note, velocity) pair indexes {@code groupForKey} directly, giving
+ * a group. A group is a contiguous run of entries in {@code entries},
+ * starting at {@code groupStart} and {@code groupCount} long, one entry per
+ * round-robin slot. Selecting a sample is therefore a handful of array
+ * loads. A group index of {@code -1} means that nothing plays.</p>
+ */
+
+public final class SampleZoneTable
+{
+  /**
+   * The number of (note, velocity) keys.
+   */
+
+  public static final int KEYS = 128 * 128;
+
+  private final SampleMapEntry[] entries;
+  private final int[] groupStart;
+  private final int[] groupCount;
+  private final short[] groupForKey;
+
+  /**
+   * Create a table.
+   *
+   * @param inEntries     The entries
+   * @param inGroupStart  The first entry of each group
+   * @param inGroupCount  The number of entries in each group
+   * @param inGroupForKey The group for each key ({@code note * 128 +
+   *                      velocity}), or {@code -1}
+   */
+
+  public SampleZoneTable(
+    final SampleMapEntry[] inEntries,
+    final int[] inGroupStart,
+    final int[] inGroupCount,
+    final short[] inGroupForKey)
+  {
+    this.entries =
+      Objects.requireNonNull(inEntries, "entries");
+    this.groupStart =
+      Objects.requireNonNull(inGroupStart, "groupStart");
+    this.groupCount =
+      Objects.requireNonNull(inGroupCount, "groupCount");
+    this.groupForKey =
+      Objects.requireNonNull(inGroupForKey, "groupForKey");
+
+    if (inGroupStart.length != inGroupCount.length) {
+      throw new IllegalArgumentException("Group arrays must match.");
+    }
+    if (inGroupForKey.length != KEYS) {
+      throw new IllegalArgumentException(
+        "Key table must have %d entries.".formatted(Integer.valueOf(KEYS)));
+    }
+    for (int group = 0; group < inGroupStart.length; ++group) {
+      final var start = inGroupStart[group];
+      final var count = inGroupCount[group];
+      if (count <= 0 || start < 0 || start + count > inEntries.length) {
+        throw new IllegalArgumentException(
+          "Group %d is out of range.".formatted(Integer.valueOf(group)));
+      }
+    }
+    for (final var group : inGroupForKey) {
+      if (group < -1 || group >= inGroupStart.length) {
+        throw new IllegalArgumentException(
+          "Key refers to nonexistent group %d.".formatted(
+            Integer.valueOf(group)));
+      }
+    }
+  }
+
+  /**
+   * @return An empty table in which nothing plays
+   */
+
+  public static SampleZoneTable empty()
+  {
+    final var keys = new short[KEYS];
+    Arrays.fill(keys, (short) -1);
+    return new SampleZoneTable(
+      new SampleMapEntry[0],
+      new int[0],
+      new int[0],
+      keys
+    );
+  }
+
+  /**
+   * Compile a table with one entry per note, at every velocity.
+   *
+   * @param entriesByNote The entries by note
+   *
+   * @return A table
+   */
+
+  public static SampleZoneTable ofNotes(
+    final Int2ObjectSortedMap<SampleMapEntry> entriesByNote)
+  {
+    final var keys = new short[KEYS];
+    Arrays.fill(keys, (short) -1);
+
+    final var entries = new ArrayList<SampleMapEntry>(entriesByNote.size());
+    for (final var entry : entriesByNote.int2ObjectEntrySet()) {
+      final var note = entry.getIntKey();
+      final var group = (short) entries.size();
+      entries.add(entry.getValue());
+      Arrays.fill(keys, note * 128, (note * 128) + 128, group);
+    }
+
+    final var groupStart = new int[entries.size()];
+    final var groupCount = new int[entries.size()];
+    for (int group = 0; group < groupStart.length; ++group) {
+      groupStart[group] = group;
+      groupCount[group] = 1;
+    }
+
+    return new SampleZoneTable(
+      entries.toArray(new SampleMapEntry[0]),
+      groupStart,
+      groupCount,
+      keys
+    );
+  }
+
+  /**
+   * Compile a table from a list of zones in twelve-tone equal temperament.
+   *
+   * @param zones The zones
+   *
+   * @return A table
+   *
+   * @see #ofZones(List, TuningTable)
+   */
+
+  public static SampleZoneTable ofZones(
+    final List<SampleZone> zones)
+  {
+    return ofZones(zones, TuningTable.equalTemperament());
+  }
+
+  /**
+   * Compile a table from a list of zones. Where zones overlap, the zone
+   * declared first wins, except that zones with identical note and velocity
+   * ranges form a round-robin group. Playback rates are computed from the
+   * given tuning; notes that the tuning does not map do not play, and zones
+   * rooted at such notes are ignored.
+   *
+   * @param zones  The zones
+   * @param tuning The tuning
+   *
+   * @return A table
+   */
+
+  public static SampleZoneTable ofZones(
+    final List<SampleZone> zones,
+    final TuningTable tuning)
+  {
+    record Range(
+      int noteLow,
+      int noteHigh,
+      int velocityLow,
+      int velocityHigh)
+    {
+
+    }
+
+    final var keys = new short[KEYS];
+    Arrays.fill(keys, (short) -1);
+
+    final var entries = new ArrayList<SampleMapEntry>();
+    final var groupStart = new ArrayList<Integer>();
+    final var groupCount = new ArrayList<Integer>();
+
+    for (int note = 0; note < 128; ++note) {
+      if (!tuning.isMapped(note)) {
+        continue;
+      }
+
+      final var ranges = new ArrayList<Range>();
+      final var members = new ArrayList<List<SampleZone>>();
+
+      for (final var zone : zones) {
+        if (note < zone.noteLow() || note > zone.noteHigh()) {
+          continue;
+        }
+        if (!tuning.isMapped(zone.rootNote())) {
+          continue;
+        }
+        final var range = new Range(
+          zone.noteLow(),
+          zone.noteHigh(),
+          zone.velocityLow(),
+          zone.velocityHigh()
+        );
+        var local = ranges.indexOf(range);
+        if (local == -1) {
+          local = ranges.size();
+          ranges.add(range);
+          members.add(new ArrayList<>());
+        }
+        members.get(local).add(zone);
+      }
+
+      for (int local = 0; local < ranges.size(); ++local) {
+        final var range = ranges.get(local);
+        final var groupZones = members.get(local);
+        final var index = groupStart.size();
+        if (index > Short.MAX_VALUE) {
+          throw new IllegalArgumentException("Too many zone groups.");
+        }
+
+        groupStart.add(Integer.valueOf(entries.size()));
+        groupCount.add(Integer.valueOf(groupZones.size()));
+        for (final var zone : groupZones) {
+          entries.add(new SampleMapEntry(
+            zone.sample(),
+            zone.playbackRateForNote(tuning, note)));
+        }
+
+        for (int velocity = range.velocityLow();
+             velocity <= range.velocityHigh();
+             ++velocity) {
+          final var key = (note * 128) + velocity;
+          if (keys[key] == -1) {
+            keys[key] = (short) index;
+          }
+        }
+      }
+    }
+
+    return new SampleZoneTable(
+      entries.toArray(new SampleMapEntry[0]),
+      groupStart.stream().mapToInt(Integer::intValue).toArray(),
+      groupCount.stream().mapToInt(Integer::intValue).toArray(),
+      keys
+    );
+  }
+
+  /**
+   * @param note     The note
+   * @param velocity The MIDI velocity
+   *
+   * @return The group for the given key, or {@code -1} if there is none or
+   * if the note or velocity is outside the range {@code [0, 127]}
+   */
+
+  public int group(
+    final int note,
+    final int velocity)
+  {
+    if (((note | velocity) & ~0x7f) != 0) {
+      return -1;
+    }
+    return this.groupForKey[(note << 7) | velocity];
+  }
+
+  public int groups()
+  {
+    return this.groupStart.length;
+  }
+
+  public int groupStart(
+    final int group)
+  {
+    return this.groupStart[group];
+  }
+
+  public int groupCount(
+    final int group)
+  {
+    return this.groupCount[group];
+  }
+
+  public int entries()
+  {
+    return this.entries.length;
+  }
+
+  public SampleMapEntry entry(
+    final int index)
+  {
+    return this.entries[index];
+  }
+}
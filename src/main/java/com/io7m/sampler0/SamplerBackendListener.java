@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.nio.FloatBuffer;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * A backend listener that drives a sampler, recording the sampler's voice
+ * count and dropped events into the backend's metrics after each period.
+ */
+
+public final class SamplerBackendListener implements AudioBackendListenerType
+{
+  private final SamplerType sampler;
+  private final SamplerMetrics metrics;
+  private final IntConsumer onSampleRate;
+  private final IntConsumer onBufferSize;
+
+  /**
+   * Create a listener for a backend whose sample rate and buffer size never
+   * change.
+   *
+   * @param inSampler The sampler
+   * @param inMetrics The metrics of the backend
+   */
+
+  public SamplerBackendListener(
+    final SamplerType inSampler,
+    final SamplerMetrics inMetrics)
+  {
+    this(inSampler, inMetrics, rate -> { }, size -> { });
+  }
+
+  /**
+   * Create a listener.
+   *
+   * @param inSampler      The sampler
+   * @param inMetrics      The metrics of the backend
+   * @param inOnSampleRate Called when the sample rate changes
+   * @param inOnBufferSize Called when the buffer size changes
+   */
+
+  public SamplerBackendListener(
+    final SamplerType inSampler,
+    final SamplerMetrics inMetrics,
+    final IntConsumer inOnSampleRate,
+    final IntConsumer inOnBufferSize)
+  {
+    this.sampler =
+      Objects.requireNonNull(inSampler, "sampler");
+    this.metrics =
+      Objects.requireNonNull(inMetrics, "metrics");
+    this.onSampleRate =
+      Objects.requireNonNull(inOnSampleRate, "onSampleRate");
+    this.onBufferSize =
+      Objects.requireNonNull(inOnBufferSize, "onBufferSize");
+  }
+
+  @Override
+  public void onMidi(
+    final long message)
+  {
+    this.sampler.onMidi(message);
+  }
+
+  @Override
+  public void onProcess(
+    final FloatBuffer bufferL,
+    final FloatBuffer bufferR,
+    final int frames)
+  {
+    this.sampler.onProcess(bufferL, bufferR, frames);
+    this.metrics.voicesRecord(this.sampler.voicesActive());
+    this.metrics.eventsDroppedRecord(this.sampler.eventsDropped());
+  }
+
+  @Override
+  public void onBufferSizeChanged(
+    final int bufferSize)
+  {
+    this.onBufferSize.accept(bufferSize);
+  }
+
+  @Override
+  public void onSampleRateChanged(
+    final int sampleRate)
+  {
+    this.onSampleRate.accept(sampleRate);
+  }
+}
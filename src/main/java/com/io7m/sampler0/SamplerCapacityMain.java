@@ -0,0 +1,253 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import com.io7m.jsamplebuffer.xmedia.SXMSampleBufferRateConverters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Find the number of voices a polyphonic sampler can render within the
+ * deadline of each period, using a headless backend.</p>
+ *
+ * <p>Usage: {@code library.s0lb [buffer-size] [sample-rate] [render-threads]}.
+ * The defaults are 64 frames at 48kHz on one thread.</p>
+ *
+ * <p>For each voice count, a fresh sampler renders twenty seconds of audio in
+ * which that many notes are held, and retriggered four times a second so
+ * that short samples do not reduce the count. A voice count is within
+ * capacity if the 99.9th percentile of the processing time is below the
+ * duration of a period.</p>
+ */
+
+public final class SamplerCapacityMain
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(SamplerCapacityMain.class);
+
+  private static final int[] VOICES = {
+    8, 16, 32, 64, 96, 128, 160, 192, 256, 320, 384, 512,
+  };
+
+  private static final int WARMUP_RUNS = 4;
+
+  private static final String USAGE =
+    "usage: library.s0lb [buffer-size] [sample-rate] [render-threads]";
+
+  private SamplerCapacityMain()
+  {
+
+  }
+
+  /**
+   * Measure the capacity of the library named on the command line.
+   *
+   * @param args The command-line arguments
+   *
+   * @return The exit code
+   */
+
+  public static int run(
+    final String[] args)
+  {
+    if (args.length < 1) {
+      System.err.println(USAGE);
+      return 1;
+    }
+
+    final var library =
+      Paths.get(args[0]);
+    final int bufferSize;
+    final int sampleRate;
+    final int renderThreads;
+    try {
+      bufferSize = argumentInt(args, 1, 64);
+      sampleRate = argumentInt(args, 2, 48000);
+      renderThreads = argumentInt(args, 3, 1);
+    } catch (final NumberFormatException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      return 1;
+    }
+
+    final var ioExecutor =
+      Executors.newCachedThreadPool(r -> {
+        final var thread = new Thread(r);
+        thread.setDaemon(true);
+        thread.setName("com.io7m.sampler0.io." + thread.getId());
+        return thread;
+      });
+
+    try {
+      final var periodNanos =
+        (bufferSize * 1_000_000_000L) / sampleRate;
+
+      LOG.info(
+        "capacity: {} frames at {}Hz ({}ns per period), {} render threads",
+        Integer.valueOf(bufferSize),
+        Integer.valueOf(sampleRate),
+        Long.valueOf(periodNanos),
+        Integer.valueOf(renderThreads)
+      );
+
+      /*
+       * Render for a while beforehand so that the measured runs are not
+       * dominated by JIT compilation. Until the mixer is compiled, the
+       * vector API boxes every vector, and the garbage collector pauses
+       * that this causes would otherwise count against the deadline.
+       */
+
+      for (int warmup = 0; warmup < WARMUP_RUNS; ++warmup) {
+        runVoices(
+          library, ioExecutor, bufferSize, sampleRate, renderThreads, 32);
+      }
+
+      var capacity = 0;
+      for (final var voices : VOICES) {
+        final var snapshot =
+          runVoices(
+            library, ioExecutor, bufferSize, sampleRate, renderThreads, voices);
+
+        LOG.info(
+          "voices {}: peak {}, p50 {}ns, p99 {}ns, p99.9 {}ns, max {}ns, mean load {}%, deadline misses {}",
+          Integer.valueOf(voices),
+          Integer.valueOf(snapshot.voicesPeak()),
+          Long.valueOf(snapshot.renderNanosP50()),
+          Long.valueOf(snapshot.renderNanosP99()),
+          Long.valueOf(snapshot.renderNanosP999()),
+          Long.valueOf(snapshot.renderNanosMaximum()),
+          "%.1f".formatted(Double.valueOf(snapshot.dspLoadMean())),
+          Long.valueOf(snapshot.deadlineMisses())
+        );
+
+        if (snapshot.renderNanosP999() >= periodNanos) {
+          break;
+        }
+        capacity = voices;
+      }
+
+      LOG.info("capacity: {} voices", Integer.valueOf(capacity));
+    } finally {
+      ioExecutor.shutdownNow();
+    }
+    return 0;
+  }
+
+  /**
+   * Command-line entry point.
+   *
+   * @param args The command-line arguments
+   */
+
+  public static void main(
+    final String[] args)
+  {
+    System.exit(run(args));
+  }
+
+  private static int argumentInt(
+    final String[] args,
+    final int index,
+    final int defaultValue)
+  {
+    return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+  }
+
+  private static SamplerMetricsSnapshot runVoices(
+    final Path library,
+    final ExecutorService ioExecutor,
+    final int bufferSize,
+    final int sampleRate,
+    final int renderThreads,
+    final int voices)
+  {
+    final var context =
+      new SamplerOfflineContext(
+        new SXMSampleBufferRateConverters().createConverter(),
+        Optional.empty(),
+        ioExecutor,
+        sampleRate,
+        bufferSize
+      );
+
+    final var defaults =
+      SamplerPolyConfiguration.defaults();
+    final var configuration =
+      new SamplerPolyConfiguration(
+        voices,
+        defaults.stealing(),
+        defaults.interpolation(),
+        renderThreads,
+        defaults.parallelVoicesMinimum(),
+        defaults.envelope(),
+        defaults.reserveVoices(),
+        defaults.tailThresholdDecibels()
+      );
+
+    final var seconds = 20L;
+    final var backend =
+      new AudioBackendHeadless(
+        new AudioBackendHeadlessConfiguration(
+          sampleRate,
+          bufferSize,
+          (seconds * sampleRate) / bufferSize,
+          AudioBackendHeadlessPacing.FREE_RUNNING,
+          script(voices, sampleRate, seconds * sampleRate)
+        )
+      );
+
+    try (var sampler = new SamplerPoly(context, configuration)) {
+      sampler.loadLibrary(library).join();
+      return backend.run(
+        new SamplerBackendListener(sampler, backend.metrics()));
+    }
+  }
+
+  private static List<AudioBackendHeadlessMessage> script(
+    final int voices,
+    final int sampleRate,
+    final long frames)
+  {
+    final var messages = new ArrayList<AudioBackendHeadlessMessage>();
+    final var retrigger = sampleRate / 4;
+
+    for (long frame = 0L; frame < frames; frame += retrigger) {
+      for (int voice = 0; voice < voices; ++voice) {
+        final var note = 24 + (voice % 96);
+        if (frame > 0L) {
+          messages.add(
+            AudioBackendHeadlessMessage.noteOff(frame, 0, note));
+        }
+      }
+      for (int voice = 0; voice < voices; ++voice) {
+        final var note = 24 + (voice % 96);
+        messages.add(
+          AudioBackendHeadlessMessage.noteOn(frame, 0, note, 100));
+      }
+    }
+    return messages;
+  }
+}
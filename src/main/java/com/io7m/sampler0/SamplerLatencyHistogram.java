@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Arrays;
+
+/**
+ * <p>A histogram of durations in nanoseconds, with log-linear buckets in the
+ * style of HdrHistogram.</p>
+ *
+ * <p>Values below {@code 2 * SUB_BUCKETS} are counted exactly. Above that,
+ * each power of two is divided into {@link #SUB_BUCKETS} linear buckets, so
+ * any recorded value is reported with a relative error of at most
+ * {@code 1 / SUB_BUCKETS} (about 3%). Values above {@link #VALUE_MAXIMUM}
+ * (roughly 68 seconds) are counted in the last bucket.</p>
+ *
+ * <p>The histogram has a single writer. {@link #record(long)} performs only
+ * plain array stores, and never allocates or locks. Readers on other threads
+ * see counts that may lag behind the writer; callers that need a consistent
+ * view publish a count with release semantics after recording (see
+ * {@link SamplerMetrics}) and copy the counts with
+ * {@link #countsCopy(long[])}.</p>
+ */
+
+public final class SamplerLatencyHistogram
+{
+  /**
+   * The number of linear buckets within each power of two.
+   */
+
+  public static final int SUB_BUCKETS = 32;
+
+  private static final int SUB_BUCKET_BITS = 5;
+
+  /**
+   * The largest value that is counted in its own bucket.
+   */
+
+  public static final long VALUE_MAXIMUM = (1L << 36) - 1L;
+
+  /**
+   * The number of buckets.
+   */
+
+  public static final int BUCKETS = bucketOf(VALUE_MAXIMUM) + 1;
+
+  private final long[] counts;
+  private long maximum;
+
+  /**
+   * Create an empty histogram.
+   */
+
+  public SamplerLatencyHistogram()
+  {
+    this.counts = new long[BUCKETS];
+  }
+
+  /**
+   * @param value A non-negative value
+   *
+   * @return The index of the bucket that counts {@code value}
+   */
+
+  public static int bucketOf(
+    final long value)
+  {
+    final var clamped =
+      Math.min(Math.max(value, 0L), VALUE_MAXIMUM);
+
+    if (clamped < 2L * SUB_BUCKETS) {
+      return (int) clamped;
+    }
+
+    final var exponent =
+      63 - Long.numberOfLeadingZeros(clamped);
+    final var shift =
+      exponent - SUB_BUCKET_BITS;
+    final var mantissa =
+      (int) (clamped >>> shift);
+
+    return ((shift + 1) << SUB_BUCKET_BITS) + (mantissa - SUB_BUCKETS);
+  }
+
+  /**
+   * @param bucket A bucket index
+   *
+   * @return The largest value counted by the bucket
+   */
+
+  public static long bucketValueHighest(
+    final int bucket)
+  {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket;
+    }
+
+    final var shift =
+      (bucket >>> SUB_BUCKET_BITS) - 1;
+    final var mantissa =
+      (long) ((bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS);
+
+    return ((mantissa + 1L) << shift) - 1L;
+  }
+
+  /**
+   * Find the value at the given percentile of a set of bucket counts.
+   *
+   * @param counts     The bucket counts
+   * @param percentile The percentile in the range {@code [0, 100]}
+   *
+   * @return The highest value equivalent to the value at the percentile, or
+   * {@code 0} if the counts are empty
+   */
+
+  public static long valueAtPercentile(
+    final long[] counts,
+    final double percentile)
+  {
+    var total = 0L;
+    for (final var count : counts) {
+      total += count;
+    }
+    if (total == 0L) {
+      return 0L;
+    }
+
+    final var fraction =
+      Math.min(Math.max(percentile, 0.0), 100.0) / 100.0;
+    final var target =
+      Math.max(1L, (long) Math.ceil(fraction * (double) total));
+
+    var seen = 0L;
+    for (int bucket = 0; bucket < counts.length; ++bucket) {
+      seen += counts[bucket];
+      if (seen >= target) {
+        return bucketValueHighest(bucket);
+      }
+    }
+    return bucketValueHighest(counts.length - 1);
+  }
+
+  /**
+   * Record a value. This must only be called from the writer thread.
+   *
+   * @param value The value
+   */
+
+  public void record(
+    final long value)
+  {
+    ++this.counts[bucketOf(value)];
+    if (value > this.maximum) {
+      this.maximum = value;
+    }
+  }
+
+  /**
+   * @return The largest value recorded
+   */
+
+  public long maximum()
+  {
+    return this.maximum;
+  }
+
+  /**
+   * Copy the bucket counts.
+   *
+   * @param output An array of at least {@link #BUCKETS} elements
+   *
+   * @return {@code output}
+   */
+
+  public long[] countsCopy(
+    final long[] output)
+  {
+    System.arraycopy(this.counts, 0, output, 0, BUCKETS);
+    return output;
+  }
+
+  /**
+   * Reset the histogram. This must only be called from the writer thread.
+   */
+
+  public void clear()
+  {
+    Arrays.fill(this.counts, 0L);
+    this.maximum = 0L;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * <p>Metrics for the audio thread.</p>
+ *
+ * <p>The audio thread calls {@link #cycleRecord(long, int, int)} once per
+ * period, followed by {@link #voicesRecord(int)} and
+ * {@link #eventsDroppedRecord(long)}. These methods never allocate, lock, or
+ * call into the operating system; they perform plain primitive stores,
+ * followed by a single store of the cycle count with release semantics. Any
+ * other thread may call {@link #snapshot()}, which reads the cycle count
+ * with acquire semantics and so sees at least every value recorded before
+ * that cycle was published. Snapshots allocate, and should be taken on a
+ * non-realtime thread (see {@link SamplerMetricsPublisher}).</p>
+ *
+ * <p>Audio servers such as JACK report xruns on their own notification
+ * thread; these are counted separately with {@link #xrunRecord()}, which
+ * must only be called from one thread.</p>
+ */
+
+public final class SamplerMetrics
+{
+  private static final VarHandle CYCLES;
+
+  static {
+    try {
+      CYCLES = MethodHandles.lookup()
+        .findVarHandle(SamplerMetrics.class, "cycles", long.class);
+    } catch (final NoSuchFieldException | IllegalAccessException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final SamplerLatencyHistogram renderTimes;
+  private long cycles;
+  private long deadlineMisses;
+  private long renderNanosTotal;
+  private long periodNanosTotal;
+  private double dspLoadLast;
+  private double dspLoadPeak;
+  private int voicesActive;
+  private int voicesPeak;
+  private long eventsDropped;
+  private volatile long xruns;
+
+  /**
+   * Create empty metrics.
+   */
+
+  public SamplerMetrics()
+  {
+    this.renderTimes = new SamplerLatencyHistogram();
+  }
+
+  /**
+   * Record the time taken to process one period. This must only be called
+   * from the audio thread (normally by an {@link AudioBackendType}).
+   *
+   * @param renderNanos The time taken to process the period
+   * @param frames      The number of frames in the period
+   * @param sampleRate  The sample rate
+   */
+
+  public void cycleRecord(
+    final long renderNanos,
+    final int frames,
+    final int sampleRate)
+  {
+    final var periodNanos =
+      (frames * 1_000_000_000L) / Math.max(1, sampleRate);
+    final var load =
+      periodNanos > 0L ? (double) renderNanos / (double) periodNanos : 0.0;
+
+    this.renderTimes.record(renderNanos);
+    this.renderNanosTotal += renderNanos;
+    this.periodNanosTotal += periodNanos;
+    this.dspLoadLast = load;
+    if (load > this.dspLoadPeak) {
+      this.dspLoadPeak = load;
+    }
+    if (renderNanos > periodNanos) {
+      ++this.deadlineMisses;
+    }
+
+    CYCLES.setRelease(this, this.cycles + 1L);
+  }
+
+  /**
+   * Record the number of active voices at the end of a period. This must
+   * only be called from the audio thread.
+   *
+   * @param active The number of active voices
+   */
+
+  public void voicesRecord(
+    final int active)
+  {
+    this.voicesActive = active;
+    if (active > this.voicesPeak) {
+      this.voicesPeak = active;
+    }
+  }
+
+  /**
+   * Record the total number of events dropped so far. This must only be
+   * called from the audio thread.
+   *
+   * @param dropped The number of dropped events
+   */
+
+  public void eventsDroppedRecord(
+    final long dropped)
+  {
+    this.eventsDropped = dropped;
+  }
+
+  /**
+   * Record an xrun reported by the audio server.
+   */
+
+  public void xrunRecord()
+  {
+    this.xruns = this.xruns + 1L;
+  }
+
+  /**
+   * Take a snapshot of the metrics. This may be called from any thread, and
+   * allocates.
+   *
+   * @return A snapshot of the metrics
+   */
+
+  public SamplerMetricsSnapshot snapshot()
+  {
+    final var cycleCount =
+      (long) CYCLES.getAcquire(this);
+    final var counts =
+      this.renderTimes.countsCopy(new long[SamplerLatencyHistogram.BUCKETS]);
+    final var periodTotal =
+      this.periodNanosTotal;
+    final var maximum =
+      this.renderTimes.maximum();
+
+    return new SamplerMetricsSnapshot(
+      cycleCount,
+      this.deadlineMisses,
+      this.xruns,
+      this.dspLoadLast * 100.0,
+      this.dspLoadPeak * 100.0,
+      periodTotal > 0L
+        ? ((double) this.renderNanosTotal / (double) periodTotal) * 100.0
+        : 0.0,
+      this.voicesActive,
+      this.voicesPeak,
+      this.eventsDropped,
+      percentile(counts, 50.0, maximum),
+      percentile(counts, 90.0, maximum),
+      percentile(counts, 99.0, maximum),
+      percentile(counts, 99.9, maximum),
+      maximum
+    );
+  }
+
+  /*
+   * The histogram reports the highest value in a bucket, which may be
+   * above the largest value actually recorded.
+   */
+
+  private static long percentile(
+    final long[] counts,
+    final double percentile,
+    final long maximum)
+  {
+    return Math.min(
+      SamplerLatencyHistogram.valueAtPercentile(counts, percentile),
+      maximum
+    );
+  }
+}
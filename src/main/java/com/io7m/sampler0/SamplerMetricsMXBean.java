@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+/**
+ * The JMX view of the most recent {@link SamplerMetricsSnapshot} published
+ * by a {@link SamplerMetricsPublisher}. Durations are in nanoseconds, and
+ * loads are percentages of the period.
+ */
+
+public interface SamplerMetricsMXBean
+{
+  long getCycles();
+
+  long getDeadlineMisses();
+
+  long getXruns();
+
+  double getDspLoadLast();
+
+  double getDspLoadPeak();
+
+  double getDspLoadMean();
+
+  int getVoicesActive();
+
+  int getVoicesPeak();
+
+  long getEventsDropped();
+
+  long getRenderNanosP50();
+
+  long getRenderNanosP90();
+
+  long getRenderNanosP99();
+
+  long getRenderNanosP999();
+
+  long getRenderNanosMaximum();
+}
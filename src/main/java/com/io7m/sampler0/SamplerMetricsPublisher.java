@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Periodically takes snapshots of {@link SamplerMetrics} on a low-priority
+ * thread, so that the audio thread never does more than record primitive
+ * values. The most recent snapshot is available from {@link #latest()}, is
+ * logged at debug level, and is exposed over JMX once {@link #register()}
+ * has been called.</p>
+ */
+
+public final class SamplerMetricsPublisher
+  implements SamplerMetricsMXBean, AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(SamplerMetricsPublisher.class);
+
+  /**
+   * The name under which the metrics are registered with the platform MBean
+   * server.
+   */
+
+  public static final String OBJECT_NAME =
+    "com.io7m.sampler0:type=SamplerMetrics";
+
+  private final SamplerMetrics metrics;
+  private final ScheduledExecutorService executor;
+  private volatile SamplerMetricsSnapshot latest;
+  private ObjectName registered;
+
+  /**
+   * Start publishing snapshots.
+   *
+   * @param inMetrics The metrics
+   * @param interval  The time between snapshots
+   */
+
+  public SamplerMetricsPublisher(
+    final SamplerMetrics inMetrics,
+    final Duration interval)
+  {
+    this.metrics =
+      Objects.requireNonNull(inMetrics, "metrics");
+    this.latest =
+      inMetrics.snapshot();
+
+    this.executor =
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        final var thread = new Thread(r);
+        thread.setDaemon(true);
+        thread.setName("com.io7m.sampler0.metrics." + thread.getId());
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      });
+
+    final var nanos = interval.toNanos();
+    this.executor.scheduleAtFixedRate(
+      this::publish,
+      nanos,
+      nanos,
+      TimeUnit.NANOSECONDS
+    );
+  }
+
+  private void publish()
+  {
+    final var snapshot = this.metrics.snapshot();
+    this.latest = snapshot;
+    LOG.debug("metrics: {}", snapshot);
+  }
+
+  /**
+   * Register the publisher with the platform MBean server under
+   * {@link #OBJECT_NAME}.
+   *
+   * @throws JMException On errors
+   */
+
+  public void register()
+    throws JMException
+  {
+    final var name = new ObjectName(OBJECT_NAME);
+    ManagementFactory.getPlatformMBeanServer()
+      .registerMBean(this, name);
+    this.registered = name;
+  }
+
+  /**
+   * @return The most recently published snapshot
+   */
+
+  public SamplerMetricsSnapshot latest()
+  {
+    return this.latest;
+  }
+
+  @Override
+  public long getCycles()
+  {
+    return this.latest.cycles();
+  }
+
+  @Override
+  public long getDeadlineMisses()
+  {
+    return this.latest.deadlineMisses();
+  }
+
+  @Override
+  public long getXruns()
+  {
+    return this.latest.xruns();
+  }
+
+  @Override
+  public double getDspLoadLast()
+  {
+    return this.latest.dspLoadLast();
+  }
+
+  @Override
+  public double getDspLoadPeak()
+  {
+    return this.latest.dspLoadPeak();
+  }
+
+  @Override
+  public double getDspLoadMean()
+  {
+    return this.latest.dspLoadMean();
+  }
+
+  @Override
+  public int getVoicesActive()
+  {
+    return this.latest.voicesActive();
+  }
+
+  @Override
+  public int getVoicesPeak()
+  {
+    return this.latest.voicesPeak();
+  }
+
+  @Override
+  public long getEventsDropped()
+  {
+    return this.latest.eventsDropped();
+  }
+
+  @Override
+  public long getRenderNanosP50()
+  {
+    return this.latest.renderNanosP50();
+  }
+
+  @Override
+  public long getRenderNanosP90()
+  {
+    return this.latest.renderNanosP90();
+  }
+
+  @Override
+  public long getRenderNanosP99()
+  {
+    return this.latest.renderNanosP99();
+  }
+
+  @Override
+  public long getRenderNanosP999()
+  {
+    return this.latest.renderNanosP999();
+  }
+
+  @Override
+  public long getRenderNanosMaximum()
+  {
+    return this.latest.renderNanosMaximum();
+  }
+
+  @Override
+  public void close()
+  {
+    this.executor.shutdownNow();
+
+    final var name = this.registered;
+    if (name != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      } catch (final JMException e) {
+        LOG.debug("unregister: ", e);
+      }
+      this.registered = null;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+/**
+ * A snapshot of {@link SamplerMetrics}. All values are totals or extremes
+ * since the metrics were created, except where noted.
+ *
+ * @param cycles             The number of periods processed
+ * @param deadlineMisses     The number of periods that took longer to
+ *                           process than the duration of the period
+ * @param xruns              The number of xruns reported by the audio server
+ * @param dspLoadLast        The time taken to process the most recent period,
+ *                           as a percentage of the duration of the period
+ * @param dspLoadPeak        The highest DSP load of any period
+ * @param dspLoadMean        The total processing time as a percentage of the
+ *                           total duration of all periods
+ * @param voicesActive       The number of voices active after the most recent
+ *                           period
+ * @param voicesPeak         The largest number of voices active after any
+ *                           period
+ * @param eventsDropped      The number of events dropped
+ * @param renderNanosP50     The median processing time of a period
+ * @param renderNanosP90     The 90th percentile processing time
+ * @param renderNanosP99     The 99th percentile processing time
+ * @param renderNanosP999    The 99.9th percentile processing time
+ * @param renderNanosMaximum The largest processing time
+ */
+
+public record SamplerMetricsSnapshot(
+  long cycles,
+  long deadlineMisses,
+  long xruns,
+  double dspLoadLast,
+  double dspLoadPeak,
+  double dspLoadMean,
+  int voicesActive,
+  int voicesPeak,
+  long eventsDropped,
+  long renderNanosP50,
+  long renderNanosP90,
+  long renderNanosP99,
+  long renderNanosP999,
+  long renderNanosMaximum)
+{
+
+}
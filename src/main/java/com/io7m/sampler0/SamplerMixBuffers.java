@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import com.io7m.jattribute.core.AttributeReadableType;
+import com.io7m.jattribute.core.AttributeSubscriptionType;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * <p>The mix buffers of a sampler, sized to the buffer size of the audio
+ * context.</p>
+ *
+ * <p>When the buffer size grows, larger buffers are allocated on the thread
+ * that changed it and published for the audio thread, which picks them up
+ * at the start of its next period and so never allocates. A period can
+ * arrive before its buffers do; samplers render such a period in several
+ * passes, none of which is longer than the buffers.</p>
+ */
+
+final class SamplerMixBuffers implements AutoCloseable
+{
+  private final IntConsumer onResize;
+  private final AttributeSubscriptionType subscription;
+  private volatile Buffers current;
+
+  /**
+   * A pair of buffers of the same length.
+   *
+   * @param left  The left buffer
+   * @param right The right buffer
+   */
+
+  record Buffers(
+    float[] left,
+    float[] right)
+  {
+    /**
+     * @return The length of the buffers in frames
+     */
+
+    int frames()
+    {
+      return this.left.length;
+    }
+  }
+
+  /**
+   * Create mix buffers.
+   *
+   * @param bufferSize The buffer size of the audio context
+   * @param inOnResize A function called with the new size before larger
+   *                   buffers are published, so that buffers that must be
+   *                   at least as large can be resized first
+   */
+
+  SamplerMixBuffers(
+    final AttributeReadableType<Integer> bufferSize,
+    final IntConsumer inOnResize)
+  {
+    this.onResize =
+      Objects.requireNonNull(inOnResize, "onResize");
+    this.current =
+      buffersOf(bufferSize.get().intValue());
+    this.subscription =
+      bufferSize.subscribe((oldValue, newValue) -> {
+        this.resize(newValue.intValue());
+      });
+  }
+
+  private static Buffers buffersOf(
+    final int frames)
+  {
+    final var size = Math.max(1, frames);
+    return new Buffers(new float[size], new float[size]);
+  }
+
+  private void resize(
+    final int frames)
+  {
+    if (frames > this.current.frames()) {
+      this.onResize.accept(frames);
+      this.current = buffersOf(frames);
+    }
+  }
+
+  /**
+   * @return The current buffers
+   */
+
+  Buffers current()
+  {
+    return this.current;
+  }
+
+  @Override
+  public void close()
+  {
+    this.subscription.close();
+  }
+}
@@ -18,89 +18,111 @@
 package com.io7m.sampler0;
 
 import java.nio.FloatBuffer;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>A monophonic sampler.</p>
+ *
+ * <p>The sampler plays a single reusable voice. Held notes are kept in a
+ * {@link SamplerMonoNoteStack}, and the configured
+ * {@link SamplerMonoNotePriority} chooses the held note that sounds.
+ * Releasing a note that is not sounding changes nothing; releasing the
+ * sounding note moves to the next held note, or releases the voice if no
+ * notes are held.</p>
+ *
+ * <p>When the sounding note changes while another note is held, the voice
+ * is either restarted or glides to the new note, according to the
+ * configured {@link SamplerMonoLegato} behaviour. Glides are linear in
+ * pitch, measured in cents of the {@link TuningTable} of the current map,
+ * and take the configured portamento time. While a glide is in
+ * progress, the voice renders in runs no longer than one mixer block, and
+ * the rate is ramped linearly across each run.</p>
+ */
 
 public final class SamplerMono implements SamplerType
 {
+  private final SamplerMonoConfiguration configuration;
   private final EventBuffer events;
+  private final EventQueue eventQueue;
   private final AudioContextType context;
-  private volatile SampleMap samples;
-  private volatile SampleState samplePlaying;
+  private final SamplerSampleMaps samples;
+  private final SampleMixer mixer;
+  private final EnvelopeADSRParameters envelope;
+  private final SampleStreamer streamer;
+  private final SamplerVoice voice;
+  private final SamplerMonoNoteStack held;
+  private final float tailThreshold;
   private volatile double pitchBend;
-  private final double frame[] = new double[2];
+  private double rateScale;
+  private double rateScaleTarget;
+  private int sounding;
+  private double pitch;
+  private double pitchStep;
+  private double pitchTarget;
+  private double pitchOrigin;
+  private int outputRate;
+  private long serial;
+  private final SamplerMixBuffers mix;
+  private volatile long frameTime;
 
-  private static final class SampleState
+  public SamplerMono(
+    final AudioContextType inContext)
   {
-    private final SampleMapEntry sample;
-    private boolean done;
-    private double positionReal;
-    private int position;
-
-    SampleState(
-      final SampleMapEntry inSample)
-    {
-      this.sample = Objects.requireNonNull(inSample, "sample");
-      this.position = 0;
-      this.positionReal = 0.0;
-      this.done = false;
-    }
-
-    public void evaluate(
-      final double[] frame,
-      final double pitchBend)
-    {
-      if (this.done) {
-        Arrays.fill(frame, 0.0);
-        return;
-      }
-
-      final var sampleBuffer = this.sample.sample();
-      sampleBuffer.frameGetExact(this.position, frame);
-
-      final double rateScale =
-        PitchBend.pitchBendToRate(pitchBend, 24);
-
-      final var newPositionReal =
-        this.positionReal + (this.sample.playbackRate() * rateScale);
-
-      final var newPosition =
-        (int) newPositionReal;
-
-      if (newPosition >= sampleBuffer.frames()) {
-        this.done = true;
-      }
-
-      this.positionReal = newPositionReal;
-      this.position = newPosition;
-    }
+    this(inContext, SamplerMonoConfiguration.defaults());
   }
 
   public SamplerMono(
-    final AudioContextType inContext)
+    final AudioContextType inContext,
+    final SamplerMonoConfiguration inConfiguration)
   {
     this.context =
       Objects.requireNonNull(inContext, "context");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
     this.events =
       new EventBuffer();
+    this.eventQueue =
+      new EventQueue(4096);
+    this.streamer =
+      new SampleStreamer(4);
     this.samples =
-      SampleMap.empty();
+      new SamplerSampleMaps(this.context, this.streamer);
+
+    this.mixer =
+      SampleMixer.create(inConfiguration.interpolation());
+    this.outputRate =
+      this.context.sampleRate().get().intValue();
+    this.envelope =
+      new EnvelopeADSRParameters(inConfiguration.envelope(), this.outputRate);
+    this.voice =
+      new SamplerVoice(this.streamer, this.envelope);
+    this.held =
+      new SamplerMonoNoteStack();
+    this.tailThreshold =
+      SamplePeaks.amplitudeOf(inConfiguration.tailThresholdDecibels());
 
-    this.loadSamples(this.samples.description());
+    this.sounding = -1;
+    this.rateScale = 1.0;
+    this.rateScaleTarget = 1.0;
+    this.mix = new SamplerMixBuffers(this.context.bufferSize(), frames -> { });
+    this.loadSamples(SampleMapDescription.empty());
   }
 
   @Override
-  public void loadSamples(
+  public CompletableFuture<SampleMap> loadSamples(
     final SampleMapDescription map)
   {
-    this.context.executeIO(() -> {
-      final var newMap = map.load(
-        this.context.sampleRateConverter(),
-        this.context.sampleRate().get().intValue()
-      );
-      this.samples = newMap;
-      return newMap;
-    });
+    return this.samples.loadSamples(map);
+  }
+
+  @Override
+  public CompletableFuture<SampleMap> loadLibrary(
+    final Path file)
+  {
+    return this.samples.loadLibrary(file);
   }
 
   @Override
@@ -109,37 +131,215 @@ public final class SamplerMono implements SamplerType
     final FloatBuffer bufferR,
     final int frames)
   {
-    for (int index = 0; index < frames; ++index) {
-      final var events = this.events.eventsTake(index);
-      for (final var event : events) {
-        if (event instanceof EventType.NoteOn eventNoteOn) {
-          this.samplePlaying =
-            new SampleState(this.samples.sampleForNote(eventNoteOn.note()));
-        }
-        if (event instanceof EventType.NoteOff eventNoteOff) {
-          this.samplePlaying = null;
-        }
-        if (event instanceof EventType.PitchBend eventPitchBend) {
-          this.pitchBend = eventPitchBend.value();
+    final var periodStart = this.frameTime;
+    this.eventQueue.drainInto(this.events, periodStart);
+
+    final var rate = this.samples.outputRate();
+    if (rate > 0 && rate != this.outputRate) {
+      this.outputRate = rate;
+      this.envelope.configure(this.envelope.configuration(), rate);
+    }
+
+    /*
+     * If the buffer size has just grown and the larger mix buffers have not
+     * yet arrived, the period is mixed in several passes, each as long as
+     * the buffers.
+     */
+
+    final var buffers = this.mix.current();
+    final var outL = buffers.left();
+    final var outR = buffers.right();
+    var mixStart = 0;
+    var mixEnd = Math.min(frames, buffers.frames());
+    Arrays.fill(outL, 0, mixEnd, 0.0f);
+    Arrays.fill(outR, 0, mixEnd, 0.0f);
+
+    /*
+     * Split the period into segments at event boundaries. Events are applied
+     * at the start of each segment, and the voice then renders the whole
+     * segment in one run. Control-rate parameters (the pitch bend rate and
+     * the glide position) are evaluated at the ends of each segment, and
+     * the rate is ramped linearly across the segment to avoid zipper noise.
+     * Segments are shortened while a glide is in progress, so that the
+     * linear ramp closely follows the exponential rate curve of the glide.
+     */
+
+    var index = 0;
+    while (index < frames) {
+      while (this.events.eventsPending(index)) {
+        this.applyEvent();
+        this.events.eventNext();
+      }
+
+      var segmentEnd =
+        Math.min(mixEnd, this.events.eventsNextTime());
+      if (this.pitchStep != 0.0) {
+        segmentEnd = Math.min(segmentEnd, index + SampleMixer.BLOCK_FRAMES);
+      }
+
+      final var segmentLength =
+        segmentEnd - index;
+
+      final var playing = this.voice;
+      if (!playing.isDone()) {
+        final var glideStart =
+          TuningTable.ratioOfCents(this.pitch - this.pitchOrigin);
+        this.pitchAdvance(segmentLength);
+        final var glideEnd =
+          TuningTable.ratioOfCents(this.pitch - this.pitchOrigin);
+
+        final var correction =
+          playing.rateCorrection(this.outputRate);
+        final var rateStart =
+          this.rateScale * glideStart * correction;
+        final var rateEnd =
+          this.rateScaleTarget * glideEnd * correction;
+
+        playing.render(
+          this.mixer,
+          outL,
+          outR,
+          index - mixStart,
+          segmentLength,
+          rateStart,
+          (rateEnd - rateStart) / segmentLength
+        );
+        if (playing.isDone()) {
+          playing.stop();
         }
+      } else {
+        this.pitchAdvance(segmentLength);
+      }
+
+      this.rateScale = this.rateScaleTarget;
+      index = segmentEnd;
+
+      if (index == mixEnd) {
+        bufferL.put(mixStart, outL, 0, mixEnd - mixStart);
+        bufferR.put(mixStart, outR, 0, mixEnd - mixStart);
+        mixStart = mixEnd;
+        mixEnd = Math.min(frames, mixStart + buffers.frames());
+        Arrays.fill(outL, 0, mixEnd - mixStart, 0.0f);
+        Arrays.fill(outR, 0, mixEnd - mixStart, 0.0f);
       }
+    }
+
+    if (!this.voice.isDone()) {
+      final var note = this.voice.note();
+      this.samples.soundingSet(
+        note < 64 ? 1L << note : 0L,
+        note >= 64 ? 1L << (note - 64) : 0L
+      );
+    } else {
+      this.samples.soundingSet(0L, 0L);
+    }
 
-      final var playing = this.samplePlaying;
-      if (playing != null) {
-        final var channels = playing.sample.sample().channels();
-        playing.evaluate(this.frame, this.pitchBend);
+    this.events.eventsFinish(frames);
+    this.frameTime = periodStart + frames;
+  }
 
-        bufferL.put(index, (float) this.frame[0]);
-        if (channels == 2) {
-          bufferR.put(index, (float) this.frame[1]);
+  private void pitchAdvance(
+    final int frames)
+  {
+    if (this.pitchStep == 0.0) {
+      return;
+    }
+
+    this.pitch += this.pitchStep * frames;
+    final var overshoot = this.pitchStep > 0.0
+      ? this.pitch >= this.pitchTarget
+      : this.pitch <= this.pitchTarget;
+
+    if (overshoot) {
+      this.pitch = this.pitchTarget;
+      this.pitchStep = 0.0;
+    }
+  }
+
+  private void applyEvent()
+  {
+    final var note = this.events.eventNote();
+    switch (this.events.eventKind()) {
+      case EventBuffer.KIND_NOTE_ON -> {
+        final var legato = this.sounding != -1;
+        this.held.push(note, (float) this.events.eventValue());
+        if (this.held.select(this.configuration.notePriority()) == note) {
+          this.noteChange(note, legato);
+        }
+      }
+      case EventBuffer.KIND_NOTE_OFF -> {
+        if (!this.held.remove(note) || note != this.sounding) {
+          return;
+        }
+        final var next = this.held.select(this.configuration.notePriority());
+        if (next == -1) {
+          this.voice.release();
+          this.sounding = -1;
         } else {
-          bufferR.put(index, (float) this.frame[0]);
+          this.noteChange(next, true);
         }
+      }
+      case EventBuffer.KIND_PITCH_BEND -> {
+        this.pitchBend = this.events.eventValue();
+        this.rateScaleTarget =
+          TuningTable.ratioOfSemitones(this.pitchBend * 24.0);
+      }
+      default -> {
+
+      }
+    }
+  }
+
+  private void noteChange(
+    final int note,
+    final boolean legato)
+  {
+    this.sounding = note;
+
+    final var map = this.samples.current();
+    final var tuning = map.description().tuning();
+
+    /*
+     * Notes that the tuning leaves unmapped have no samples, so they are
+     * never glided to; restarting the voice selects the silent entry.
+     */
+
+    final var glide =
+      legato
+        && this.configuration.legato() == SamplerMonoLegato.GLIDE
+        && !this.voice.isDone()
+        && tuning.isMapped(note);
+
+    if (glide) {
+      final var cents = tuning.cents(note);
+      this.pitchTarget = cents;
+      final var frames =
+        this.configuration.portamentoSeconds() * this.outputRate;
+      if (frames < 1.0) {
+        this.pitch = cents;
+        this.pitchStep = 0.0;
       } else {
-        bufferL.put(index, 0.0f);
-        bufferR.put(index, 0.0f);
+        this.pitchStep = (cents - this.pitch) / frames;
       }
+      return;
     }
+
+    final var velocity = this.held.velocity(note);
+    this.voice.start(
+      map.sampleSelect(note, SampleMap.velocityIndex(velocity)),
+      0,
+      note,
+      velocity,
+      this.serial++,
+      map.sampleRate(),
+      this.tailThreshold
+    );
+    final var cents =
+      tuning.isMapped(note) ? tuning.cents(note) : 0.0;
+    this.pitch = cents;
+    this.pitchStep = 0.0;
+    this.pitchTarget = cents;
+    this.pitchOrigin = cents;
   }
 
   @Override
@@ -148,4 +348,44 @@ public final class SamplerMono implements SamplerType
   {
     this.events.eventAdd(event);
   }
+
+  @Override
+  public boolean onMidi(
+    final long message)
+  {
+    return this.events.eventAddMidi(message);
+  }
+
+  @Override
+  public long frameTime()
+  {
+    return this.frameTime;
+  }
+
+  @Override
+  public EventQueue eventQueue()
+  {
+    return this.eventQueue;
+  }
+
+  @Override
+  public int voicesActive()
+  {
+    return this.voice.isDone() ? 0 : 1;
+  }
+
+  @Override
+  public long eventsDropped()
+  {
+    return this.eventQueue.eventsDropped() + this.events.eventsDropped();
+  }
+
+  @Override
+  public void close()
+  {
+    this.mix.close();
+    this.samples.close();
+    this.voice.stop();
+    this.streamer.close();
+  }
 }
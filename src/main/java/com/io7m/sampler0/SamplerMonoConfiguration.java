@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Objects;
+
+/**
+ * The configuration for monophonic samplers.
+ *
+ * @param notePriority          The held note that sounds
+ * @param legato                The behaviour when the sounding note changes
+ *                              while a note is held
+ * @param portamentoSeconds     The time taken to glide between notes, when
+ *                              {@code legato} is
+ *                              {@link SamplerMonoLegato#GLIDE}
+ * @param interpolation         The interpolation used when playing samples
+ * @param envelope              The amplitude envelope of the voice
+ * @param tailThresholdDecibels The level in dBFS below which the tails of
+ *                              samples are treated as silent; negative
+ *                              infinity disables tail culling
+ */
+
+public record SamplerMonoConfiguration(
+  SamplerMonoNotePriority notePriority,
+  SamplerMonoLegato legato,
+  double portamentoSeconds,
+  SampleInterpolation interpolation,
+  EnvelopeADSRConfiguration envelope,
+  double tailThresholdDecibels)
+{
+  public SamplerMonoConfiguration
+  {
+    Objects.requireNonNull(notePriority, "notePriority");
+    Objects.requireNonNull(legato, "legato");
+    if (!(portamentoSeconds >= 0.0)) {
+      throw new IllegalArgumentException(
+        "Portamento time must be non-negative.");
+    }
+    Objects.requireNonNull(interpolation, "interpolation");
+    Objects.requireNonNull(envelope, "envelope");
+    if (Double.isNaN(tailThresholdDecibels) || tailThresholdDecibels > 0.0) {
+      throw new IllegalArgumentException(
+        "Tail threshold must be at most 0 dBFS.");
+    }
+  }
+
+  public static SamplerMonoConfiguration defaults()
+  {
+    return new SamplerMonoConfiguration(
+      SamplerMonoNotePriority.LAST,
+      SamplerMonoLegato.RETRIGGER,
+      0.0,
+      SampleInterpolation.CUBIC,
+      EnvelopeADSRConfiguration.defaults(),
+      -90.0
+    );
+  }
+}
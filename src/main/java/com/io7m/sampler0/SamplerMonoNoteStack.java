@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+/**
+ * <p>The notes held on a monophonic sampler, in the order in which they were
+ * pressed.</p>
+ *
+ * <p>The stack is held in fixed arrays large enough for every MIDI note, so
+ * pressing and releasing notes never allocates. A note appears at most
+ * once; pressing a note that is already held moves it to the top.</p>
+ */
+
+public final class SamplerMonoNoteStack
+{
+  private final int[] notes;
+  private final float[] velocities;
+  private int count;
+
+  /**
+   * Create an empty stack.
+   */
+
+  public SamplerMonoNoteStack()
+  {
+    this.notes = new int[128];
+    this.velocities = new float[128];
+    this.count = 0;
+  }
+
+  /**
+   * @return The number of held notes
+   */
+
+  public int size()
+  {
+    return this.count;
+  }
+
+  /**
+   * @return {@code true} if no notes are held
+   */
+
+  public boolean isEmpty()
+  {
+    return this.count == 0;
+  }
+
+  /**
+   * Press a note.
+   *
+   * @param note     The note
+   * @param velocity The velocity
+   */
+
+  public void push(
+    final int note,
+    final float velocity)
+  {
+    this.remove(note);
+    this.notes[this.count] = note;
+    this.velocities[this.count] = velocity;
+    ++this.count;
+  }
+
+  /**
+   * Release a note. This does nothing if the note is not held.
+   *
+   * @param note The note
+   *
+   * @return {@code true} if the note was held
+   */
+
+  public boolean remove(
+    final int note)
+  {
+    for (int index = 0; index < this.count; ++index) {
+      if (this.notes[index] == note) {
+        final var after = this.count - index - 1;
+        System.arraycopy(this.notes, index + 1, this.notes, index, after);
+        System.arraycopy(
+          this.velocities, index + 1, this.velocities, index, after);
+        --this.count;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Release every note.
+   */
+
+  public void clear()
+  {
+    this.count = 0;
+  }
+
+  /**
+   * @param priority The note priority
+   *
+   * @return The held note that should sound, or {@code -1} if no notes are
+   * held
+   */
+
+  public int select(
+    final SamplerMonoNotePriority priority)
+  {
+    if (this.count == 0) {
+      return -1;
+    }
+
+    return switch (priority) {
+      case LAST -> this.notes[this.count - 1];
+      case LOW -> {
+        var low = this.notes[0];
+        for (int index = 1; index < this.count; ++index) {
+          low = Math.min(low, this.notes[index]);
+        }
+        yield low;
+      }
+      case HIGH -> {
+        var high = this.notes[0];
+        for (int index = 1; index < this.count; ++index) {
+          high = Math.max(high, this.notes[index]);
+        }
+        yield high;
+      }
+    };
+  }
+
+  /**
+   * @param note The note
+   *
+   * @return The velocity with which the note was pressed, or {@code 0} if
+   * the note is not held
+   */
+
+  public float velocity(
+    final int note)
+  {
+    for (int index = 0; index < this.count; ++index) {
+      if (this.notes[index] == note) {
+        return this.velocities[index];
+      }
+    }
+    return 0.0f;
+  }
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>A multitimbral sampler, with one part for each of the 16 MIDI
+ * channels.</p>
+ *
+ * <p>Events are routed to parts by channel. Each part has its own sample
+ * map and pitch bend, but every part draws its voices from one shared
+ * {@link SamplerVoicePool}: the configured polyphony is a budget for the
+ * whole sampler, and a voice may be stolen from any part. All parts render
+ * into one mix in each call to
+ * {@link #onProcess(FloatBuffer, FloatBuffer, int)}.</p>
+ *
+ * <p>The {@link SamplerType} methods that load samples act on the part for
+ * channel 0, and events added as {@link EventType} values are delivered on
+ * channel 0.</p>
+ *
+ * <p>{@link SamplerPoly} is a sampler of this kind with a single part that
+ * plays the events of every channel.</p>
+ */
+
+public final class SamplerMulti implements SamplerType
+{
+  /**
+   * The number of parts.
+   */
+
+  public static final int PARTS = 16;
+
+  private final EventBuffer events;
+  private final EventQueue eventQueue;
+  private final AudioContextType context;
+  private final SamplerSampleMaps[] parts;
+  private final boolean omni;
+  private final SampleMixer mixer;
+  private final SamplerRenderWorkers workers;
+  private final int parallelVoicesMinimum;
+  private final SamplerVoicePool voices;
+  private final double[] rateScales;
+  private final double[] rateScaleTargets;
+  private final double[] rateSteps;
+  private final long[] soundingLow;
+  private final long[] soundingHigh;
+  private final SamplerMixBuffers mix;
+  private volatile long frameTime;
+
+  public SamplerMulti(
+    final AudioContextType inContext,
+    final SamplerPolyConfiguration configuration)
+  {
+    this(inContext, configuration, false);
+  }
+
+  /**
+   * Create a sampler.
+   *
+   * @param inContext     The audio context
+   * @param configuration The configuration
+   * @param inOmni        {@code true} if the sampler has a single part that
+   *                      plays the events of every channel
+   */
+
+  SamplerMulti(
+    final AudioContextType inContext,
+    final SamplerPolyConfiguration configuration,
+    final boolean inOmni)
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    this.context =
+      Objects.requireNonNull(inContext, "context");
+    this.events =
+      new EventBuffer();
+    this.eventQueue =
+      new EventQueue(4096);
+    this.voices =
+      new SamplerVoicePool(
+        configuration.polyphony(),
+        configuration.reserveVoices(),
+        configuration.stealing(),
+        configuration.envelope(),
+        this.context.sampleRate().get().intValue()
+      );
+    this.voices.tailThresholdSet(configuration.tailThresholdDecibels());
+
+    this.omni = inOmni;
+    this.parts = new SamplerSampleMaps[inOmni ? 1 : PARTS];
+    for (int part = 0; part < this.parts.length; ++part) {
+      this.parts[part] =
+        new SamplerSampleMaps(this.context, this.voices.streamer());
+    }
+
+    this.mixer =
+      SampleMixer.create(configuration.interpolation());
+
+    final var bufferSize =
+      this.context.bufferSize().get().intValue();
+
+    if (configuration.renderThreads() > 1) {
+      this.workers =
+        new SamplerRenderWorkers(
+          configuration.renderThreads(),
+          configuration.interpolation(),
+          bufferSize
+        );
+    } else {
+      this.workers = null;
+    }
+    this.parallelVoicesMinimum =
+      configuration.parallelVoicesMinimum();
+
+    final var partCount = this.parts.length;
+    this.rateScales = new double[partCount];
+    this.rateScaleTargets = new double[partCount];
+    this.rateSteps = new double[partCount];
+    this.soundingLow = new long[partCount];
+    this.soundingHigh = new long[partCount];
+    Arrays.fill(this.rateScales, 1.0);
+    Arrays.fill(this.rateScaleTargets, 1.0);
+
+    this.mix =
+      new SamplerMixBuffers(this.context.bufferSize(), frames -> {
+        if (this.workers != null) {
+          this.workers.busesResize(frames);
+        }
+      });
+    for (final var part : this.parts) {
+      part.loadSamples(SampleMapDescription.empty());
+    }
+  }
+
+  @Override
+  public CompletableFuture<SampleMap> loadSamples(
+    final SampleMapDescription map)
+  {
+    return this.loadSamples(0, map);
+  }
+
+  @Override
+  public CompletableFuture<SampleMap> loadLibrary(
+    final Path file)
+  {
+    return this.loadLibrary(0, file);
+  }
+
+  /**
+   * Load a sample map into the part for a channel.
+   *
+   * @param channel The MIDI channel in the range {@code [0, 15]}
+   * @param map     The map description
+   *
+   * @return The loaded map, once loading completes
+   *
+   * @see SamplerType#loadSamples(SampleMapDescription)
+   */
+
+  public CompletableFuture<SampleMap> loadSamples(
+    final int channel,
+    final SampleMapDescription map)
+  {
+    return this.parts[this.partOf(channel)].loadSamples(map);
+  }
+
+  /**
+   * Load a compiled sample library into the part for a channel.
+   *
+   * @param channel The MIDI channel in the range {@code [0, 15]}
+   * @param file    The library file
+   *
+   * @return The loaded map, once loading completes
+   *
+   * @see SamplerType#loadLibrary(Path)
+   */
+
+  public CompletableFuture<SampleMap> loadLibrary(
+    final int channel,
+    final Path file)
+  {
+    return this.parts[this.partOf(channel)].loadLibrary(file);
+  }
+
+  /**
+   * @param channel The MIDI channel in the range {@code [0, 15]}
+   *
+   * @return The current sample map of the part for the channel
+   */
+
+  public SampleMap sampleMap(
+    final int channel)
+  {
+    return this.parts[this.partOf(channel)].current();
+  }
+
+  /**
+   * @param channel The MIDI channel in the range {@code [0, 15]}
+   *
+   * @return The index of the part that plays the channel
+   */
+
+  private int partOf(
+    final int channel)
+  {
+    Objects.checkIndex(channel, PARTS);
+    return this.omni ? 0 : channel;
+  }
+
+  @Override
+  public void onProcess(
+    final FloatBuffer bufferL,
+    final FloatBuffer bufferR,
+    final int frames)
+  {
+    final var periodStart = this.frameTime;
+    this.eventQueue.drainInto(this.events, periodStart);
+
+    final var outputRate = this.parts[0].outputRate();
+    this.voices.sampleRateSet(outputRate);
+
+    /*
+     * The mix buffers are normally as long as the period. If the buffer
+     * size has just grown and the larger buffers have not yet arrived, the
+     * period is mixed in several passes, each as long as the buffers.
+     */
+
+    final var buffers = this.mix.current();
+    final var outL = buffers.left();
+    final var outR = buffers.right();
+    var mixStart = 0;
+    var mixEnd = Math.min(frames, buffers.frames());
+    Arrays.fill(outL, 0, mixEnd, 0.0f);
+    Arrays.fill(outR, 0, mixEnd, 0.0f);
+
+    /*
+     * Split the period into segments at event boundaries. Events are applied
+     * at the start of each segment, and every voice then renders the whole
+     * segment in one run. Control-rate parameters (currently the pitch bend
+     * rate of each part) are evaluated once per event, and each voice ramps
+     * linearly across the following segment between the rates of its own
+     * part to avoid zipper noise.
+     */
+
+    var index = 0;
+    while (index < frames) {
+      while (this.events.eventsPending(index)) {
+        this.applyEvent();
+        this.events.eventNext();
+      }
+
+      final var segmentEnd =
+        Math.min(mixEnd, this.events.eventsNextTime());
+      final var segmentLength =
+        segmentEnd - index;
+
+      for (int part = 0; part < this.parts.length; ++part) {
+        this.rateSteps[part] =
+          (this.rateScaleTargets[part] - this.rateScales[part])
+            / segmentLength;
+      }
+
+      this.renderSegment(
+        outL, outR, index - mixStart, segmentLength, outputRate);
+
+      System.arraycopy(
+        this.rateScaleTargets, 0, this.rateScales, 0, this.parts.length);
+      index = segmentEnd;
+
+      if (index == mixEnd) {
+        bufferL.put(mixStart, outL, 0, mixEnd - mixStart);
+        bufferR.put(mixStart, outR, 0, mixEnd - mixStart);
+        mixStart = mixEnd;
+        mixEnd = Math.min(frames, mixStart + buffers.frames());
+        Arrays.fill(outL, 0, mixEnd - mixStart, 0.0f);
+        Arrays.fill(outR, 0, mixEnd - mixStart, 0.0f);
+      }
+    }
+
+    Arrays.fill(this.soundingLow, 0L);
+    Arrays.fill(this.soundingHigh, 0L);
+    for (int voice = 0; voice < this.voices.activeCount(); ++voice) {
+      final var playing = this.voices.active(voice);
+      final var part = playing.channel();
+      final var note = playing.note();
+      if (note < 64) {
+        this.soundingLow[part] |= 1L << note;
+      } else {
+        this.soundingHigh[part] |= 1L << (note - 64);
+      }
+    }
+    for (int part = 0; part < this.parts.length; ++part) {
+      this.parts[part].soundingSet(
+        this.soundingLow[part],
+        this.soundingHigh[part]
+      );
+    }
+
+    this.events.eventsFinish(frames);
+    this.frameTime = periodStart + frames;
+  }
+
+  /**
+   * Render every active voice into the mix, and free the voices that
+   * finish.
+   */
+
+  private void renderSegment(
+    final float[] outL,
+    final float[] outR,
+    final int offset,
+    final int count,
+    final int outputRate)
+  {
+    final var parallel =
+      this.workers != null
+        && this.voices.activeCount() >= this.parallelVoicesMinimum;
+
+    if (parallel) {
+      this.workers.render(
+        this.voices,
+        outL,
+        outR,
+        offset,
+        count,
+        this.rateScales,
+        this.rateSteps,
+        outputRate
+      );
+      for (int voice = this.voices.activeCount() - 1; voice >= 0; --voice) {
+        final var playing = this.voices.active(voice);
+        if (playing.isDone()) {
+          this.voices.free(playing);
+        }
+      }
+      return;
+    }
+
+    for (int voice = this.voices.activeCount() - 1; voice >= 0; --voice) {
+      final var playing = this.voices.active(voice);
+      final var part = playing.channel();
+      final var correction = playing.rateCorrection(outputRate);
+      playing.render(
+        this.mixer,
+        outL,
+        outR,
+        offset,
+        count,
+        this.rateScales[part] * correction,
+        this.rateSteps[part] * correction
+      );
+      if (playing.isDone()) {
+        this.voices.free(playing);
+      }
+    }
+  }
+
+  private void applyEvent()
+  {
+    final var part = this.omni ? 0 : this.events.eventChannel();
+    final var note = this.events.eventNote();
+    switch (this.events.eventKind()) {
+      case EventBuffer.KIND_NOTE_ON -> {
+        final var map = this.parts[part].current();
+        final var velocity = this.events.eventValue();
+        this.voices.start(
+          map.sampleSelect(note, SampleMap.velocityIndex(velocity)),
+          part,
+          note,
+          (float) velocity,
+          map.sampleRate()
+        );
+      }
+      case EventBuffer.KIND_NOTE_OFF -> {
+        this.voices.releaseNote(part, note);
+      }
+      case EventBuffer.KIND_PITCH_BEND -> {
+        this.rateScaleTargets[part] =
+          TuningTable.ratioOfSemitones(this.events.eventValue() * 24.0);
+      }
+      default -> {
+
+      }
+    }
+  }
+
+  @Override
+  public void onEvent(
+    final EventType event)
+  {
+    this.events.eventAdd(event);
+  }
+
+  @Override
+  public boolean onMidi(
+    final long message)
+  {
+    return this.events.eventAddMidi(message);
+  }
+
+  @Override
+  public long frameTime()
+  {
+    return this.frameTime;
+  }
+
+  @Override
+  public EventQueue eventQueue()
+  {
+    return this.eventQueue;
+  }
+
+  @Override
+  public int voicesActive()
+  {
+    return this.voices.activeCount();
+  }
+
+  @Override
+  public long eventsDropped()
+  {
+    return this.eventQueue.eventsDropped() + this.events.eventsDropped();
+  }
+
+  @Override
+  public void close()
+  {
+    this.mix.close();
+    for (final var part : this.parts) {
+      part.close();
+    }
+    this.voices.streamer().close();
+    if (this.workers != null) {
+      this.workers.close();
+    }
+  }
+}
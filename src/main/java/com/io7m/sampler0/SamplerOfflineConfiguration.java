@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Objects;
+
+/**
+ * The configuration for offline rendering.
+ *
+ * @param sampleRate   The output sample rate
+ * @param blockFrames  The number of frames passed to each call to
+ *                     {@link SamplerType#onProcess}
+ * @param outputFormat The format of the output files
+ * @param tailFrames   The number of frames rendered after the last event
+ *
+ * @see SamplerOfflineRenderer
+ */
+
+public record SamplerOfflineConfiguration(
+  int sampleRate,
+  int blockFrames,
+  SampleFormat outputFormat,
+  int tailFrames)
+{
+  /**
+   * Create a configuration.
+   *
+   * @throws IllegalArgumentException If any of the sizes or the sample rate
+   *                                  are out of range
+   */
+
+  public SamplerOfflineConfiguration
+  {
+    if (sampleRate <= 0) {
+      throw new IllegalArgumentException("Sample rate must be positive.");
+    }
+    if (blockFrames <= 0) {
+      throw new IllegalArgumentException("Block size must be positive.");
+    }
+    Objects.requireNonNull(outputFormat, "outputFormat");
+    if (tailFrames < 0) {
+      throw new IllegalArgumentException("Tail must be non-negative.");
+    }
+  }
+
+  /**
+   * @return A configuration that renders 32-bit float files at 48kHz, with
+   * a two second tail
+   */
+
+  public static SamplerOfflineConfiguration defaults()
+  {
+    return new SamplerOfflineConfiguration(
+      48000,
+      512,
+      SampleFormat.FLOAT32,
+      48000 * 2
+    );
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import com.io7m.jattribute.core.AttributeReadableType;
+import com.io7m.jattribute.core.AttributeType;
+import com.io7m.jattribute.core.Attributes;
+import com.io7m.jsamplebuffer.api.SampleBufferRateConverterType;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * The audio context given to samplers during offline rendering. The sample
+ * rate and buffer size never change.
+ */
+
+final class SamplerOfflineContext implements AudioContextType
+{
+  private final AttributeType<Integer> sampleRate;
+  private final AttributeType<Integer> bufferSize;
+  private final SampleBufferRateConverterType converter;
+  private final Optional<SampleResampleCache> resampleCache;
+  private final Executor ioExecutor;
+
+  SamplerOfflineContext(
+    final SampleBufferRateConverterType inConverter,
+    final Optional<SampleResampleCache> inResampleCache,
+    final Executor inIOExecutor,
+    final int inSampleRate,
+    final int inBufferSize)
+  {
+    this.converter =
+      Objects.requireNonNull(inConverter, "converter");
+    this.resampleCache =
+      Objects.requireNonNull(inResampleCache, "resampleCache");
+    this.ioExecutor =
+      Objects.requireNonNull(inIOExecutor, "ioExecutor");
+
+    final var attributes = Attributes.create(e -> { });
+    this.sampleRate = attributes.create(Integer.valueOf(inSampleRate));
+    this.bufferSize = attributes.create(Integer.valueOf(inBufferSize));
+  }
+
+  @Override
+  public SampleBufferRateConverterType sampleRateConverter()
+  {
+    return this.converter;
+  }
+
+  @Override
+  public Optional<SampleResampleCache> resampleCache()
+  {
+    return this.resampleCache;
+  }
+
+  @Override
+  public <T> CompletableFuture<T> executeIO(
+    final IOOperationType<T> operation)
+  {
+    final var future = new CompletableFuture<T>();
+    this.ioExecutor.execute(() -> {
+      try {
+        future.complete(operation.execute());
+      } catch (final Throwable e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  @Override
+  public AttributeReadableType<Integer> sampleRate()
+  {
+    return this.sampleRate;
+  }
+
+  @Override
+  public AttributeReadableType<Integer> bufferSize()
+  {
+    return this.bufferSize;
+  }
+}
@@ -17,29 +17,27 @@
 
 package com.io7m.sampler0;
 
-public final class EnvelopeD
-{
-  private final int decayFrames;
-  private int time;
+import java.nio.file.Path;
+import java.util.Objects;
 
-  public EnvelopeD()
-  {
-    this.decayFrames = 11000;
-    this.time = this.decayFrames;
-  }
+/**
+ * A single offline rendering job.
+ *
+ * @param midiFile   The Standard MIDI File to render
+ * @param outputFile The WAVE file to write
+ */
 
-  public void trigger()
-  {
-    this.time = 0;
-  }
+public record SamplerOfflineJob(
+  Path midiFile,
+  Path outputFile)
+{
+  /**
+   * Create a job.
+   */
 
-  public float evaluate()
+  public SamplerOfflineJob
   {
-    final var timeF = (double) this.time;
-    final var maxF = (double) this.decayFrames;
-
-    final var now = 1.0 - (timeF / maxF);
-    this.time = Math.min(this.decayFrames, this.time + 1);
-    return (float) now;
+    Objects.requireNonNull(midiFile, "midiFile");
+    Objects.requireNonNull(outputFile, "outputFile");
   }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import com.io7m.jsamplebuffer.xmedia.SXMSampleBufferRateConverters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Optional;
+
+/**
+ * Render Standard MIDI Files to WAVE files with a compiled sample library.
+ *
+ * <p>Usage: {@code library.s0lb output-directory file.mid ...}</p>
+ */
+
+public final class SamplerOfflineMain
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(SamplerOfflineMain.class);
+
+  private SamplerOfflineMain()
+  {
+
+  }
+
+  /**
+   * Render the files named on the command line.
+   *
+   * @param args The command-line arguments
+   *
+   * @return The exit code
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static int run(
+    final String[] args)
+    throws IOException
+  {
+    if (args.length < 3) {
+      System.err.println(
+        "usage: library.s0lb output-directory file.mid ...");
+      return 1;
+    }
+
+    final var library = Paths.get(args[0]);
+    final var outputDirectory = Paths.get(args[1]);
+    Files.createDirectories(outputDirectory);
+
+    final var jobs = new ArrayList<SamplerOfflineJob>();
+    for (int index = 2; index < args.length; ++index) {
+      final var midi = Paths.get(args[index]);
+      final var name = midi.getFileName().toString();
+      final var dot = name.lastIndexOf('.');
+      final var base = dot > 0 ? name.substring(0, dot) : name;
+      jobs.add(new SamplerOfflineJob(
+        midi, outputDirectory.resolve(base + ".wav")));
+    }
+
+    final var processors =
+      Runtime.getRuntime().availableProcessors();
+
+    try (var renderer = new SamplerOfflineRenderer(
+      new SamplersPoly(),
+      new SXMSampleBufferRateConverters().createConverter(),
+      Optional.empty(),
+      SamplerOfflineConfiguration.defaults())) {
+      final var results =
+        renderer.renderAll(s -> s.loadLibrary(library), jobs, processors);
+
+      for (final var result : results) {
+        final var seconds =
+          result.frames()
+          / (double) SamplerOfflineConfiguration.defaults().sampleRate();
+        final var speed =
+          seconds / Math.max(1.0e-9, result.duration().toNanos() / 1.0e9);
+        LOG.info(
+          "{}: {} events, {} frames, {}, {}x realtime",
+          result.job().outputFile(),
+          Long.valueOf(result.events()),
+          Long.valueOf(result.frames()),
+          result.duration(),
+          "%.1f".formatted(Double.valueOf(speed))
+        );
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Command-line entry point.
+   *
+   * @param args The command-line arguments
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void main(
+    final String[] args)
+    throws IOException
+  {
+    System.exit(run(args));
+  }
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import com.io7m.jsamplebuffer.api.SampleBufferRateConverterType;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>A renderer that plays Standard MIDI Files through samplers and writes
+ * the output to WAVE files, without an audio server and as fast as the CPU
+ * allows.</p>
+ *
+ * <p>Each job gets a fresh sampler from the factory, with a context whose
+ * sample rate and buffer size are fixed by the configuration. Events from
+ * every track are merged, their times are converted from ticks to frames
+ * using the file's tempo map, and they are delivered to the sampler as
+ * packed messages with {@link SamplerType#onMidi(long)}, on their original
+ * channels, at the start of the block that contains them. Rendering
+ * continues for the configured tail after the last event.</p>
+ *
+ * <p>Sample maps that stream from disk are rejected, because the sampler
+ * would outrun the streaming thread.</p>
+ */
+
+public final class SamplerOfflineRenderer implements AutoCloseable
+{
+  private static final int META_TEMPO = 0x51;
+  private static final int TEMPO_DEFAULT = 500_000;
+
+  private final SamplerFactoryType samplers;
+  private final SampleBufferRateConverterType converter;
+  private final Optional<SampleResampleCache> resampleCache;
+  private final SamplerOfflineConfiguration configuration;
+  private final ExecutorService ioExecutor;
+
+  /**
+   * Load samples into a sampler.
+   */
+
+  public interface SampleLoaderType
+  {
+    /**
+     * Start loading samples, usually with
+     * {@link SamplerType#loadSamples(SampleMapDescription)} or
+     * {@link SamplerType#loadLibrary(Path)}.
+     *
+     * @param sampler The sampler
+     *
+     * @return The loaded map, once loading completes
+     */
+
+    CompletableFuture<SampleMap> load(SamplerType sampler);
+  }
+
+  /**
+   * An event at an absolute frame time.
+   *
+   * @param frame   The frame
+   * @param channel The MIDI channel in the range {@code [0, 15]}
+   * @param kind    The kind, such as {@link EventBuffer#KIND_NOTE_ON}
+   * @param note    The note, if any
+   * @param value   The velocity or pitch bend value, if any
+   */
+
+  public record TimedEvent(
+    long frame,
+    int channel,
+    int kind,
+    int note,
+    double value)
+  {
+    /**
+     * @param timeOffsetInFrames The time offset within the current period
+     *
+     * @return The event as a packed message (see {@link MidiMessages})
+     */
+
+    long toMessage(
+      final int timeOffsetInFrames)
+    {
+      return switch (this.kind) {
+        case EventBuffer.KIND_NOTE_ON -> MidiMessages.pack(
+          timeOffsetInFrames,
+          0x90 | this.channel,
+          this.note,
+          (int) Math.round(this.value * 127.0)
+        );
+        case EventBuffer.KIND_NOTE_OFF -> MidiMessages.pack(
+          timeOffsetInFrames,
+          0x80 | this.channel,
+          this.note,
+          0
+        );
+        default -> {
+          final var raw = 8192 + (int) Math.round(this.value * 8192.0);
+          final var bend = Math.max(0, Math.min(0x3fff, raw));
+          yield MidiMessages.pack(
+            timeOffsetInFrames,
+            0xe0 | this.channel,
+            bend & 0x7f,
+            bend >>> 7
+          );
+        }
+      };
+    }
+  }
+
+  /**
+   * Create a renderer.
+   *
+   * @param inSamplers      The sampler factory
+   * @param inConverter     The sample rate converter used when loading
+   * @param inResampleCache The resample cache used when loading, if any
+   * @param inConfiguration The configuration
+   */
+
+  public SamplerOfflineRenderer(
+    final SamplerFactoryType inSamplers,
+    final SampleBufferRateConverterType inConverter,
+    final Optional<SampleResampleCache> inResampleCache,
+    final SamplerOfflineConfiguration inConfiguration)
+  {
+    this.samplers =
+      Objects.requireNonNull(inSamplers, "samplers");
+    this.converter =
+      Objects.requireNonNull(inConverter, "converter");
+    this.resampleCache =
+      Objects.requireNonNull(inResampleCache, "resampleCache");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.ioExecutor =
+      Executors.newCachedThreadPool(r -> {
+        final var thread = new Thread(r);
+        thread.setDaemon(true);
+        thread.setName("com.io7m.sampler0.offline.io." + thread.getId());
+        return thread;
+      });
+  }
+
+  /**
+   * Read the note and pitch bend events of a Standard MIDI File, merged
+   * across tracks and sorted by time.
+   *
+   * @param file       The file
+   * @param sampleRate The sample rate used to convert times to frames
+   *
+   * @return The events
+   *
+   * @throws IOException On I/O errors or malformed files
+   */
+
+  public static List<TimedEvent> readEvents(
+    final Path file,
+    final int sampleRate)
+    throws IOException
+  {
+    final Sequence sequence;
+    try {
+      sequence = MidiSystem.getSequence(file.toFile());
+    } catch (final InvalidMidiDataException e) {
+      throw new IOException("%s: %s".formatted(file, e.getMessage()), e);
+    }
+
+    final var midiEvents = new ArrayList<MidiEvent>();
+    for (final var track : sequence.getTracks()) {
+      for (int index = 0; index < track.size(); ++index) {
+        midiEvents.add(track.get(index));
+      }
+    }
+    midiEvents.sort(Comparator.comparingLong(MidiEvent::getTick));
+
+    final var tempoMap = new TempoMap(sequence);
+    final var events = new ArrayList<TimedEvent>(midiEvents.size());
+    for (final var midiEvent : midiEvents) {
+      final var tick = midiEvent.getTick();
+      final var seconds = tempoMap.secondsAt(tick);
+      final var message = midiEvent.getMessage();
+      if (message instanceof MetaMessage meta) {
+        tempoMap.tempoUpdate(meta, tick, seconds);
+      } else if (message instanceof ShortMessage shortMessage) {
+        eventAdd(events, Math.round(seconds * sampleRate), shortMessage);
+      }
+    }
+    return events;
+  }
+
+  private static void eventAdd(
+    final List<TimedEvent> events,
+    final long frame,
+    final ShortMessage message)
+  {
+    final var channel = message.getChannel();
+    final var data1 = message.getData1();
+    final var data2 = message.getData2();
+    switch (message.getCommand()) {
+      case ShortMessage.NOTE_ON -> {
+        if (data2 == 0) {
+          events.add(new TimedEvent(
+            frame, channel, EventBuffer.KIND_NOTE_OFF, data1, 0.0));
+        } else {
+          events.add(new TimedEvent(
+            frame, channel, EventBuffer.KIND_NOTE_ON, data1, data2 / 127.0));
+        }
+      }
+      case ShortMessage.NOTE_OFF -> {
+        events.add(new TimedEvent(
+          frame, channel, EventBuffer.KIND_NOTE_OFF, data1, 0.0));
+      }
+      case ShortMessage.PITCH_BEND -> {
+        events.add(new TimedEvent(
+          frame, channel, EventBuffer.KIND_PITCH_BEND, 0,
+          MidiMessages.pitchBend(data1, data2)));
+      }
+      default -> {
+
+      }
+    }
+  }
+
+  /**
+   * The tempo map of a sequence, built up as tempo changes are read in
+   * order. Sequences with SMPTE timing have a fixed tick rate and ignore
+   * tempo changes.
+   */
+
+  private static final class TempoMap
+  {
+    private final float divisionType;
+    private final int resolution;
+    private long tempoTick;
+    private double tempoSeconds;
+    private int tempo;
+
+    TempoMap(
+      final Sequence sequence)
+    {
+      this.divisionType = sequence.getDivisionType();
+      this.resolution = sequence.getResolution();
+      this.tempoTick = 0L;
+      this.tempoSeconds = 0.0;
+      this.tempo = TEMPO_DEFAULT;
+    }
+
+    double secondsAt(
+      final long tick)
+    {
+      if (this.divisionType == Sequence.PPQ) {
+        final var ticks = (double) (tick - this.tempoTick);
+        return this.tempoSeconds
+               + (ticks * this.tempo) / (1.0e6 * this.resolution);
+      }
+      return tick / (this.divisionType * this.resolution);
+    }
+
+    void tempoUpdate(
+      final MetaMessage meta,
+      final long tick,
+      final double seconds)
+    {
+      final var data = meta.getData();
+      if (meta.getType() != META_TEMPO || data.length != 3) {
+        return;
+      }
+
+      var microseconds = 0;
+      for (final var octet : data) {
+        microseconds = (microseconds << 8) + (octet & 0xff);
+      }
+      this.tempoTick = tick;
+      this.tempoSeconds = seconds;
+      this.tempo = microseconds;
+    }
+  }
+
+  /**
+   * Render a single job.
+   *
+   * @param loader The sample loader
+   * @param job    The job
+   *
+   * @return The result
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public SamplerOfflineResult render(
+    final SampleLoaderType loader,
+    final SamplerOfflineJob job)
+    throws IOException
+  {
+    Objects.requireNonNull(loader, "loader");
+    Objects.requireNonNull(job, "job");
+
+    final var sampleRate = this.configuration.sampleRate();
+    final var blockFrames = this.configuration.blockFrames();
+    final var events = readEvents(job.midiFile(), sampleRate);
+    final var context =
+      new SamplerOfflineContext(
+        this.converter,
+        this.resampleCache,
+        this.ioExecutor,
+        sampleRate,
+        blockFrames
+      );
+
+    try (var sampler = this.samplers.createSampler(context)) {
+      final SampleMap map;
+      try {
+        map = loader.load(sampler).get();
+      } catch (final ExecutionException e) {
+        throw new IOException(
+          "%s: Loading samples failed: %s".formatted(
+            job.midiFile(), e.getCause().getMessage()),
+          e.getCause());
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+
+      if (map.description().streaming().isPresent()) {
+        throw new IOException(
+          "%s: Streamed sample maps cannot be rendered offline.".formatted(
+            job.midiFile()));
+      }
+
+      final var timeThen = Instant.now();
+      final var lastFrame =
+        events.isEmpty() ? 0L : events.get(events.size() - 1).frame();
+      final var totalFrames =
+        lastFrame + this.configuration.tailFrames();
+
+      final var bufferL = FloatBuffer.allocate(blockFrames);
+      final var bufferR = FloatBuffer.allocate(blockFrames);
+      final var outL = new float[blockFrames];
+      final var outR = new float[blockFrames];
+
+      try (var writer = new SampleWaveWriter(
+        job.outputFile(),
+        this.configuration.outputFormat(),
+        sampleRate)) {
+        var eventIndex = 0;
+        for (long blockStart = 0L;
+             blockStart < totalFrames;
+             blockStart += blockFrames) {
+          final var frames =
+            (int) Math.min(blockFrames, totalFrames - blockStart);
+
+          while (eventIndex < events.size()) {
+            final var event = events.get(eventIndex);
+            if (event.frame() >= blockStart + frames) {
+              break;
+            }
+            sampler.onMidi(
+              event.toMessage((int) (event.frame() - blockStart)));
+            ++eventIndex;
+          }
+
+          sampler.onProcess(bufferL, bufferR, frames);
+          bufferL.get(0, outL, 0, frames);
+          bufferR.get(0, outR, 0, frames);
+          writer.write(outL, outR, frames);
+        }
+
+        return new SamplerOfflineResult(
+          job,
+          writer.frames(),
+          events.size(),
+          Duration.between(timeThen, Instant.now())
+        );
+      }
+    }
+  }
+
+  /**
+   * Render jobs in parallel, each with its own sampler. Every job is
+   * attempted even if some fail.
+   *
+   * @param loader      The sample loader
+   * @param jobs        The jobs
+   * @param parallelism The maximum number of jobs rendered at once
+   *
+   * @return The results, in the order of the jobs
+   *
+   * @throws IOException If any job failed; the failures are attached as
+   *                     suppressed exceptions
+   */
+
+  public List<SamplerOfflineResult> renderAll(
+    final SampleLoaderType loader,
+    final List<SamplerOfflineJob> jobs,
+    final int parallelism)
+    throws IOException
+  {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive.");
+    }
+
+    final var executor =
+      Executors.newFixedThreadPool(parallelism, r -> {
+        final var thread = new Thread(r);
+        thread.setDaemon(true);
+        thread.setName("com.io7m.sampler0.offline." + thread.getId());
+        return thread;
+      });
+
+    try {
+      final var futures = new ArrayList<Future<SamplerOfflineResult>>();
+      for (final var job : jobs) {
+        futures.add(executor.submit(() -> this.render(loader, job)));
+      }
+
+      final var results = new ArrayList<SamplerOfflineResult>(jobs.size());
+      final var failures = new ArrayList<Throwable>();
+      for (final var future : futures) {
+        try {
+          results.add(future.get());
+        } catch (final ExecutionException e) {
+          failures.add(e.getCause());
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+      }
+
+      if (!failures.isEmpty()) {
+        final var exception =
+          new IOException(
+            "%d of %d renders failed.".formatted(
+              Integer.valueOf(failures.size()),
+              Integer.valueOf(jobs.size())));
+        failures.forEach(exception::addSuppressed);
+        throw exception;
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    this.ioExecutor.shutdownNow();
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The result of an offline rendering job.
+ *
+ * @param job      The job
+ * @param frames   The number of frames written
+ * @param events   The number of events delivered to the sampler
+ * @param duration The time taken to render, excluding loading samples
+ */
+
+public record SamplerOfflineResult(
+  SamplerOfflineJob job,
+  long frames,
+  long events,
+  Duration duration)
+{
+  /**
+   * Create a result.
+   */
+
+  public SamplerOfflineResult
+  {
+    Objects.requireNonNull(job, "job");
+    Objects.requireNonNull(duration, "duration");
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * The samples played by one part of a {@link SamplerMulti}: either a
+ * compiled library, or a map description that is loaded when the part is
+ * configured.
+ *
+ * @param channel     The MIDI channel of the part, in the range
+ *                    {@code [0, 15]}
+ * @param library     The compiled library, if the part plays one
+ * @param description The map description, used if there is no library
+ */
+
+public record SamplerPartConfiguration(
+  int channel,
+  Optional<Path> library,
+  SampleMapDescription description)
+{
+  private static final Pattern NOTE_FILE =
+    Pattern.compile("^([0-9]+):(.+)$");
+
+  /**
+   * Create a part.
+   *
+   * @throws IndexOutOfBoundsException If {@code channel} is not in the range
+   *                                   {@code [0, 15]}
+   */
+
+  public SamplerPartConfiguration
+  {
+    Objects.checkIndex(channel, SamplerMulti.PARTS);
+    Objects.requireNonNull(library, "library");
+    Objects.requireNonNull(description, "description");
+  }
+
+  /**
+   * @param channel The MIDI channel of the part
+   * @param file    The compiled library
+   *
+   * @return A part that plays a compiled library
+   */
+
+  public static SamplerPartConfiguration ofLibrary(
+    final int channel,
+    final Path file)
+  {
+    return new SamplerPartConfiguration(
+      channel,
+      Optional.of(file),
+      SampleMapDescription.empty()
+    );
+  }
+
+  /**
+   * @param channel     The MIDI channel of the part
+   * @param description The map description
+   *
+   * @return A part that plays the files of a map description
+   */
+
+  public static SamplerPartConfiguration ofSamples(
+    final int channel,
+    final SampleMapDescription description)
+  {
+    return new SamplerPartConfiguration(
+      channel,
+      Optional.empty(),
+      description
+    );
+  }
+
+  /**
+   * Parse a part from a command-line argument. The argument is either
+   * {@code channel=library.s0lb}, naming a compiled library, or
+   * {@code channel=note:file[,note:file ...]}, naming the sample file for
+   * each note.
+   *
+   * @param text The argument
+   *
+   * @return The part
+   *
+   * @throws IllegalArgumentException If the argument cannot be parsed
+   */
+
+  public static SamplerPartConfiguration parse(
+    final String text)
+    throws IllegalArgumentException
+  {
+    Objects.requireNonNull(text, "text");
+
+    final var separator = text.indexOf('=');
+    if (separator <= 0 || separator == text.length() - 1) {
+      throw new IllegalArgumentException(
+        "Expected channel=source, received: %s".formatted(text));
+    }
+
+    final var channel =
+      parseChannel(text, text.substring(0, separator));
+    final var source =
+      text.substring(separator + 1);
+
+    if (!NOTE_FILE.matcher(source).matches()) {
+      return ofLibrary(channel, Paths.get(source));
+    }
+    return ofSamples(channel, new SampleMapDescription(parseNotes(source)));
+  }
+
+  private static int parseChannel(
+    final String text,
+    final String number)
+  {
+    final int channel;
+    try {
+      channel = Integer.parseInt(number);
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException(
+        "Expected a channel number, received: %s".formatted(text), e);
+    }
+    if (channel < 0 || channel >= SamplerMulti.PARTS) {
+      throw new IllegalArgumentException(
+        "Channel must be in the range [0, %d], received: %s"
+          .formatted(Integer.valueOf(SamplerMulti.PARTS - 1), text));
+    }
+    return channel;
+  }
+
+  private static Int2ObjectRBTreeMap<Path> parseNotes(
+    final String source)
+  {
+    final var filesByNote = new Int2ObjectRBTreeMap<Path>();
+    for (final var element : source.split(",")) {
+      final var matcher = NOTE_FILE.matcher(element);
+      if (!matcher.matches()) {
+        throw new IllegalArgumentException(
+          "Expected note:file, received: %s".formatted(element));
+      }
+      final var note = Integer.parseInt(matcher.group(1));
+      if (note > 127) {
+        throw new IllegalArgumentException(
+          "Note must be in the range [0, 127], received: %s"
+            .formatted(element));
+      }
+      filesByNote.put(note, Paths.get(matcher.group(2)));
+    }
+    return filesByNote;
+  }
+
+  /**
+   * Load the samples into the part of a sampler.
+   *
+   * @param sampler The sampler
+   *
+   * @return The loaded map, once loading completes
+   */
+
+  public CompletableFuture<SampleMap> load(
+    final SamplerMulti sampler)
+  {
+    Objects.requireNonNull(sampler, "sampler");
+
+    if (this.library.isPresent()) {
+      return sampler.loadLibrary(this.channel, this.library.get());
+    }
+    return sampler.loadSamples(this.channel, this.description);
+  }
+}
@@ -17,99 +17,38 @@
 
 package com.io7m.sampler0;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-
 import java.nio.FloatBuffer;
-import java.util.Arrays;
-import java.util.Objects;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A polyphonic sampler with a single sample map that plays the events of
+ * every MIDI channel. This is a {@link SamplerMulti} with one part.
+ */
 
 public final class SamplerPoly implements SamplerType
 {
-  private final EventBuffer events;
-  private final AudioContextType context;
-  private volatile SampleMap samples;
-  private final Int2ObjectOpenHashMap<SampleState> samplesPlaying;
-  private volatile double pitchBend;
-  private final double frame[] = new double[2];
-  private final double frameSum[] = new double[2];
-
-  private static final class SampleState
-  {
-    private final SampleMapEntry sample;
-    private final Runnable onEnd;
-    private boolean done;
-    private double positionReal;
-    private int position;
-
-    SampleState(
-      final SampleMapEntry inSample,
-      final Runnable inOnEnd)
-    {
-      this.sample = Objects.requireNonNull(inSample, "sample");
-      this.position = 0;
-      this.positionReal = 0.0;
-      this.done = false;
-      this.onEnd = inOnEnd;
-    }
-
-    public void evaluate(
-      final double[] frame,
-      final double pitchBend)
-    {
-      if (this.done) {
-        Arrays.fill(frame, 0.0);
-        return;
-      }
-
-      final var sampleBuffer = this.sample.sample();
-      sampleBuffer.frameGetExact(this.position, frame);
-
-      final double rateScale =
-        PitchBend.pitchBendToRate(pitchBend, 24);
-
-      final var newPositionReal =
-        this.positionReal + (this.sample.playbackRate() * rateScale);
-
-      final var newPosition =
-        (int) newPositionReal;
-
-      if (newPosition >= sampleBuffer.frames()) {
-        this.done = true;
-        this.onEnd.run();
-      }
-
-      this.positionReal = newPositionReal;
-      this.position = newPosition;
-    }
-  }
+  private final SamplerMulti sampler;
 
   public SamplerPoly(
-    final AudioContextType inContext)
+    final AudioContextType inContext,
+    final SamplerPolyConfiguration configuration)
   {
-    this.context =
-      Objects.requireNonNull(inContext, "context");
-    this.events =
-      new EventBuffer();
-    this.samples =
-      SampleMap.empty();
-    this.samplesPlaying =
-      new Int2ObjectOpenHashMap<>(128);
-
-    this.loadSamples(this.samples.description());
+    this.sampler = new SamplerMulti(inContext, configuration, true);
   }
 
   @Override
-  public void loadSamples(
+  public CompletableFuture<SampleMap> loadSamples(
     final SampleMapDescription map)
   {
-    this.context.executeIO(() -> {
-      final var newMap = map.load(
-        this.context.sampleRateConverter(),
-        this.context.sampleRate().get().intValue()
-      );
-      this.samples = newMap;
-      return newMap;
-    });
+    return this.sampler.loadSamples(map);
+  }
+
+  @Override
+  public CompletableFuture<SampleMap> loadLibrary(
+    final Path file)
+  {
+    return this.sampler.loadLibrary(file);
   }
 
   @Override
@@ -118,46 +57,50 @@ public final class SamplerPoly implements SamplerType
     final FloatBuffer bufferR,
     final int frames)
   {
-    for (int index = 0; index < frames; ++index) {
-      final var events = this.events.eventsTake(index);
-      for (final var event : events) {
-        if (event instanceof EventType.NoteOn eventNoteOn) {
-          this.samplesPlaying.put(
-            eventNoteOn.note(),
-            new SampleState(
-              this.samples.sampleForNote(eventNoteOn.note()),
-              () -> {
-                this.samplesPlaying.remove(eventNoteOn.note());
-              })
-          );
-        }
-        if (event instanceof EventType.NoteOff eventNoteOff) {
-          this.samplesPlaying.remove(eventNoteOff.note());
-        }
-        if (event instanceof EventType.PitchBend eventPitchBend) {
-          this.pitchBend = eventPitchBend.value();
-        }
-      }
-
-      this.frameSum[0] = 0.0;
-      this.frameSum[1] = 0.0;
-
-      for (final var entry : this.samplesPlaying.int2ObjectEntrySet()) {
-        final var playing = entry.getValue();
-        playing.evaluate(this.frame, this.pitchBend);
-        this.frameSum[0] += this.frame[0];
-        this.frameSum[1] += this.frame[1];
-      }
-
-      bufferL.put(index, (float) this.frameSum[0]);
-      bufferR.put(index, (float) this.frameSum[1]);
-    }
+    this.sampler.onProcess(bufferL, bufferR, frames);
   }
 
   @Override
   public void onEvent(
     final EventType event)
   {
-    this.events.eventAdd(event);
+    this.sampler.onEvent(event);
+  }
+
+  @Override
+  public boolean onMidi(
+    final long message)
+  {
+    return this.sampler.onMidi(message);
+  }
+
+  @Override
+  public long frameTime()
+  {
+    return this.sampler.frameTime();
+  }
+
+  @Override
+  public EventQueue eventQueue()
+  {
+    return this.sampler.eventQueue();
+  }
+
+  @Override
+  public int voicesActive()
+  {
+    return this.sampler.voicesActive();
+  }
+
+  @Override
+  public long eventsDropped()
+  {
+    return this.sampler.eventsDropped();
+  }
+
+  @Override
+  public void close()
+  {
+    this.sampler.close();
   }
 }
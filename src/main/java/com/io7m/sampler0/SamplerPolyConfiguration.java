@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Objects;
+
+/**
+ * The configuration for polyphonic samplers.
+ *
+ * @param polyphony             The maximum number of voices that may sound
+ *                              at once
+ * @param stealing              The voice stealing policy used when all voices
+ *                              are in use
+ * @param interpolation         The interpolation used when playing samples
+ * @param renderThreads         The number of threads that render voices,
+ *                              including the audio thread; {@code 1} renders
+ *                              everything on the audio thread
+ * @param parallelVoicesMinimum The number of active voices below which voices
+ *                              are rendered on the audio thread alone
+ * @param envelope              The amplitude envelope of each voice
+ * @param reserveVoices         The number of voices beyond the polyphony that
+ *                              are used to fade out stolen voices
+ * @param tailThresholdDecibels The level in dBFS below which the tails of
+ *                              samples are treated as silent; negative
+ *                              infinity disables tail culling
+ *
+ * @see SamplerRenderWorkers
+ */
+
+public record SamplerPolyConfiguration(
+  int polyphony,
+  SamplerVoiceStealing stealing,
+  SampleInterpolation interpolation,
+  int renderThreads,
+  int parallelVoicesMinimum,
+  EnvelopeADSRConfiguration envelope,
+  int reserveVoices,
+  double tailThresholdDecibels)
+{
+  public SamplerPolyConfiguration
+  {
+    if (polyphony <= 0) {
+      throw new IllegalArgumentException("Polyphony must be positive.");
+    }
+    Objects.requireNonNull(stealing, "stealing");
+    Objects.requireNonNull(interpolation, "interpolation");
+    if (renderThreads <= 0) {
+      throw new IllegalArgumentException("Render threads must be positive.");
+    }
+    Objects.requireNonNull(envelope, "envelope");
+    if (reserveVoices < 0) {
+      throw new IllegalArgumentException(
+        "Reserve voices must be non-negative.");
+    }
+    if (Double.isNaN(tailThresholdDecibels) || tailThresholdDecibels > 0.0) {
+      throw new IllegalArgumentException(
+        "Tail threshold must be at most 0 dBFS.");
+    }
+  }
+
+  public static SamplerPolyConfiguration defaults()
+  {
+    return new SamplerPolyConfiguration(
+      64,
+      SamplerVoiceStealing.OLDEST,
+      SampleInterpolation.CUBIC,
+      1,
+      32,
+      EnvelopeADSRConfiguration.defaults(),
+      8,
+      -90.0
+    );
+  }
+}
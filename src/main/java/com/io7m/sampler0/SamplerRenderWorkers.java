@@ -0,0 +1,348 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A fixed set of threads that render the active voices of a
+ * {@link SamplerVoicePool} in parallel.</p>
+ *
+ * <p>The threads are started when the workers are created and live until
+ * {@link #close()} is called. For each call to {@link #render}, the voices
+ * are partitioned by index across the calling thread and the worker threads.
+ * The calling thread mixes its share directly into the output buffers; each
+ * worker mixes into its own bus, and the calling thread adds the buses to
+ * the output once every worker has finished. Workers spin for a short time
+ * waiting for work and then park; the calling thread spins until the
+ * workers have finished. Nothing is allocated while rendering, unless the
+ * number of frames exceeds the size of the buses.</p>
+ *
+ * <p>Voices must not be started or freed while a call to {@link #render} is
+ * in progress; in practice, only the audio thread calls {@link #render}, and
+ * it is also the only thread that modifies the voice pool.</p>
+ */
+
+public final class SamplerRenderWorkers implements AutoCloseable
+{
+  private static final int SPIN_LIMIT = 20_000;
+
+  private final Worker[] workers;
+  private final SampleMixer mixer;
+  private final AtomicInteger remaining;
+  private final int participants;
+  private final double[] uniformRateStarts;
+  private final double[] uniformRateSteps;
+  private volatile long generation;
+  private volatile boolean closed;
+
+  private SamplerVoicePool jobVoices;
+  private int jobOffset;
+  private int jobCount;
+  private double[] jobRateStarts;
+  private double[] jobRateSteps;
+  private int jobOutputRate;
+
+  /**
+   * Create and start workers.
+   *
+   * @param threads       The total number of threads that render, including
+   *                      the calling thread; must be at least 2
+   * @param interpolation The interpolation used by each thread's mixer
+   * @param bufferSize    The initial size of each worker's bus, in frames
+   */
+
+  public SamplerRenderWorkers(
+    final int threads,
+    final SampleInterpolation interpolation,
+    final int bufferSize)
+  {
+    if (threads < 2) {
+      throw new IllegalArgumentException(
+        "At least two render threads are required.");
+    }
+
+    this.participants = threads;
+    this.mixer = SampleMixer.create(interpolation);
+    this.remaining = new AtomicInteger(0);
+    this.workers = new Worker[threads - 1];
+    this.uniformRateStarts = new double[16];
+    this.uniformRateSteps = new double[16];
+
+    for (int index = 0; index < this.workers.length; ++index) {
+      final var worker =
+        new Worker(index + 1, SampleMixer.create(interpolation), bufferSize);
+      final var thread =
+        new Thread(worker, "com.io7m.sampler0.render[%d]".formatted(index + 1));
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MAX_PRIORITY);
+      worker.thread = thread;
+      this.workers[index] = worker;
+    }
+    for (final var worker : this.workers) {
+      worker.thread.start();
+    }
+  }
+
+  /**
+   * Replace the bus of each worker with one of at least the given size.
+   * This allocates, and must not be called on the audio thread; the new
+   * buses are picked up by the next call to {@code render}.
+   *
+   * @param frames The size of the buses in frames
+   */
+
+  public void busesResize(
+    final int frames)
+  {
+    for (final var worker : this.workers) {
+      worker.busResize(frames);
+    }
+  }
+
+  /**
+   * @return The total number of threads that render, including the calling
+   * thread
+   */
+
+  public int threads()
+  {
+    return this.participants;
+  }
+
+  /**
+   * Render {@code count} frames of every active voice, starting at
+   * {@code offset}, into the given mix buffers. Voices that finish are left
+   * in the pool; the caller is responsible for freeing them.
+   *
+   * @param voices     The voices
+   * @param mixL       The left mix buffer
+   * @param mixR       The right mix buffer
+   * @param offset     The offset of the first frame
+   * @param count      The number of frames
+   * @param rateStart  The playback rate scale at the first frame
+   * @param rateStep   The amount by which the rate scale changes each frame
+   * @param outputRate The current output sample rate
+   *
+   * @see SamplerVoice#render(SampleMixer, float[], float[], int, int, double, double)
+   */
+
+  public void render(
+    final SamplerVoicePool voices,
+    final float[] mixL,
+    final float[] mixR,
+    final int offset,
+    final int count,
+    final double rateStart,
+    final double rateStep,
+    final int outputRate)
+  {
+    Arrays.fill(this.uniformRateStarts, rateStart);
+    Arrays.fill(this.uniformRateSteps, rateStep);
+    this.render(
+      voices,
+      mixL,
+      mixR,
+      offset,
+      count,
+      this.uniformRateStarts,
+      this.uniformRateSteps,
+      outputRate
+    );
+  }
+
+  /**
+   * Render {@code count} frames of every active voice, starting at
+   * {@code offset}, into the given mix buffers, with a separate playback
+   * rate ramp for each MIDI channel. Voices that finish are left in the
+   * pool; the caller is responsible for freeing them. The frames must lie
+   * within the workers' buses (see {@link #busesResize(int)}).
+   *
+   * @param voices     The voices
+   * @param mixL       The left mix buffer
+   * @param mixR       The right mix buffer
+   * @param offset     The offset of the first frame
+   * @param count      The number of frames
+   * @param rateStarts The playback rate scale at the first frame, indexed
+   *                   by the channel of each voice
+   * @param rateSteps  The amount by which the rate scale changes each frame,
+   *                   indexed by the channel of each voice
+   * @param outputRate The current output sample rate
+   *
+   * @throws IndexOutOfBoundsException If the frames do not lie within the
+   *                                   workers' buses
+   */
+
+  public void render(
+    final SamplerVoicePool voices,
+    final float[] mixL,
+    final float[] mixR,
+    final int offset,
+    final int count,
+    final double[] rateStarts,
+    final double[] rateSteps,
+    final int outputRate)
+  {
+    for (final var worker : this.workers) {
+      worker.jobBus = worker.bus;
+      Objects.checkFromIndexSize(offset, count, worker.jobBus.frames());
+    }
+
+    this.jobVoices = voices;
+    this.jobOffset = offset;
+    this.jobCount = count;
+    this.jobRateStarts = rateStarts;
+    this.jobRateSteps = rateSteps;
+    this.jobOutputRate = outputRate;
+    this.remaining.set(this.workers.length);
+
+    /*
+     * The volatile write publishes the job fields to the workers.
+     */
+
+    this.generation = this.generation + 1L;
+    for (final var worker : this.workers) {
+      LockSupport.unpark(worker.thread);
+    }
+
+    this.renderShare(0, this.mixer, mixL, mixR);
+
+    while (this.remaining.get() != 0) {
+      Thread.onSpinWait();
+    }
+
+    final var end = offset + count;
+    for (final var worker : this.workers) {
+      final var busL = worker.jobBus.left();
+      final var busR = worker.jobBus.right();
+      for (int index = offset; index < end; ++index) {
+        mixL[index] += busL[index];
+        mixR[index] += busR[index];
+      }
+    }
+  }
+
+  private void renderShare(
+    final int participant,
+    final SampleMixer shareMixer,
+    final float[] mixL,
+    final float[] mixR)
+  {
+    final var voices = this.jobVoices;
+    final var rateStarts = this.jobRateStarts;
+    final var rateSteps = this.jobRateSteps;
+    final var outputRate = this.jobOutputRate;
+    final var activeCount = voices.activeCount();
+
+    for (int index = participant;
+         index < activeCount;
+         index += this.participants) {
+      final var voice = voices.active(index);
+      final var channel = voice.channel();
+      final var correction = voice.rateCorrection(outputRate);
+      voice.render(
+        shareMixer,
+        mixL,
+        mixR,
+        this.jobOffset,
+        this.jobCount,
+        rateStarts[channel] * correction,
+        rateSteps[channel] * correction
+      );
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    this.closed = true;
+    for (final var worker : this.workers) {
+      LockSupport.unpark(worker.thread);
+    }
+  }
+
+  private final class Worker implements Runnable
+  {
+    private final int participant;
+    private final SampleMixer workerMixer;
+    private Thread thread;
+    private volatile SamplerMixBuffers.Buffers bus;
+    private SamplerMixBuffers.Buffers jobBus;
+
+    Worker(
+      final int inParticipant,
+      final SampleMixer inMixer,
+      final int bufferSize)
+    {
+      this.participant = inParticipant;
+      this.workerMixer = inMixer;
+      this.bus = new SamplerMixBuffers.Buffers(
+        new float[bufferSize], new float[bufferSize]);
+      this.jobBus = this.bus;
+    }
+
+    void busResize(
+      final int frames)
+    {
+      if (this.bus.frames() < frames) {
+        this.bus = new SamplerMixBuffers.Buffers(
+          new float[frames], new float[frames]);
+      }
+    }
+
+    @Override
+    public void run()
+    {
+      final var owner = SamplerRenderWorkers.this;
+      /*
+       * The generation starts at zero. Reading it here instead would miss
+       * a job published before this thread got to run.
+       */
+
+      var seen = 0L;
+
+      while (!owner.closed) {
+        var spins = 0;
+        while (owner.generation == seen && !owner.closed) {
+          if (spins < SPIN_LIMIT) {
+            ++spins;
+            Thread.onSpinWait();
+          } else {
+            LockSupport.park(this);
+          }
+        }
+        if (owner.closed) {
+          return;
+        }
+
+        seen = owner.generation;
+        final var start = owner.jobOffset;
+        final var end = start + owner.jobCount;
+        final var busL = this.jobBus.left();
+        final var busR = this.jobBus.right();
+        Arrays.fill(busL, start, end, 0.0f);
+        Arrays.fill(busR, start, end, 0.0f);
+        owner.renderShare(this.participant, this.workerMixer, busL, busR);
+        owner.remaining.decrementAndGet();
+      }
+    }
+  }
+}
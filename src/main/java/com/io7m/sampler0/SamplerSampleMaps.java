@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import com.io7m.jattribute.core.AttributeSubscriptionType;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>The sample map of a sampler, and the background operations that load
+ * and replace it.</p>
+ *
+ * <p>The current map is published through a volatile field, so the audio
+ * thread always sees a complete map and never waits for a load. Each load
+ * takes a generation number when it is requested, and a completed load only
+ * replaces the current map if no later load has been requested since.</p>
+ *
+ * <p>When the context's sample rate changes, the current map is prepared
+ * again for the new rate in the background. Files nearest the notes that
+ * are currently sounding are converted first. Until the new map is swapped
+ * in, voices correct their pitch with
+ * {@link SamplerVoice#rateCorrection(int)}.</p>
+ */
+
+public final class SamplerSampleMaps
+{
+  private final AudioContextType context;
+  private final SampleStreamer streamer;
+  private final AtomicLong generation;
+  private final AttributeSubscriptionType subscription;
+  private volatile SampleMap current;
+  private volatile SampleMapDescription requestedDescription;
+  private volatile Path requestedLibrary;
+  private volatile long swappedGeneration;
+  private volatile int outputRate;
+  private volatile long soundingLow;
+  private volatile long soundingHigh;
+
+  /**
+   * Create a sample map holder.
+   *
+   * @param inContext  The audio context
+   * @param inStreamer The streamer used by the sampler's voices
+   */
+
+  public SamplerSampleMaps(
+    final AudioContextType inContext,
+    final SampleStreamer inStreamer)
+  {
+    this.context =
+      Objects.requireNonNull(inContext, "context");
+    this.streamer =
+      Objects.requireNonNull(inStreamer, "streamer");
+    this.generation =
+      new AtomicLong(0L);
+    this.current =
+      SampleMap.empty();
+    this.outputRate =
+      inContext.sampleRate().get().intValue();
+    this.subscription =
+      inContext.sampleRate()
+        .subscribe((oldValue, newValue) -> {
+          this.onSampleRateChanged(newValue.intValue());
+        });
+  }
+
+  /**
+   * @return The current sample map
+   */
+
+  public SampleMap current()
+  {
+    return this.current;
+  }
+
+  /**
+   * @return The current output sample rate
+   */
+
+  public int outputRate()
+  {
+    return this.outputRate;
+  }
+
+  /**
+   * Publish the set of notes that are currently sounding, as a 128-bit mask.
+   * This is called from the audio thread.
+   *
+   * @param low  The mask for notes 0 to 63
+   * @param high The mask for notes 64 to 127
+   */
+
+  public void soundingSet(
+    final long low,
+    final long high)
+  {
+    this.soundingLow = low;
+    this.soundingHigh = high;
+  }
+
+  private boolean isSounding(
+    final int note)
+  {
+    if (note < 64) {
+      return (this.soundingLow & (1L << note)) != 0L;
+    }
+    return (this.soundingHigh & (1L << (note - 64))) != 0L;
+  }
+
+  /**
+   * Load a sample map in the background.
+   *
+   * @param description The map description
+   *
+   * @return The loaded map, once loading completes
+   */
+
+  public CompletableFuture<SampleMap> loadSamples(
+    final SampleMapDescription description)
+  {
+    final long loadGeneration;
+    synchronized (this.generation) {
+      loadGeneration = this.generation.incrementAndGet();
+      this.requestedDescription = description;
+      this.requestedLibrary = null;
+    }
+
+    return this.context.executeIO(() -> {
+      final var sampleRate = this.outputRate;
+      final var newMap = description.loadIncremental(
+        this.current,
+        this.context.sampleRateConverter(),
+        sampleRate,
+        this.context.resampleCache(),
+        this.context.loadExecutor(),
+        this.context.loadParallelism(),
+        this::isSounding
+      );
+      if (description.streaming().isPresent()) {
+        this.streamer.start(this.context);
+      }
+      this.swap(loadGeneration, newMap);
+      return newMap;
+    });
+  }
+
+  /**
+   * Open a compiled sample library in the background.
+   *
+   * @param file The library file
+   *
+   * @return The loaded map, once loading completes
+   */
+
+  public CompletableFuture<SampleMap> loadLibrary(
+    final Path file)
+  {
+    final long loadGeneration;
+    synchronized (this.generation) {
+      loadGeneration = this.generation.incrementAndGet();
+      this.requestedDescription = null;
+      this.requestedLibrary = file;
+    }
+
+    return this.context.executeIO(() -> {
+      final var newMap = SampleLibraries.open(file, this.outputRate);
+      this.swap(loadGeneration, newMap);
+      return newMap;
+    });
+  }
+
+  private void swap(
+    final long loadGeneration,
+    final SampleMap newMap)
+  {
+    synchronized (this.generation) {
+      if (this.generation.get() == loadGeneration) {
+        this.current = newMap;
+        this.swappedGeneration = loadGeneration;
+      }
+    }
+  }
+
+  private void onSampleRateChanged(
+    final int newRate)
+  {
+    final SampleMapDescription description;
+    final Path file;
+    synchronized (this.generation) {
+      this.outputRate = newRate;
+
+      /*
+       * Nothing needs to be done if the latest requested map is already in
+       * place and was prepared for this rate. If a load is still in flight,
+       * it may have started at the old rate, so it is requested again.
+       */
+
+      final var latest =
+        this.swappedGeneration == this.generation.get();
+      if (latest && this.current.sampleRate() == newRate) {
+        return;
+      }
+
+      description = this.requestedDescription;
+      file = this.requestedLibrary;
+    }
+
+    if (file != null) {
+      this.loadLibrary(file);
+    } else if (description != null) {
+      this.loadSamples(description);
+    }
+  }
+
+  /**
+   * Stop following changes to the context's sample rate.
+   */
+
+  public void close()
+  {
+    this.subscription.close();
+  }
+}
@@ -18,17 +18,124 @@
 package com.io7m.sampler0;
 
 import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
-public interface SamplerType
+public interface SamplerType extends AutoCloseable
 {
-  void loadSamples(
+  /**
+   * Load a sample map in the background, replacing the current sample map
+   * when loading completes. Data for files that are unchanged since the
+   * current map was loaded is reused rather than loaded again.
+   *
+   * @param map The map description
+   *
+   * @return The loaded map, once loading completes; the map is not used if
+   * another load was requested in the meantime
+   */
+
+  CompletableFuture<SampleMap> loadSamples(
     SampleMapDescription map);
 
+  /**
+   * Load a compiled sample library (see {@link SampleLibraries}) in the
+   * background, replacing the current sample map when loading completes.
+   *
+   * @param file The library file
+   *
+   * @return The loaded map, once loading completes; the map is not used if
+   * another load was requested in the meantime
+   */
+
+  CompletableFuture<SampleMap> loadLibrary(
+    Path file);
+
   void onProcess(
     FloatBuffer bufferL,
     FloatBuffer bufferR,
     int frames);
 
+  /**
+   * Add an event to the current period. This method is not thread-safe and
+   * must only be called from the thread that calls
+   * {@link #onProcess(FloatBuffer, FloatBuffer, int)}.
+   *
+   * @param event The event
+   */
+
   void onEvent(
     EventType event);
+
+  /**
+   * Add a packed MIDI message (see {@link MidiMessages}) to the current
+   * period. Unlike {@link #onEvent(EventType)}, this never allocates. This
+   * method is not thread-safe and must only be called from the thread that
+   * calls {@link #onProcess(FloatBuffer, FloatBuffer, int)}.
+   *
+   * @param message The packed message
+   *
+   * @return {@code false} if the event was dropped
+   */
+
+  boolean onMidi(
+    long message);
+
+  /**
+   * @return The absolute frame time at which the next period will start
+   */
+
+  long frameTime();
+
+  /**
+   * Publish an event at an absolute frame time. Unlike
+   * {@link #onEvent(EventType)}, this method may be called from any thread.
+   *
+   * @param frameTime The absolute frame time
+   * @param event     The event
+   *
+   * @return {@code false} if the event was dropped
+   *
+   * @see EventQueue
+   */
+
+  default boolean onEventAt(
+    final long frameTime,
+    final EventType event)
+  {
+    return this.eventQueue().offer(frameTime, event);
+  }
+
+  /**
+   * @return The thread-safe event queue drained at the start of each period
+   */
+
+  EventQueue eventQueue();
+
+  /**
+   * This method must only be called from the thread that calls
+   * {@link #onProcess(FloatBuffer, FloatBuffer, int)}.
+   *
+   * @return The number of voices active at the end of the last period
+   */
+
+  int voicesActive();
+
+  /**
+   * This method must only be called from the thread that calls
+   * {@link #onProcess(FloatBuffer, FloatBuffer, int)}.
+   *
+   * @return The total number of events dropped, either because the
+   * {@link #eventQueue()} was full or because a period contained too many
+   * events
+   */
+
+  long eventsDropped();
+
+  /**
+   * Stop any background work (such as sample streaming) started by the
+   * sampler.
+   */
+
+  @Override
+  void close();
 }
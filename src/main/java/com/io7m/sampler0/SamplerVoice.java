@@ -0,0 +1,596 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A reusable voice that plays a single sample map entry. Voices are owned by
+ * a {@link SamplerVoicePool} and are restarted rather than reallocated.
+ * Voices playing streamed sample data read it through a {@link SampleStream}
+ * acquired from the pool's {@link SampleStreamer}. Each voice has an
+ * {@link EnvelopeADSR}; a voice is done when its sample ends or its envelope
+ * finishes.
+ *
+ * <p>A voice may be given a tail threshold. The voice then ends where the
+ * rest of its sample falls below the threshold (see
+ * {@link SamplePeaks#audibleFrames(float)}), and skips mixing any block whose
+ * peak, scaled by the envelope, is below the threshold.</p>
+ */
+
+public final class SamplerVoice
+{
+  private final SampleStreamer streamer;
+  private final EnvelopeADSR envelope;
+  private SampleStream stream;
+  private SampleMapEntry sample;
+  private int channel;
+  private int note;
+  private float velocity;
+  private long serial;
+  private int sampleRate;
+  private int audibleFrames;
+  private float tailThreshold;
+  private boolean done;
+  private boolean stolen;
+  private double positionReal;
+  private int position;
+  private int activeIndex;
+  private double rateScale;
+  private float blockGain;
+  private float blockGainStep;
+
+  SamplerVoice(
+    final SampleStreamer inStreamer,
+    final EnvelopeADSRParameters inEnvelope)
+  {
+    this.streamer = Objects.requireNonNull(inStreamer, "streamer");
+    this.envelope = new EnvelopeADSR(inEnvelope);
+    this.sample = null;
+    this.done = true;
+    this.activeIndex = -1;
+  }
+
+  void start(
+    final SampleMapEntry inSample,
+    final int inChannel,
+    final int inNote,
+    final float inVelocity,
+    final long inSerial,
+    final int inSampleRate,
+    final float inTailThreshold)
+  {
+    this.sample = Objects.requireNonNull(inSample, "sample");
+    this.channel = inChannel;
+    this.note = inNote;
+    this.velocity = inVelocity;
+    this.serial = inSerial;
+    this.sampleRate = inSampleRate;
+    this.tailThreshold = inTailThreshold;
+    this.audibleFrames =
+      inSample.sample().peaks().audibleFrames(inTailThreshold);
+    this.position = 0;
+    this.positionReal = 0.0;
+    this.done = false;
+    this.stolen = false;
+    this.envelope.trigger();
+
+    this.stop();
+    final var data = inSample.sample();
+    if (data instanceof SampleDataStreamed streamed) {
+      this.stream =
+        this.streamer.acquire(streamed.source(), streamed.preloadFrames());
+    }
+  }
+
+  /**
+   * @return The index of the voice in its pool's array of active voices, or
+   * {@code -1} if the voice is free
+   */
+
+  int activeIndex()
+  {
+    return this.activeIndex;
+  }
+
+  void activeIndexSet(
+    final int index)
+  {
+    this.activeIndex = index;
+  }
+
+  /**
+   * Release any resources held by the voice. This is called when the voice
+   * is returned to its pool.
+   */
+
+  void stop()
+  {
+    final var current = this.stream;
+    if (current != null) {
+      this.stream = null;
+      this.streamer.release(current);
+    }
+  }
+
+  /**
+   * Start releasing the voice. The voice finishes when its envelope has
+   * faded to silence.
+   */
+
+  public void release()
+  {
+    this.envelope.release();
+    this.done |= this.envelope.isDone();
+  }
+
+  /**
+   * Start a short fade out, after which the voice finishes. This is used
+   * when the voice is stolen.
+   */
+
+  void steal()
+  {
+    this.stolen = true;
+    this.envelope.steal();
+    this.done |= this.envelope.isDone();
+  }
+
+  /**
+   * @return {@code true} if the voice has been released or stolen
+   */
+
+  public boolean isReleased()
+  {
+    return this.envelope.isReleased();
+  }
+
+  /**
+   * @return {@code true} if the voice has been stolen since it was started
+   */
+
+  public boolean isStolen()
+  {
+    return this.stolen;
+  }
+
+  /**
+   * @return The part that started this voice; for a multitimbral sampler,
+   * this is the MIDI channel of the part
+   */
+
+  public int channel()
+  {
+    return this.channel;
+  }
+
+  /**
+   * @return The note that started this voice
+   */
+
+  public int note()
+  {
+    return this.note;
+  }
+
+  /**
+   * @return The serial number of the voice; voices started later have larger
+   * serial numbers
+   */
+
+  public long serial()
+  {
+    return this.serial;
+  }
+
+  /**
+   * @return An estimate of how loud the voice currently is
+   */
+
+  public float loudness()
+  {
+    return this.velocity * this.envelope.level();
+  }
+
+  /**
+   * The factor by which playback rates must be scaled when the voice's
+   * sample was prepared for a different output sample rate than the current
+   * one, such as after the server's sample rate changed.
+   *
+   * @param outputRate The current output sample rate
+   *
+   * @return The rate correction
+   */
+
+  public double rateCorrection(
+    final int outputRate)
+  {
+    if (this.sampleRate <= 0 || outputRate <= 0) {
+      return 1.0;
+    }
+    return (double) this.sampleRate / (double) outputRate;
+  }
+
+  /**
+   * @return {@code true} if the voice has finished playing
+   */
+
+  public boolean isDone()
+  {
+    return this.done;
+  }
+
+  /**
+   * Render {@code count} frames, starting at {@code offset}, into the given
+   * mix buffers.
+   *
+   * @param mixer     The mixer used to interpolate the sample data
+   * @param mixL      The left mix buffer
+   * @param mixR      The right mix buffer
+   * @param offset    The offset of the first frame
+   * @param count     The number of frames
+   * @param rateStart The playback rate scale (such as for pitch bend) at the
+   *                  first frame
+   * @param rateStep  The amount by which the rate scale changes each frame
+   */
+
+  public void render(
+    final SampleMixer mixer,
+    final float[] mixL,
+    final float[] mixR,
+    final int offset,
+    final int count,
+    final double rateStart,
+    final double rateStep)
+  {
+    if (this.done) {
+      return;
+    }
+
+    final var data = this.sample.sample();
+    final var current = this.stream;
+    final var available = streamAvailable(data, current);
+    final var end = offset + count;
+
+    this.rateScale = rateStart;
+    var index = offset;
+    var underrun = false;
+
+    while (index < end && !this.done) {
+
+      /*
+       * The window starts one frame before the first position so that cubic
+       * interpolation can read the preceding frame.
+       */
+
+      final var base = (int) this.positionReal - 1;
+      final var block =
+        this.positionsCompute(mixer, base, end - index, rateStep);
+      if (block == 0) {
+        break;
+      }
+
+      final var windowFrames = mixer.positions()[block - 1] + 3;
+      if (this.envelopeBlock(data.peaks(), base, windowFrames, block)) {
+        if (streamMissing(data, current, base)) {
+          this.done = true;
+          break;
+        }
+        underrun |=
+          this.fetchBlock(mixer, data, current, available, base, windowFrames);
+        mixer.mix(
+          mixL,
+          mixR,
+          index,
+          block,
+          this.blockGain,
+          this.blockGainStep
+        );
+      }
+
+      index += block;
+      this.done |= this.envelope.isDone();
+    }
+
+    this.renderFinish(current, underrun, data.frames());
+  }
+
+  /**
+   * For streamed data, the write position is read once per call; frames
+   * below it are stable for the whole call, because the refill thread never
+   * overwrites frames at or after the read position published at the end of
+   * the previous call.
+   *
+   * @return The number of frames that may be read
+   */
+
+  private static long streamAvailable(
+    final SampleDataType data,
+    final SampleStream current)
+  {
+    if (data instanceof SampleDataStreamed) {
+      return current != null ? current.writePosition() : 0L;
+    }
+    return data.frames();
+  }
+
+  /**
+   * Compute the source position of each frame of the next block relative to
+   * {@code base}, advancing the playback position and rate. The block ends
+   * early at the end of the audible data, at the end of the current
+   * envelope stage, or where the mixer's window is full.
+   *
+   * @return The number of frames in the block
+   */
+
+  private int positionsCompute(
+    final SampleMixer mixer,
+    final int base,
+    final int remaining,
+    final double rateStep)
+  {
+    final var positions = mixer.positions();
+    final var fractions = mixer.fractions();
+    final var rate = this.sample.playbackRate();
+    final var limit = Math.min(
+      Math.min(remaining, SampleMixer.BLOCK_FRAMES),
+      this.envelope.stageRemaining()
+    );
+
+    var positionNow = this.positionReal;
+    var scale = this.rateScale;
+    var block = 0;
+    while (block < limit) {
+      final var frame = (int) positionNow;
+      if (frame >= this.audibleFrames) {
+        this.done = true;
+        break;
+      }
+      final var relative = frame - base;
+      if (relative + 3 > SampleMixer.WINDOW_FRAMES) {
+        break;
+      }
+      positions[block] = relative;
+      fractions[block] = (float) (positionNow - frame);
+      ++block;
+      positionNow += rate * scale;
+      scale += rateStep;
+    }
+
+    this.positionReal = positionNow;
+    this.rateScale = scale;
+    return block;
+  }
+
+  /**
+   * Advance the envelope over the next block, recording its gain. Blocks
+   * that are below the tail threshold even at the louder end of the
+   * envelope's run are inaudible, and are skipped entirely.
+   *
+   * @return {@code true} if the block is audible
+   */
+
+  private boolean envelopeBlock(
+    final SamplePeaks peaks,
+    final int base,
+    final int windowFrames,
+    final int block)
+  {
+    final var gain = this.envelope.level();
+    final var gainStep = this.envelope.advance(block);
+    this.blockGain = gain;
+    this.blockGainStep = gainStep;
+
+    final var gainPeak = Math.max(gain, gain + gainStep * block);
+    return !(peaks.peakOf(base, base + windowFrames) * gainPeak
+             < this.tailThreshold);
+  }
+
+  /**
+   * A voice playing streamed data without a stream (because every stream
+   * was in use when it started) can only play the preload.
+   *
+   * @return {@code true} if the block starts past the end of the preload of
+   * a voice without a stream
+   */
+
+  private static boolean streamMissing(
+    final SampleDataType data,
+    final SampleStream current,
+    final int base)
+  {
+    return data instanceof SampleDataStreamed
+           && current == null
+           && base + 1 >= data.preloadFrames();
+  }
+
+  /**
+   * Copy the source frames of the next block into the mixer's window.
+   *
+   * @return {@code true} if any frame had not yet been streamed
+   */
+
+  private boolean fetchBlock(
+    final SampleMixer mixer,
+    final SampleDataType data,
+    final SampleStream current,
+    final long available,
+    final int base,
+    final int windowFrames)
+  {
+    if (data instanceof SampleDataStreamed streamed) {
+      return this.fetchStreamed(
+        mixer, streamed, current, available, base, windowFrames);
+    }
+    fetch(mixer, data, base, windowFrames);
+    return false;
+  }
+
+  private void renderFinish(
+    final SampleStream current,
+    final boolean underrun,
+    final int frames)
+  {
+    this.position = (int) this.positionReal;
+    if (this.position >= this.audibleFrames) {
+      this.done = true;
+    }
+
+    if (current != null) {
+      if (underrun) {
+        current.underrun();
+      }
+      current.readPositionSet(Math.min(this.position, frames));
+    }
+  }
+
+  /**
+   * Copy frames {@code [base, base + count)} of the sample data into the
+   * mixer's window, with silence for frames outside the data.
+   */
+
+  private static void fetch(
+    final SampleMixer mixer,
+    final SampleDataType data,
+    final int base,
+    final int count)
+  {
+    final var windowL = mixer.windowLeft();
+    final var windowR = mixer.windowRight();
+    final var frames = data.frames();
+    final var start = Math.max(0, -base);
+    final var stop = Math.min(count, frames - base);
+
+    Arrays.fill(windowL, 0, count, 0.0f);
+    Arrays.fill(windowR, 0, count, 0.0f);
+    if (start >= stop) {
+      return;
+    }
+
+    final var source = base + start;
+    final var length = stop - start;
+    if (data instanceof SampleDataMapped mapped) {
+      switch (mapped.format()) {
+        case FLOAT32 -> {
+          mapped.floatLeft().get(source, windowL, start, length);
+          mapped.floatRight().get(source, windowR, start, length);
+        }
+        case INT16 -> {
+          fetchShort(mapped.shortLeft(), source, windowL, start, length);
+          fetchShort(mapped.shortRight(), source, windowR, start, length);
+        }
+      }
+    } else if (data instanceof SampleDataArray array) {
+      switch (array.format()) {
+        case FLOAT32 -> {
+          System.arraycopy(array.floatLeft(), source, windowL, start, length);
+          System.arraycopy(array.floatRight(), source, windowR, start, length);
+        }
+        case INT16 -> {
+          fetchShort(array.shortLeft(), source, windowL, start, length);
+          fetchShort(array.shortRight(), source, windowR, start, length);
+        }
+      }
+    }
+  }
+
+  private static void fetchShort(
+    final short[] source,
+    final int sourceOffset,
+    final float[] window,
+    final int windowOffset,
+    final int length)
+  {
+    final var scale = SampleDataType.shortScale();
+    for (int index = 0; index < length; ++index) {
+      window[windowOffset + index] = source[sourceOffset + index] * scale;
+    }
+  }
+
+  private static void fetchShort(
+    final ShortBuffer source,
+    final int sourceOffset,
+    final float[] window,
+    final int windowOffset,
+    final int length)
+  {
+    final var scale = SampleDataType.shortScale();
+    for (int index = 0; index < length; ++index) {
+      window[windowOffset + index] = source.get(sourceOffset + index) * scale;
+    }
+  }
+
+  /**
+   * Copy frames {@code [base, base + count)} of streamed sample data into
+   * the mixer's window, reading from the preload or the stream's ring.
+   *
+   * @return {@code true} if any frame had not yet been streamed
+   */
+
+  private boolean fetchStreamed(
+    final SampleMixer mixer,
+    final SampleDataStreamed data,
+    final SampleStream current,
+    final long available,
+    final int base,
+    final int count)
+  {
+    final var windowL = mixer.windowLeft();
+    final var windowR = mixer.windowRight();
+    final var frames = data.frames();
+    final var preloadL = data.preloadLeft();
+    final var preloadR = data.preloadRight();
+    final var preloadFrames = preloadL.length;
+
+    final float[] ringL;
+    final float[] ringR;
+    final int mask;
+    if (current != null) {
+      ringL = current.ringLeft();
+      ringR = current.ringRight();
+      mask = ringL == null ? 0 : ringL.length - 1;
+    } else {
+      ringL = null;
+      ringR = null;
+      mask = 0;
+    }
+
+    var underrun = false;
+    for (int index = 0; index < count; ++index) {
+      final var frame = base + index;
+      if (frame < 0 || frame >= frames) {
+        windowL[index] = 0.0f;
+        windowR[index] = 0.0f;
+      } else if (frame < preloadFrames) {
+        windowL[index] = preloadL[frame];
+        windowR[index] = preloadR[frame];
+      } else if (frame < available && ringL != null) {
+        final var ringIndex = frame & mask;
+        windowL[index] = ringL[ringIndex];
+        windowR[index] = ringR[ringIndex];
+      } else {
+        windowL[index] = 0.0f;
+        windowR[index] = 0.0f;
+        underrun |= current != null;
+      }
+    }
+    return underrun;
+  }
+}
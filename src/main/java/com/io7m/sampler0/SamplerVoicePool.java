@@ -0,0 +1,491 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Objects;
+
+/**
+ * <p>A fixed-size pool of voices.</p>
+ *
+ * <p>All voices are allocated when the pool is created. Voices that are
+ * playing are held in a dense array so that iterating over them touches no
+ * empty slots, and each voice records its own index in that array so that
+ * allocating and freeing a voice are both O(1). When the pool is full, a
+ * voice is stolen according to the configured {@link SamplerVoiceStealing}
+ * policy.</p>
+ *
+ * <p>The pool may hold a number of reserve voices beyond its polyphony. When
+ * a voice is stolen and a reserve voice is free, the stolen voice fades out
+ * over {@link EnvelopeADSRParameters#STEAL_SECONDS} while the new voice
+ * starts on the reserve voice, rather than being cut off. Voices that are
+ * fading out after being stolen do not count towards the polyphony. If
+ * every reserve voice is already fading, the oldest fading voice is cut off
+ * to free a reserve voice for the new victim. A voice is only cut off at
+ * full level if the pool has no reserve voices.</p>
+ *
+ * <p>Voices are started on a MIDI channel, so that one pool can serve as
+ * the shared voice budget of every part of a multitimbral sampler. Methods
+ * that take no channel act on channel 0.</p>
+ *
+ * <p>The pool owns twice as many {@link SampleStream} instances as voices, so
+ * that a stolen voice's stream can be handed back to the refill thread while
+ * the new voice starts streaming.</p>
+ */
+
+public final class SamplerVoicePool
+{
+  private final SamplerVoice[] active;
+  private final SamplerVoice[] free;
+  private final SamplerVoiceStealing stealing;
+  private final SampleStreamer streamer;
+  private final EnvelopeADSRParameters envelope;
+  private final int polyphony;
+  private float tailThreshold;
+  private int activeCount;
+  private int stolenCount;
+  private int freeCount;
+  private long serial;
+  private long voicesStolen;
+
+  /**
+   * Create a pool whose voices start and stop instantly, with no reserve
+   * voices.
+   *
+   * @param size       The polyphony
+   * @param inStealing The voice stealing policy
+   */
+
+  public SamplerVoicePool(
+    final int size,
+    final SamplerVoiceStealing inStealing)
+  {
+    this(size, 0, inStealing, EnvelopeADSRConfiguration.gate(), 48000);
+  }
+
+  /**
+   * Create a pool.
+   *
+   * @param size       The polyphony
+   * @param reserve    The number of reserve voices used to fade out stolen
+   *                   voices
+   * @param inStealing The voice stealing policy
+   * @param envelope   The envelope of every voice
+   * @param sampleRate The output sample rate
+   */
+
+  public SamplerVoicePool(
+    final int size,
+    final int reserve,
+    final SamplerVoiceStealing inStealing,
+    final EnvelopeADSRConfiguration envelope,
+    final int sampleRate)
+  {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Pool size must be positive.");
+    }
+    if (reserve < 0) {
+      throw new IllegalArgumentException("Reserve must be non-negative.");
+    }
+
+    final var total = size + reserve;
+    this.polyphony =
+      size;
+    this.stealing =
+      Objects.requireNonNull(inStealing, "stealing");
+    this.envelope =
+      new EnvelopeADSRParameters(envelope, sampleRate);
+    this.active =
+      new SamplerVoice[total];
+    this.free =
+      new SamplerVoice[total];
+    this.streamer =
+      new SampleStreamer(total * 2);
+
+    for (int index = 0; index < total; ++index) {
+      this.free[index] = new SamplerVoice(this.streamer, this.envelope);
+    }
+    this.freeCount = total;
+    this.activeCount = 0;
+  }
+
+  /**
+   * Update the envelope parameters for a new output sample rate. This does
+   * nothing if the rate has not changed, and must only be called from the
+   * audio thread.
+   *
+   * @param sampleRate The output sample rate
+   */
+
+  public void sampleRateSet(
+    final int sampleRate)
+  {
+    if (sampleRate > 0 && sampleRate != this.envelope.sampleRate()) {
+      this.envelope.configure(this.envelope.configuration(), sampleRate);
+    }
+  }
+
+  /**
+   * Set the level below which the tails of samples are inaudible. Voices
+   * started afterwards end when the rest of their sample is below this
+   * level, and skip mixing blocks that are below it. The threshold is
+   * disabled by default.
+   *
+   * @param decibels The threshold in dBFS, or negative infinity to disable
+   *                 tail culling
+   */
+
+  public void tailThresholdSet(
+    final double decibels)
+  {
+    if (Double.isNaN(decibels) || decibels > 0.0) {
+      throw new IllegalArgumentException(
+        "Tail threshold must be at most 0 dBFS.");
+    }
+    this.tailThreshold = SamplePeaks.amplitudeOf(decibels);
+  }
+
+  /**
+   * Start a voice, stealing one if the pool is full.
+   *
+   * @param sample   The sample
+   * @param note     The note
+   * @param velocity The velocity
+   *
+   * @return The started voice
+   */
+
+  public SamplerVoice start(
+    final SampleMapEntry sample,
+    final int note,
+    final float velocity)
+  {
+    return this.start(sample, note, velocity, 0);
+  }
+
+  /**
+   * Start a voice, stealing one if the pool is full.
+   *
+   * @param sample     The sample
+   * @param note       The note
+   * @param velocity   The velocity
+   * @param sampleRate The output sample rate for which the sample was
+   *                   prepared, or {@code 0} if unknown
+   *
+   * @return The started voice
+   */
+
+  public SamplerVoice start(
+    final SampleMapEntry sample,
+    final int note,
+    final float velocity,
+    final int sampleRate)
+  {
+    return this.start(sample, 0, note, velocity, sampleRate);
+  }
+
+  /**
+   * Start a voice on a channel, stealing one if the pool is full. Voices
+   * may be stolen from any channel.
+   *
+   * @param sample     The sample
+   * @param channel    The MIDI channel
+   * @param note       The note
+   * @param velocity   The velocity
+   * @param sampleRate The output sample rate for which the sample was
+   *                   prepared, or {@code 0} if unknown
+   *
+   * @return The started voice
+   */
+
+  public SamplerVoice start(
+    final SampleMapEntry sample,
+    final int channel,
+    final int note,
+    final float velocity,
+    final int sampleRate)
+  {
+    if (this.activeCount - this.stolenCount >= this.polyphony) {
+      final var victim = this.victim(channel, note);
+      ++this.voicesStolen;
+
+      /*
+       * If every reserve voice is already fading out, cut off the oldest
+       * fading voice, which is nearly silent, rather than the victim. This
+       * returns a reserve voice, so the victim can fade out too.
+       */
+
+      if (this.freeCount == 0 && this.stolenCount > 0) {
+        this.free(this.stolenOldest());
+      }
+      if (this.freeCount > 0) {
+        victim.steal();
+        ++this.stolenCount;
+        if (victim.isDone()) {
+          this.free(victim);
+        }
+      } else {
+        this.free(victim);
+      }
+    }
+
+    final var voice = this.free[--this.freeCount];
+    this.free[this.freeCount] = null;
+    voice.activeIndexSet(this.activeCount);
+    this.active[this.activeCount] = voice;
+    ++this.activeCount;
+
+    voice.start(
+      sample,
+      channel,
+      note,
+      velocity,
+      this.serial++,
+      sampleRate,
+      this.tailThreshold
+    );
+    return voice;
+  }
+
+  /**
+   * Return a voice to the pool. The last active voice is moved into the
+   * freed slot, so callers iterating over the active voices should iterate
+   * in reverse.
+   *
+   * @param voice The voice
+   */
+
+  public void free(
+    final SamplerVoice voice)
+  {
+    final var index = voice.activeIndex();
+    if (index < 0) {
+      return;
+    }
+
+    final var last = --this.activeCount;
+    final var moved = this.active[last];
+    this.active[index] = moved;
+    moved.activeIndexSet(index);
+    this.active[last] = null;
+
+    if (voice.isStolen()) {
+      --this.stolenCount;
+    }
+
+    voice.activeIndexSet(-1);
+    voice.stop();
+    this.free[this.freeCount++] = voice;
+  }
+
+  /**
+   * Release all voices playing the given note. Voices whose envelopes have
+   * no release are returned to the pool immediately; the others are
+   * returned once they have faded out.
+   *
+   * @param note The note
+   */
+
+  public void releaseNote(
+    final int note)
+  {
+    this.releaseNote(0, note);
+  }
+
+  /**
+   * Release all voices playing the given note on the given channel.
+   *
+   * @param channel The MIDI channel
+   * @param note    The note
+   *
+   * @see #releaseNote(int)
+   */
+
+  public void releaseNote(
+    final int channel,
+    final int note)
+  {
+    for (int index = this.activeCount - 1; index >= 0; --index) {
+      final var voice = this.active[index];
+      if (voice.note() == note
+          && voice.channel() == channel
+          && !voice.isReleased()) {
+        voice.release();
+        if (voice.isDone()) {
+          this.free(voice);
+        }
+      }
+    }
+  }
+
+  /**
+   * Return all voices playing the given note to the pool.
+   *
+   * @param note The note
+   */
+
+  public void freeNote(
+    final int note)
+  {
+    this.freeNote(0, note);
+  }
+
+  /**
+   * Return all voices playing the given note on the given channel to the
+   * pool.
+   *
+   * @param channel The MIDI channel
+   * @param note    The note
+   */
+
+  public void freeNote(
+    final int channel,
+    final int note)
+  {
+    for (int index = this.activeCount - 1; index >= 0; --index) {
+      final var voice = this.active[index];
+      if (voice.note() == note && voice.channel() == channel) {
+        this.free(voice);
+      }
+    }
+  }
+
+  public int activeCount()
+  {
+    return this.activeCount;
+  }
+
+  public SamplerVoice active(
+    final int index)
+  {
+    return this.active[index];
+  }
+
+  /**
+   * @return The polyphony, not counting reserve voices
+   */
+
+  public int size()
+  {
+    return this.polyphony;
+  }
+
+  /**
+   * @return The streamer that serves voices playing streamed sample data
+   */
+
+  public SampleStreamer streamer()
+  {
+    return this.streamer;
+  }
+
+  public long voicesStolen()
+  {
+    return this.voicesStolen;
+  }
+
+  private SamplerVoice victim(
+    final int channel,
+    final int note)
+  {
+    return switch (this.stealing) {
+      case OLDEST -> this.victimOldest();
+      case QUIETEST -> this.victimQuietest();
+      case SAME_NOTE -> this.victimSameNote(channel, note);
+    };
+  }
+
+  /*
+   * Voices that are already fading out after being stolen are only chosen
+   * if every active voice is fading.
+   */
+
+  private SamplerVoice victimOldest()
+  {
+    SamplerVoice victim = null;
+    for (int index = 0; index < this.activeCount; ++index) {
+      final var voice = this.active[index];
+      if (victim == null
+          || (victim.isStolen() && !voice.isStolen())
+          || (victim.isStolen() == voice.isStolen()
+              && voice.serial() < victim.serial())) {
+        victim = voice;
+      }
+    }
+    return victim;
+  }
+
+  private SamplerVoice stolenOldest()
+  {
+    SamplerVoice oldest = null;
+    for (int index = 0; index < this.activeCount; ++index) {
+      final var voice = this.active[index];
+      if (voice.isStolen()
+          && (oldest == null || voice.serial() < oldest.serial())) {
+        oldest = voice;
+      }
+    }
+    return oldest;
+  }
+
+  private SamplerVoice victimQuietest()
+  {
+    SamplerVoice victim = null;
+    for (int index = 0; index < this.activeCount; ++index) {
+      final var voice = this.active[index];
+      if (voice.isStolen()) {
+        continue;
+      }
+      if (victim == null) {
+        victim = voice;
+        continue;
+      }
+      final var loudness = voice.loudness();
+      if (loudness < victim.loudness()) {
+        victim = voice;
+      } else if (loudness == victim.loudness()
+                 && voice.serial() < victim.serial()) {
+        victim = voice;
+      }
+    }
+    if (victim == null) {
+      return this.victimOldest();
+    }
+    return victim;
+  }
+
+  private SamplerVoice victimSameNote(
+    final int channel,
+    final int note)
+  {
+    SamplerVoice victim = null;
+    for (int index = 0; index < this.activeCount; ++index) {
+      final var voice = this.active[index];
+      if (voice.note() == note
+          && voice.channel() == channel
+          && !voice.isStolen()) {
+        if (victim == null || voice.serial() < victim.serial()) {
+          victim = voice;
+        }
+      }
+    }
+    if (victim == null) {
+      return this.victimOldest();
+    }
+    return victim;
+  }
+}
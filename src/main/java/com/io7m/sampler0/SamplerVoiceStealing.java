@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+/**
+ * The policy used to choose a voice to steal when a voice pool is full.
+ */
+
+public enum SamplerVoiceStealing
+{
+  /**
+   * Steal the voice that was started longest ago.
+   */
+
+  OLDEST,
+
+  /**
+   * Steal the quietest voice, falling back to the oldest voice if several
+   * voices are equally quiet.
+   */
+
+  QUIETEST,
+
+  /**
+   * Steal the oldest voice playing the same note on the same channel as the
+   * new voice, falling back to the oldest voice if no voice is playing that
+   * note.
+   */
+
+  SAME_NOTE
+}
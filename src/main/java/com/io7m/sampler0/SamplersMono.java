@@ -17,17 +17,28 @@
 
 package com.io7m.sampler0;
 
+import java.util.Objects;
+
 public final class SamplersMono implements SamplerFactoryType
 {
+  private final SamplerMonoConfiguration configuration;
+
   public SamplersMono()
   {
+    this(SamplerMonoConfiguration.defaults());
+  }
 
+  public SamplersMono(
+    final SamplerMonoConfiguration inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
   }
 
   @Override
   public SamplerType createSampler(
     final AudioContextType context)
   {
-    return new SamplerMono(context);
+    return new SamplerMono(context, this.configuration);
   }
 }
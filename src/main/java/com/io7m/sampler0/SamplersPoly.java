@@ -17,17 +17,28 @@
 
 package com.io7m.sampler0;
 
+import java.util.Objects;
+
 public final class SamplersPoly implements SamplerFactoryType
 {
+  private final SamplerPolyConfiguration configuration;
+
   public SamplersPoly()
   {
+    this(SamplerPolyConfiguration.defaults());
+  }
 
+  public SamplersPoly(
+    final SamplerPolyConfiguration inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
   }
 
   @Override
   public SamplerType createSampler(
     final AudioContextType context)
   {
-    return new SamplerPoly(context);
+    return new SamplerPoly(context, this.configuration);
   }
 }
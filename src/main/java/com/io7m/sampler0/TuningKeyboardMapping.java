@@ -0,0 +1,242 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A keyboard mapping in the Scala {@code .kbm} format.</p>
+ *
+ * <p>The mapping assigns a scale degree to each MIDI note. The mapping
+ * pattern of {@code size} entries starts at {@code noteMiddle}, and repeats
+ * every {@code size} notes, moving {@code octaveDegree} scale degrees with
+ * each repetition. A size of {@code 0} maps each note to the degree
+ * {@code note - noteMiddle}. Notes outside {@code [noteFirst, noteLast]},
+ * and notes whose pattern entry is {@code x} in the file, are not
+ * mapped.</p>
+ *
+ * @param size               The size of the mapping pattern
+ * @param noteFirst          The first mapped note
+ * @param noteLast           The last mapped note
+ * @param noteMiddle         The note at which the first entry of the pattern
+ *                           is mapped; this note plays scale degree 0
+ * @param noteReference      The note whose frequency is given
+ * @param frequencyReference The frequency of the reference note in Hz
+ * @param octaveDegree       The scale degree at which the mapping pattern
+ *                           repeats
+ * @param mapping            The scale degree of each entry of the pattern,
+ *                           or {@link #UNMAPPED}
+ *
+ * @see TuningTable
+ */
+
+public record TuningKeyboardMapping(
+  int size,
+  int noteFirst,
+  int noteLast,
+  int noteMiddle,
+  int noteReference,
+  double frequencyReference,
+  int octaveDegree,
+  List<Integer> mapping)
+{
+  /**
+   * The degree of unmapped notes.
+   */
+
+  public static final int UNMAPPED = Integer.MIN_VALUE;
+
+  public TuningKeyboardMapping
+  {
+    mapping = List.copyOf(mapping);
+    if (size < 0) {
+      throw new IllegalArgumentException("Size must be non-negative.");
+    }
+    if (mapping.size() != size) {
+      throw new IllegalArgumentException(
+        "Mapping must have %d entries, but has %d".formatted(
+          Integer.valueOf(size),
+          Integer.valueOf(mapping.size()))
+      );
+    }
+    if (!(frequencyReference > 0.0) || Double.isInfinite(frequencyReference)) {
+      throw new IllegalArgumentException(
+        "Reference frequency must be positive.");
+    }
+  }
+
+  /**
+   * @return The mapping used when a scale is given without a keyboard
+   * mapping: degree 0 at note 60, and note 69 at 440Hz
+   */
+
+  public static TuningKeyboardMapping standard()
+  {
+    return new TuningKeyboardMapping(0, 0, 127, 60, 69, 440.0, 0, List.of());
+  }
+
+  /**
+   * @param note The note
+   *
+   * @return The scale degree of the note, or {@link #UNMAPPED}
+   */
+
+  public int degreeOf(
+    final int note)
+  {
+    if (note < this.noteFirst || note > this.noteLast) {
+      return UNMAPPED;
+    }
+
+    final var offset = note - this.noteMiddle;
+    if (this.size == 0) {
+      return offset;
+    }
+
+    final var repeat = Math.floorDiv(offset, this.size);
+    final var entry =
+      this.mapping.get(Math.floorMod(offset, this.size)).intValue();
+    if (entry == UNMAPPED) {
+      return UNMAPPED;
+    }
+    return entry + (repeat * this.octaveDegree);
+  }
+
+  /**
+   * Parse a keyboard mapping file.
+   *
+   * @param file The file
+   *
+   * @return A mapping
+   *
+   * @throws IOException On I/O errors, or if the file is not a valid mapping
+   */
+
+  public static TuningKeyboardMapping parse(
+    final Path file)
+    throws IOException
+  {
+    return parse(
+      file.toString(),
+      Files.readAllLines(file, StandardCharsets.ISO_8859_1)
+    );
+  }
+
+  /**
+   * Parse a keyboard mapping. Entries missing from the end of the mapping
+   * pattern are unmapped.
+   *
+   * @param source The name of the source, for error messages
+   * @param lines  The lines of the mapping
+   *
+   * @return A mapping
+   *
+   * @throws IOException If the lines are not a valid mapping
+   */
+
+  public static TuningKeyboardMapping parse(
+    final String source,
+    final List<String> lines)
+    throws IOException
+  {
+    final var header = new double[7];
+    var headerCount = 0;
+    final var mapping = new ArrayList<Integer>();
+
+    for (int index = 0; index < lines.size(); ++index) {
+      final var line = lines.get(index);
+      if (line.startsWith("!")) {
+        continue;
+      }
+      final var token = TuningScale.firstToken(line);
+      if (token.isEmpty()) {
+        continue;
+      }
+
+      final var lineNumber = index + 1;
+      if (headerCount < header.length) {
+        if (headerCount == 5) {
+          header[headerCount] = parseFrequency(source, lineNumber, token);
+        } else {
+          header[headerCount] =
+            TuningScale.parseInt(source, lineNumber, token);
+        }
+        ++headerCount;
+        continue;
+      }
+
+      if (mapping.size() < (int) header[0]) {
+        if ("x".equalsIgnoreCase(token)) {
+          mapping.add(Integer.valueOf(UNMAPPED));
+        } else {
+          mapping.add(Integer.valueOf(
+            TuningScale.parseInt(source, lineNumber, token)));
+        }
+      }
+    }
+
+    if (headerCount < header.length) {
+      throw new IOException(
+        "%s: Expected %d header fields, but found %d".formatted(
+          source,
+          Integer.valueOf(header.length),
+          Integer.valueOf(headerCount))
+      );
+    }
+
+    final var size = (int) header[0];
+    while (mapping.size() < size) {
+      mapping.add(Integer.valueOf(UNMAPPED));
+    }
+
+    try {
+      return new TuningKeyboardMapping(
+        size,
+        (int) header[1],
+        (int) header[2],
+        (int) header[3],
+        (int) header[4],
+        header[5],
+        (int) header[6],
+        mapping
+      );
+    } catch (final IllegalArgumentException e) {
+      throw new IOException("%s: %s".formatted(source, e.getMessage()), e);
+    }
+  }
+
+  private static double parseFrequency(
+    final String source,
+    final int lineNumber,
+    final String token)
+    throws IOException
+  {
+    try {
+      return Double.parseDouble(token);
+    } catch (final NumberFormatException e) {
+      throw new IOException(
+        "%s:%d: Expected a frequency, but found '%s'".formatted(
+          source, Integer.valueOf(lineNumber), token), e);
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>A scale in the Scala {@code .scl} format.</p>
+ *
+ * <p>A scale is a list of pitches in cents above the first degree, which is
+ * implicitly {@code 0} cents. The last pitch is the period at which the
+ * scale repeats, usually the octave. In the file, pitches containing a
+ * {@code .} are cents, and all other pitches are ratios such as
+ * {@code 3/2} or {@code 2}.</p>
+ *
+ * @param description The description of the scale
+ * @param cents       The pitch of each degree after the first, in cents
+ *
+ * @see TuningTable
+ */
+
+public record TuningScale(
+  String description,
+  List<Double> cents)
+{
+  /**
+   * Create a scale.
+   *
+   * @throws IllegalArgumentException If the scale has no pitches, and so no
+   *                                  period
+   */
+
+  public TuningScale
+  {
+    Objects.requireNonNull(description, "description");
+    cents = List.copyOf(cents);
+    if (cents.isEmpty()) {
+      throw new IllegalArgumentException("A scale must have a period.");
+    }
+  }
+
+  /**
+   * @param divisions The number of divisions of the octave
+   *
+   * @return An equal-tempered scale
+   */
+
+  public static TuningScale equal(
+    final int divisions)
+  {
+    if (divisions <= 0) {
+      throw new IllegalArgumentException("Divisions must be positive.");
+    }
+    final var cents = new ArrayList<Double>(divisions);
+    for (int degree = 1; degree <= divisions; ++degree) {
+      cents.add(Double.valueOf((1200.0 * degree) / divisions));
+    }
+    return new TuningScale(
+      "%d equal divisions of the octave".formatted(Integer.valueOf(divisions)),
+      cents
+    );
+  }
+
+  /**
+   * @return The number of degrees in each period
+   */
+
+  public int size()
+  {
+    return this.cents.size();
+  }
+
+  /**
+   * @return The period of the scale, in cents
+   */
+
+  public double periodCents()
+  {
+    return this.cents.get(this.cents.size() - 1).doubleValue();
+  }
+
+  /**
+   * @param degree A scale degree, which may be negative or beyond the first
+   *               period
+   *
+   * @return The pitch of the degree in cents above degree {@code 0}
+   */
+
+  public double centsOfDegree(
+    final int degree)
+  {
+    final var size = this.cents.size();
+    final var period = Math.floorDiv(degree, size);
+    final var index = Math.floorMod(degree, size);
+    final var base = index == 0 ? 0.0 : this.cents.get(index - 1).doubleValue();
+    return (period * this.periodCents()) + base;
+  }
+
+  /**
+   * Parse a scale file.
+   *
+   * @param file The file
+   *
+   * @return A scale
+   *
+   * @throws IOException On I/O errors, or if the file is not a valid scale
+   */
+
+  public static TuningScale parse(
+    final Path file)
+    throws IOException
+  {
+    return parse(
+      file.toString(),
+      Files.readAllLines(file, StandardCharsets.ISO_8859_1)
+    );
+  }
+
+  /**
+   * Parse a scale.
+   *
+   * @param source The name of the source, for error messages
+   * @param lines  The lines of the scale
+   *
+   * @return A scale
+   *
+   * @throws IOException If the lines are not a valid scale
+   */
+
+  public static TuningScale parse(
+    final String source,
+    final List<String> lines)
+    throws IOException
+  {
+    String description = null;
+    var count = -1;
+    final var cents = new ArrayList<Double>();
+
+    for (int index = 0; index < lines.size(); ++index) {
+      final var line = lines.get(index);
+      if (line.startsWith("!")) {
+        continue;
+      }
+
+      final var lineNumber = index + 1;
+      if (description == null) {
+        description = line.strip();
+        continue;
+      }
+
+      final var token = firstToken(line);
+      if (token.isEmpty()) {
+        continue;
+      }
+      if (count == -1) {
+        count = parseInt(source, lineNumber, token);
+        if (count <= 0) {
+          throw new IOException(
+            "%s:%d: The number of notes must be positive.".formatted(
+              source, Integer.valueOf(lineNumber)));
+        }
+        continue;
+      }
+
+      if (cents.size() < count) {
+        cents.add(Double.valueOf(parsePitch(source, lineNumber, token)));
+      }
+    }
+
+    if (description == null || count == -1) {
+      throw new IOException(
+        "%s: Missing description or note count.".formatted(source));
+    }
+    if (cents.size() != count) {
+      throw new IOException(
+        "%s: Expected %d notes, but found %d".formatted(
+          source,
+          Integer.valueOf(count),
+          Integer.valueOf(cents.size()))
+      );
+    }
+    return new TuningScale(description, cents);
+  }
+
+  static String firstToken(
+    final String line)
+  {
+    return line.strip().split("\\s+", 2)[0];
+  }
+
+  static int parseInt(
+    final String source,
+    final int lineNumber,
+    final String token)
+    throws IOException
+  {
+    try {
+      return Integer.parseInt(token);
+    } catch (final NumberFormatException e) {
+      throw new IOException(
+        "%s:%d: Expected an integer, but found '%s'".formatted(
+          source, Integer.valueOf(lineNumber), token), e);
+    }
+  }
+
+  private static double parsePitch(
+    final String source,
+    final int lineNumber,
+    final String token)
+    throws IOException
+  {
+    try {
+      if (token.contains(".")) {
+        return Double.parseDouble(token);
+      }
+
+      final var slash = token.indexOf('/');
+      final double ratio;
+      if (slash == -1) {
+        ratio = Long.parseLong(token);
+      } else {
+        ratio =
+          (double) Long.parseLong(token.substring(0, slash))
+          / (double) Long.parseLong(token.substring(slash + 1));
+      }
+
+      if (!(ratio > 0.0) || Double.isInfinite(ratio)) {
+        throw new IOException(
+          "%s:%d: Ratios must be positive, but found '%s'".formatted(
+            source, Integer.valueOf(lineNumber), token));
+      }
+      return 1200.0 * (Math.log(ratio) / Math.log(2.0));
+    } catch (final NumberFormatException e) {
+      throw new IOException(
+        "%s:%d: Expected a pitch in cents or a ratio, but found '%s'".formatted(
+          source, Integer.valueOf(lineNumber), token), e);
+    }
+  }
+}
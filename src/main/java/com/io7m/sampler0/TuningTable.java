@@ -0,0 +1,285 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <p>A tuning: the frequency of each of the 128 MIDI notes, held in flat
+ * arrays.</p>
+ *
+ * <p>Tunings are built once, when a sample map description is created, and
+ * give the exact ratio between any two notes for computing the playback
+ * rates of zones. Tunings may be equal-tempered, or built from a Scala
+ * scale and keyboard mapping. Notes that the keyboard mapping leaves
+ * unmapped have no frequency, and do not play.</p>
+ *
+ * <p>Intervals that are computed on the audio thread, such as pitch bends
+ * and glides, are converted to playback rates with
+ * {@link #ratioOfCents(double)}, which reads a shared table of rates at one
+ * cent resolution and interpolates linearly between entries. The relative
+ * error of the interpolation is below {@link #RATIO_MAXIMUM_RELATIVE_ERROR}
+ * (less than {@code 1e-4} cents).</p>
+ */
+
+public final class TuningTable
+{
+  /**
+   * The maximum relative error of {@link #ratioOfCents(double)}.
+   */
+
+  public static final double RATIO_MAXIMUM_RELATIVE_ERROR = 5.0e-8;
+
+  /**
+   * The range of the rate table, in cents either side of unison. Intervals
+   * outside this range are computed directly.
+   */
+
+  public static final int RATIO_TABLE_CENTS = 12800;
+
+  private static final double[] RATIOS = ratios();
+
+  private static final TuningTable EQUAL_TEMPERAMENT = equalTemperamentOf();
+
+  private final double[] frequencies;
+  private final double[] cents;
+
+  private TuningTable(
+    final double[] inFrequencies)
+  {
+    this.frequencies = inFrequencies;
+    this.cents = new double[inFrequencies.length];
+    for (int note = 0; note < inFrequencies.length; ++note) {
+      this.cents[note] =
+        1200.0 * (Math.log(inFrequencies[note] / 440.0) / Math.log(2.0));
+    }
+  }
+
+  private static double[] ratios()
+  {
+    final var ratios = new double[(RATIO_TABLE_CENTS * 2) + 2];
+    for (int index = 0; index < ratios.length; ++index) {
+      ratios[index] =
+        StrictMath.pow(2.0, (index - RATIO_TABLE_CENTS) / 1200.0);
+    }
+    return ratios;
+  }
+
+  private static TuningTable equalTemperamentOf()
+  {
+    final var frequencies = new double[128];
+    for (int note = 0; note < 128; ++note) {
+      frequencies[note] = 440.0 * StrictMath.pow(2.0, (note - 69) / 12.0);
+    }
+    return new TuningTable(frequencies);
+  }
+
+  /**
+   * @return Twelve-tone equal temperament, with note 69 at 440Hz
+   */
+
+  public static TuningTable equalTemperament()
+  {
+    return EQUAL_TEMPERAMENT;
+  }
+
+  /**
+   * Build a tuning from a Scala scale and keyboard mapping.
+   *
+   * @param scale   The scale
+   * @param mapping The keyboard mapping
+   *
+   * @return A tuning
+   *
+   * @throws IllegalArgumentException If the reference note is not mapped
+   */
+
+  public static TuningTable ofScala(
+    final TuningScale scale,
+    final TuningKeyboardMapping mapping)
+  {
+    Objects.requireNonNull(scale, "scale");
+    Objects.requireNonNull(mapping, "mapping");
+
+    final var referenceDegree = mapping.degreeOf(mapping.noteReference());
+    if (referenceDegree == TuningKeyboardMapping.UNMAPPED) {
+      throw new IllegalArgumentException(
+        "The reference note %d is not mapped.".formatted(
+          Integer.valueOf(mapping.noteReference())));
+    }
+
+    final var referenceCents = scale.centsOfDegree(referenceDegree);
+    final var frequencies = new double[128];
+    for (int note = 0; note < 128; ++note) {
+      final var degree = mapping.degreeOf(note);
+      if (degree == TuningKeyboardMapping.UNMAPPED) {
+        frequencies[note] = Double.NaN;
+        continue;
+      }
+      final var interval = scale.centsOfDegree(degree) - referenceCents;
+      frequencies[note] =
+        mapping.frequencyReference() * StrictMath.pow(2.0, interval / 1200.0);
+    }
+    return new TuningTable(frequencies);
+  }
+
+  /**
+   * Build a tuning from explicit frequencies, such as those stored in a
+   * compiled library.
+   *
+   * @param frequencies The frequency of each of the 128 notes in Hz, or NaN
+   *                    for unmapped notes
+   *
+   * @return A tuning
+   */
+
+  public static TuningTable ofFrequencies(
+    final double[] frequencies)
+  {
+    if (frequencies.length != 128) {
+      throw new IllegalArgumentException(
+        "Expected 128 frequencies, but received %d".formatted(
+          Integer.valueOf(frequencies.length)));
+    }
+    for (final var frequency : frequencies) {
+      if (!Double.isNaN(frequency)
+          && !(frequency > 0.0 && Double.isFinite(frequency))) {
+        throw new IllegalArgumentException(
+          "Frequencies must be positive or NaN.");
+      }
+    }
+    return new TuningTable(frequencies.clone());
+  }
+
+  /**
+   * Convert an interval to a playback rate. This is the function used on
+   * the audio thread: it is an array index and a linear interpolation.
+   *
+   * @param cents The interval in cents
+   *
+   * @return The playback rate ratio
+   */
+
+  public static double ratioOfCents(
+    final double cents)
+  {
+    final var position = cents + RATIO_TABLE_CENTS;
+    if (!(position >= 0.0 && position < RATIO_TABLE_CENTS * 2)) {
+      return PitchBend.exp2(cents / 1200.0);
+    }
+
+    final var index = (int) position;
+    final var fraction = position - index;
+    final var low = RATIOS[index];
+    return low + ((RATIOS[index + 1] - low) * fraction);
+  }
+
+  /**
+   * @param semitones The interval in semitones
+   *
+   * @return The playback rate ratio
+   *
+   * @see #ratioOfCents(double)
+   */
+
+  public static double ratioOfSemitones(
+    final double semitones)
+  {
+    return ratioOfCents(semitones * 100.0);
+  }
+
+  /**
+   * @param note The note
+   *
+   * @return {@code true} if the note has a frequency
+   */
+
+  public boolean isMapped(
+    final int note)
+  {
+    return !Double.isNaN(this.frequencies[note]);
+  }
+
+  /**
+   * @param note The note
+   *
+   * @return The frequency of the note in Hz, or NaN if it is not mapped
+   */
+
+  public double frequency(
+    final int note)
+  {
+    return this.frequencies[note];
+  }
+
+  /**
+   * @param note The note
+   *
+   * @return The pitch of the note in cents relative to 440Hz, or NaN if it
+   * is not mapped
+   */
+
+  public double cents(
+    final int note)
+  {
+    return this.cents[note];
+  }
+
+  /**
+   * @param from The source note
+   * @param to   The target note
+   *
+   * @return The ratio of the frequency of {@code to} to the frequency of
+   * {@code from}, or NaN if either is not mapped
+   */
+
+  public double ratio(
+    final int from,
+    final int to)
+  {
+    return this.frequencies[to] / this.frequencies[from];
+  }
+
+  @Override
+  public boolean equals(
+    final Object other)
+  {
+    if (this == other) {
+      return true;
+    }
+    if (other == null || !this.getClass().equals(other.getClass())) {
+      return false;
+    }
+    return Arrays.equals(this.frequencies, ((TuningTable) other).frequencies);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Arrays.hashCode(this.frequencies);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[TuningTable %.3fHz..%.3fHz]".formatted(
+      Double.valueOf(this.frequencies[0]),
+      Double.valueOf(this.frequencies[127]));
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.AudioBackendHeadless;
+import com.io7m.sampler0.AudioBackendHeadlessConfiguration;
+import com.io7m.sampler0.AudioBackendHeadlessMessage;
+import com.io7m.sampler0.AudioBackendHeadlessPacing;
+import com.io7m.sampler0.AudioBackendListenerType;
+import com.io7m.sampler0.MidiMessages;
+import com.io7m.sampler0.SamplerCapacityMain;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class AudioBackendHeadlessTest
+{
+  private static final class Recording implements AudioBackendListenerType
+  {
+    private final List<String> received = new ArrayList<>();
+    private int periods;
+
+    @Override
+    public void onMidi(
+      final long message)
+    {
+      this.received.add(
+        "%d:%d:%d:%d".formatted(
+          Integer.valueOf(this.periods),
+          Integer.valueOf(MidiMessages.time(message)),
+          Integer.valueOf(MidiMessages.type(message)),
+          Integer.valueOf(MidiMessages.data1(message))
+        )
+      );
+    }
+
+    @Override
+    public void onProcess(
+      final FloatBuffer bufferL,
+      final FloatBuffer bufferR,
+      final int frames)
+    {
+      assertEquals(64, frames);
+      ++this.periods;
+    }
+  }
+
+  @Test
+  public void testScript()
+  {
+    final var backend =
+      new AudioBackendHeadless(
+        new AudioBackendHeadlessConfiguration(
+          48000,
+          64,
+          10L,
+          AudioBackendHeadlessPacing.FREE_RUNNING,
+          List.of(
+            AudioBackendHeadlessMessage.noteOff(70L, 0, 61),
+            AudioBackendHeadlessMessage.noteOn(0L, 0, 60, 100),
+            AudioBackendHeadlessMessage.noteOn(128L, 0, 62, 100),
+            AudioBackendHeadlessMessage.noteOn(639L, 0, 63, 100),
+            AudioBackendHeadlessMessage.noteOn(640L, 0, 64, 100)
+          )
+        )
+      );
+
+    final var listener = new Recording();
+    final var snapshot = backend.run(listener);
+
+    assertEquals(
+      List.of("0:0:9:60", "1:6:8:61", "2:0:9:62", "9:63:9:63"),
+      listener.received
+    );
+    assertEquals(10, listener.periods);
+    assertEquals(10L, snapshot.cycles());
+    assertEquals(640L, backend.frameTime());
+  }
+
+  @Test
+  public void testRealTime()
+    throws Exception
+  {
+    /*
+     * Twenty periods of 10ms each.
+     */
+
+    final var backend =
+      new AudioBackendHeadless(
+        new AudioBackendHeadlessConfiguration(
+          48000,
+          480,
+          20L,
+          AudioBackendHeadlessPacing.REAL_TIME,
+          List.of()
+        )
+      );
+
+    final var timeThen = System.nanoTime();
+    try (backend) {
+      backend.start(new AudioBackendListenerType()
+      {
+        @Override
+        public void onMidi(
+          final long message)
+        {
+
+        }
+
+        @Override
+        public void onProcess(
+          final FloatBuffer bufferL,
+          final FloatBuffer bufferR,
+          final int frames)
+        {
+
+        }
+      });
+
+      final var snapshot = backend.completion().get(10L, TimeUnit.SECONDS);
+      assertEquals(20L, snapshot.cycles());
+      assertEquals(0L, snapshot.deadlineMisses());
+    }
+
+    final var elapsed = System.nanoTime() - timeThen;
+    assertTrue(elapsed >= 180_000_000L, "elapsed " + elapsed);
+  }
+
+  @Test
+  public void testCapacityUsage()
+  {
+    assertEquals(1, SamplerCapacityMain.run(new String[0]));
+    assertEquals(1, SamplerCapacityMain.run(new String[]{"a.s0lb", "x"}));
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.EnvelopeADSR;
+import com.io7m.sampler0.EnvelopeADSRConfiguration;
+import com.io7m.sampler0.EnvelopeADSRParameters;
+import com.io7m.sampler0.SampleMap;
+import com.io7m.sampler0.SamplerVoicePool;
+import com.io7m.sampler0.SamplerVoiceStealing;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class EnvelopeADSRTest
+{
+  private static final SampleMap EMPTY = SampleMap.empty();
+
+  private static EnvelopeADSR envelope(
+    final EnvelopeADSRConfiguration configuration)
+  {
+    return new EnvelopeADSR(new EnvelopeADSRParameters(configuration, 1000));
+  }
+
+  /**
+   * Advance the envelope frame by frame, checking that the gain applied by
+   * the mixer to each frame of a run matches the level reached at the end.
+   */
+
+  private static int advanceUntilDone(
+    final EnvelopeADSR envelope,
+    final int limit)
+  {
+    var frames = 0;
+    while (!envelope.isDone() && frames < limit) {
+      final var run = Math.min(7, envelope.stageRemaining());
+      final var start = envelope.level();
+      final var step = envelope.advance(run);
+      if (!envelope.isDone()) {
+        assertEquals(envelope.level(), start + step * run, 1.0e-4);
+      }
+      frames += run;
+    }
+    return frames;
+  }
+
+  @Test
+  public void testAttackDecaySustain()
+  {
+    final var envelope =
+      envelope(new EnvelopeADSRConfiguration(0.01, 0.1, 0.5, 0.1));
+
+    assertTrue(envelope.isDone());
+    envelope.trigger();
+    assertFalse(envelope.isDone());
+    assertEquals(0.0f, envelope.level());
+    assertEquals(10, envelope.stageRemaining());
+
+    final var step = envelope.advance(5);
+    assertEquals(0.1f, step, 1.0e-6);
+    assertEquals(0.5f, envelope.level(), 1.0e-6);
+    envelope.advance(5);
+    assertEquals(1.0f, envelope.level(), 1.0e-6);
+    assertEquals(100, envelope.stageRemaining());
+
+    envelope.advance(50);
+    assertTrue(envelope.level() > 0.5f && envelope.level() < 1.0f);
+    envelope.advance(50);
+    assertEquals(0.5f, envelope.level(), 1.0e-6);
+    assertEquals(Integer.MAX_VALUE, envelope.stageRemaining());
+    assertEquals(0.0f, envelope.advance(1000));
+    assertEquals(0.5f, envelope.level(), 1.0e-6);
+    assertFalse(envelope.isReleased());
+  }
+
+  @Test
+  public void testRelease()
+  {
+    final var envelope =
+      envelope(new EnvelopeADSRConfiguration(0.0, 0.0, 1.0, 0.1));
+
+    envelope.trigger();
+    assertEquals(1.0f, envelope.level());
+
+    envelope.release();
+    assertTrue(envelope.isReleased());
+    assertFalse(envelope.isDone());
+
+    /*
+     * The release reaches the silence threshold after roughly the release
+     * time, and the envelope then finishes.
+     */
+
+    final var frames = advanceUntilDone(envelope, 1000);
+    assertTrue(envelope.isDone());
+    assertEquals(0.0f, envelope.level());
+    assertTrue(frames >= 90 && frames <= 110, "frames " + frames);
+  }
+
+  @Test
+  public void testGate()
+  {
+    final var envelope =
+      envelope(EnvelopeADSRConfiguration.gate());
+
+    envelope.trigger();
+    assertEquals(1.0f, envelope.level());
+    assertEquals(Integer.MAX_VALUE, envelope.stageRemaining());
+
+    envelope.release();
+    assertTrue(envelope.isDone());
+  }
+
+  @Test
+  public void testSteal()
+  {
+    final var envelope =
+      envelope(new EnvelopeADSRConfiguration(0.0, 0.0, 1.0, 10.0));
+
+    envelope.trigger();
+    envelope.release();
+    envelope.advance(1);
+    final var level = envelope.level();
+
+    envelope.steal();
+    assertTrue(envelope.isReleased());
+    assertEquals(5, envelope.stageRemaining());
+    assertEquals(-level / 5.0f, envelope.advance(5), 1.0e-6);
+    assertTrue(envelope.isDone());
+  }
+
+  @Test
+  public void testPoolReleaseNote()
+  {
+    final var pool =
+      new SamplerVoicePool(
+        4,
+        0,
+        SamplerVoiceStealing.OLDEST,
+        new EnvelopeADSRConfiguration(0.0, 0.0, 1.0, 0.1),
+        1000
+      );
+
+    final var v0 = pool.start(EMPTY.sampleForNote(60), 60, 1.0f);
+    pool.start(EMPTY.sampleForNote(61), 61, 1.0f);
+
+    pool.releaseNote(60);
+    assertTrue(v0.isReleased());
+    assertFalse(v0.isDone());
+    assertEquals(2, pool.activeCount());
+  }
+
+  @Test
+  public void testPoolStealReserve()
+  {
+    final var pool =
+      new SamplerVoicePool(
+        2,
+        1,
+        SamplerVoiceStealing.OLDEST,
+        new EnvelopeADSRConfiguration(0.0, 0.0, 1.0, 0.25),
+        48000
+      );
+
+    final var v0 = pool.start(EMPTY.sampleForNote(60), 60, 1.0f);
+    pool.start(EMPTY.sampleForNote(61), 61, 1.0f);
+    final var v2 = pool.start(EMPTY.sampleForNote(62), 62, 1.0f);
+
+    /*
+     * The oldest voice fades out in a reserve voice rather than being cut
+     * off, so three voices are briefly active.
+     */
+
+    assertNotSame(v0, v2);
+    assertTrue(v0.isStolen());
+    assertEquals(60, v0.note());
+    assertEquals(3, pool.activeCount());
+    assertEquals(1L, pool.voicesStolen());
+
+    /*
+     * With no reserve voices left, the next steal is immediate.
+     */
+
+    final var v3 = pool.start(EMPTY.sampleForNote(63), 63, 1.0f);
+    assertEquals(63, v3.note());
+    assertTrue(pool.activeCount() <= 3);
+    assertEquals(2L, pool.voicesStolen());
+  }
+}
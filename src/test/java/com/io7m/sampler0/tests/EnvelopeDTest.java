@@ -1,54 +0,0 @@
-/*
- * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
- *
- * Permission to use, copy, modify, and/or distribute this software for any
- * purpose with or without fee is hereby granted, provided that the above
- * copyright notice and this permission notice appear in all copies.
- *
- * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
- * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
- * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
- * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
- * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
- * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
- * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
- */
-
-
-package com.io7m.sampler0.tests;
-
-import com.io7m.sampler0.EnvelopeD;
-import org.junit.jupiter.api.Test;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
-
-public final class EnvelopeDTest
-{
-  private static final Logger LOG =
-    LoggerFactory.getLogger(EnvelopeDTest.class);
-
-  @Test
-  public void testEnvelope()
-  {
-    final var env = new EnvelopeD();
-    env.trigger();
-
-    final var start = env.evaluate();
-    assertEquals(1.0f, start);
-
-    var previous = start;
-    for (int index = 1; index < 1000; ++index) {
-      final var now = env.evaluate();
-      LOG.debug("previous: {} now: {}", previous, now);
-      assertTrue(now >= 0.0);
-      assertTrue(now <= 1.0);
-      assertTrue(now <= previous);
-      previous = now;
-    }
-
-    assertEquals(0.0f, env.evaluate());
-  }
-}
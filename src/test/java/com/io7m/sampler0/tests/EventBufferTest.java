@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.EventBuffer;
+import com.io7m.sampler0.EventType;
+import com.io7m.sampler0.MidiMessages;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class EventBufferTest
+{
+  @Test
+  public void testOrdering()
+  {
+    final var buffer = new EventBuffer(8);
+    buffer.eventAdd(new EventType.NoteOn(10, 60, 1.0f));
+    buffer.eventAdd(new EventType.NoteOn(2, 61, 1.0f));
+    buffer.eventAdd(new EventType.NoteOff(10, 62));
+    buffer.eventAdd(new EventType.PitchBend(5, 0.5));
+
+    assertEquals(2, buffer.eventsNextTime());
+    assertFalse(buffer.eventsPending(1));
+    assertTrue(buffer.eventsPending(2));
+    assertEquals(61, buffer.eventNote());
+    buffer.eventNext();
+
+    assertTrue(buffer.eventsPending(5));
+    assertEquals(EventBuffer.KIND_PITCH_BEND, buffer.eventKind());
+    assertEquals(0.5, buffer.eventValue());
+    buffer.eventNext();
+
+    assertTrue(buffer.eventsPending(10));
+    assertEquals(EventBuffer.KIND_NOTE_ON, buffer.eventKind());
+    assertEquals(60, buffer.eventNote());
+    buffer.eventNext();
+
+    assertTrue(buffer.eventsPending(10));
+    assertEquals(EventBuffer.KIND_NOTE_OFF, buffer.eventKind());
+    assertEquals(62, buffer.eventNote());
+    buffer.eventNext();
+
+    assertEquals(Integer.MAX_VALUE, buffer.eventsNextTime());
+  }
+
+  @Test
+  public void testCarryOver()
+  {
+    final var buffer = new EventBuffer(8);
+    buffer.eventAdd(new EventType.NoteOn(3, 60, 1.0f));
+    buffer.eventAdd(new EventType.NoteOn(70, 61, 1.0f));
+
+    assertTrue(buffer.eventsPending(3));
+    buffer.eventNext();
+    assertFalse(buffer.eventsPending(63));
+    buffer.eventsFinish(64);
+
+    assertEquals(1, buffer.eventsQueued());
+    assertEquals(6, buffer.eventsNextTime());
+    assertEquals(61, buffer.eventNote());
+  }
+
+  @Test
+  public void testChannels()
+  {
+    final var buffer = new EventBuffer(8);
+    buffer.eventAddMidi(MidiMessages.pack(4, 0x93, 60, 100));
+    buffer.eventAddMidi(MidiMessages.pack(2, 0xef, 0, 0x40));
+    buffer.eventAdd(new EventType.NoteOn(70, 61, 1.0f));
+
+    assertEquals(EventBuffer.KIND_PITCH_BEND, buffer.eventKind());
+    assertEquals(15, buffer.eventChannel());
+    buffer.eventNext();
+    assertEquals(EventBuffer.KIND_NOTE_ON, buffer.eventKind());
+    assertEquals(3, buffer.eventChannel());
+    buffer.eventNext();
+    buffer.eventsFinish(64);
+
+    assertEquals(61, buffer.eventNote());
+    assertEquals(0, buffer.eventChannel());
+  }
+
+  @Test
+  public void testNotesOutOfRange()
+  {
+    final var buffer = new EventBuffer(8);
+    buffer.eventAdd(new EventType.NoteOn(0, 200, 1.0f));
+    buffer.eventAdd(new EventType.NoteOff(0, -1));
+    buffer.eventAdd(new EventType.PitchBend(1, 0.5));
+
+    assertEquals(1, buffer.eventsQueued());
+    assertEquals(EventBuffer.KIND_PITCH_BEND, buffer.eventKind());
+    assertEquals(0L, buffer.eventsDropped());
+  }
+
+  @Test
+  public void testOverflow()
+  {
+    final var buffer = new EventBuffer(2);
+    assertTrue(buffer.eventAdd(0, EventBuffer.KIND_NOTE_ON, 60, 1.0));
+    assertTrue(buffer.eventAdd(0, EventBuffer.KIND_NOTE_ON, 61, 1.0));
+    assertFalse(buffer.eventAdd(0, EventBuffer.KIND_NOTE_ON, 62, 1.0));
+    assertEquals(1L, buffer.eventsDropped());
+
+    buffer.eventNext();
+    buffer.eventNext();
+    buffer.eventsFinish(64);
+    assertEquals(0, buffer.eventsQueued());
+    assertTrue(buffer.eventAdd(0, EventBuffer.KIND_NOTE_ON, 63, 1.0));
+  }
+}
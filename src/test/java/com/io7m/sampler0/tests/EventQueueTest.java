@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.EventBuffer;
+import com.io7m.sampler0.EventQueue;
+import com.io7m.sampler0.EventType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class EventQueueTest
+{
+  @Test
+  public void testOverflow()
+  {
+    final var queue = new EventQueue(2);
+    assertTrue(queue.offer(0L, new EventType.NoteOn(0, 60, 1.0f)));
+    assertTrue(queue.offer(0L, new EventType.NoteOn(0, 61, 1.0f)));
+    assertFalse(queue.offer(0L, new EventType.NoteOn(0, 62, 1.0f)));
+    assertEquals(2L, queue.eventsPublished());
+    assertEquals(1L, queue.eventsDropped());
+
+    final var buffer = new EventBuffer(8);
+    assertEquals(2, queue.drainInto(buffer, 0L));
+    assertTrue(queue.offer(0L, new EventType.NoteOn(0, 63, 1.0f)));
+  }
+
+  @Test
+  public void testDrainStopsWhenFull()
+  {
+    final var queue = new EventQueue(8);
+    for (int index = 0; index < 6; ++index) {
+      queue.offer(0L, EventBuffer.KIND_NOTE_ON, index, 1.0);
+    }
+
+    final var buffer = new EventBuffer(4);
+    assertEquals(4, queue.drainInto(buffer, 0L));
+    assertEquals(0L, buffer.eventsDropped());
+
+    while (buffer.eventsPending(0)) {
+      buffer.eventNext();
+    }
+    buffer.eventsFinish(64);
+
+    assertEquals(2, queue.drainInto(buffer, 0L));
+    assertEquals(4, buffer.eventNote());
+  }
+
+  @Test
+  public void testTimes()
+  {
+    final var queue = new EventQueue(8);
+    queue.offer(1000L, new EventType.NoteOn(0, 60, 1.0f));
+    queue.offer(1100L, new EventType.NoteOff(0, 60));
+    queue.offer(900L, new EventType.PitchBend(0, 0.25));
+
+    final var buffer = new EventBuffer(8);
+    assertEquals(3, queue.drainInto(buffer, 1000L));
+    assertEquals(1L, queue.eventsLate());
+
+    assertTrue(buffer.eventsPending(0));
+    assertEquals(EventBuffer.KIND_NOTE_ON, buffer.eventKind());
+    buffer.eventNext();
+    assertTrue(buffer.eventsPending(0));
+    assertEquals(EventBuffer.KIND_PITCH_BEND, buffer.eventKind());
+    buffer.eventNext();
+    assertFalse(buffer.eventsPending(63));
+    assertEquals(100, buffer.eventsNextTime());
+  }
+
+  @Test
+  public void testConcurrentProducers()
+    throws Exception
+  {
+    final var queue = new EventQueue(1024);
+    final var producers = 4;
+    final var perProducer = 10_000;
+    final var start = new CountDownLatch(1);
+    final var threads = new ArrayList<Thread>();
+
+    for (int producer = 0; producer < producers; ++producer) {
+      final var note = producer;
+      final var thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        for (int index = 0; index < perProducer; ++index) {
+          while (!queue.offer(0L, EventBuffer.KIND_NOTE_ON, note, index)) {
+            Thread.onSpinWait();
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    start.countDown();
+
+    final var buffer = new EventBuffer(1024);
+    final var lastSeen = new int[producers];
+    Arrays.fill(lastSeen, -1);
+    var received = 0;
+    while (received < producers * perProducer) {
+      queue.drainInto(buffer, 0L);
+      while (buffer.eventsPending(0)) {
+        final var producer = buffer.eventNote();
+        final var value = (int) buffer.eventValue();
+        assertEquals(lastSeen[producer] + 1, value);
+        lastSeen[producer] = value;
+        buffer.eventNext();
+        ++received;
+      }
+      buffer.eventsFinish(64);
+    }
+
+    for (final var thread : threads) {
+      thread.join();
+    }
+
+    assertEquals((long) producers * perProducer, queue.eventsPublished());
+  }
+}
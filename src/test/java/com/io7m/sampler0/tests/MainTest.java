@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.Main;
+import com.io7m.sampler0.MidiMessages;
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleLibraries;
+import com.io7m.sampler0.SampleMap;
+import com.io7m.sampler0.SampleMapDescription;
+import com.io7m.sampler0.SampleMapEntry;
+import com.io7m.sampler0.SamplerMulti;
+import com.io7m.sampler0.SamplerPartConfiguration;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class MainTest
+{
+  private static final int RATE = 48000;
+  private static final int FRAMES = 64;
+
+  private static Path writeLibrary(
+    final Path directory,
+    final String name,
+    final float level)
+    throws Exception
+  {
+    final var entries = new Int2ObjectRBTreeMap<SampleMapEntry>();
+    final var channel = new float[RATE];
+    Arrays.fill(channel, level);
+    final var data = SampleDataType.ofFloat(RATE, channel, channel);
+    for (int note = 0; note < 128; ++note) {
+      entries.put(note, new SampleMapEntry(data, 1.0));
+    }
+
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(60, Paths.get("x.wav"));
+
+    final var file = directory.resolve(name);
+    SampleLibraries.write(
+      new SampleMap(entries, new SampleMapDescription(files)),
+      file);
+    return file;
+  }
+
+  private static Path writeWave(
+    final Path directory,
+    final String name,
+    final short value)
+    throws Exception
+  {
+    final var frames = RATE;
+    final var format = new AudioFormat(RATE, 16, 1, true, false);
+    final var bytes = new byte[frames * 2];
+    for (int index = 0; index < frames; ++index) {
+      bytes[index * 2] = (byte) (value & 0xff);
+      bytes[index * 2 + 1] = (byte) ((value >>> 8) & 0xff);
+    }
+
+    final var file = directory.resolve(name);
+    try (var stream = new AudioInputStream(
+      new ByteArrayInputStream(bytes), format, frames)) {
+      AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file.toFile());
+    }
+    return file;
+  }
+
+  private static float play(
+    final SamplerMulti sampler,
+    final int channel)
+  {
+    sampler.onMidi(MidiMessages.pack(0, 0x90 | channel, 60, 127));
+
+    var level = 0.0f;
+    for (int period = 0; period < 16; ++period) {
+      final var bufferL = FloatBuffer.allocate(FRAMES);
+      sampler.onProcess(bufferL, FloatBuffer.allocate(FRAMES), FRAMES);
+      level = bufferL.get(FRAMES - 1);
+    }
+
+    sampler.onMidi(MidiMessages.pack(0, 0x80 | channel, 60, 0));
+    for (int period = 0; period < 512; ++period) {
+      sampler.onProcess(
+        FloatBuffer.allocate(FRAMES),
+        FloatBuffer.allocate(FRAMES),
+        FRAMES
+      );
+    }
+    assertEquals(0, sampler.voicesActive());
+    return level;
+  }
+
+  /**
+   * Each configured channel plays the map of its own part, and channels
+   * without a part stay silent.
+   */
+
+  @Test
+  public void testPartsPerChannel(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var libraryA =
+      writeLibrary(directory, "a.s0lb", 0.25f);
+    final var libraryB =
+      writeLibrary(directory, "b.s0lb", 0.125f);
+    final var wave =
+      writeWave(directory, "c.wav", (short) 16384);
+
+    final var parts =
+      Main.parts(new String[]{
+        "0=" + libraryA,
+        "3=" + libraryB,
+        "9=60:" + wave,
+      });
+
+    assertEquals(
+      Optional.of(libraryB),
+      parts.get(1).library());
+
+    try (var sampler =
+           Main.samplers().createSampler(new TestAudioContext(RATE, FRAMES))) {
+      Main.loadParts(sampler, parts).get();
+
+      assertEquals(0.25f, play(sampler, 0), 1.0e-3f);
+      assertEquals(0.125f, play(sampler, 3), 1.0e-3f);
+      assertEquals(0.5f, play(sampler, 9), 1.0e-3f);
+      assertEquals(0.0f, play(sampler, 5));
+      assertEquals(0.0f, play(sampler, 1));
+    }
+  }
+
+  @Test
+  public void testPartsInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      Main.parts(new String[]{"16=a.s0lb"});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      Main.parts(new String[]{"x=a.s0lb"});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      Main.parts(new String[]{"1=60:a.wav,b.wav"});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      Main.parts(new String[]{"1=a.s0lb", "1=b.s0lb"});
+    });
+  }
+
+  @Test
+  public void testRunUsage()
+    throws Exception
+  {
+    assertEquals(1, Main.run(new String[0]));
+    assertEquals(1, Main.run(new String[]{"nonsense"}));
+  }
+
+  @Test
+  public void testPartParse()
+  {
+    final var part =
+      SamplerPartConfiguration.parse("15=60:a.wav,62:b.wav");
+    assertEquals(15, part.channel());
+    assertEquals(Optional.empty(), part.library());
+    assertEquals(
+      Paths.get("b.wav"),
+      part.description().filesByNote().get(62));
+  }
+}
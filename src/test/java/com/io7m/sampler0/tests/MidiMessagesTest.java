@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.EventBuffer;
+import com.io7m.sampler0.MidiMessages;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class MidiMessagesTest
+{
+  @Test
+  public void testDecode()
+  {
+    final var message =
+      MidiMessages.decode(new byte[]{(byte) 0x93, 60, 100}, 3, 17);
+
+    assertEquals(17, MidiMessages.time(message));
+    assertEquals(MidiMessages.STATUS_NOTE_ON, MidiMessages.type(message));
+    assertEquals(3, MidiMessages.channel(message));
+    assertEquals(60, MidiMessages.data1(message));
+    assertEquals(100, MidiMessages.data2(message));
+
+    assertEquals(
+      MidiMessages.NONE,
+      MidiMessages.decode(new byte[]{(byte) 0xf8, 0, 0}, 1, 0));
+    assertEquals(
+      MidiMessages.NONE,
+      MidiMessages.decode(new byte[]{60, 100, 0}, 2, 0));
+    assertEquals(
+      MidiMessages.NONE,
+      MidiMessages.decode(new byte[]{(byte) 0x90, 60, 0}, 2, 0));
+    assertEquals(
+      MidiMessages.STATUS_CHANNEL_PRESSURE,
+      MidiMessages.type(
+        MidiMessages.decode(new byte[]{(byte) 0xd0, 60, 0}, 2, 0)));
+  }
+
+  @Test
+  public void testPitchBend()
+  {
+    assertEquals(0.0, MidiMessages.pitchBend(0x00, 0x40));
+    assertEquals(-1.0, MidiMessages.pitchBend(0x00, 0x00));
+    assertEquals(8191.0 / 8192.0, MidiMessages.pitchBend(0x7f, 0x7f));
+  }
+
+  @Test
+  public void testEventBuffer()
+  {
+    final var buffer = new EventBuffer(8);
+    buffer.eventAddMidi(MidiMessages.pack(1, 0x90, 60, 127));
+    buffer.eventAddMidi(MidiMessages.pack(2, 0x90, 60, 0));
+    buffer.eventAddMidi(MidiMessages.pack(3, 0xe0, 0, 0x40));
+    buffer.eventAddMidi(MidiMessages.pack(4, 0xb0, 1, 64));
+
+    assertEquals(EventBuffer.KIND_NOTE_ON, buffer.eventKind());
+    assertEquals(1.0, buffer.eventValue());
+    buffer.eventNext();
+    assertEquals(EventBuffer.KIND_NOTE_OFF, buffer.eventKind());
+    assertEquals(60, buffer.eventNote());
+    buffer.eventNext();
+    assertEquals(EventBuffer.KIND_PITCH_BEND, buffer.eventKind());
+    assertEquals(0.0, buffer.eventValue());
+    buffer.eventNext();
+    assertEquals(Integer.MAX_VALUE, buffer.eventsNextTime());
+  }
+
+  /**
+   * A dense stream of pitch bend and channel pressure messages is decoded
+   * without allocating.
+   */
+
+  @Test
+  public void testNoAllocation()
+  {
+    final var threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final var thread =
+      Thread.currentThread().getId();
+    final var buffer =
+      new EventBuffer(256);
+    final var data =
+      new byte[3];
+
+    final var before = threads.getThreadAllocatedBytes(thread);
+    for (int period = 0; period < 10_000; ++period) {
+      for (int index = 0; index < 128; ++index) {
+        data[0] = (byte) ((index & 1) == 0 ? 0xe0 : 0xd0);
+        data[1] = (byte) index;
+        data[2] = (byte) (127 - index);
+        buffer.eventAddMidi(MidiMessages.decode(data, 3, index));
+      }
+      while (buffer.eventsPending(256)) {
+        buffer.eventNext();
+      }
+      buffer.eventsFinish(256);
+    }
+    final var after = threads.getThreadAllocatedBytes(thread);
+
+    assertTrue(after - before < 1024L, "allocated " + (after - before));
+  }
+}
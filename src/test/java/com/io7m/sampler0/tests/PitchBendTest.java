@@ -21,6 +21,7 @@ import com.io7m.sampler0.PitchBend;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class PitchBendTest
 {
@@ -31,4 +32,28 @@ public final class PitchBendTest
     assertEquals(2.0, PitchBend.pitchBendToRate(1.0, 12));
     assertEquals(0.5, PitchBend.pitchBendToRate(-1.0, 12));
   }
+
+  @Test
+  public void testPitchOctaveFast()
+  {
+    assertEquals(1.0, PitchBend.pitchBendToRateFast(0.0, 12));
+    assertEquals(2.0, PitchBend.pitchBendToRateFast(1.0, 12), 1.0e-8);
+    assertEquals(0.5, PitchBend.pitchBendToRateFast(-1.0, 12), 1.0e-8);
+  }
+
+  @Test
+  public void testExp2Error()
+  {
+    for (int index = -100_000; index <= 100_000; ++index) {
+      final var x = index / 10_000.0;
+      final var expected = StrictMath.pow(2.0, x);
+      final var received = PitchBend.exp2(x);
+      final var error = Math.abs((received / expected) - 1.0);
+      assertTrue(
+        error <= PitchBend.EXP2_MAXIMUM_RELATIVE_ERROR,
+        "Error at %f must be small (%e)"
+          .formatted(Double.valueOf(x), Double.valueOf(error))
+      );
+    }
+  }
 }
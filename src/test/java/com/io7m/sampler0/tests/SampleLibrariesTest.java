@@ -0,0 +1,329 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleDataMapped;
+import com.io7m.sampler0.SampleDataStreamed;
+import com.io7m.sampler0.SampleFormat;
+import com.io7m.sampler0.SampleLibraries;
+import com.io7m.sampler0.SampleLibraryCompiler;
+import com.io7m.sampler0.SampleMap;
+import com.io7m.sampler0.SampleMapDescription;
+import com.io7m.sampler0.SampleMapEntry;
+import com.io7m.sampler0.SampleMapLoadStatistics;
+import com.io7m.sampler0.SampleStreamingConfiguration;
+import com.io7m.sampler0.SampleZone;
+import com.io7m.sampler0.SampleZoneDescription;
+import com.io7m.sampler0.SampleZoneTable;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class SampleLibrariesTest
+{
+  private static final int STEREO_FRAMES = 40000;
+
+  private static SampleMap createMap(
+    final SampleFormat format)
+  {
+    final var monoL = new float[1000];
+    final var stereoL = new float[3000];
+    final var stereoR = new float[3000];
+    for (int index = 0; index < monoL.length; ++index) {
+      monoL[index] = (float) Math.sin(index * 0.01);
+    }
+    for (int index = 0; index < stereoL.length; ++index) {
+      stereoL[index] = (float) Math.sin(index * 0.02);
+      stereoR[index] = (float) Math.cos(index * 0.02);
+    }
+
+    final var mono = SampleDataType.ofFloat(44100.0, monoL, monoL);
+    final var stereo = SampleDataType.ofFloat(44100.0, stereoL, stereoR);
+
+    final var entries = new Int2ObjectRBTreeMap<SampleMapEntry>();
+    for (int note = 0; note < 128; ++note) {
+      final var data = note < 64 ? mono : stereo;
+      entries.put(note, new SampleMapEntry(data, 1.0 + note / 128.0));
+    }
+
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(32, Paths.get("mono.wav"));
+    files.put(96, Paths.get("stereo.wav"));
+    return new SampleMap(entries, new SampleMapDescription(files, format));
+  }
+
+  @Test
+  public void testRoundTripFloat(
+    final @TempDir Path directory)
+    throws IOException
+  {
+    final var map = createMap(SampleFormat.FLOAT32);
+    final var file = directory.resolve("lib.s0lb");
+    SampleLibraries.write(map, file);
+
+    final var opened = SampleLibraries.open(file, 44100);
+    assertEquals(map.description(), opened.description());
+
+    for (int note = 0; note < 128; ++note) {
+      final var expected = map.sampleForNote(note);
+      final var received = opened.sampleForNote(note);
+      assertEquals(expected.playbackRate(), received.playbackRate());
+      assertInstanceOf(SampleDataMapped.class, received.sample());
+      assertEquals(expected.sample().channels(), received.sample().channels());
+      assertEquals(expected.sample().frames(), received.sample().frames());
+
+      final var expectedPeaks = expected.sample().peaks();
+      final var receivedPeaks = received.sample().peaks();
+      assertEquals(expectedPeaks.blocks(), receivedPeaks.blocks());
+      for (int block = 0; block < expectedPeaks.blocks(); ++block) {
+        assertEquals(expectedPeaks.peak(block), receivedPeaks.peak(block));
+      }
+
+      for (int index = 0; index < expected.sample().frames(); index += 7) {
+        assertEquals(
+          expected.sample().sampleGet(0, index),
+          received.sample().sampleGet(0, index));
+        assertEquals(
+          expected.sample().sampleGet(1, index),
+          received.sample().sampleGet(1, index));
+      }
+    }
+
+    assertSame(
+      opened.sampleForNote(0).sample(),
+      opened.sampleForNote(63).sample());
+  }
+
+  @Test
+  public void testRoundTripShort(
+    final @TempDir Path directory)
+    throws IOException
+  {
+    final var map = createMap(SampleFormat.INT16);
+    final var file = directory.resolve("lib.s0lb");
+    SampleLibraries.write(map, file);
+
+    final var opened = SampleLibraries.open(file, 44100);
+    final var data = opened.sampleForNote(100).sample();
+    assertEquals(SampleFormat.INT16, data.format());
+    for (int index = 0; index < data.frames(); index += 7) {
+      assertEquals(
+        map.sampleForNote(100).sample().sampleGet(0, index),
+        data.sampleGet(0, index),
+        1.0 / 32768.0);
+    }
+  }
+
+  /**
+   * A map loaded for streaming holds only the start of each sample in
+   * memory; compiling it reads the rest back from the spool files.
+   */
+
+  private static Path writeStereoWave(
+    final Path directory)
+    throws IOException
+  {
+    final var frames = STEREO_FRAMES;
+    final var format = new AudioFormat(44100, 16, 2, true, false);
+    final var bytes = new byte[frames * 4];
+    final var buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    for (int index = 0; index < frames; ++index) {
+      buffer.putShort((short) Math.round(Math.sin(index * 0.01) * 16384.0));
+      buffer.putShort((short) Math.round(Math.cos(index * 0.01) * 16384.0));
+    }
+
+    final var wave = directory.resolve("stereo.wav");
+    try (var stream = new AudioInputStream(
+      new ByteArrayInputStream(bytes), format, frames)) {
+      AudioSystem.write(stream, AudioFileFormat.Type.WAVE, wave.toFile());
+    }
+    return wave;
+  }
+
+  @Test
+  public void testCompileStreamed(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var frames = STEREO_FRAMES;
+    final var wave = writeStereoWave(directory);
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(60, wave);
+    final var map =
+      new SampleMapDescription(
+        files,
+        SampleFormat.FLOAT32,
+        Optional.of(new SampleStreamingConfiguration(
+          1024, 4096, directory.resolve("spool")))
+      ).load(
+        (factory, source, rate) -> {
+          throw new UnsupportedOperationException();
+        },
+        44100
+      );
+
+    assertInstanceOf(
+      SampleDataStreamed.class,
+      map.sampleForNote(60).sample());
+
+    final var file = directory.resolve("lib.s0lb");
+    SampleLibraries.write(map, file);
+
+    final var data = SampleLibraries.open(file, 44100).sampleForNote(60)
+      .sample();
+    assertEquals(frames, data.frames());
+    assertEquals(2, data.channels());
+    for (int index = 0; index < frames; index += 7) {
+      assertEquals(
+        (float) Math.sin(index * 0.01) * 0.5f,
+        data.sampleGet(0, index),
+        1.0 / 32768.0);
+      assertEquals(
+        (float) Math.cos(index * 0.01) * 0.5f,
+        data.sampleGet(1, index),
+        1.0 / 32768.0);
+    }
+  }
+
+  @Test
+  public void testRoundTripZones(
+    final @TempDir Path directory)
+    throws IOException
+  {
+    final var softL = new float[100];
+    final var loudL = new float[200];
+    final var soft = SampleDataType.ofFloat(44100.0, softL, softL);
+    final var loud = SampleDataType.ofFloat(44100.0, loudL, loudL);
+
+    final var description =
+      new SampleMapDescription(
+        new Int2ObjectRBTreeMap<>(),
+        SampleFormat.FLOAT32,
+        Optional.empty(),
+        List.of(
+          new SampleZoneDescription(Paths.get("soft.wav"), 60, 0, 127, 0, 63),
+          new SampleZoneDescription(Paths.get("loud.wav"), 60, 0, 127, 64, 127)
+        )
+      );
+
+    final var map =
+      new SampleMap(
+        SampleZoneTable.ofZones(List.of(
+          new SampleZone(soft, 60, 0, 127, 0, 63, 1.0),
+          new SampleZone(loud, 60, 0, 127, 64, 127, 1.0)
+        )),
+        description,
+        44100,
+        SampleMapLoadStatistics.empty(),
+        Map.of()
+      );
+
+    final var file = directory.resolve("lib.s0lb");
+    SampleLibraries.write(map, file);
+
+    final var opened = SampleLibraries.open(file, 44100);
+    assertEquals(description, opened.description());
+    assertEquals(map.table().entries(), opened.table().entries());
+    assertEquals(100, opened.sampleSelect(60, 10).sample().frames());
+    assertEquals(200, opened.sampleSelect(60, 100).sample().frames());
+    assertEquals(
+      map.sampleSelect(72, 100).playbackRate(),
+      opened.sampleSelect(72, 100).playbackRate());
+  }
+
+  @Test
+  public void testRateCompensation(
+    final @TempDir Path directory)
+    throws IOException
+  {
+    final var file = directory.resolve("lib.s0lb");
+    SampleLibraries.write(createMap(SampleFormat.FLOAT32), file);
+
+    final var opened = SampleLibraries.open(file, 88200);
+    assertEquals(0.5, opened.sampleForNote(0).playbackRate(), 1.0e-9);
+  }
+
+  @Test
+  public void testCompilerRun(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var wave = writeStereoWave(directory);
+    final var file = directory.resolve("lib.s0lb");
+    assertEquals(
+      0,
+      SampleLibraryCompiler.run(new String[]{
+        file.toString(), "44100", "int16", "60=" + wave,
+      }));
+
+    final var map = SampleLibraries.open(file, 44100);
+    assertEquals(SampleFormat.INT16, map.sampleForNote(60).sample().format());
+    assertEquals(STEREO_FRAMES, map.sampleForNote(60).sample().frames());
+  }
+
+  @Test
+  public void testCompilerUsage(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var file = directory.resolve("lib.s0lb").toString();
+    assertEquals(1, SampleLibraryCompiler.run(new String[0]));
+    assertEquals(
+      1,
+      SampleLibraryCompiler.run(new String[]{file, "x", "INT16", "60=a"}));
+    assertEquals(
+      1,
+      SampleLibraryCompiler.run(new String[]{file, "44100", "INT8", "60=a"}));
+    assertEquals(
+      1,
+      SampleLibraryCompiler.run(new String[]{file, "44100", "INT16", "a"}));
+    assertFalse(Files.exists(directory.resolve("lib.s0lb")));
+  }
+
+  @Test
+  public void testBadMagic(
+    final @TempDir Path directory)
+    throws IOException
+  {
+    final var file = directory.resolve("lib.s0lb");
+    Files.write(file, new byte[128]);
+    assertThrows(IOException.class, () -> SampleLibraries.open(file, 44100));
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.jsamplebuffer.api.SampleBufferException;
+import com.io7m.jsamplebuffer.api.SampleBufferRateConverterType;
+import com.io7m.sampler0.SampleFormat;
+import com.io7m.sampler0.SampleMapDescription;
+import com.io7m.sampler0.SampleZoneDescription;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class SampleMapDescriptionTest
+{
+  private static final SampleBufferRateConverterType NO_CONVERTER =
+    (factory, buffer, rate) -> {
+      throw new UnsupportedOperationException();
+    };
+
+  private static Path writeWave(
+    final Path directory,
+    final String name,
+    final int frames,
+    final short value)
+    throws Exception
+  {
+    final var format = new AudioFormat(44100.0f, 16, 1, true, false);
+    final var bytes = new byte[frames * 2];
+    for (int index = 0; index < frames; ++index) {
+      bytes[index * 2] = (byte) (value & 0xff);
+      bytes[index * 2 + 1] = (byte) ((value >> 8) & 0xff);
+    }
+
+    final var file = directory.resolve(name);
+    try (var stream = new AudioInputStream(
+      new ByteArrayInputStream(bytes), format, frames)) {
+      AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file.toFile());
+    }
+    return file;
+  }
+
+  @Test
+  public void testParallelLoadDeterministic(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    for (int note = 0; note < 128; note += 8) {
+      files.put(note, writeWave(
+        directory, note + ".wav", 100 + note, (short) (note * 100)));
+    }
+
+    final var description = new SampleMapDescription(files);
+    final var sequential =
+      description.load(NO_CONVERTER, 44100);
+
+    final var pool = new ForkJoinPool(4);
+    try {
+      final var parallel =
+        description.load(NO_CONVERTER, 44100, Optional.empty(), pool, 4);
+
+      assertEquals(files.size(), parallel.loadStatistics().files());
+      for (int note = 0; note < 128; ++note) {
+        final var expected = sequential.sampleForNote(note);
+        final var received = parallel.sampleForNote(note);
+        assertEquals(expected.playbackRate(), received.playbackRate());
+        assertEquals(expected.sample().frames(), received.sample().frames());
+        assertEquals(
+          expected.sample().sampleGet(0, 0),
+          received.sample().sampleGet(0, 0));
+      }
+      assertSame(
+        parallel.sampleForNote(120).sample(),
+        parallel.sampleForNote(127).sample());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelLoadAggregatesFailures(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(10, writeWave(directory, "ok.wav", 100, (short) 1));
+    files.put(20, directory.resolve("missing-0.wav"));
+    files.put(30, directory.resolve("missing-1.wav"));
+
+    final var pool = new ForkJoinPool(2);
+    try {
+      final var ex = assertThrows(SampleBufferException.class, () -> {
+        new SampleMapDescription(files)
+          .load(NO_CONVERTER, 44100, Optional.empty(), pool, 2);
+      });
+      assertTrue(ex.getMessage().contains("2 of 3"), ex.getMessage());
+      assertTrue(ex.getMessage().contains("missing-0.wav"));
+      assertTrue(ex.getMessage().contains("missing-1.wav"));
+      assertEquals(2, ex.getSuppressed().length);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testIncrementalReload(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(10, writeWave(directory, "a.wav", 100, (short) 1));
+    files.put(20, writeWave(directory, "b.wav", 100, (short) 2));
+    files.put(30, writeWave(directory, "c.wav", 100, (short) 3));
+
+    final var description = new SampleMapDescription(files);
+    final var first = description.load(NO_CONVERTER, 44100);
+    assertEquals(0, first.loadStatistics().filesReused());
+
+    writeWave(directory, "b.wav", 200, (short) 4);
+    Files.setLastModifiedTime(
+      files.get(20),
+      FileTime.fromMillis(
+        Files.getLastModifiedTime(files.get(20)).toMillis() + 1000L));
+
+    final var second = description.loadIncremental(
+      first, NO_CONVERTER, 44100, Optional.empty(), Runnable::run, 1);
+
+    assertEquals(2, second.loadStatistics().filesReused());
+    assertSame(
+      first.sampleForNote(10).sample(),
+      second.sampleForNote(10).sample());
+    assertSame(
+      first.sampleForNote(30).sample(),
+      second.sampleForNote(30).sample());
+    assertEquals(200, second.sampleForNote(20).sample().frames());
+
+    final var third = new SampleMapDescription(files, SampleFormat.INT16)
+      .loadIncremental(
+        second, NO_CONVERTER, 44100, Optional.empty(), Runnable::run, 1);
+    assertEquals(0, third.loadStatistics().filesReused());
+  }
+
+  @Test
+  public void testFilesWithVelocityLayers(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(60, writeWave(directory, "base.wav", 100, (short) 1000));
+
+    final var loud = writeWave(directory, "loud.wav", 100, (short) 2000);
+    final var loudRR = writeWave(directory, "loud-rr.wav", 100, (short) 3000);
+
+    final var description =
+      new SampleMapDescription(
+        files,
+        SampleFormat.FLOAT32,
+        Optional.empty(),
+        List.of(
+          new SampleZoneDescription(loud, 60, 55, 65, 100, 127),
+          new SampleZoneDescription(loudRR, 60, 55, 65, 100, 127)
+        )
+      );
+
+    final var map = description.load(NO_CONVERTER, 44100);
+    final var base = map.sampleSelect(60, 10).sample().sampleGet(0, 0);
+    final var first = map.sampleSelect(60, 127).sample().sampleGet(0, 0);
+    final var second = map.sampleSelect(60, 127).sample().sampleGet(0, 0);
+
+    assertEquals(1000.0f / 32768.0f, base, 1.0e-4f);
+    assertEquals(2000.0f / 32768.0f, first, 1.0e-4f);
+    assertEquals(3000.0f / 32768.0f, second, 1.0e-4f);
+    assertEquals(
+      base,
+      map.sampleSelect(70, 127).sample().sampleGet(0, 0));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleInterpolation;
+import com.io7m.sampler0.SampleMapEntry;
+import com.io7m.sampler0.SampleMixer;
+import com.io7m.sampler0.SamplerVoicePool;
+import com.io7m.sampler0.SamplerVoiceStealing;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class SampleMixerTest
+{
+  private static float[] render(
+    final SampleMixer mixer,
+    final SampleDataType data,
+    final double rate,
+    final int frames)
+  {
+    final var pool = new SamplerVoicePool(1, SamplerVoiceStealing.OLDEST);
+    final var voice = pool.start(new SampleMapEntry(data, rate), 60, 1.0f);
+    final var outL = new float[frames];
+    final var outR = new float[frames];
+    for (int offset = 0; offset < frames; offset += 100) {
+      voice.render(
+        mixer, outL, outR, offset, Math.min(100, frames - offset), 1.0, 0.0);
+    }
+    return outL;
+  }
+
+  private static SampleDataType noise()
+  {
+    final var data = new float[5000];
+    var x = 1;
+    for (int index = 0; index < data.length; ++index) {
+      x = x * 1103515245 + 12345;
+      data[index] = (x >> 8) / (float) (1 << 23);
+    }
+    return SampleDataType.ofFloat(44100.0, data, data);
+  }
+
+  @Test
+  public void testVectorAvailable()
+  {
+    assertTrue(SampleMixer.isVectorAvailable());
+    assertTrue(SampleMixer.create(SampleInterpolation.CUBIC).isVectorized());
+  }
+
+  @Test
+  public void testRamp()
+  {
+    final var ramp = new float[1000];
+    for (int index = 0; index < ramp.length; ++index) {
+      ramp[index] = index / 1000.0f;
+    }
+    final var data = SampleDataType.ofFloat(44100.0, ramp, ramp);
+
+    for (final var interpolation : SampleInterpolation.values()) {
+      final var out =
+        render(SampleMixer.create(interpolation), data, 0.5, 1000);
+      for (int index = 2; index < 1000; ++index) {
+        assertEquals(index / 2000.0f, out[index], 1.0e-6);
+      }
+    }
+  }
+
+  @Test
+  public void testVectorMatchesScalar()
+  {
+    final var data = noise();
+    for (final var interpolation : SampleInterpolation.values()) {
+      for (final var rate : new double[]{0.37, 1.0, 1.4983, 7.9, 40.0}) {
+        final var vector =
+          render(SampleMixer.create(interpolation), data, rate, 4000);
+        final var scalar =
+          render(SampleMixer.createScalar(interpolation), data, rate, 4000);
+        for (int index = 0; index < vector.length; ++index) {
+          assertEquals(scalar[index], vector[index], 1.0e-5);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEndsAtLastFrame()
+  {
+    final var data = noise();
+    final var pool = new SamplerVoicePool(1, SamplerVoiceStealing.OLDEST);
+    final var voice = pool.start(new SampleMapEntry(data, 2.0), 60, 1.0f);
+    final var mixer = SampleMixer.create(SampleInterpolation.LINEAR);
+    final var out = new float[4000];
+    voice.render(mixer, out, out, 0, 2500, 1.0, 0.0);
+    assertTrue(voice.isDone());
+  }
+}
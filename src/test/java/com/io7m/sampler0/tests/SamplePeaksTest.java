@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleInterpolation;
+import com.io7m.sampler0.SampleMapEntry;
+import com.io7m.sampler0.SampleMixer;
+import com.io7m.sampler0.SamplePeaks;
+import com.io7m.sampler0.SamplerVoicePool;
+import com.io7m.sampler0.SamplerVoiceStealing;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class SamplePeaksTest
+{
+  /**
+   * A sine that decays by 60dB each 10000 frames.
+   */
+
+  private static SampleDataType decaying(
+    final int frames)
+  {
+    final var data = new float[frames];
+    for (int index = 0; index < frames; ++index) {
+      final var decay = Math.pow(10.0, -3.0 * index / 10000.0);
+      data[index] = (float) (Math.sin(index * 0.05) * decay);
+    }
+    return SampleDataType.ofFloat(48000.0, data, data);
+  }
+
+  private static int renderUntilDone(
+    final SampleDataType data,
+    final double thresholdDecibels,
+    final float[] out)
+  {
+    final var pool = new SamplerVoicePool(1, SamplerVoiceStealing.OLDEST);
+    pool.tailThresholdSet(thresholdDecibels);
+
+    final var mixer = SampleMixer.create(SampleInterpolation.LINEAR);
+    final var voice = pool.start(new SampleMapEntry(data, 1.0), 60, 1.0f);
+    final var outR = new float[out.length];
+
+    var frames = 0;
+    while (!voice.isDone() && frames < out.length) {
+      final var count = Math.min(100, out.length - frames);
+      voice.render(mixer, out, outR, frames, count, 1.0, 0.0);
+      frames += count;
+    }
+    return frames;
+  }
+
+  @Test
+  public void testAnalyze()
+  {
+    final var left = new float[1000];
+    final var right = new float[1000];
+    left[10] = 0.5f;
+    right[300] = -0.75f;
+    right[999] = 0.25f;
+
+    final var peaks =
+      SamplePeaks.analyze(SampleDataType.ofFloat(48000.0, left, right));
+    assertEquals(1000, peaks.frames());
+    assertEquals(4, peaks.blocks());
+    assertEquals(0.5f, peaks.peak(0));
+    assertEquals(0.75f, peaks.peak(1));
+    assertEquals(0.0f, peaks.peak(2));
+    assertEquals(0.25f, peaks.peak(3));
+
+    assertEquals(0.75f, peaks.peakOf(0, 1000));
+    assertEquals(0.0f, peaks.peakOf(512, 768));
+    assertEquals(0.0f, peaks.peakOf(2000, 3000));
+    assertEquals(0.5f, peaks.peakOf(-10, 10));
+
+    assertEquals(1000, peaks.audibleFrames(0.0f));
+    assertEquals(1000, peaks.audibleFrames(0.25f));
+    assertEquals(512, peaks.audibleFrames(0.5f));
+    assertEquals(512, peaks.audibleFrames(0.75f));
+    assertEquals(0, peaks.audibleFrames(0.8f));
+  }
+
+  @Test
+  public void testUnknown()
+  {
+    final var peaks = SamplePeaks.unknown(1000);
+    assertEquals(1000, peaks.audibleFrames(1.0f));
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      SamplePeaks.ofPeaks(1000, new float[3]);
+    });
+  }
+
+  @Test
+  public void testTailCulled()
+  {
+    final var data = decaying(60000);
+    final var out = new float[60000];
+
+    /*
+     * Without a threshold, the voice plays the whole sample. With a -60dB
+     * threshold, it ends after roughly 10000 frames.
+     */
+
+    assertEquals(60000, renderUntilDone(data, Double.NEGATIVE_INFINITY, out));
+
+    final var culled = new float[60000];
+    final var frames = renderUntilDone(data, -60.0, culled);
+    assertTrue(frames >= 10000 && frames <= 10500, "frames " + frames);
+
+    for (int index = 0; index < 9000; ++index) {
+      assertEquals(out[index], culled[index]);
+    }
+  }
+
+  @Test
+  public void testSilentBlocksSkipped()
+  {
+    final var data = new float[4000];
+    for (int index = 0; index < data.length; ++index) {
+      final var silent = index >= 1024 && index < 3072;
+      data[index] = silent ? 1.0e-7f : 0.5f;
+    }
+
+    final var out = new float[4000];
+    final var frames =
+      renderUntilDone(SampleDataType.ofFloat(48000.0, data, data), -90.0, out);
+
+    /*
+     * The voice plays to the end of the sample, but the silent blocks in the
+     * middle are not mixed at all.
+     */
+
+    assertEquals(4000, frames);
+    assertEquals(0.5f, out[500], 1.0e-6f);
+    assertEquals(0.5f, out[3500], 1.0e-6f);
+    for (int index = 1100; index < 3000; ++index) {
+      assertEquals(0.0f, out[index]);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleDataArray;
+import com.io7m.sampler0.SampleFormat;
+import com.io7m.sampler0.SampleResampleCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class SampleResampleCacheTest
+{
+  private static SampleDataArray stereo(
+    final int frames)
+  {
+    final var left = new float[frames];
+    final var right = new float[frames];
+    for (int index = 0; index < frames; ++index) {
+      left[index] = (float) Math.sin(index * 0.01);
+      right[index] = (float) Math.cos(index * 0.01);
+    }
+    return SampleDataType.ofFloat(48000.0, left, right);
+  }
+
+  @Test
+  public void testRoundTrip(
+    final @TempDir Path directory)
+  {
+    final var cache =
+      new SampleResampleCache(directory.resolve("cache"), 1_000_000L);
+
+    assertTrue(cache.find("a").isEmpty());
+
+    final var data = stereo(1000);
+    cache.store("a", data);
+
+    final var found = cache.find("a").orElseThrow();
+    assertEquals(2, found.channels());
+    assertEquals(48000.0, found.sampleRate());
+    assertArrayEquals(data.floatLeft(), found.floatLeft());
+    assertArrayEquals(data.floatRight(), found.floatRight());
+
+    final var shorts = new short[]{1, 2, 3, -4};
+    cache.store("b", SampleDataType.ofShort(44100.0, shorts, shorts));
+    final var foundShort = cache.find("b").orElseThrow();
+    assertEquals(1, foundShort.channels());
+    assertArrayEquals(shorts, foundShort.shortLeft());
+  }
+
+  @Test
+  public void testRoundTripLarge(
+    final @TempDir Path directory)
+    throws IOException
+  {
+    final var cache =
+      new SampleResampleCache(directory, 1_000_000L);
+
+    final var data = stereo(100_003);
+    cache.store("a", data);
+    assertEquals(
+      data.sizeBytes() + 32L,
+      Files.size(directory.resolve("a.s0rc")));
+
+    final var found = cache.find("a").orElseThrow();
+    assertArrayEquals(data.floatLeft(), found.floatLeft());
+    assertArrayEquals(data.floatRight(), found.floatRight());
+
+    final var shorts = new short[70_001];
+    for (int index = 0; index < shorts.length; ++index) {
+      shorts[index] = (short) index;
+    }
+    cache.store("b", SampleDataType.ofShort(44100.0, shorts, shorts));
+    assertArrayEquals(shorts, cache.find("b").orElseThrow().shortLeft());
+
+    cache.store("c", stereo(200_000));
+    assertTrue(cache.find("c").isEmpty());
+  }
+
+  @Test
+  public void testKeyChanges(
+    final @TempDir Path directory)
+    throws IOException
+  {
+    final var file = directory.resolve("x.wav");
+    Files.write(file, new byte[16]);
+
+    final var key0 =
+      SampleResampleCache.key(file, 48000, "c", SampleFormat.FLOAT32);
+    assertEquals(
+      key0,
+      SampleResampleCache.key(file, 48000, "c", SampleFormat.FLOAT32));
+    assertNotEquals(
+      key0,
+      SampleResampleCache.key(file, 44100, "c", SampleFormat.FLOAT32));
+    assertNotEquals(
+      key0,
+      SampleResampleCache.key(file, 48000, "d", SampleFormat.FLOAT32));
+    assertNotEquals(
+      key0,
+      SampleResampleCache.key(file, 48000, "c", SampleFormat.INT16));
+
+    Files.setLastModifiedTime(file, FileTime.fromMillis(1000L));
+    assertNotEquals(
+      key0,
+      SampleResampleCache.key(file, 48000, "c", SampleFormat.FLOAT32));
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var data = stereo(1000);
+    final var cache =
+      new SampleResampleCache(directory, (data.sizeBytes() + 32L) * 2L);
+
+    cache.store("a", data);
+    Files.setLastModifiedTime(
+      directory.resolve("a.s0rc"), FileTime.fromMillis(1000L));
+    cache.store("b", data);
+    Files.setLastModifiedTime(
+      directory.resolve("b.s0rc"), FileTime.fromMillis(2000L));
+
+    assertTrue(cache.find("a").isPresent());
+    cache.store("c", data);
+
+    assertTrue(cache.find("a").isPresent());
+    assertTrue(cache.find("b").isEmpty());
+    assertTrue(cache.find("c").isPresent());
+  }
+}
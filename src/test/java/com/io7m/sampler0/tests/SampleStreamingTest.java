@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleDataStreamed;
+import com.io7m.sampler0.SampleFormat;
+import com.io7m.sampler0.SampleInterpolation;
+import com.io7m.sampler0.SampleMapEntry;
+import com.io7m.sampler0.SampleMixer;
+import com.io7m.sampler0.SampleStreamSource;
+import com.io7m.sampler0.SampleStreamingConfiguration;
+import com.io7m.sampler0.SamplerVoicePool;
+import com.io7m.sampler0.SamplerVoiceStealing;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class SampleStreamingTest
+{
+  private static final int FRAMES = 20000;
+
+  private static SampleDataStreamed streamed(
+    final Path directory,
+    final SampleFormat format)
+    throws IOException
+  {
+    final var left = new float[FRAMES];
+    final var right = new float[FRAMES];
+    for (int index = 0; index < FRAMES; ++index) {
+      left[index] = (float) Math.sin(index * 0.01);
+      right[index] = (float) Math.cos(index * 0.01);
+    }
+
+    final var configuration =
+      new SampleStreamingConfiguration(1024, 4096, directory);
+    final var source =
+      SampleStreamSource.spool(
+        configuration,
+        SampleDataType.ofFloat(44100.0, left, right),
+        format);
+
+    return SampleDataType.ofStreamed(
+      44100.0,
+      Arrays.copyOf(left, 1024),
+      Arrays.copyOf(right, 1024),
+      source
+    );
+  }
+
+  private static float[][] play(
+    final SampleDataType data)
+    throws InterruptedException
+  {
+    final var pool = new SamplerVoicePool(2, SamplerVoiceStealing.OLDEST);
+    pool.streamer().start(new TestAudioContext(44100, 256));
+
+    final var mixer = SampleMixer.create(SampleInterpolation.LINEAR);
+    final var outL = new float[FRAMES];
+    final var outR = new float[FRAMES];
+    final var voice = pool.start(new SampleMapEntry(data, 1.0), 60, 1.0f);
+
+    var offset = 0;
+    while (!voice.isDone()) {
+      final var passes = pool.streamer().passesIdle();
+      while (pool.streamer().passesIdle() < passes + 2L) {
+        Thread.sleep(1L);
+      }
+      voice.render(mixer, outL, outR, offset, 256, 1.0, 0.0);
+      offset += 256;
+    }
+    pool.free(voice);
+    assertEquals(0L, pool.streamer().underruns());
+    return new float[][]{outL, outR};
+  }
+
+  @Test
+  public void testStreamFloat(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var data = streamed(directory, SampleFormat.FLOAT32);
+    assertEquals(FRAMES, data.frames());
+    assertEquals(1024, data.preloadFrames());
+    assertEquals((float) Math.sin(1023 * 0.01), data.sampleGet(0, 1023));
+    assertThrows(
+      UnsupportedOperationException.class,
+      () -> data.sampleGet(0, 1024));
+
+    final var output = play(data);
+    for (int index = 0; index < FRAMES; ++index) {
+      assertEquals((float) Math.sin(index * 0.01), output[0][index]);
+      assertEquals((float) Math.cos(index * 0.01), output[1][index]);
+    }
+  }
+
+  @Test
+  public void testStreamShort(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var output = play(streamed(directory, SampleFormat.INT16));
+    for (int index = 0; index < FRAMES; ++index) {
+      assertEquals(
+        (float) Math.sin(index * 0.01), output[0][index], 1.0 / 32768.0);
+    }
+  }
+
+  @Test
+  public void testStreamsReclaimed(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var data = streamed(directory, SampleFormat.FLOAT32);
+    final var pool = new SamplerVoicePool(1, SamplerVoiceStealing.OLDEST);
+    pool.streamer().start(new TestAudioContext(44100, 256));
+
+    for (int index = 0; index < 10; ++index) {
+      final var voice = pool.start(new SampleMapEntry(data, 1.0), 60, 1.0f);
+      pool.free(voice);
+      Thread.sleep(10L);
+    }
+    assertEquals(0L, pool.streamer().streamsUnavailable());
+    assertEquals(0L, pool.streamer().errors());
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleMap;
+import com.io7m.sampler0.SampleMapDescription;
+import com.io7m.sampler0.SampleMapLoadStatistics;
+import com.io7m.sampler0.SampleZone;
+import com.io7m.sampler0.SampleZoneTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public final class SampleZoneTableTest
+{
+  private static SampleDataType sample()
+  {
+    final var data = new float[16];
+    return SampleDataType.ofFloat(44100.0, data, data);
+  }
+
+  private static SampleMap mapOf(
+    final List<SampleZone> zones)
+  {
+    return new SampleMap(
+      SampleZoneTable.ofZones(zones),
+      SampleMapDescription.empty(),
+      0,
+      SampleMapLoadStatistics.empty(),
+      Map.of()
+    );
+  }
+
+  @Test
+  public void testVelocityLayers()
+  {
+    final var soft = sample();
+    final var loud = sample();
+    final var map = mapOf(List.of(
+      new SampleZone(soft, 60, 0, 127, 0, 63, 1.0),
+      new SampleZone(loud, 60, 0, 127, 64, 127, 1.0)
+    ));
+
+    assertSame(soft, map.sampleSelect(60, 0).sample());
+    assertSame(soft, map.sampleSelect(60, 63).sample());
+    assertSame(loud, map.sampleSelect(60, 64).sample());
+    assertSame(loud, map.sampleSelect(60, 127).sample());
+    assertEquals(1.0, map.sampleSelect(60, 100).playbackRate(), 1.0e-9);
+    assertEquals(2.0, map.sampleSelect(72, 100).playbackRate(), 1.0e-3);
+  }
+
+  @Test
+  public void testRoundRobin()
+  {
+    final var a = sample();
+    final var b = sample();
+    final var c = sample();
+    final var map = mapOf(List.of(
+      new SampleZone(a, 60, 60, 60, 0, 127, 1.0),
+      new SampleZone(b, 60, 60, 60, 0, 127, 1.0),
+      new SampleZone(c, 60, 60, 60, 0, 127, 1.0)
+    ));
+
+    assertSame(a, map.sampleSelect(60, 100).sample());
+    assertSame(b, map.sampleSelect(60, 100).sample());
+    assertSame(c, map.sampleSelect(60, 100).sample());
+    assertSame(a, map.sampleSelect(60, 100).sample());
+    assertSame(a, map.sampleForNote(60).sample());
+  }
+
+  @Test
+  public void testFirstZoneWins()
+  {
+    final var first = sample();
+    final var second = sample();
+    final var map = mapOf(List.of(
+      new SampleZone(first, 60, 50, 70, 0, 127, 1.0),
+      new SampleZone(second, 60, 40, 80, 0, 127, 1.0)
+    ));
+
+    assertSame(first, map.sampleSelect(60, 100).sample());
+    assertSame(second, map.sampleSelect(45, 100).sample());
+    assertSame(second, map.sampleSelect(75, 100).sample());
+  }
+
+  @Test
+  public void testUnmappedKey()
+  {
+    final var map = mapOf(List.of(
+      new SampleZone(sample(), 60, 60, 60, 64, 127, 1.0)
+    ));
+
+    assertEquals(-1, map.table().group(60, 10));
+    assertEquals(-1, map.table().group(61, 100));
+    assertEquals(16, map.sampleSelect(60, 100).sample().frames());
+    assertEquals(1, map.sampleSelect(60, 10).sample().frames());
+  }
+
+  @Test
+  public void testKeyOutOfRange()
+  {
+    final var map = mapOf(List.of(
+      new SampleZone(sample(), 60, 0, 127, 0, 127, 1.0)
+    ));
+
+    assertEquals(-1, map.table().group(200, 100));
+    assertEquals(-1, map.table().group(-1, 100));
+    assertEquals(-1, map.table().group(60, 128));
+    assertEquals(1, map.sampleSelect(200, 100).sample().frames());
+    assertEquals(1, map.sampleSelect(-60, 100).sample().frames());
+    assertEquals(1, map.sampleForNote(128).sample().frames());
+  }
+
+  @Test
+  public void testVelocityIndex()
+  {
+    assertEquals(0, SampleMap.velocityIndex(-1.0));
+    assertEquals(0, SampleMap.velocityIndex(0.0));
+    assertEquals(64, SampleMap.velocityIndex(0.5));
+    assertEquals(127, SampleMap.velocityIndex(1.0));
+    assertEquals(127, SampleMap.velocityIndex(2.0));
+  }
+}
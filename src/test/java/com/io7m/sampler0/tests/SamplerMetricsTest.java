@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.SamplerLatencyHistogram;
+import com.io7m.sampler0.SamplerMetrics;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class SamplerMetricsTest
+{
+  @Test
+  public void testHistogramBuckets()
+  {
+    for (long value = 0L; value < 100_000_000L; value = value * 3L / 2L + 1L) {
+      final var bucket =
+        SamplerLatencyHistogram.bucketOf(value);
+      final var highest =
+        SamplerLatencyHistogram.bucketValueHighest(bucket);
+
+      assertTrue(highest >= value, "highest >= value");
+      assertTrue(
+        (double) (highest - value) <= (double) value / SamplerLatencyHistogram.SUB_BUCKETS,
+        "relative error within one sub-bucket"
+      );
+      if (bucket > 0) {
+        assertTrue(
+          SamplerLatencyHistogram.bucketValueHighest(bucket - 1) < value);
+      }
+    }
+
+    assertEquals(
+      SamplerLatencyHistogram.BUCKETS - 1,
+      SamplerLatencyHistogram.bucketOf(Long.MAX_VALUE)
+    );
+  }
+
+  @Test
+  public void testHistogramPercentiles()
+  {
+    final var histogram = new SamplerLatencyHistogram();
+    for (int index = 1; index <= 1000; ++index) {
+      histogram.record(index * 1000L);
+    }
+
+    final var counts =
+      histogram.countsCopy(new long[SamplerLatencyHistogram.BUCKETS]);
+    final var p50 =
+      SamplerLatencyHistogram.valueAtPercentile(counts, 50.0);
+    final var p99 =
+      SamplerLatencyHistogram.valueAtPercentile(counts, 99.0);
+
+    assertTrue(p50 >= 500_000L && p50 <= 516_000L, "p50 " + p50);
+    assertTrue(p99 >= 990_000L && p99 <= 1_021_000L, "p99 " + p99);
+    assertEquals(1_000_000L, histogram.maximum());
+  }
+
+  @Test
+  public void testMetrics()
+  {
+    final var metrics = new SamplerMetrics();
+
+    /*
+     * 480 frames at 48kHz is a 10ms period.
+     */
+
+    metrics.cycleRecord(2_000_000L, 480, 48000);
+    metrics.voicesRecord(10);
+    metrics.cycleRecord(12_000_000L, 480, 48000);
+    metrics.voicesRecord(3);
+    metrics.eventsDroppedRecord(4L);
+    metrics.xrunRecord();
+
+    final var snapshot = metrics.snapshot();
+    assertEquals(2L, snapshot.cycles());
+    assertEquals(1L, snapshot.deadlineMisses());
+    assertEquals(1L, snapshot.xruns());
+    assertEquals(120.0, snapshot.dspLoadLast(), 0.001);
+    assertEquals(120.0, snapshot.dspLoadPeak(), 0.001);
+    assertEquals(70.0, snapshot.dspLoadMean(), 0.001);
+    assertEquals(3, snapshot.voicesActive());
+    assertEquals(10, snapshot.voicesPeak());
+    assertEquals(4L, snapshot.eventsDropped());
+    assertEquals(12_000_000L, snapshot.renderNanosMaximum());
+    assertEquals(12_000_000L, snapshot.renderNanosP99());
+  }
+}
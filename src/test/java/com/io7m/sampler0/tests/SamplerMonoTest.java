@@ -0,0 +1,362 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.EnvelopeADSRConfiguration;
+import com.io7m.sampler0.EventType;
+import com.io7m.sampler0.MidiMessages;
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleInterpolation;
+import com.io7m.sampler0.SampleLibraries;
+import com.io7m.sampler0.SampleMap;
+import com.io7m.sampler0.SampleMapDescription;
+import com.io7m.sampler0.SampleMapEntry;
+import com.io7m.sampler0.SamplerMono;
+import com.io7m.sampler0.SamplerMonoConfiguration;
+import com.io7m.sampler0.SamplerMonoLegato;
+import com.io7m.sampler0.SamplerMonoNotePriority;
+import com.io7m.sampler0.SamplerMonoNoteStack;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class SamplerMonoTest
+{
+  private static final int RATE = 48000;
+  private static final int FRAMES = 64;
+
+  /**
+   * Write a library in which each note plays a constant level of
+   * {@code (note + 1) / 256}, plus a slow ramp if {@code slope} is non-zero.
+   */
+
+  private static Path writeLibrary(
+    final Path directory,
+    final float slope)
+    throws Exception
+  {
+    final var entries = new Int2ObjectRBTreeMap<SampleMapEntry>();
+    for (int note = 0; note < 128; ++note) {
+      final var channel = new float[RATE];
+      for (int index = 0; index < channel.length; ++index) {
+        channel[index] = level(note) + index * slope;
+      }
+      final var data = SampleDataType.ofFloat(RATE, channel, channel);
+      entries.put(note, new SampleMapEntry(data, 1.0));
+    }
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(60, Paths.get("x.wav"));
+
+    final var file = directory.resolve("lib.s0lb");
+    SampleLibraries.write(
+      new SampleMap(entries, new SampleMapDescription(files)),
+      file);
+    return file;
+  }
+
+  private static float level(
+    final int note)
+  {
+    return (note + 1) / 256.0f;
+  }
+
+  private static SamplerMono sampler(
+    final Path library,
+    final SamplerMonoNotePriority priority,
+    final SamplerMonoLegato legato,
+    final double portamento)
+    throws Exception
+  {
+    return sampler(
+      new TestAudioContext(RATE, FRAMES),
+      library,
+      priority,
+      legato,
+      portamento);
+  }
+
+  private static SamplerMono sampler(
+    final TestAudioContext context,
+    final Path library,
+    final SamplerMonoNotePriority priority,
+    final SamplerMonoLegato legato,
+    final double portamento)
+    throws Exception
+  {
+    final var sampler =
+      new SamplerMono(
+        context,
+        new SamplerMonoConfiguration(
+          priority,
+          legato,
+          portamento,
+          SampleInterpolation.LINEAR,
+          EnvelopeADSRConfiguration.gate(),
+          Double.NEGATIVE_INFINITY
+        )
+      );
+    sampler.loadLibrary(library).get();
+    return sampler;
+  }
+
+  private static float render(
+    final SamplerMono sampler)
+  {
+    final var bufferL = FloatBuffer.allocate(FRAMES);
+    final var bufferR = FloatBuffer.allocate(FRAMES);
+    sampler.onProcess(bufferL, bufferR, FRAMES);
+    return bufferL.get(FRAMES - 1);
+  }
+
+  private static float slopeOf(
+    final FloatBuffer buffer)
+  {
+    return (buffer.get(60) - buffer.get(10)) / 50.0f;
+  }
+
+  @Test
+  public void testNoteStack()
+  {
+    final var stack = new SamplerMonoNoteStack();
+    assertEquals(-1, stack.select(SamplerMonoNotePriority.LAST));
+
+    stack.push(60, 0.5f);
+    stack.push(64, 0.6f);
+    stack.push(55, 0.7f);
+    stack.push(60, 0.8f);
+    assertEquals(3, stack.size());
+    assertEquals(60, stack.select(SamplerMonoNotePriority.LAST));
+    assertEquals(55, stack.select(SamplerMonoNotePriority.LOW));
+    assertEquals(64, stack.select(SamplerMonoNotePriority.HIGH));
+    assertEquals(0.8f, stack.velocity(60));
+
+    assertTrue(stack.remove(60));
+    assertEquals(55, stack.select(SamplerMonoNotePriority.LAST));
+    assertFalse(stack.remove(60));
+    assertEquals(0.0f, stack.velocity(60));
+  }
+
+  /**
+   * A period longer than the buffer size, arriving before the buffer size
+   * attribute changes, is mixed in several passes without losing frames.
+   */
+
+  @Test
+  public void testBufferSizeGrows(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var slope = 1.0e-5f;
+    final var frames = FRAMES * 3 + 5;
+    final var context = new TestAudioContext(RATE, FRAMES);
+    try (var sampler =
+           sampler(
+             context,
+             writeLibrary(directory, slope),
+             SamplerMonoNotePriority.LAST,
+             SamplerMonoLegato.RETRIGGER,
+             0.0)) {
+
+      sampler.onEvent(new EventType.NoteOn(70, 60, 1.0f));
+      final var first = FloatBuffer.allocate(frames);
+      sampler.onProcess(first, FloatBuffer.allocate(frames), frames);
+      for (int index = 0; index < 70; ++index) {
+        assertEquals(0.0f, first.get(index));
+      }
+      for (int index = 70; index < frames; ++index) {
+        assertEquals(
+          level(60) + (index - 70) * slope, first.get(index), 1.0e-6f);
+      }
+
+      context.bufferSizeSet(frames);
+      final var second = FloatBuffer.allocate(frames);
+      sampler.onProcess(second, FloatBuffer.allocate(frames), frames);
+      for (int index = 0; index < frames; ++index) {
+        final var position = frames - 70 + index;
+        assertEquals(level(60) + position * slope, second.get(index), 1.0e-6f);
+      }
+    }
+  }
+
+  @Test
+  public void testLastPriority(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    try (var sampler =
+           sampler(
+             writeLibrary(directory, 0.0f),
+             SamplerMonoNotePriority.LAST,
+             SamplerMonoLegato.RETRIGGER,
+             0.0)) {
+
+      sampler.onEvent(new EventType.NoteOn(0, 60, 1.0f));
+      assertEquals(level(60), render(sampler));
+      sampler.onEvent(new EventType.NoteOn(0, 62, 1.0f));
+      assertEquals(level(62), render(sampler));
+
+      /*
+       * Releasing the note that is not sounding changes nothing; releasing
+       * the sounding note returns to the note that is still held.
+       */
+
+      sampler.onEvent(new EventType.NoteOn(0, 64, 1.0f));
+      sampler.onEvent(new EventType.NoteOff(1, 62));
+      assertEquals(level(64), render(sampler));
+      sampler.onEvent(new EventType.NoteOff(0, 64));
+      assertEquals(level(60), render(sampler));
+      assertEquals(1, sampler.voicesActive());
+
+      sampler.onEvent(new EventType.NoteOff(0, 60));
+      assertEquals(0.0f, render(sampler));
+      assertEquals(0, sampler.voicesActive());
+    }
+  }
+
+  @Test
+  public void testLowPriority(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    try (var sampler =
+           sampler(
+             writeLibrary(directory, 0.0f),
+             SamplerMonoNotePriority.LOW,
+             SamplerMonoLegato.RETRIGGER,
+             0.0)) {
+
+      sampler.onEvent(new EventType.NoteOn(0, 60, 1.0f));
+      sampler.onEvent(new EventType.NoteOn(1, 64, 1.0f));
+      assertEquals(level(60), render(sampler));
+      sampler.onEvent(new EventType.NoteOn(0, 55, 1.0f));
+      assertEquals(level(55), render(sampler));
+      sampler.onEvent(new EventType.NoteOff(0, 55));
+      assertEquals(level(60), render(sampler));
+      sampler.onEvent(new EventType.NoteOff(0, 60));
+      assertEquals(level(64), render(sampler));
+    }
+  }
+
+  @Test
+  public void testGlide(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var slope = 1.0e-6f;
+    try (var sampler =
+           sampler(
+             writeLibrary(directory, slope),
+             SamplerMonoNotePriority.LAST,
+             SamplerMonoLegato.GLIDE,
+             0.01)) {
+
+      final var buffer = FloatBuffer.allocate(FRAMES);
+      sampler.onEvent(new EventType.NoteOn(0, 60, 1.0f));
+      sampler.onProcess(buffer, FloatBuffer.allocate(FRAMES), FRAMES);
+      assertEquals(slope, slopeOf(buffer), 1.0e-8f);
+
+      /*
+       * The voice is not restarted: it keeps playing the sample of the first
+       * note, and its rate rises to double over the portamento time (480
+       * frames).
+       */
+
+      sampler.onEvent(new EventType.NoteOn(0, 72, 1.0f));
+      sampler.onProcess(buffer, FloatBuffer.allocate(FRAMES), FRAMES);
+      final var early = slopeOf(buffer);
+      assertTrue(early > slope && early < 1.5f * slope, "early " + early);
+
+      for (int period = 0; period < 10; ++period) {
+        sampler.onProcess(buffer, FloatBuffer.allocate(FRAMES), FRAMES);
+      }
+      assertEquals(2.0f * slope, slopeOf(buffer), 1.0e-8f);
+      assertTrue(buffer.get(0) < level(61), "still playing the first sample");
+    }
+  }
+
+  @Test
+  public void testNoAllocation(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final var thread =
+      Thread.currentThread().getId();
+
+    try (var sampler =
+           sampler(
+             writeLibrary(directory, 0.0f),
+             SamplerMonoNotePriority.HIGH,
+             SamplerMonoLegato.GLIDE,
+             0.001)) {
+
+      final var bufferL = FloatBuffer.allocate(FRAMES);
+      final var bufferR = FloatBuffer.allocate(FRAMES);
+      final var lines = new int[]{36, 43, 48, 39, 41, 46};
+
+      /*
+       * A fast bass line, with overlapping notes, delivered as MIDI. The
+       * vector mixer allocates until the JIT has compiled it, and that can
+       * take a while when the compiler is busy with other tests, so warm up
+       * until a run of periods allocates nothing before measuring.
+       */
+
+      var period = 0;
+      for (int batch = 0; batch < 500; ++batch) {
+        final var start = threads.getThreadAllocatedBytes(thread);
+        period = bassLine(sampler, bufferL, bufferR, lines, period, 1_000);
+        if (threads.getThreadAllocatedBytes(thread) - start < 1024L) {
+          break;
+        }
+      }
+
+      final var before = threads.getThreadAllocatedBytes(thread);
+      bassLine(sampler, bufferL, bufferR, lines, period, 10_000);
+      final var after = threads.getThreadAllocatedBytes(thread);
+      assertTrue(after - before < 1024L, "allocated " + (after - before));
+    }
+  }
+
+  private static int bassLine(
+    final SamplerMono sampler,
+    final FloatBuffer bufferL,
+    final FloatBuffer bufferR,
+    final int[] lines,
+    final int first,
+    final int count)
+  {
+    for (int period = first; period < first + count; ++period) {
+      final var note = lines[period % lines.length];
+      final var previous = lines[(period + lines.length - 1) % lines.length];
+      sampler.onMidi(MidiMessages.pack(0, 0x90, note, 100));
+      sampler.onMidi(MidiMessages.pack(1, 0x80, previous, 0));
+      sampler.onProcess(bufferL, bufferR, FRAMES);
+    }
+    return first + count;
+  }
+}
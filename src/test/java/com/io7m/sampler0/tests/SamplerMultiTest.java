@@ -0,0 +1,289 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.EnvelopeADSRConfiguration;
+import com.io7m.sampler0.EventType;
+import com.io7m.sampler0.MidiMessages;
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleInterpolation;
+import com.io7m.sampler0.SampleLibraries;
+import com.io7m.sampler0.SampleMap;
+import com.io7m.sampler0.SampleMapDescription;
+import com.io7m.sampler0.SampleMapEntry;
+import com.io7m.sampler0.SamplerMulti;
+import com.io7m.sampler0.SamplerPolyConfiguration;
+import com.io7m.sampler0.SamplerVoiceStealing;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class SamplerMultiTest
+{
+  private static final int RATE = 48000;
+  private static final int FRAMES = 64;
+
+  /**
+   * Write a library in which every note plays a constant {@code level}, plus
+   * a slow ramp if {@code slope} is non-zero.
+   */
+
+  private static Path writeLibrary(
+    final Path directory,
+    final String name,
+    final float level,
+    final float slope)
+    throws Exception
+  {
+    final var entries = new Int2ObjectRBTreeMap<SampleMapEntry>();
+    for (int note = 0; note < 128; ++note) {
+      final var channel = new float[RATE];
+      for (int index = 0; index < channel.length; ++index) {
+        channel[index] = level + index * slope;
+      }
+      final var data = SampleDataType.ofFloat(RATE, channel, channel);
+      entries.put(note, new SampleMapEntry(data, 1.0));
+    }
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(60, Paths.get("x.wav"));
+
+    final var file = directory.resolve(name);
+    SampleLibraries.write(
+      new SampleMap(entries, new SampleMapDescription(files)),
+      file);
+    return file;
+  }
+
+  private static SamplerMulti sampler(
+    final int polyphony,
+    final int renderThreads)
+  {
+    return sampler(
+      new TestAudioContext(RATE, FRAMES),
+      polyphony,
+      renderThreads);
+  }
+
+  private static SamplerMulti sampler(
+    final TestAudioContext context,
+    final int polyphony,
+    final int renderThreads)
+  {
+    return new SamplerMulti(
+      context,
+      new SamplerPolyConfiguration(
+        polyphony,
+        SamplerVoiceStealing.OLDEST,
+        SampleInterpolation.LINEAR,
+        renderThreads,
+        1,
+        EnvelopeADSRConfiguration.gate(),
+        0,
+        Double.NEGATIVE_INFINITY
+      )
+    );
+  }
+
+  private static FloatBuffer render(
+    final SamplerMulti sampler)
+  {
+    final var bufferL = FloatBuffer.allocate(FRAMES);
+    sampler.onProcess(bufferL, FloatBuffer.allocate(FRAMES), FRAMES);
+    return bufferL;
+  }
+
+  private static float slopeOf(
+    final FloatBuffer buffer)
+  {
+    return (buffer.get(60) - buffer.get(10)) / 50.0f;
+  }
+
+  private static void checkRouting(
+    final Path directory,
+    final int renderThreads)
+    throws Exception
+  {
+    try (var sampler = sampler(8, renderThreads)) {
+      sampler.loadLibrary(0, writeLibrary(directory, "a.s0lb", 0.25f, 0.0f))
+        .get();
+      sampler.loadLibrary(9, writeLibrary(directory, "b.s0lb", 0.125f, 0.0f))
+        .get();
+
+      sampler.onMidi(MidiMessages.pack(0, 0x90, 60, 127));
+      assertEquals(0.25f, render(sampler).get(FRAMES - 1), 1.0e-6f);
+
+      sampler.onMidi(MidiMessages.pack(0, 0x99, 60, 127));
+      assertEquals(0.375f, render(sampler).get(FRAMES - 1), 1.0e-6f);
+      assertEquals(2, sampler.voicesActive());
+
+      /*
+       * Releasing the note on another channel leaves both voices playing.
+       */
+
+      sampler.onMidi(MidiMessages.pack(0, 0x85, 60, 0));
+      assertEquals(0.375f, render(sampler).get(FRAMES - 1), 1.0e-6f);
+
+      sampler.onMidi(MidiMessages.pack(0, 0x80, 60, 0));
+      assertEquals(0.125f, render(sampler).get(FRAMES - 1), 1.0e-6f);
+      assertEquals(1, sampler.voicesActive());
+    }
+  }
+
+  @Test
+  public void testRouting(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    checkRouting(directory, 1);
+  }
+
+  @Test
+  public void testRoutingParallel(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    checkRouting(directory, 2);
+  }
+
+  @Test
+  public void testPitchBendPerChannel(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var slope = 1.0e-6f;
+    try (var sampler = sampler(8, 1)) {
+      sampler.loadLibrary(0, writeLibrary(directory, "a.s0lb", 0.0f, slope))
+        .get();
+
+      sampler.onMidi(MidiMessages.pack(0, 0x90, 60, 127));
+      sampler.onMidi(MidiMessages.pack(0, 0xe1, 0, 0x60));
+      render(sampler);
+      assertEquals(slope, slopeOf(render(sampler)), 1.0e-9f);
+
+      /*
+       * A bend of half the range upwards is twelve semitones.
+       */
+
+      sampler.onMidi(MidiMessages.pack(0, 0xe0, 0, 0x60));
+      render(sampler);
+      assertEquals(2.0f * slope, slopeOf(render(sampler)), 1.0e-9f);
+    }
+  }
+
+  /**
+   * A period longer than the buffer size, arriving before the buffer size
+   * attribute changes, is mixed in several passes without losing frames or
+   * moving events. Once the buffer size changes, the same period is mixed
+   * in one pass.
+   */
+
+  private static void checkBufferSizeGrows(
+    final Path directory,
+    final int renderThreads)
+    throws Exception
+  {
+    final var slope = 1.0e-5f;
+    final var frames = FRAMES * 4 + 7;
+    final var context = new TestAudioContext(RATE, FRAMES);
+    try (var sampler = sampler(context, 8, renderThreads)) {
+      sampler.loadLibrary(0, writeLibrary(directory, "a.s0lb", 0.25f, slope))
+        .get();
+
+      sampler.onMidi(MidiMessages.pack(100, 0x90, 60, 127));
+      final var first = FloatBuffer.allocate(frames);
+      sampler.onProcess(first, FloatBuffer.allocate(frames), frames);
+      for (int index = 0; index < 100; ++index) {
+        assertEquals(0.0f, first.get(index));
+      }
+      for (int index = 100; index < frames; ++index) {
+        assertEquals(0.25f + (index - 100) * slope, first.get(index), 1.0e-6f);
+      }
+
+      context.bufferSizeSet(frames);
+      final var second = FloatBuffer.allocate(frames);
+      sampler.onProcess(second, FloatBuffer.allocate(frames), frames);
+      for (int index = 0; index < frames; ++index) {
+        final var position = frames - 100 + index;
+        assertEquals(0.25f + position * slope, second.get(index), 1.0e-6f);
+      }
+    }
+  }
+
+  @Test
+  public void testBufferSizeGrows(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    checkBufferSizeGrows(directory, 1);
+  }
+
+  @Test
+  public void testBufferSizeGrowsParallel(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    checkBufferSizeGrows(directory, 2);
+  }
+
+  /**
+   * A note outside the MIDI range, added through the public event API, is
+   * ignored rather than failing in the process callback.
+   */
+
+  @Test
+  public void testNoteOutOfRange(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    try (var sampler = sampler(8, 1)) {
+      sampler.loadLibrary(0, writeLibrary(directory, "a.s0lb", 0.25f, 0.0f))
+        .get();
+
+      sampler.onEvent(new EventType.NoteOn(0, 200, 1.0f));
+      sampler.onEvent(new EventType.NoteOn(1, 60, 1.0f));
+      assertEquals(0.25f, render(sampler).get(FRAMES - 1), 1.0e-6f);
+      assertEquals(1, sampler.voicesActive());
+    }
+  }
+
+  @Test
+  public void testSharedVoiceBudget(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    try (var sampler = sampler(3, 1)) {
+      final var library = writeLibrary(directory, "a.s0lb", 0.25f, 0.0f);
+      for (int channel = 0; channel < SamplerMulti.PARTS; ++channel) {
+        sampler.loadLibrary(channel, library).get();
+      }
+
+      for (int channel = 0; channel < SamplerMulti.PARTS; ++channel) {
+        sampler.onMidi(MidiMessages.pack(channel, 0x90 | channel, 60, 127));
+      }
+      final var buffer = render(sampler);
+      assertEquals(3, sampler.voicesActive());
+      assertEquals(0.75f, buffer.get(FRAMES - 1), 1.0e-6f);
+    }
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.EnvelopeADSRConfiguration;
+import com.io7m.sampler0.EventBuffer;
+import com.io7m.sampler0.SampleFormat;
+import com.io7m.sampler0.SampleMapDescription;
+import com.io7m.sampler0.SamplerOfflineConfiguration;
+import com.io7m.sampler0.SamplerOfflineJob;
+import com.io7m.sampler0.SamplerOfflineMain;
+import com.io7m.sampler0.SamplerFactoryType;
+import com.io7m.sampler0.SamplerMulti;
+import com.io7m.sampler0.SamplerOfflineRenderer;
+import com.io7m.sampler0.SamplerPolyConfiguration;
+import com.io7m.sampler0.SamplersMulti;
+import com.io7m.sampler0.SamplersPoly;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class SamplerOfflineRendererTest
+{
+  private static final int RATE = 44100;
+
+  private static Path writeMidi(
+    final Path directory,
+    final String name)
+    throws Exception
+  {
+    final var sequence = new Sequence(Sequence.PPQ, 480);
+    final var track = sequence.createTrack();
+
+    track.add(new MidiEvent(
+      new MetaMessage(0x51, new byte[]{0x07, (byte) 0xa1, 0x20}, 3), 0L));
+    track.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 127), 480L));
+    track.add(new MidiEvent(
+      new MetaMessage(0x51, new byte[]{0x03, (byte) 0xd0, (byte) 0x90}, 3),
+      480L));
+    track.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 0), 960L));
+
+    final var file = directory.resolve(name);
+    MidiSystem.write(sequence, 0, file.toFile());
+    return file;
+  }
+
+  /**
+   * Write a file in which channel 0 and channel 1 each play note 60 for the
+   * same quarter of a second.
+   */
+
+  private static Path writeMidiChannels(
+    final Path directory,
+    final String name)
+    throws Exception
+  {
+    final var sequence = new Sequence(Sequence.PPQ, 480);
+    final var track0 = sequence.createTrack();
+    final var track1 = sequence.createTrack();
+
+    track0.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 127), 480L));
+    track0.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), 720L));
+    track1.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_ON, 1, 60, 127), 480L));
+    track1.add(new MidiEvent(
+      new ShortMessage(ShortMessage.NOTE_OFF, 1, 60, 0), 720L));
+
+    final var file = directory.resolve(name);
+    MidiSystem.write(sequence, 1, file.toFile());
+    return file;
+  }
+
+  private static Path writeWave(
+    final Path directory)
+    throws Exception
+  {
+    return writeWave(directory, "sample.wav", (short) 16384);
+  }
+
+  private static Path writeWave(
+    final Path directory,
+    final String name,
+    final short value)
+    throws Exception
+  {
+    final var frames = 100000;
+    final var format = new AudioFormat(RATE, 16, 1, true, false);
+    final var bytes = new byte[frames * 2];
+    for (int index = 0; index < frames; ++index) {
+      bytes[index * 2] = (byte) (value & 0xff);
+      bytes[index * 2 + 1] = (byte) ((value >> 8) & 0xff);
+    }
+
+    final var file = directory.resolve(name);
+    try (var stream = new AudioInputStream(
+      new ByteArrayInputStream(bytes), format, frames)) {
+      AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file.toFile());
+    }
+    return file;
+  }
+
+  private static SamplerOfflineRenderer renderer()
+  {
+    return renderer(SamplersPoly::new);
+  }
+
+  private static SamplerOfflineRenderer renderer(
+    final Function<SamplerPolyConfiguration, SamplerFactoryType> samplers)
+  {
+    /*
+     * Voices start and stop instantly, so that the output can be compared
+     * exactly with the sample data.
+     */
+
+    final var defaults =
+      SamplerPolyConfiguration.defaults();
+    final var configuration =
+      new SamplerPolyConfiguration(
+        defaults.polyphony(),
+        defaults.stealing(),
+        defaults.interpolation(),
+        defaults.renderThreads(),
+        defaults.parallelVoicesMinimum(),
+        EnvelopeADSRConfiguration.gate(),
+        0,
+        defaults.tailThresholdDecibels()
+      );
+
+    return new SamplerOfflineRenderer(
+      samplers.apply(configuration),
+      (factory, buffer, rate) -> {
+        throw new UnsupportedOperationException();
+      },
+      Optional.empty(),
+      new SamplerOfflineConfiguration(RATE, 256, SampleFormat.FLOAT32, 1000)
+    );
+  }
+
+  @Test
+  public void testTempoMap(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var events =
+      SamplerOfflineRenderer.readEvents(writeMidi(directory, "a.mid"), RATE);
+
+    assertEquals(2, events.size());
+    assertEquals(EventBuffer.KIND_NOTE_ON, events.get(0).kind());
+    assertEquals(RATE / 2, events.get(0).frame());
+    assertEquals(1.0, events.get(0).value(), 1.0e-9);
+    assertEquals(EventBuffer.KIND_NOTE_OFF, events.get(1).kind());
+    assertEquals(RATE / 2 + RATE / 4, events.get(1).frame());
+  }
+
+  @Test
+  public void testRunUsage()
+    throws Exception
+  {
+    assertEquals(1, SamplerOfflineMain.run(new String[0]));
+    assertEquals(1, SamplerOfflineMain.run(new String[]{"a.s0lb", "out"}));
+  }
+
+  @Test
+  public void testRender(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(60, writeWave(directory));
+    final var description = new SampleMapDescription(files);
+    final var job =
+      new SamplerOfflineJob(
+        writeMidi(directory, "a.mid"),
+        directory.resolve("a.wav"));
+
+    try (var renderer = renderer()) {
+      final var result =
+        renderer.render(s -> s.loadSamples(description), job);
+      assertEquals(RATE / 2 + RATE / 4 + 1000, result.frames());
+      assertEquals(2L, result.events());
+    }
+
+    final var bytes = Files.readAllBytes(directory.resolve("a.wav"));
+    final var data =
+      ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(bytes.length - 8, data.getInt(4));
+    assertEquals(3, data.getShort(20));
+
+    final var frameBytes = 8;
+    final var header = bytes.length - (RATE / 2 + RATE / 4 + 1000) * frameBytes;
+    assertEquals(0.0f, data.getFloat(header + (RATE / 2 - 1) * frameBytes));
+    assertEquals(
+      0.5f,
+      data.getFloat(header + (RATE / 2 + 10) * frameBytes),
+      1.0e-3);
+    assertEquals(
+      0.0f,
+      data.getFloat(header + (RATE / 2 + RATE / 4 + 10) * frameBytes));
+  }
+
+  @Test
+  public void testRenderChannels(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var midi = writeMidiChannels(directory, "c.mid");
+    final var events = SamplerOfflineRenderer.readEvents(midi, RATE);
+    assertEquals(4, events.size());
+    assertEquals(1, events.stream().filter(e -> e.channel() == 1)
+      .filter(e -> e.kind() == EventBuffer.KIND_NOTE_ON)
+      .count());
+
+    final var filesA = new Int2ObjectRBTreeMap<Path>();
+    filesA.put(60, writeWave(directory, "a.wav", (short) 16384));
+    final var filesB = new Int2ObjectRBTreeMap<Path>();
+    filesB.put(60, writeWave(directory, "b.wav", (short) 8192));
+
+    final var job =
+      new SamplerOfflineJob(midi, directory.resolve("c.wav"));
+
+    try (var renderer = renderer(SamplersMulti::new)) {
+      renderer.render(s -> {
+        final var multi = (SamplerMulti) s;
+        return multi.loadSamples(1, new SampleMapDescription(filesB))
+          .thenCompose(m -> {
+            return multi.loadSamples(0, new SampleMapDescription(filesA));
+          });
+      }, job);
+    }
+
+    final var bytes = Files.readAllBytes(directory.resolve("c.wav"));
+    final var data =
+      ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    final var frameBytes = 8;
+    final var header = bytes.length - (RATE / 2 + RATE / 4 + 1000) * frameBytes;
+    assertEquals(
+      0.75f,
+      data.getFloat(header + (RATE / 2 + 10) * frameBytes),
+      1.0e-3);
+  }
+
+  @Test
+  public void testRenderAllFailures(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(60, writeWave(directory));
+    final var description = new SampleMapDescription(files);
+
+    final var jobs = List.of(
+      new SamplerOfflineJob(
+        writeMidi(directory, "a.mid"), directory.resolve("a.wav")),
+      new SamplerOfflineJob(
+        writeMidi(directory, "b.mid"), directory.resolve("b.wav")),
+      new SamplerOfflineJob(
+        directory.resolve("missing.mid"), directory.resolve("c.wav"))
+    );
+
+    try (var renderer = renderer()) {
+      final var ex = assertThrows(IOException.class, () -> {
+        renderer.renderAll(s -> s.loadSamples(description), jobs, 3);
+      });
+      assertEquals(1, ex.getSuppressed().length);
+    }
+
+    assertEquals(
+      Files.size(directory.resolve("a.wav")),
+      Files.size(directory.resolve("b.wav")));
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleInterpolation;
+import com.io7m.sampler0.SampleMapEntry;
+import com.io7m.sampler0.SampleMixer;
+import com.io7m.sampler0.SamplerRenderWorkers;
+import com.io7m.sampler0.SamplerVoicePool;
+import com.io7m.sampler0.SamplerVoiceStealing;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class SamplerRenderWorkersTest
+{
+  private static SamplerVoicePool pool()
+  {
+    final var pool = new SamplerVoicePool(64, SamplerVoiceStealing.OLDEST);
+    for (int voice = 0; voice < 40; ++voice) {
+      final var data = new float[3000 + voice * 100];
+      for (int index = 0; index < data.length; ++index) {
+        data[index] = (float) Math.sin(index * 0.001 * (voice + 1));
+      }
+      final var sample = SampleDataType.ofFloat(44100.0, data, data);
+      pool.start(new SampleMapEntry(sample, 0.5 + voice * 0.05), voice, 1.0f);
+    }
+    return pool;
+  }
+
+  @Test
+  public void testMatchesSerial()
+  {
+    final var serialPool = pool();
+    final var parallelPool = pool();
+    final var mixer = SampleMixer.create(SampleInterpolation.CUBIC);
+    final var serialL = new float[8192];
+    final var serialR = new float[8192];
+    final var parallelL = new float[8192];
+    final var parallelR = new float[8192];
+
+    try (var workers =
+           new SamplerRenderWorkers(4, SampleInterpolation.CUBIC, 8192)) {
+      for (int offset = 0; offset < 8192; offset += 256) {
+        workers.render(
+          parallelPool, parallelL, parallelR, offset, 256, 1.0, 0.0, 0);
+
+        for (int voice = 0; voice < serialPool.activeCount(); ++voice) {
+          serialPool.active(voice)
+            .render(mixer, serialL, serialR, offset, 256, 1.0, 0.0);
+        }
+      }
+    }
+
+    for (int index = 0; index < 8192; ++index) {
+      assertEquals(serialL[index], parallelL[index], 1.0e-4);
+      assertEquals(serialR[index], parallelR[index], 1.0e-4);
+    }
+    for (int voice = 0; voice < serialPool.activeCount(); ++voice) {
+      assertEquals(
+        serialPool.active(voice).isDone(),
+        parallelPool.active(voice).isDone());
+    }
+  }
+
+  @Test
+  public void testThreadsMinimum()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new SamplerRenderWorkers(1, SampleInterpolation.LINEAR, 128).close();
+    });
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleLibraries;
+import com.io7m.sampler0.SampleMap;
+import com.io7m.sampler0.SampleMapDescription;
+import com.io7m.sampler0.SampleMapEntry;
+import com.io7m.sampler0.SampleStreamer;
+import com.io7m.sampler0.SamplerSampleMaps;
+import com.io7m.sampler0.SamplerVoicePool;
+import com.io7m.sampler0.SamplerVoiceStealing;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class SamplerSampleMapsTest
+{
+  private static void waitFor(
+    final BooleanSupplier condition)
+    throws InterruptedException
+  {
+    final var deadline = System.nanoTime() + 10_000_000_000L;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.nanoTime() < deadline, "Timed out");
+      Thread.sleep(1L);
+    }
+  }
+
+  private static Path writeLibrary(
+    final Path directory)
+    throws Exception
+  {
+    final var channel = new float[100];
+    final var data = SampleDataType.ofFloat(44100.0, channel, channel);
+    final var entries = new Int2ObjectRBTreeMap<SampleMapEntry>();
+    for (int note = 0; note < 128; ++note) {
+      entries.put(note, new SampleMapEntry(data, 1.0));
+    }
+    final var files = new Int2ObjectRBTreeMap<Path>();
+    files.put(60, Paths.get("x.wav"));
+
+    final var file = directory.resolve("lib.s0lb");
+    SampleLibraries.write(
+      new SampleMap(entries, new SampleMapDescription(files)),
+      file);
+    return file;
+  }
+
+  @Test
+  public void testSampleRateChangeReloads(
+    final @TempDir Path directory)
+    throws Exception
+  {
+    final var context = new TestAudioContext(44100, 256);
+    final var maps = new SamplerSampleMaps(context, new SampleStreamer(1));
+
+    maps.loadLibrary(writeLibrary(directory));
+    waitFor(() -> !maps.current().isEmpty());
+    assertEquals(44100, maps.current().sampleRate());
+    assertEquals(1.0, maps.current().sampleForNote(60).playbackRate());
+
+    context.sampleRateSet(48000);
+    assertEquals(48000, maps.outputRate());
+    waitFor(() -> maps.current().sampleRate() == 48000);
+    assertEquals(
+      44100.0 / 48000.0,
+      maps.current().sampleForNote(60).playbackRate(),
+      1.0e-9);
+
+    maps.close();
+  }
+
+  @Test
+  public void testVoiceRateCorrection()
+  {
+    final var pool = new SamplerVoicePool(1, SamplerVoiceStealing.OLDEST);
+    final var empty = SampleMap.empty();
+
+    final var unknown = pool.start(empty.sampleForNote(0), 0, 1.0f);
+    assertEquals(1.0, unknown.rateCorrection(48000));
+
+    final var known = pool.start(empty.sampleForNote(0), 0, 1.0f, 44100);
+    assertEquals(44100.0 / 48000.0, known.rateCorrection(48000));
+    assertEquals(1.0, known.rateCorrection(44100));
+  }
+}
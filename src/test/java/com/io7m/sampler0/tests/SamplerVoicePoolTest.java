@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.EnvelopeADSRConfiguration;
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleInterpolation;
+import com.io7m.sampler0.SampleMap;
+import com.io7m.sampler0.SampleMapEntry;
+import com.io7m.sampler0.SampleMixer;
+import com.io7m.sampler0.SamplerVoicePool;
+import com.io7m.sampler0.SamplerVoiceStealing;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class SamplerVoicePoolTest
+{
+  private static final SampleMap EMPTY = SampleMap.empty();
+
+  @Test
+  public void testStartFree()
+  {
+    final var pool = new SamplerVoicePool(4, SamplerVoiceStealing.OLDEST);
+    final var v0 = pool.start(EMPTY.sampleForNote(60), 60, 1.0f);
+    final var v1 = pool.start(EMPTY.sampleForNote(61), 61, 1.0f);
+    final var v2 = pool.start(EMPTY.sampleForNote(62), 62, 1.0f);
+    assertEquals(3, pool.activeCount());
+
+    pool.free(v0);
+    assertEquals(2, pool.activeCount());
+
+    final var seen = new HashSet<>();
+    for (int index = 0; index < pool.activeCount(); ++index) {
+      seen.add(pool.active(index));
+    }
+    assertTrue(seen.contains(v1));
+    assertTrue(seen.contains(v2));
+    assertFalse(seen.contains(v0));
+
+    pool.free(v0);
+    assertEquals(2, pool.activeCount());
+  }
+
+  @Test
+  public void testRetriggerKeepsBoth()
+  {
+    final var pool = new SamplerVoicePool(4, SamplerVoiceStealing.OLDEST);
+    pool.start(EMPTY.sampleForNote(60), 60, 1.0f);
+    pool.start(EMPTY.sampleForNote(60), 60, 1.0f);
+    assertEquals(2, pool.activeCount());
+
+    pool.freeNote(60);
+    assertEquals(0, pool.activeCount());
+  }
+
+  @Test
+  public void testStealOldest()
+  {
+    final var pool = new SamplerVoicePool(2, SamplerVoiceStealing.OLDEST);
+    final var v0 = pool.start(EMPTY.sampleForNote(60), 60, 1.0f);
+    final var v1 = pool.start(EMPTY.sampleForNote(61), 61, 1.0f);
+    final var v2 = pool.start(EMPTY.sampleForNote(62), 62, 1.0f);
+
+    assertSame(v0, v2);
+    assertEquals(2, pool.activeCount());
+    assertEquals(62, v2.note());
+    assertEquals(61, v1.note());
+    assertEquals(1L, pool.voicesStolen());
+  }
+
+  private static void render(
+    final SamplerVoicePool pool)
+  {
+    final var mixer = SampleMixer.create(SampleInterpolation.LINEAR);
+    final var outL = new float[256];
+    final var outR = new float[256];
+    for (int index = pool.activeCount() - 1; index >= 0; --index) {
+      pool.active(index).render(mixer, outL, outR, 0, 256, 1.0, 0.0);
+    }
+  }
+
+  /**
+   * When every reserve voice is fading, the oldest fading voice is cut off
+   * so that each new victim still fades out instead of being cut off at
+   * full level.
+   */
+
+  @Test
+  public void testStealReserveExhausted()
+  {
+    final var pool =
+      new SamplerVoicePool(
+        2,
+        1,
+        SamplerVoiceStealing.OLDEST,
+        EnvelopeADSRConfiguration.defaults(),
+        48000
+      );
+
+    final var channel = new float[48000];
+    Arrays.fill(channel, 0.5f);
+    final var sample =
+      new SampleMapEntry(SampleDataType.ofFloat(48000.0, channel, channel), 1.0);
+
+    final var v0 = pool.start(sample, 60, 1.0f);
+    final var v1 = pool.start(sample, 61, 1.0f);
+    render(pool);
+
+    final var v2 = pool.start(sample, 62, 1.0f);
+    assertTrue(v0.isStolen());
+    assertFalse(v0.isDone());
+    assertEquals(3, pool.activeCount());
+    render(pool);
+
+    pool.start(sample, 63, 1.0f);
+    assertTrue(v1.isStolen());
+    assertFalse(v1.isDone());
+    assertEquals(61, v1.note());
+    assertEquals(3, pool.activeCount());
+    render(pool);
+
+    pool.start(sample, 64, 1.0f);
+    assertTrue(v2.isStolen());
+    assertFalse(v2.isDone());
+    assertEquals(62, v2.note());
+    assertEquals(3, pool.activeCount());
+    assertEquals(3L, pool.voicesStolen());
+
+    final var notes = new HashSet<Integer>();
+    for (int index = 0; index < pool.activeCount(); ++index) {
+      notes.add(Integer.valueOf(pool.active(index).note()));
+    }
+    assertEquals(Set.of(62, 63, 64), notes);
+  }
+
+  @Test
+  public void testStealQuietest()
+  {
+    final var pool = new SamplerVoicePool(3, SamplerVoiceStealing.QUIETEST);
+    pool.start(EMPTY.sampleForNote(60), 60, 1.0f);
+    pool.start(EMPTY.sampleForNote(61), 61, 0.1f);
+    pool.start(EMPTY.sampleForNote(62), 62, 0.5f);
+    pool.start(EMPTY.sampleForNote(63), 63, 1.0f);
+
+    final var notes = new HashSet<Integer>();
+    for (int index = 0; index < pool.activeCount(); ++index) {
+      notes.add(Integer.valueOf(pool.active(index).note()));
+    }
+    assertFalse(notes.contains(Integer.valueOf(61)));
+  }
+
+  @Test
+  public void testStealSameNote()
+  {
+    final var pool = new SamplerVoicePool(3, SamplerVoiceStealing.SAME_NOTE);
+    pool.start(EMPTY.sampleForNote(60), 60, 1.0f);
+    pool.start(EMPTY.sampleForNote(61), 61, 1.0f);
+    pool.start(EMPTY.sampleForNote(62), 62, 1.0f);
+    pool.start(EMPTY.sampleForNote(61), 61, 1.0f);
+
+    final var notes = new HashSet<Integer>();
+    for (int index = 0; index < pool.activeCount(); ++index) {
+      notes.add(Integer.valueOf(pool.active(index).note()));
+    }
+    assertEquals(3, notes.size());
+    assertTrue(notes.contains(Integer.valueOf(60)));
+  }
+}
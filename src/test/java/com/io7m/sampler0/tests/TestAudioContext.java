@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.jattribute.core.AttributeReadableType;
+import com.io7m.jattribute.core.AttributeType;
+import com.io7m.jattribute.core.Attributes;
+import com.io7m.jsamplebuffer.api.SampleBufferRateConverterType;
+import com.io7m.sampler0.AudioContextType;
+
+import java.util.concurrent.CompletableFuture;
+
+final class TestAudioContext implements AudioContextType
+{
+  private final AttributeType<Integer> sampleRate;
+  private final AttributeType<Integer> bufferSize;
+
+  TestAudioContext(
+    final int inSampleRate,
+    final int inBufferSize)
+  {
+    final var attributes = Attributes.create(e -> { });
+    this.sampleRate = attributes.create(Integer.valueOf(inSampleRate));
+    this.bufferSize = attributes.create(Integer.valueOf(inBufferSize));
+  }
+
+  void sampleRateSet(
+    final int rate)
+  {
+    this.sampleRate.set(Integer.valueOf(rate));
+  }
+
+  void bufferSizeSet(
+    final int size)
+  {
+    this.bufferSize.set(Integer.valueOf(size));
+  }
+
+  @Override
+  public SampleBufferRateConverterType sampleRateConverter()
+  {
+    return (factory, buffer, rate) -> {
+      throw new UnsupportedOperationException();
+    };
+  }
+
+  @Override
+  public <T> CompletableFuture<T> executeIO(
+    final IOOperationType<T> operation)
+  {
+    final var future = new CompletableFuture<T>();
+    final var thread = new Thread(() -> {
+      try {
+        future.complete(operation.execute());
+      } catch (final Exception e) {
+        future.completeExceptionally(e);
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    return future;
+  }
+
+  @Override
+  public AttributeReadableType<Integer> sampleRate()
+  {
+    return this.sampleRate;
+  }
+
+  @Override
+  public AttributeReadableType<Integer> bufferSize()
+  {
+    return this.bufferSize;
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.sampler0.tests;
+
+import com.io7m.sampler0.PitchBend;
+import com.io7m.sampler0.SampleDataType;
+import com.io7m.sampler0.SampleZone;
+import com.io7m.sampler0.SampleZoneTable;
+import com.io7m.sampler0.TuningKeyboardMapping;
+import com.io7m.sampler0.TuningScale;
+import com.io7m.sampler0.TuningTable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TuningTableTest
+{
+  private static final List<String> JUST_SCALE = List.of(
+    "! just.scl",
+    "!",
+    "5-limit just major",
+    " 7",
+    "!",
+    " 9/8",
+    " 5/4",
+    " 4/3",
+    " 3/2 perfect fifth",
+    " 5/3",
+    " 15/8",
+    " 1200.0"
+  );
+
+  /**
+   * Maps the seven degrees to the white keys, leaving the black keys
+   * unmapped, with middle C at 261.6256Hz.
+   */
+
+  private static final List<String> WHITE_KEYS = List.of(
+    "! white.kbm",
+    "12",
+    "0",
+    "127",
+    "60",
+    "60",
+    "261.6256",
+    "7",
+    "0",
+    "x",
+    "1",
+    "x",
+    "2",
+    "3",
+    "x",
+    "4",
+    "x",
+    "5",
+    "x",
+    "6"
+  );
+
+  @Test
+  public void testRatioOfCentsAccuracy()
+  {
+    for (int index = -25946; index <= 25946; ++index) {
+      final var cents = index * 0.37;
+      final var expected = StrictMath.pow(2.0, cents / 1200.0);
+      final var received = TuningTable.ratioOfCents(cents);
+      assertEquals(
+        expected,
+        received,
+        expected * TuningTable.RATIO_MAXIMUM_RELATIVE_ERROR,
+        () -> "Cents %f".formatted(Double.valueOf(cents))
+      );
+    }
+
+    assertEquals(4.0, TuningTable.ratioOfSemitones(24.0), 1.0e-9);
+    assertEquals(0.25, TuningTable.ratioOfSemitones(-24.0), 1.0e-9);
+
+    final var outside = StrictMath.pow(2.0, 15000.0 / 1200.0);
+    assertEquals(
+      outside,
+      TuningTable.ratioOfCents(15000.0),
+      outside * PitchBend.EXP2_MAXIMUM_RELATIVE_ERROR
+    );
+  }
+
+  @Test
+  public void testEqualTemperament()
+  {
+    final var tuning = TuningTable.equalTemperament();
+    assertEquals(440.0, tuning.frequency(69));
+    assertEquals(880.0, tuning.frequency(81), 1.0e-9);
+    assertEquals(261.6256, tuning.frequency(60), 1.0e-4);
+    assertEquals(-900.0, tuning.cents(60), 1.0e-9);
+    assertEquals(2.0, tuning.ratio(60, 72), 1.0e-12);
+
+    final var scala =
+      TuningTable.ofScala(
+        TuningScale.equal(12),
+        TuningKeyboardMapping.standard()
+      );
+    for (int note = 0; note < 128; ++note) {
+      assertEquals(tuning.frequency(note), scala.frequency(note), 1.0e-9);
+    }
+  }
+
+  @Test
+  public void testScalaJust()
+    throws IOException
+  {
+    final var scale = TuningScale.parse("just.scl", JUST_SCALE);
+    assertEquals("5-limit just major", scale.description());
+    assertEquals(7, scale.size());
+    assertEquals(1200.0, scale.periodCents(), 1.0e-9);
+
+    final var mapping = TuningKeyboardMapping.parse("white.kbm", WHITE_KEYS);
+    assertEquals(12, mapping.size());
+    assertEquals(TuningKeyboardMapping.UNMAPPED, mapping.degreeOf(61));
+    assertEquals(4, mapping.degreeOf(67));
+    assertEquals(7, mapping.degreeOf(72));
+
+    final var tuning = TuningTable.ofScala(scale, mapping);
+    assertEquals(261.6256, tuning.frequency(60), 1.0e-9);
+    assertEquals(1.5, tuning.ratio(60, 67), 1.0e-12);
+    assertEquals(1.25, tuning.ratio(60, 64), 1.0e-12);
+    assertEquals(2.0, tuning.ratio(60, 72), 1.0e-12);
+    assertEquals(0.5, tuning.ratio(60, 48), 1.0e-12);
+    assertTrue(tuning.isMapped(60));
+    assertFalse(tuning.isMapped(61));
+    assertTrue(Double.isNaN(tuning.frequency(61)));
+  }
+
+  @Test
+  public void testZoneRates()
+    throws IOException
+  {
+    final var tuning =
+      TuningTable.ofScala(
+        TuningScale.parse("just.scl", JUST_SCALE),
+        TuningKeyboardMapping.parse("white.kbm", WHITE_KEYS)
+      );
+
+    final var data = new float[16];
+    final var sample = SampleDataType.ofFloat(44100.0, data, data);
+    final var zone = new SampleZone(sample, 60, 48, 72, 0, 127, 1.0);
+    assertEquals(1.5, zone.playbackRateForNote(tuning, 67), 1.0e-12);
+    assertEquals(
+      TuningTable.equalTemperament().ratio(60, 67),
+      zone.playbackRateForNote(67),
+      1.0e-12
+    );
+
+    final var table = SampleZoneTable.ofZones(List.of(zone), tuning);
+    assertTrue(table.group(60, 100) >= 0);
+    assertTrue(table.group(67, 100) >= 0);
+    assertEquals(-1, table.group(61, 100));
+  }
+
+  @Test
+  public void testScalaErrors()
+  {
+    assertThrows(IOException.class, () -> {
+      TuningScale.parse("bad.scl", List.of("description", "2", "9/8"));
+    });
+    assertThrows(IOException.class, () -> {
+      TuningScale.parse("bad.scl", List.of("description", "1", "9/0"));
+    });
+    assertThrows(IOException.class, () -> {
+      TuningKeyboardMapping.parse("bad.kbm", List.of("12", "0"));
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      TuningTable.ofFrequencies(new double[12]);
+    });
+  }
+}